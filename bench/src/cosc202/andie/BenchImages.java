@@ -0,0 +1,94 @@
+package cosc202.andie;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * <p>
+ * Test images for the benchmarks.
+ * </p>
+ *
+ * <p>
+ * The images are filled with noise, so that operations whose speed depends on the pixels, such
+ * as the median filter, see something like a photograph rather than a flat colour.
+ * Every image has the same 3:2 shape as a typical camera, and the same seed, so runs can be
+ * compared.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+final class BenchImages {
+
+    /**
+     * This class only has static methods.
+     */
+    private BenchImages() {
+    }
+
+    /**
+     * Make a noisy image.
+     *
+     * @param megapixels The number of millions of pixels in the image.
+     * @param type       The name of a <code>BufferedImage.TYPE_*</code> constant without the
+     *                   <code>TYPE_</code>, such as <code>INT_RGB</code>.
+     * @return The image.
+     */
+    static BufferedImage noise(int megapixels, String type) {
+        int height = (int) Math.round(Math.sqrt(megapixels * 1e6 * 2 / 3));
+        int width = (int) Math.round(megapixels * 1e6 / height);
+        BufferedImage image = new BufferedImage(width, height, typeOf(type));
+        Random random = new Random(202);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                row[x] = 0xFF000000 | random.nextInt(0x1000000);
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    /**
+     * Make a copy of an image to apply an operation to, since many operations change their input.
+     *
+     * @param image The image.
+     * @param into  An image of the same size and type to copy into, or null to make one.
+     * @return The copy.
+     */
+    static BufferedImage copy(BufferedImage image, BufferedImage into) {
+        if (into == null) {
+            into = new BufferedImage(image.getColorModel(), image.getRaster().createCompatibleWritableRaster(),
+                    image.isAlphaPremultiplied(), null);
+        }
+        into.setData(image.getRaster());
+        return into;
+    }
+
+    /**
+     * Look up an image type by name.
+     *
+     * @param type The name of the type without the <code>TYPE_</code>.
+     * @return The <code>BufferedImage.TYPE_*</code> constant.
+     * @throws IllegalArgumentException If there is no such type.
+     */
+    private static int typeOf(String type) {
+        switch (type) {
+            case "INT_RGB":
+                return BufferedImage.TYPE_INT_RGB;
+            case "INT_ARGB":
+                return BufferedImage.TYPE_INT_ARGB;
+            case "3BYTE_BGR":
+                return BufferedImage.TYPE_3BYTE_BGR;
+            case "4BYTE_ABGR":
+                return BufferedImage.TYPE_4BYTE_ABGR;
+            case "BYTE_GRAY":
+                return BufferedImage.TYPE_BYTE_GRAY;
+            default:
+                throw new IllegalArgumentException("Unknown image type: " + type);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package cosc202.andie;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>
+ * Runs the ANDIE benchmarks with the allocation profiler turned on.
+ * </p>
+ *
+ * <p>
+ * This takes the usual JMH command line, so for example
+ * <code>java -jar benchmarks.jar OperationBenchmark -p op=MeanFilter:5 -p megapixels=12</code>
+ * runs one operation at one size.
+ * The GC profiler is always added, so the results include <code>gc.alloc.rate</code> (MB/s) and
+ * <code>gc.alloc.rate.norm</code> (bytes per call) next to the time and the megapixels per second.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public class BenchmarkMain {
+
+    /**
+     * Run the benchmarks.
+     *
+     * @param args The JMH command line.
+     * @throws Exception If the command line is wrong or the benchmarks cannot be run.
+     */
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListProfilers()
+                || commandLine.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        Options options = new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,120 @@
+package cosc202.andie;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * <p>
+ * Measures how long an {@link EditableImage} takes to rebuild the image from its operations.
+ * </p>
+ *
+ * <p>
+ * This is the work done by the private <code>refresh</code> method whenever the history changes
+ * by more than an operation that can be patched, for example when going back to the start and
+ * forward again.
+ * Before each call the image is taken back to its original and the snapshots are cleared, so
+ * every call replays the whole history rather than picking up a snapshot.
+ * The <code>pixel</code> history is made of per-pixel operations only, which are fused into a
+ * single pass, while the <code>mixed</code> history has filters and transforms in between.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g", "-Djava.awt.headless=true" })
+public class HistoryBenchmark {
+
+    /** The size of the image, in millions of pixels. */
+    @Param({ "1", "12", "50" })
+    public int megapixels;
+
+    /** The type of the image, as a <code>BufferedImage.TYPE_*</code> name. */
+    @Param({ "INT_RGB", "3BYTE_BGR", "BYTE_GRAY" })
+    public String type;
+
+    /** Which history to replay: <code>pixel</code> or <code>mixed</code>. */
+    @Param({ "pixel", "mixed" })
+    public String history;
+
+    /** The image being rebuilt. */
+    private EditableImage image;
+    /** The number of operations in the history. */
+    private int steps;
+    /** The file the image was opened from. */
+    private File file;
+
+    /**
+     * Write the test image to a file, open it, and apply the history once.
+     *
+     * @throws Exception If the image cannot be written or opened.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = File.createTempFile("andie-bench", ".png");
+        file.deleteOnExit();
+        ImageIO.write(BenchImages.noise(megapixels, type), "png", file);
+        image = new EditableImage();
+        image.open(file.getPath());
+        image.setLazy(false);
+
+        List<ImageOperation> ops = new ArrayList<ImageOperation>();
+        if (history.equals("pixel")) {
+            ops.add(new Brightness(10, 20));
+            ops.add(new InvertFilter());
+            ops.add(new ConvertToGrey());
+            ops.add(new Brightness(-10, 0));
+            ops.add(new InvertFilter());
+        } else {
+            ops.add(new Brightness(10, 20));
+            ops.add(new GaussianBlurFilter(3));
+            ops.add(new FlipImage(true));
+            ops.add(new MedianFilter(1));
+            ops.add(new SharpenFilter());
+            ops.add(new RotateImage(true, false));
+        }
+        image.applyAll(ops);
+        steps = image.getOpsSize();
+    }
+
+    /**
+     * Go back to the original image and forget the snapshots, outside of the timing.
+     */
+    @Setup(Level.Invocation)
+    public void rewind() {
+        image.goToStep(0);
+        image.getSnapshots().clear();
+    }
+
+    /**
+     * Rebuild the image from all of its operations.
+     *
+     * @param pixels The pixel counter.
+     * @return The image, so the work is not optimised away.
+     */
+    @Benchmark
+    public EditableImage refresh(OperationBenchmark.Pixels pixels) {
+        image.goToStep(steps);
+        pixels.megapixels += megapixels;
+        return image;
+    }
+
+    /**
+     * Remove the test image.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+}
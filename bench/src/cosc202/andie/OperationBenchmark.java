@@ -0,0 +1,152 @@
+package cosc202.andie;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * <p>
+ * Measures how fast each {@link ImageOperation} is, over image sizes, types and settings.
+ * </p>
+ *
+ * <p>
+ * Each invocation applies one operation to a fresh copy of a noisy image, either directly with
+ * {@link ImageOperation#apply} or through the {@link TileEngine} as ANDIE itself does.
+ * The copy is made before the timer starts, so it is not counted.
+ * Results are in calls per second, and the {@link Pixels} counter gives the same rate in megapixels
+ * per second, which can be compared across image sizes.
+ * The allocation rate comes from the GC profiler that {@link BenchmarkMain} turns on.
+ * </p>
+ *
+ * <p>
+ * The full matrix is large, especially at 50 megapixels, so pick what is wanted with
+ * <code>-p</code>, for example <code>-p op=MedianFilter:2 -p megapixels=12</code>.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g", "-Djava.awt.headless=true" })
+public class OperationBenchmark {
+
+    /**
+     * The operation and its setting, as <code>Name:setting</code>.
+     * For filters with a radius the setting is the radius.
+     */
+    @Param({ "MeanFilter:1", "MeanFilter:5", "MeanFilter:15", "MedianFilter:1", "MedianFilter:3",
+            "GaussianBlurFilter:2", "GaussianBlurFilter:10", "GaussianBlurFilter:30", "SharpenFilter",
+            "SobelFilter:1", "EmbossFilter:1", "DitherFilter", "HueFilter", "Brightness:25", "RotateImage:right",
+            "RotateImage:180", "FlipImage:horizontal", "FlipImage:vertical", "ResizeImage:50", "ResizeImage:150" })
+    public String op;
+
+    /** The size of the image, in millions of pixels. */
+    @Param({ "1", "12", "50" })
+    public int megapixels;
+
+    /** The type of the image, as a <code>BufferedImage.TYPE_*</code> name. */
+    @Param({ "INT_RGB", "3BYTE_BGR", "BYTE_GRAY" })
+    public String type;
+
+    /**
+     * How the operation is called: <code>apply</code> calls it directly, and <code>tiled</code>
+     * goes through the {@link TileEngine}, which splits tileable operations over the processors.
+     */
+    @Param({ "apply", "tiled" })
+    public String path;
+
+    /** The operation being measured. */
+    private ImageOperation operation;
+    /** The noisy image the operation is applied to. */
+    private BufferedImage source;
+    /** A fresh copy of the source for each call. */
+    private BufferedImage input;
+
+    /**
+     * Counts the pixels processed, which JMH reports per second as <code>:megapixels</code>.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Pixels {
+        /** The number of millions of pixels processed. */
+        public double megapixels;
+    }
+
+    /**
+     * Make the image and the operation.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        operation = create(op);
+        source = BenchImages.noise(megapixels, type);
+    }
+
+    /**
+     * Copy the image before each call, outside of the timing.
+     */
+    @Setup(Level.Invocation)
+    public void copyInput() {
+        input = BenchImages.copy(source, input);
+    }
+
+    /**
+     * Apply the operation once.
+     *
+     * @param pixels The pixel counter.
+     * @return The result, so it is not optimised away.
+     */
+    @Benchmark
+    public BufferedImage apply(Pixels pixels) {
+        BufferedImage result = path.equals("tiled") ? TileEngine.apply(operation, input) : operation.apply(input);
+        pixels.megapixels += input.getWidth() * (double) input.getHeight() / 1e6;
+        return result;
+    }
+
+    /**
+     * Make an operation from its name and setting.
+     *
+     * @param spec The operation, as <code>Name:setting</code>.
+     * @return The operation.
+     * @throws IllegalArgumentException If the operation is not known.
+     */
+    static ImageOperation create(String spec) {
+        String[] parts = spec.split(":", 2);
+        String setting = parts.length > 1 ? parts[1] : "";
+        switch (parts[0]) {
+            case "MeanFilter":
+                return new MeanFilter(Integer.parseInt(setting));
+            case "MedianFilter":
+                return new MedianFilter(Integer.parseInt(setting));
+            case "GaussianBlurFilter":
+                return new GaussianBlurFilter(Integer.parseInt(setting));
+            case "SharpenFilter":
+                return new SharpenFilter();
+            case "SobelFilter":
+                return new SobelFilter(Integer.parseInt(setting));
+            case "EmbossFilter":
+                return new EmbossFilter(Integer.parseInt(setting));
+            case "DitherFilter":
+                return new DitherFilter();
+            case "HueFilter":
+                return new HueFilter(new Color(40, 120, 200));
+            case "Brightness":
+                return new Brightness(Double.parseDouble(setting), Double.parseDouble(setting));
+            case "RotateImage":
+                return new RotateImage(setting.equals("right"), setting.equals("180"));
+            case "FlipImage":
+                return new FlipImage(setting.equals("horizontal"));
+            case "ResizeImage":
+                return new ResizeImage(Integer.parseInt(setting));
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + spec);
+        }
+    }
+}
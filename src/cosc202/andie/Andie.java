@@ -109,6 +109,8 @@ public class Andie {
         // The main content area is an ImagePanel
         imagePanel = new ImagePanel();
         ImageAction.setTarget(imagePanel);
+        EngineStats.register(imagePanel);
+        EdtWatchdog.install();
 
         imagePanel.setBackground(backgroundColor);
 
@@ -437,13 +439,19 @@ public class Andie {
      * <p>
      * Creates and launches the main GUI in a separate thread.
      * As a result, this is essentially a wrapper around {@code createAndShowGUI()}.
+     * Started with <code>--batch</code>, it applies a macro to a directory of images with a
+     * {@link BatchRunner} instead, without showing anything.
      * </p>
      * 
-     * @param args Command line arguments, not currently used
+     * @param args Command line arguments, only used for <code>--batch</code>
      * @throws Exception If something goes awry
      * @see #createAndShowGUI()
      */
     public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            BatchRunner.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         javax.swing.SwingUtilities.invokeLater(new Runnable() {
             public void run() {
                 try {
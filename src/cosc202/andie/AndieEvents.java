@@ -0,0 +1,230 @@
+package cosc202.andie;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.StringJoiner;
+import jdk.jfr.*;
+
+/**
+ * <p>
+ * Java Flight Recorder events for the work ANDIE does.
+ * </p>
+ *
+ * <p>
+ * When ANDIE is run with a flight recording, for example with
+ * <code>java -XX:StartFlightRecording=filename=andie.jfr ...</code>, these events are recorded
+ * next to the JVM's own garbage collection, CPU and lock events, so a pause can be put down to the
+ * operation, replay, repaint or file that caused it.
+ * They are all in the ANDIE category in JDK Mission Control, and cost next to nothing when no
+ * recording is running.
+ * </p>
+ *
+ * <ul>
+ * <li>{@link OperationEvent}: an {@link ImageOperation} being applied, replayed or previewed.</li>
+ * <li>{@link ReplayEvent}: the history of an {@link EditableImage} being replayed to rebuild it.</li>
+ * <li>{@link PaintEvent}: the {@link ImagePanel} painting the image.</li>
+ * <li>{@link FileEvent}: an image being opened, saved or exported.</li>
+ * </ul>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class AndieEvents {
+
+    /**
+     * AndieEvents only holds the event types, so should not be constructed.
+     */
+    private AndieEvents() {
+    }
+
+    /**
+     * An {@link ImageOperation} being applied to an image.
+     */
+    @Name("cosc202.andie.Operation")
+    @Label("Image Operation")
+    @Description("An image operation applied, replayed or previewed")
+    @Category({ "ANDIE", "Operations" })
+    public static final class OperationEvent extends Event {
+        /** The simple name of the operation's class. */
+        @Label("Operation")
+        public String operation;
+
+        /** The settings of the operation, as <code>name=value</code> pairs. */
+        @Label("Parameters")
+        public String parameters;
+
+        /** What the operation was applied for, from {@link OperationMetrics.Trigger}. */
+        @Label("Trigger")
+        public String trigger;
+
+        /** The width of the input, in pixels. */
+        @Label("Width")
+        public int width;
+
+        /** The height of the input, in pixels. */
+        @Label("Height")
+        public int height;
+
+        /**
+         * The bytes allocated for the operation by the thread that ran it and by the tiles it
+         * processed on the {@link TileEngine}'s pool, as counted by {@link OperationMetrics}.
+         */
+        @Label("Allocated")
+        @Description("Bytes allocated by the calling thread and by this operation's tiles on the tile pool")
+        @DataAmount(DataAmount.BYTES)
+        public long allocated;
+    }
+
+    /**
+     * The operations of an {@link EditableImage} being replayed to rebuild the image.
+     */
+    @Name("cosc202.andie.Replay")
+    @Label("History Replay")
+    @Description("Operations replayed to rebuild an image, after undo, redo, opening or in lazy mode")
+    @Category({ "ANDIE", "History" })
+    public static final class ReplayEvent extends Event {
+        /** The number of operations already applied to the image the replay started from. */
+        @Label("From Depth")
+        public int fromDepth;
+
+        /** The number of operations applied once the replay is done. */
+        @Label("To Depth")
+        public int toDepth;
+
+        /** The number of operations replayed. */
+        @Label("Operations")
+        public int operations;
+
+        /** The number of passes over the image, which is less when per-pixel operations are fused. */
+        @Label("Passes")
+        public int passes;
+
+        /** The width of the image, in pixels, before the replay. */
+        @Label("Width")
+        public int width;
+
+        /** The height of the image, in pixels, before the replay. */
+        @Label("Height")
+        public int height;
+
+        /** Whether the replay ran in the background, as when restoring saved operations. */
+        @Label("Background")
+        public boolean background;
+    }
+
+    /**
+     * The {@link ImagePanel} painting the image.
+     */
+    @Name("cosc202.andie.Paint")
+    @Label("Image Paint")
+    @Description("The image panel painting the image")
+    @Category({ "ANDIE", "Display" })
+    public static final class PaintEvent extends Event {
+        /** The scale the image was drawn at, where 1 is actual size. */
+        @Label("Scale")
+        public double scale;
+
+        /** The width of the image, in pixels, or 0 if there is none. */
+        @Label("Image Width")
+        public int imageWidth;
+
+        /** The height of the image, in pixels, or 0 if there is none. */
+        @Label("Image Height")
+        public int imageHeight;
+
+        /**
+         * What was drawn: <code>current</code>, <code>pending</code> tiles in lazy mode,
+         * <code>restoring</code> while saved operations are replayed, or <code>none</code>.
+         */
+        @Label("Source")
+        public String source;
+
+        /** Whether a preview was drawn over the image. */
+        @Label("Preview")
+        public boolean preview;
+    }
+
+    /**
+     * An image being read from or written to a file.
+     */
+    @Name("cosc202.andie.File")
+    @Label("Image File")
+    @Description("An image opened, saved or exported")
+    @Category({ "ANDIE", "Files" })
+    public static final class FileEvent extends Event {
+        /** What was done: <code>open</code>, <code>save</code> or <code>export</code>. */
+        @Label("Action")
+        public String action;
+
+        /** The path of the image file. */
+        @Label("Path")
+        public String path;
+
+        /** The image format, from the file extension. */
+        @Label("Format")
+        public String format;
+
+        /** The size of the image file and its operations file, if there is one. */
+        @Label("Bytes")
+        @DataAmount(DataAmount.BYTES)
+        public long bytes;
+
+        /** The width of the image, in pixels. */
+        @Label("Width")
+        public int width;
+
+        /** The height of the image, in pixels. */
+        @Label("Height")
+        public int height;
+    }
+
+    /**
+     * <p>
+     * Describe the settings of an operation for an event.
+     * </p>
+     *
+     * <p>
+     * The settings are the operation's own fields that hold numbers, text, colours or rectangles.
+     * Fused operations list the operations they are made of instead.
+     * This uses reflection, so it should only be called for events that will be committed.
+     * </p>
+     *
+     * @param op The operation.
+     * @return The settings as comma-separated <code>name=value</code> pairs.
+     */
+    public static String describe(ImageOperation op) {
+        StringJoiner settings = new StringJoiner(", ");
+        for (Field field : op.getClass().getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers) || field.isSynthetic()) {
+                continue;
+            }
+            try {
+                field.setAccessible(true);
+                Object value = field.get(op);
+                if (value instanceof ImageOperation[]) {
+                    StringJoiner names = new StringJoiner(" + ");
+                    for (ImageOperation part : (ImageOperation[]) value) {
+                        names.add(part.getClass().getSimpleName());
+                    }
+                    settings.add(field.getName() + "=" + names);
+                } else if (value instanceof Color) {
+                    settings.add(field.getName() + "=#" + Integer.toHexString(((Color) value).getRGB()));
+                } else if (value instanceof Rectangle) {
+                    Rectangle r = (Rectangle) value;
+                    settings.add(field.getName() + "=" + r.x + "," + r.y + " " + r.width + "x" + r.height);
+                } else if (field.getType().isPrimitive() || value instanceof String || value instanceof Enum) {
+                    settings.add(field.getName() + "=" + value);
+                }
+            } catch (RuntimeException | IllegalAccessException e) {
+                // leave out anything that cannot be read
+            }
+        }
+        return settings.toString();
+    }
+}
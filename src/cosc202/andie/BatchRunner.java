@@ -0,0 +1,729 @@
+package cosc202.andie;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.imageio.*;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * <p>
+ * Applies a macro to a whole directory of images without opening the user interface.
+ * </p>
+ *
+ * <p>
+ * A macro saved from the Macro menu can otherwise only be applied to one open image at a time.
+ * The batch runner reads the macro's <code>.ops</code> file and applies it to every image in a
+ * directory, or every image matching a glob such as <code>shots/*.png</code>, writing each
+ * result to an output directory under the same name and in the same format, dropping any
+ * transparency the format cannot store.
+ * It is started with
+ * </p>
+ *
+ * <pre>
+ * java cosc202.andie.Andie --batch [--threads N] [--readers N] [--writers N] [--queue N] [--memory MB]
+ *     macro.ops input output
+ * </pre>
+ *
+ * <p>
+ * Decoding and encoding an image can take as long as filtering it, so each image goes through
+ * three stages, each with its own pool of threads: the readers decode images with
+ * {@link ImageIO#read}, the processors apply the macro, one per processor by default, and the
+ * writers encode the results with {@link ImageIO#write}.
+ * The stages are joined by bounded queues, so while one image is being filtered the next is
+ * already being read and the last is being written, and a stage that gets ahead waits for the one
+ * after it rather than piling up decoded images.
+ * Runs of per-pixel operations in the macro are {@link FusedPixelOperation fused}, as they are
+ * when a macro is applied to an open image.
+ * </p>
+ *
+ * <p>
+ * Before an image is decoded its size is read from its header, and the reader waits until the
+ * image and its results fit in the memory budget alongside the images already in the pipeline,
+ * which they hold until they are written, so a directory of very large images does not run out
+ * of heap.
+ * </p>
+ *
+ * <p>
+ * An image that cannot be read, processed or written is reported and skipped, and the rest carry
+ * on.
+ * When the run finishes, a {@link Report} of how many images were done and how fast is printed.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public class BatchRunner {
+
+    /** How to start a batch, shown when the arguments are wrong. */
+    public static final String USAGE = "Usage: java cosc202.andie.Andie --batch [--threads N] [--readers N] "
+            + "[--writers N] [--queue N] [--memory MB] macro.ops <input directory or glob> <output directory>";
+
+    /**
+     * How many copies of an image are assumed to be held while it is processed: the decoded image,
+     * the result of the operation being applied, and the input of that operation.
+     */
+    private static final int COPIES_PER_IMAGE = 3;
+
+    /** The pipelines of the batches that are running, so {@link EngineStats} can see their queues. */
+    private static final Set<Pipeline> RUNNING = ConcurrentHashMap.newKeySet();
+
+    /** The operations to apply to each image, with runs of per-pixel operations fused. */
+    private final List<ImageOperation> ops;
+    /** The number of images decoded at once. */
+    private final int readers;
+    /** The number of images processed at once. */
+    private final int threads;
+    /** The number of images encoded at once. */
+    private final int writers;
+    /** The number of images each queue between the stages may hold. */
+    private final int queueSize;
+    /** The number of bytes the images in the pipeline may take between them. */
+    private final long memoryBudget;
+
+    /**
+     * <p>
+     * Create a runner for a macro, with a reader and a writer for every two processing threads,
+     * and queues that hold as many images as there are processing threads.
+     * </p>
+     *
+     * @param ops          The operations to apply to each image, in order.
+     * @param threads      The number of images to process at once.
+     * @param memoryBudget The number of bytes the images in the pipeline may take between them.
+     * @throws IllegalArgumentException If there are no threads or no memory.
+     */
+    public BatchRunner(List<? extends ImageOperation> ops, int threads, long memoryBudget) {
+        this(ops, Math.max(1, threads / 2), threads, Math.max(1, threads / 2), Math.max(1, threads), memoryBudget);
+    }
+
+    /**
+     * <p>
+     * Create a runner for a macro.
+     * </p>
+     *
+     * @param ops          The operations to apply to each image, in order.
+     * @param readers      The number of images to decode at once.
+     * @param threads      The number of images to process at once.
+     * @param writers      The number of images to encode at once.
+     * @param queueSize    The number of images each queue between the stages may hold.
+     * @param memoryBudget The number of bytes the images in the pipeline may take between them.
+     * @throws IllegalArgumentException If any stage has no threads, the queues have no room, or
+     *                                  there is no memory.
+     */
+    public BatchRunner(List<? extends ImageOperation> ops, int readers, int threads, int writers, int queueSize,
+            long memoryBudget) {
+        if (readers <= 0 || threads <= 0 || writers <= 0) {
+            throw new IllegalArgumentException(
+                    "Thread counts must be positive: " + readers + ", " + threads + ", " + writers);
+        }
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("Queue size must be positive: " + queueSize);
+        }
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive: " + memoryBudget);
+        }
+        this.ops = FusedPixelOperation.fuse(ops);
+        this.readers = readers;
+        this.threads = threads;
+        this.writers = writers;
+        this.queueSize = queueSize;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * <p>
+     * Apply the macro to each image, writing the results to a directory.
+     * </p>
+     *
+     * @param inputs    The images to process.
+     * @param outputDir The directory to write the results to, which is made if needed.
+     * @return How many images were done, and how long it took.
+     * @throws IOException          If the output directory cannot be made.
+     * @throws InterruptedException If the thread is interrupted while waiting for the images, in
+     *                              which case the batch is stopped.
+     */
+    public Report run(List<File> inputs, File outputDir) throws IOException, InterruptedException {
+        Files.createDirectories(outputDir.toPath());
+        Pipeline pipeline = new Pipeline(inputs, outputDir);
+        RUNNING.add(pipeline);
+        long start = System.nanoTime();
+        ExecutorService readPool = Executors.newFixedThreadPool(readers);
+        ExecutorService processPool = Executors.newFixedThreadPool(threads);
+        ExecutorService writePool = Executors.newFixedThreadPool(writers);
+        try {
+            List<Future<?>> stages = new ArrayList<Future<?>>();
+            for (int i = 0; i < readers; i++) {
+                stages.add(readPool.submit(pipeline::read));
+            }
+            for (int i = 0; i < threads; i++) {
+                stages.add(processPool.submit(pipeline::process));
+            }
+            for (int i = 0; i < writers; i++) {
+                stages.add(writePool.submit(pipeline::write));
+            }
+            for (Future<?> stage : stages) {
+                try {
+                    stage.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Batch stage failed", e.getCause());
+                }
+            }
+        } finally {
+            // stops the other stages if this thread was interrupted or one of them failed
+            readPool.shutdownNow();
+            processPool.shutdownNow();
+            writePool.shutdownNow();
+            RUNNING.remove(pipeline);
+        }
+        return new Report(inputs.size() - pipeline.failures.size(), pipeline.failures, pipeline.pixels.get(),
+                System.nanoTime() - start, new long[] { pipeline.busy[0].get(), pipeline.busy[1].get(),
+                        pipeline.busy[2].get() });
+    }
+
+    /**
+     * <p>
+     * One image on its way through the pipeline.
+     * </p>
+     */
+    private static class Job {
+        /** Put on a queue to tell the next stage there are no more images. */
+        static final Job END = new Job(null, 0);
+
+        /** The image file. */
+        final File input;
+        /** The memory reserved for the image, in kilobytes, given back once it is written or fails. */
+        final int kb;
+        /** The image, decoded and then processed. */
+        BufferedImage image;
+
+        /**
+         * Create a job for an image file.
+         *
+         * @param input The image file.
+         * @param kb    The memory reserved for it, in kilobytes.
+         */
+        Job(File input, int kb) {
+            this.input = input;
+            this.kb = kb;
+        }
+    }
+
+    /**
+     * <p>
+     * The queues and counters shared by the stages of one batch.
+     * </p>
+     *
+     * <p>
+     * Each stage takes jobs from the queue before it until it finds {@link Job#END}.
+     * The last thread to finish a stage puts one END on the next queue for each thread of the next
+     * stage, so every thread stops once the images before it are done.
+     * </p>
+     */
+    private class Pipeline {
+        /** The files still to be read. */
+        final Queue<File> pending;
+        /** The directory the results are written to. */
+        final File outputDir;
+        /** The memory budget in kilobytes, so that a semaphore can count it. */
+        final int budgetKb = (int) Math.min(Integer.MAX_VALUE, Math.max(1, memoryBudget / 1024));
+        /** The memory left for images to be read into. */
+        final Semaphore memory = new Semaphore(budgetKb);
+        /** The images read but not yet processed. */
+        final BlockingQueue<Job> decoded = new ArrayBlockingQueue<Job>(queueSize);
+        /** The images processed but not yet written. */
+        final BlockingQueue<Job> processed = new ArrayBlockingQueue<Job>(queueSize);
+        /** The number of readers still running. */
+        final AtomicInteger readersLeft = new AtomicInteger(readers);
+        /** The number of processors still running. */
+        final AtomicInteger processorsLeft = new AtomicInteger(threads);
+        /** The time spent working in each stage, in nanoseconds, added up over its threads. */
+        final AtomicLong[] busy = { new AtomicLong(), new AtomicLong(), new AtomicLong() };
+        /** The number of pixels in the images written. */
+        final AtomicLong pixels = new AtomicLong();
+        /** The images that failed, with the reason. */
+        final Map<File, String> failures = new ConcurrentSkipListMap<File, String>();
+
+        /**
+         * Create the pipeline for a batch.
+         *
+         * @param inputs    The images to process.
+         * @param outputDir The directory to write the results to.
+         */
+        Pipeline(List<File> inputs, File outputDir) {
+            this.pending = new ConcurrentLinkedQueue<File>(inputs);
+            this.outputDir = outputDir;
+        }
+
+        /**
+         * Read images until there are none left, or the batch is stopped.
+         */
+        void read() {
+            try {
+                File input;
+                while ((input = pending.poll()) != null) {
+                    int kb;
+                    try {
+                        kb = (int) Math.min(budgetKb, COPIES_PER_IMAGE * estimateBytes(input) / 1024 + 1);
+                    } catch (IOException e) {
+                        fail(new Job(input, 0), e);
+                        continue;
+                    }
+                    memory.acquire(kb);
+                    Job job = new Job(input, kb);
+                    long start = System.nanoTime();
+                    try {
+                        job.image = ImageIO.read(input);
+                        if (job.image == null) {
+                            throw new IOException("Not an image that can be read");
+                        }
+                    } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                        fail(job, e);
+                        continue;
+                    } finally {
+                        busy[0].addAndGet(System.nanoTime() - start);
+                    }
+                    decoded.put(job);
+                }
+                if (readersLeft.decrementAndGet() == 0) {
+                    end(decoded, threads);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Apply the macro to images until the readers are done, or the batch is stopped.
+         */
+        void process() {
+            try {
+                for (Job job = decoded.take(); job != Job.END; job = decoded.take()) {
+                    long start = System.nanoTime();
+                    try {
+                        job.image = BatchRunner.this.process(job.image);
+                    } catch (RuntimeException | OutOfMemoryError e) {
+                        fail(job, e);
+                        continue;
+                    } finally {
+                        busy[1].addAndGet(System.nanoTime() - start);
+                    }
+                    processed.put(job);
+                }
+                if (processorsLeft.decrementAndGet() == 0) {
+                    end(processed, writers);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Write images until the processors are done, or the batch is stopped.
+         */
+        void write() {
+            try {
+                for (Job job = processed.take(); job != Job.END; job = processed.take()) {
+                    writeOne(job);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Write one processed image.
+         *
+         * @param job The image.
+         */
+        void writeOne(Job job) {
+            long start = System.nanoTime();
+            try {
+                File output = new File(outputDir, job.input.getName());
+                String format = extensionOf(output);
+                if (!ImageIO.write(writableAs(job.image, format), format, output)) {
+                    throw new IOException("No writer for this format and type of image");
+                }
+                pixels.addAndGet((long) job.image.getWidth() * job.image.getHeight());
+                memory.release(job.kb);
+            } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                fail(job, e);
+            } finally {
+                busy[2].addAndGet(System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * Record that an image failed, and give back its memory.
+         *
+         * @param job   The image.
+         * @param cause Why it failed.
+         */
+        void fail(Job job, Throwable cause) {
+            failures.put(job.input, String.valueOf(cause.getMessage()));
+            memory.release(job.kb);
+        }
+
+        /**
+         * Tell the threads of the next stage that there are no more images.
+         *
+         * @param queue   The queue the next stage takes images from.
+         * @param threads The number of threads in the next stage.
+         * @throws InterruptedException If the batch is stopped.
+         */
+        void end(BlockingQueue<Job> queue, int threads) throws InterruptedException {
+            for (int i = 0; i < threads; i++) {
+                queue.put(Job.END);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Apply the macro to one image.
+     * </p>
+     *
+     * @param image The image, which may be changed.
+     * @return The image with every operation applied.
+     */
+    public BufferedImage process(BufferedImage image) {
+        for (ImageOperation op : ops) {
+            image = OperationMetrics.apply(op, image, OperationMetrics.Trigger.BATCH);
+        }
+        return image;
+    }
+
+    /**
+     * <p>
+     * Get the number of images waiting between the stages of the batches that are running.
+     * </p>
+     *
+     * @return The number of images decoded but not yet processed, plus those processed but not
+     *         yet written.
+     */
+    public static int getQueuedImages() {
+        int queued = 0;
+        for (Pipeline pipeline : RUNNING) {
+            queued += pipeline.decoded.size() + pipeline.processed.size();
+        }
+        return queued;
+    }
+
+    /**
+     * <p>
+     * Get the number of images the batches that are running have not started reading yet.
+     * </p>
+     *
+     * @return The number of images still to be read.
+     */
+    public static int getPendingImages() {
+        int pending = 0;
+        for (Pipeline pipeline : RUNNING) {
+            pending += pipeline.pending.size();
+        }
+        return pending;
+    }
+
+    /**
+     * Work out how many bytes an image will take once it is decoded, from its header.
+     *
+     * @param file The image file.
+     * @return The size of the decoded image, at four bytes a pixel, or 0 if it cannot be told.
+     * @throws IOException If the file cannot be read.
+     */
+    private static long estimateBytes(File file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            if (in == null) {
+                return 0;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return 0;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return 4L * reader.getWidth(0) * reader.getHeight(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Get the extension of a file name, which gives the image format.
+     *
+     * @param file The file.
+     * @return The text after the last dot, in lower case, or an empty string if there is none.
+     */
+    private static String extensionOf(File file) {
+        String name = file.getName();
+        return name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+    }
+
+    /**
+     * <p>
+     * Make an image that can be written in a format.
+     * </p>
+     *
+     * <p>
+     * Operations such as {@link ResizeImage} and {@link CropImage} give images with an alpha
+     * channel, which formats like JPEG cannot store, so ImageIO has no writer for them.
+     * Such an image is copied without its alpha channel.
+     * </p>
+     *
+     * @param image  The image to write.
+     * @param format The name of the format, such as <code>jpg</code>.
+     * @return The image, or a copy of it without alpha if there is no writer for it as it is.
+     */
+    private static BufferedImage writableAs(BufferedImage image, String format) {
+        if (!image.getColorModel().hasAlpha()
+                || ImageIO.getImageWriters(ImageTypeSpecifier.createFromRenderedImage(image), format).hasNext()) {
+            return image;
+        }
+        BufferedImage opaque = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = opaque.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return opaque;
+    }
+
+    /**
+     * <p>
+     * Find the images to process.
+     * </p>
+     *
+     * <p>
+     * The input is either a directory, in which case every file in it with an extension ImageIO
+     * can read is used, or a path whose last part is a glob, such as <code>shots/*.jpg</code>.
+     * </p>
+     *
+     * @param spec The directory or glob.
+     * @return The matching files, sorted by name.
+     * @throws IOException If the directory cannot be listed.
+     */
+    public static List<File> findInputs(String spec) throws IOException {
+        Path path = Paths.get(spec);
+        Path dir;
+        PathMatcher matcher;
+        if (Files.isDirectory(path)) {
+            dir = path;
+            Set<String> suffixes = new HashSet<String>();
+            for (String suffix : ImageIO.getReaderFileSuffixes()) {
+                suffixes.add(suffix.toLowerCase());
+            }
+            matcher = file -> suffixes.contains(extensionOf(file.toFile()));
+        } else {
+            dir = path.getParent() == null ? Paths.get(".") : path.getParent();
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + path.getFileName());
+        }
+        List<File> inputs = new ArrayList<File>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file) && matcher.matches(file.getFileName())) {
+                    inputs.add(file.toFile());
+                }
+            }
+        }
+        Collections.sort(inputs);
+        return inputs;
+    }
+
+    /**
+     * <p>
+     * Run a batch from the command line.
+     * </p>
+     *
+     * <p>
+     * The exit status is 0 if every image was done, 1 if some failed, and 2 if the batch could not
+     * be started.
+     * </p>
+     *
+     * @param args The options, the macro file, the input directory or glob, and the output
+     *             directory, as in {@link #USAGE}.
+     */
+    public static void main(String[] args) {
+        EngineStats.register(null);
+        System.exit(runFromCommandLine(args, System.out, System.err));
+    }
+
+    /**
+     * Run a batch from command line arguments.
+     *
+     * @param args The arguments, as in {@link #USAGE}.
+     * @param out  Where to print the report.
+     * @param err  Where to print errors.
+     * @return The exit status.
+     */
+    public static int runFromCommandLine(String[] args, PrintStream out, PrintStream err) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int readers = 0;
+        int writers = 0;
+        int queue = 0;
+        long memory = Runtime.getRuntime().maxMemory() / 2;
+        List<String> files = new ArrayList<String>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--readers")) {
+                    readers = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--writers")) {
+                    writers = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--queue")) {
+                    queue = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--memory")) {
+                    memory = Long.parseLong(args[++i]) * 1024 * 1024;
+                } else {
+                    files.add(args[i]);
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            err.println(USAGE);
+            return 2;
+        }
+        if (files.size() != 3) {
+            err.println(USAGE);
+            return 2;
+        }
+        try {
+            List<ImageOperation> macro = OpsFile.read(new File(files.get(0)));
+            List<File> inputs = findInputs(files.get(1));
+            // stages that are not given a size get the defaults for the number of processors
+            int half = Math.max(1, threads / 2);
+            BatchRunner runner = new BatchRunner(macro, readers > 0 ? readers : half, threads,
+                    writers > 0 ? writers : half, queue > 0 ? queue : Math.max(1, threads), memory);
+            Report report = runner.run(inputs, new File(files.get(2)));
+            for (Map.Entry<File, String> failure : report.getFailures().entrySet()) {
+                err.println(failure.getKey() + ": " + failure.getValue());
+            }
+            out.println(report);
+            return report.getFailures().isEmpty() ? 0 : 1;
+        } catch (IOException | IllegalArgumentException e) {
+            err.println(e.getMessage());
+            return 2;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 2;
+        }
+    }
+
+    /**
+     * <p>
+     * The outcome of a batch: how many images were done, which failed, and how fast it went.
+     * </p>
+     */
+    public static class Report {
+
+        /** The number of images processed successfully. */
+        private final int images;
+        /** The images that failed, with the reason. */
+        private final Map<File, String> failures;
+        /** The number of pixels in the images processed successfully. */
+        private final long pixels;
+        /** How long the batch took, in nanoseconds. */
+        private final long nanos;
+        /** The time the threads of each stage spent working, in nanoseconds. */
+        private final long[] busy;
+
+        /**
+         * Create a report.
+         *
+         * @param images   The number of images processed successfully.
+         * @param failures The images that failed, with the reason.
+         * @param pixels   The number of pixels in the images processed successfully.
+         * @param nanos    How long the batch took, in nanoseconds.
+         * @param busy     The time the threads of the read, process and write stages spent working,
+         *                 in nanoseconds.
+         */
+        Report(int images, Map<File, String> failures, long pixels, long nanos, long[] busy) {
+            this.images = images;
+            this.failures = Collections.unmodifiableMap(failures);
+            this.pixels = pixels;
+            this.nanos = nanos;
+            this.busy = busy.clone();
+        }
+
+        /**
+         * Get the number of images processed successfully.
+         *
+         * @return The number of images written.
+         */
+        public int getImages() {
+            return images;
+        }
+
+        /**
+         * Get the images that could not be processed.
+         *
+         * @return The failed images, with the reason each one failed.
+         */
+        public Map<File, String> getFailures() {
+            return failures;
+        }
+
+        /**
+         * Get the number of pixels processed.
+         *
+         * @return The number of pixels in the images written.
+         */
+        public long getPixels() {
+            return pixels;
+        }
+
+        /**
+         * Get how long the batch took.
+         *
+         * @return The time from starting the first image to finishing the last, in seconds.
+         */
+        public double getSeconds() {
+            return nanos / 1e9;
+        }
+
+        /**
+         * Get how long a stage of the pipeline spent working.
+         *
+         * If the stages overlap, these add up to more than {@link #getSeconds}.
+         *
+         * @param stage 0 for reading, 1 for processing and 2 for writing.
+         * @return The time the threads of the stage spent working, added up, in seconds.
+         */
+        public double getStageSeconds(int stage) {
+            return busy[stage] / 1e9;
+        }
+
+        /**
+         * Get the throughput in images.
+         *
+         * @return The number of images written per second.
+         */
+        public double getImagesPerSecond() {
+            return images / Math.max(getSeconds(), 1e-9);
+        }
+
+        /**
+         * Get the throughput in pixels.
+         *
+         * @return The number of millions of pixels processed per second.
+         */
+        public double getMegapixelsPerSecond() {
+            return pixels / 1e6 / Math.max(getSeconds(), 1e-9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d images (%d failed) in %.2f s: %.2f images/s, %.2f MPix/s "
+                    + "(read %.2f s, process %.2f s, write %.2f s)", images, failures.size(), getSeconds(),
+                    getImagesPerSecond(), getMegapixelsPerSecond(), getStageSeconds(0), getStageSeconds(1),
+                    getStageSeconds(2));
+        }
+    }
+}
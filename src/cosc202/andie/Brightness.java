@@ -1,13 +1,23 @@
 package cosc202.andie;
 
 import java.awt.image.BufferedImage;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * Class to change the brightness and contrast of an image using an imageOperation
+ *
+ * The change to each channel only depends on its own value, so it is worked out once for each of
+ * the 256 values and stored in a {@link LookupTable}.
  */
-public class Brightness implements ImageOperation, java.io.Serializable {
+public class Brightness implements LookupOperation, EncodableOperation, java.io.Serializable {
+
+    private static final long serialVersionUID = -2928176424928968718L;
     double b;
     double c;
+    // the adjustment of every channel value, made the first time it is needed
+    private transient LookupTable table;
     
 
     /**
@@ -37,6 +47,17 @@ public class Brightness implements ImageOperation, java.io.Serializable {
         return this.c;
     }
 
+    /**
+     * Get the footprint of this operation.
+     * 
+     * Brightness and contrast change each pixel independently of its neighbours.
+     * 
+     * @return The footprint of the operation.
+     */
+    public Footprint getFootprint() {
+        return Footprint.perPixel();
+    }
+
     /**
      * class to apply the brightness and contrast changes to an image
      * @param input the input image we wish to change
@@ -44,42 +65,10 @@ public class Brightness implements ImageOperation, java.io.Serializable {
      */
     public BufferedImage apply(BufferedImage input){
         try{
-            BufferedImage workingImage = new BufferedImage(input.getColorModel(), input.copyData(null), input.isAlphaPremultiplied(), null);
-            for(int y = 0; y < workingImage.getHeight(); y++){
-                for(int x = 0; x < workingImage.getWidth(); x++){
-                    int argb = input.getRGB(x, y);
-                    int A = argb >> 24 & 0xff;
-                    int R = argb >> 16 & 0xff;
-                    int G = argb >> 8 & 0xff;
-                    int B = argb & 0xff;
-                    A = (int)((1 + c/100.0)*(A - 127.5) + 127.5*(1 + b/100.0));
-                    if(A > 255){
-                        A = 255;
-                    }else if(A < 0){
-                        A = 0;
-                    }
-                    R = (int)((1 + c/100.0)*(R - 127.5) + 127.5*(1 + b/100.0));
-                    if(R > 255){
-                        R = 255;
-                    }else if(R < 0){
-                        R = 0;
-                    }
-                    G = (int)((1 + c/100.0)*(G - 127.5) + 127.5*(1 + b/100.0));
-                    if(G > 255){
-                        G = 255;
-                    }else if(G < 0){
-                        G = 0;
-                    }
-                    B = (int)((1 + c/100.0)*(B - 127.5) + 127.5*(1 + b/100.0));
-                    if(B > 255){
-                        B = 255;
-                    }else if(B < 0){
-                        B = 0;
-                    }
-                    int newARGB = (A << 24) | (R << 16) | (G << 8) | B;
-                    workingImage.setRGB(x, y, newARGB);
-                }
-            }
+            int[] result = ImagePixels.copy(input);
+            filter(result, 0, result.length);
+            BufferedImage workingImage = new BufferedImage(input.getColorModel(), input.getRaster().createCompatibleWritableRaster(), input.isAlphaPremultiplied(), null);
+            ImagePixels.write(workingImage, result);
             return workingImage;
         }catch(NullPointerException e){
             //catches the case wheere the input image is null
@@ -91,4 +80,55 @@ public class Brightness implements ImageOperation, java.io.Serializable {
         }
     }
     
+    /**
+     * method to return the table of the brightness and contrast change, which applies the same
+     * adjustment to every channel, alpha included
+     * @return the lookup table
+     */
+    public LookupTable getLookupTable(){
+        if(table == null){
+            table = LookupTable.of(this::adjust, this::adjust);
+        }
+        return table;
+    }
+
+    /**
+     * apply the brightness and contrast change to one channel of a pixel
+     * @param value the channel value between 0 and 255
+     * @return the changed value, clamped between 0 and 255
+     */
+    private int adjust(int value){
+        value = (int)((1 + c/100.0)*(value - 127.5) + 127.5*(1 + b/100.0));
+        if(value > 255){
+            return 255;
+        }else if(value < 0){
+            return 0;
+        }
+        return value;
+    }
+
+    /**
+     * Write the settings of this operation to an <code>.ops</code> file.
+     *
+     * Writes the brightness and contrast changes.
+     *
+     * @param out Where to write the settings.
+     * @throws IOException If the settings cannot be written.
+     */
+    public void encode(DataOutput out) throws IOException {
+        out.writeDouble(b);
+        out.writeDouble(c);
+    }
+
+    /**
+     * Rebuild an operation from the settings written by {@link #encode}.
+     *
+     * @param in      The settings.
+     * @param version The version of the <code>.ops</code> file.
+     * @return The operation.
+     * @throws IOException If the settings cannot be read.
+     */
+    static Brightness decode(DataInput in, int version) throws IOException {
+        return new Brightness(in.readDouble(), in.readDouble());
+    }
 }
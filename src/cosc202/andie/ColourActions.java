@@ -269,7 +269,6 @@ public class ColourActions {
             int min = minPercentage;
             int max = maxPercentage;
             String title = titleSlider;
-            EditableImage realImage = target.getImage();
 
             // Show J Slider
             JSlider slider = new JSlider();
@@ -286,30 +285,18 @@ public class ColourActions {
             Dimension d = slider.getPreferredSize();
             slider.setPreferredSize(new Dimension(d.width + 400, d.height));
 
-            // pdate the image on screen as the slider moves
+            // preview the change in the background as the slider moves
+            PreviewScheduler preview = new PreviewScheduler(target);
             slider.addChangeListener(new ChangeListener() {
-                // keep track of the last value of the slider
-                int lastSilderValue = 0;
-
                 public void stateChanged(ChangeEvent ce) {
                     // Update for mouse listener bug
                     Andie.chooserOperating = true;
-                    // make a copy of the editable image so that the actual image isnt changed
-                    EditableImage copyImage = realImage.deepCopyEditable();
-                    target.setImage(copyImage);
                     // if slider value is nothing dont apply
                     if (slider.getValue() == 0) {
+                        preview.request(null);
                         return;
                     }
-                    // update the image if the difference between the last slider value and new
-                    // slider value is greater than or equal to 2
-                    if (Math.abs(lastSilderValue - slider.getValue()) >= 2) {
-                        target.getImage().apply(new Brightness(slider.getValue(), 0));
-                        target.repaint();
-                        target.getParent().revalidate();
-                        // Update the last value of the slider
-                        lastSilderValue = slider.getValue();
-                    }
+                    preview.request(new Brightness(slider.getValue(), 0));
                 }
             });
 
@@ -318,8 +305,8 @@ public class ColourActions {
                     JOptionPane.QUESTION_MESSAGE, Andie.icon, null, null);
             // Update for mouse listener bug
             Andie.chooserOperating = false;
-            // reset image as the origional image
-            target.setImage(realImage);
+            // stop any preview still being rendered, and take it off the image
+            preview.close();
 
             // if user presses cancel
             if (select == JOptionPane.CANCEL_OPTION) {
@@ -388,7 +375,6 @@ public class ColourActions {
             int min = minPercentage;
             int max = maxPercentage;
             String title = titleSlider;
-            EditableImage realImage = target.getImage();
 
             // Show J Slider
             JSlider slider = new JSlider();
@@ -405,32 +391,17 @@ public class ColourActions {
             Dimension d = slider.getPreferredSize();
             slider.setPreferredSize(new Dimension(d.width + 400, d.height));
 
-            // update the image on screen as the slider moves
+            // preview the change in the background as the slider moves
+            PreviewScheduler preview = new PreviewScheduler(target);
             slider.addChangeListener(new ChangeListener() {
-                // keep track of the last value of the slider
-                int lastSilderValue = 0;
-
                 public void stateChanged(ChangeEvent ce) {
                     // Update for mouse listener bug
                     Andie.chooserOperating = true;
-                    // Create a deep copy of the editable image (so that we don't change the actual
-                    // editable image)
-                    EditableImage copyImage = realImage.deepCopyEditable();
-                    // Set the target to have this new copy of the actual image.
-                    target.setImage(copyImage);
-                    // Apply the median filter to the new copy of the actual image.
                     if (slider.getValue() == 0) { // No change to apply.
+                        preview.request(null);
                         return;
                     }
-                    // update the image if the difference between the last slider value and new
-                    // slider value is greater than or equal to 2
-                    if (Math.abs(lastSilderValue - slider.getValue()) >= 2) {
-                        target.getImage().apply(new Brightness(0, slider.getValue()));
-                        target.repaint();
-                        target.getParent().revalidate();
-                        // Update the last value of the slider
-                        lastSilderValue = slider.getValue();
-                    }
+                    preview.request(new Brightness(0, slider.getValue()));
                 }
             });
 
@@ -441,8 +412,8 @@ public class ColourActions {
             // Update for mouse listener bug
             Andie.chooserOperating = false;
 
-            // reset image as the origional image
-            target.setImage(realImage);
+            // stop any preview still being rendered, and take it off the image
+            preview.close();
 
             // if user presses cancel
             if (select == JOptionPane.CANCEL_OPTION) {
@@ -540,28 +511,19 @@ public class ColourActions {
                 return;
             }
 
-            // Save the real image
-            EditableImage realImage = target.getImage();
-
             // Create a custom dialog box with a color chooser
             JColorChooser colorChooser = new JColorChooser();
             Andie.setJChooserFont(colorChooser.getComponents());
             // Remove the preview panel
             colorChooser.setPreviewPanel(new JPanel());
+            // Preview the filter in the background as the colour changes
+            PreviewScheduler preview = new PreviewScheduler(target);
             colorChooser.getSelectionModel().addChangeListener(new ChangeListener() {
                 @Override
                 public void stateChanged(ChangeEvent e) {
                     // Update for mouse listener bug
                     Andie.chooserOperating = true;
-                    // Create a deep copy of the editable image (so that we don't change the actual
-                    // editable image)
-                    EditableImage copyImage = realImage.deepCopyEditable();
-                    // Set the target to have this new copy of the actual image
-                    target.setImage(copyImage);
-                    // Apply the filter with the current color
-                    target.getImage().apply(new HueFilter(colorChooser.getColor()));
-                    target.repaint();
-                    target.getParent().revalidate();
+                    preview.request(new HueFilter(colorChooser.getColor()));
                 }
             });
 
@@ -570,8 +532,8 @@ public class ColourActions {
                     JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE, null, null, null);
             // Update for mouse listener bug
             Andie.chooserOperating = false;
-            // Reset image to the original image
-            target.setImage(realImage);
+            // stop any preview still being rendered, and take it off the image
+            preview.close();
 
             // If user presses cancel
             if (result == JOptionPane.CANCEL_OPTION) {
@@ -623,9 +585,6 @@ public class ColourActions {
                 JOptionPane.showMessageDialog(null, message, title, JOptionPane.ERROR_MESSAGE, Andie.icon);
                 return;
             }
-            // save the real image
-            EditableImage realImage = target.getImage();
-
             // create two JColorChooser components
             JColorChooser colorChooser1 = new JColorChooser();
             JColorChooser colorChooser2 = new JColorChooser();
@@ -659,22 +618,18 @@ public class ColourActions {
             // Create a custom panel and add the JColorChooser components to it
             panel.setPreferredSize(new Dimension(1200, 250));
 
+            // previews are rendered in the background as the colours and slider change
+            PreviewScheduler preview = new PreviewScheduler(target);
+
             // color listener for no 1
             colorChooser1.getSelectionModel().addChangeListener(new ChangeListener() {
                 @Override
                 public void stateChanged(ChangeEvent e) {
                     // Update for mouse listener bug
                     Andie.chooserOperating = true;
-                    // create a deep copy of the editable image (so that we don't change the actual
-                    // editable image)
-                    EditableImage copyImage = realImage.deepCopyEditable();
-                    // set the target to have this new copy of the actual image
-                    target.setImage(copyImage);
-                    // apply the filter with the current color
-                    target.getImage().apply(
+                    // preview the filter with the current color
+                    preview.request(
                             new DitherFilter(slider.getValue(), colorChooser1.getColor(), colorChooser2.getColor()));
-                    target.repaint();
-                    target.getParent().revalidate();
                 }
             });
 
@@ -684,46 +639,23 @@ public class ColourActions {
                 public void stateChanged(ChangeEvent e) {
                     // Update for mouse listener bug
                     Andie.chooserOperating = true;
-                    // create a deep copy of the editable image (so that we don't change the actual
-                    // editable image)
-                    EditableImage copyImage = realImage.deepCopyEditable();
-                    // set the target to have this new copy of the actual image
-                    target.setImage(copyImage);
-                    // apply the filter with the current color
-                    target.getImage().apply(
+                    // preview the filter with the current color
+                    preview.request(
                             new DitherFilter(slider.getValue(), colorChooser1.getColor(), colorChooser2.getColor()));
-                    target.repaint();
-                    target.getParent().revalidate();
                 }
             });
 
             // slider listener
             slider.addChangeListener(new ChangeListener() {
-                // keep track of the last value of the slider
-                int lastSilderValue = 0;
-
                 public void stateChanged(ChangeEvent ce) {
                     // Update for mouse listener bug
                     Andie.chooserOperating = true;
-                    // Create a deep copy of the editable image (so that we don't change the actual
-                    // editable image)
-                    EditableImage copyImage = realImage.deepCopyEditable();
-                    // Set the target to have this new copy of the actual image.
-                    target.setImage(copyImage);
-                    // Apply the median filter to the new copy of the actual image.
                     if (slider.getValue() == 0) { // No change to apply.
+                        preview.request(null);
                         return;
                     }
-                    // update the image if the difference between the last slider value and new
-                    // slider value is greater than or equal to 2
-                    if (Math.abs(lastSilderValue - slider.getValue()) >= 2) {
-                        target.getImage().apply(new DitherFilter(slider.getValue(), colorChooser1.getColor(),
-                                colorChooser2.getColor()));
-                        target.repaint();
-                        target.getParent().revalidate();
-                        // Update the last value of the slider
-                        lastSilderValue = slider.getValue();
-                    }
+                    preview.request(new DitherFilter(slider.getValue(), colorChooser1.getColor(),
+                            colorChooser2.getColor()));
                 }
             });
 
@@ -734,8 +666,8 @@ public class ColourActions {
             // Update for mouse listener bug
             Andie.chooserOperating = false;
 
-            // reset image as the original image
-            target.setImage(realImage);
+            // stop any preview still being rendered, and take it off the image
+            preview.close();
 
             // if user presses cancel
             if (result == JOptionPane.CANCEL_OPTION) {
@@ -1,6 +1,9 @@
 package cosc202.andie;
 
 import java.awt.image.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * <p>
@@ -20,10 +23,20 @@ import java.awt.image.*;
  * @author Steven Mills
  * @version 1.0
  */
-public class ConvertToGrey implements ImageOperation, java.io.Serializable {
+public class ConvertToGrey implements PixelOperation, EncodableOperation, java.io.Serializable {
+
+    private static final long serialVersionUID = -5112034828209723330L;
 
     boolean rescaled = false; // boolean value to determine whether the image should be rescaled or not in the range {0,255} 
 
+    /*
+     * The weighted value of each red, green and blue value.
+     * Grey mixes the channels, so it cannot be a single lookup table, but the weights can still be looked up.
+     */
+    private static final double[] RED_WEIGHTS = weights(0.3);
+    private static final double[] GREEN_WEIGHTS = weights(0.6);
+    private static final double[] BLUE_WEIGHTS = weights(0.1);
+
     /**
      * <p>
      * Create a new CovertToGrey operation.
@@ -43,6 +56,79 @@ public class ConvertToGrey implements ImageOperation, java.io.Serializable {
         this.rescaled = rescaled;
     }
 
+    /**
+     * <p>
+     * Work out the weighted value of every channel value.
+     * </p>
+     * 
+     * @param weight The weight of the channel.
+     * @return The 256 weighted values.
+     */
+    private static double[] weights(double weight) {
+        double[] table = new double[256];
+        for (int value = 0; value < 256; value++) {
+            table[value] = weight * value;
+        }
+        return table;
+    }
+
+    /**
+     * Get the footprint of this operation.
+     * 
+     * Each pixel is converted to grey on its own, as is the optional rescaling.
+     * 
+     * @return The footprint of the operation.
+     */
+    public Footprint getFootprint() {
+        return Footprint.perPixel();
+    }
+
+    /**
+     * <p>
+     * Convert the colour of one pixel to grey, keeping its alpha.
+     * </p>
+     * 
+     * @param argb The colour of the pixel as packed ARGB.
+     * @return The grey colour.
+     */
+    public int filter(int argb) {
+        int a = (argb & 0xFF000000) >> 24;
+        int r = (argb & 0x00FF0000) >> 16;
+        int g = (argb & 0x0000FF00) >> 8;
+        int b = (argb & 0x000000FF);
+
+        // the same sum as 0.3*r + 0.6*g + 0.1*b, with the products looked up
+        int grey = (int) Math.round(RED_WEIGHTS[r] + GREEN_WEIGHTS[g] + BLUE_WEIGHTS[b]);
+
+        return (a << 24) | (grey << 16) | (grey << 8) | grey;
+    }
+
+    /**
+     * <p>
+     * Convert the colours of a range of pixels to grey, in place.
+     * </p>
+     * 
+     * @param argb The colours of the pixels as packed ARGB.
+     * @param from The first pixel to change.
+     * @param to   One past the last pixel to change.
+     */
+    public void filter(int[] argb, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            argb[i] = filter(argb[i]);
+        }
+    }
+
+    /**
+     * <p>
+     * Check if this conversion can be combined with other per-pixel operations.
+     * </p>
+     * 
+     * @return False if the result is rescaled, which depends on the whole image.
+     */
+    public boolean isFusable() {
+        return !rescaled;
+    }
+
     /**
      * <p>
      * Apply greyscale conversion to an image.
@@ -59,20 +145,9 @@ public class ConvertToGrey implements ImageOperation, java.io.Serializable {
      * @return The resulting greyscale image.
      */
     public BufferedImage apply(BufferedImage input) {
-        for (int y = 0; y < input.getHeight(); ++y) {
-            for (int x = 0; x < input.getWidth(); ++x) {
-                int argb = input.getRGB(x, y);
-                int a = (argb & 0xFF000000) >> 24;
-                int r = (argb & 0x00FF0000) >> 16;
-                int g = (argb & 0x0000FF00) >> 8;
-                int b = (argb & 0x000000FF);
-
-                int grey = (int) Math.round(0.3*r + 0.6*g + 0.1*b);
-
-                argb = (a << 24) | (grey << 16) | (grey << 8) | grey;
-                input.setRGB(x, y, argb);
-            }
-        }
+        int[] pixels = ImagePixels.read(input);
+        filter(pixels, 0, pixels.length);
+        ImagePixels.write(input, pixels);
 
         if(rescaled){
             input = NormalizeImage.midValueNegativePixels(input);
@@ -80,5 +155,28 @@ public class ConvertToGrey implements ImageOperation, java.io.Serializable {
         
         return input;
     }
-    
+
+    /**
+     * Write the settings of this operation to an <code>.ops</code> file.
+     *
+     * Writes whether the result is rescaled.
+     *
+     * @param out Where to write the settings.
+     * @throws IOException If the settings cannot be written.
+     */
+    public void encode(DataOutput out) throws IOException {
+        out.writeBoolean(rescaled);
+    }
+
+    /**
+     * Rebuild an operation from the settings written by {@link #encode}.
+     *
+     * @param in      The settings.
+     * @param version The version of the <code>.ops</code> file.
+     * @return The operation.
+     * @throws IOException If the settings cannot be read.
+     */
+    static ConvertToGrey decode(DataInput in, int version) throws IOException {
+        return new ConvertToGrey(in.readBoolean());
+    }
 }
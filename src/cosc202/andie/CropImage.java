@@ -3,63 +3,58 @@ package cosc202.andie;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import javax.swing.JOptionPane;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * CropImage class to crop an image based on the current mouse region by user
  * User must first select a region on the image to crop
  */
-public class CropImage implements ImageOperation, java.io.Serializable {
+public class CropImage implements ImageOperation, EncodableOperation, java.io.Serializable {
+
+    private static final long serialVersionUID = 3165322219164709336L;
     // Boolean to check if flip is vertical or horizontal
     Rectangle region;
 
     /**
      * CropImage Constructor
      * 
+     * The region is in image coordinates, not on the panel; use
+     * {@link ImagePanel#toImage(Rectangle)} to convert the selection.
+     * 
      * @param r rectangle
      */
     public CropImage(Rectangle r) {
         region = r;
-        ImagePanel.region = null;
     }
 
     /**
      * Apply the operation to the image to crop the image based on the mouse region
      * 
+     * This has no effect but cropping, so it can be replayed in the background or in a batch.
+     * A region wholly outside the image leaves it unchanged; the crop action warns the user
+     * about that before applying it.
+     * 
      * @param input
      */
     @Override
     public BufferedImage apply(BufferedImage input) {
-        
-        double scale = Andie.imagePanel.getScale();
-        
-        // get the unscaled and centered region params of the rectangle
-        // Calculate the unscaled coordinates and dimensions of the region
-        double x0 = ((region.getX() - Andie.imagePanel.topLeftX) / scale);
-        double y0 = ((region.getY() - Andie.imagePanel.topLeftY) / scale);
-        double width0 = (region.getWidth() / scale);
-        double height0 = (region.getHeight() / scale);
-
-        int x = (int) x0;
-        int y = (int) y0;
-        int width = (int) width0;
-        int height = (int) height0;
-
-        // If the whole region is outside of the image
-        if (x > input.getWidth() || y > input.getHeight() || x + width < input.getMinX() || y + height < input.getMinY()) {
-            // Play error sound, play the audio in a separate thread
-            Thread audioThread = new Thread(() -> Andie.sound.playErrorSound());
-            audioThread.start();
-            JOptionPane.showMessageDialog(null, Andie.bundle.getString("cropRegionErrorMessage")+ "       ", Andie.bundle.getString("cropError"),
-                    JOptionPane.ERROR_MESSAGE, Andie.icon);
-            return input;
-        }
+        int x = region.x;
+        int y = region.y;
+        int width = region.width;
+        int height = region.height;
 
         // Contain crop to image bounds if it currently exceeds bounds
+        width = Math.min(x + width, input.getWidth()) - Math.max(x, 0);
+        height = Math.min(y + height, input.getHeight()) - Math.max(y, 0);
         x = Math.max(x, 0);
         y = Math.max(y, 0);
-        width = Math.min(width, input.getWidth() - x);
-        height = Math.min(height, input.getHeight() - y);
+
+        // If the whole region is outside of the image there is nothing to crop to
+        if (width <= 0 || height <= 0) {
+            return input;
+        }
 
         // Crop image
         BufferedImage cropImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
@@ -68,4 +63,34 @@ public class CropImage implements ImageOperation, java.io.Serializable {
         graphics.dispose();
         return cropImage;
     }
-}
\ No newline at end of file
+
+    /**
+     * Write the settings of this operation to an <code>.ops</code> file.
+     *
+     * Writes the region to crop to.
+     *
+     * @param out Where to write the settings.
+     * @throws IOException If the settings cannot be written.
+     */
+    public void encode(DataOutput out) throws IOException {
+        out.writeInt(region.x);
+        out.writeInt(region.y);
+        out.writeInt(region.width);
+        out.writeInt(region.height);
+    }
+
+    /**
+     * Rebuild an operation from the settings written by {@link #encode}.
+     *
+     * Files before version 2 held the position on the panel, which depended on the window at the
+     * time and cannot be recovered, so it is read as a position in the image.
+     *
+     * @param in      The settings.
+     * @param version The version of the <code>.ops</code> file.
+     * @return The operation.
+     * @throws IOException If the settings cannot be read.
+     */
+    static CropImage decode(DataInput in, int version) throws IOException {
+        return new CropImage(new Rectangle(in.readInt(), in.readInt(), in.readInt(), in.readInt()));
+    }
+}
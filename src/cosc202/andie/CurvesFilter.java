@@ -0,0 +1,139 @@
+package cosc202.andie;
+
+import java.util.Arrays;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+
+/**
+ * <p>
+ * ImageOperation to apply a tone curve to an image.
+ * </p>
+ *
+ * <p>
+ * The curve is given by a set of points, each saying what one colour value becomes, and values
+ * between the points are joined by straight lines.
+ * Values before the first point or after the last take the value of that point.
+ * The same curve is applied to the red, green and blue channels, and alpha is left as it is.
+ * </p>
+ *
+ * <p>
+ * The new value of each channel only depends on its old value, so the curve is a
+ * {@link LookupOperation} and is applied, and composed with its neighbours, by table lookup.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public class CurvesFilter implements LookupOperation, EncodableOperation, java.io.Serializable {
+
+    /** The old values of the points, in increasing order. */
+    private int[] inputs;
+    /** The new values of the points. */
+    private int[] outputs;
+    /** The curve at every channel value, made the first time it is needed. */
+    private transient LookupTable table;
+
+    /**
+     * <p>
+     * Create a new tone curve through a set of points.
+     * </p>
+     *
+     * @param inputs  The old values of the points, from 0 to 255, in strictly increasing order.
+     * @param outputs The new values of the points, from 0 to 255.
+     * @throws IllegalArgumentException If there are no points, the arrays differ in length, or a
+     *                                  value is out of range or out of order.
+     */
+    public CurvesFilter(int[] inputs, int[] outputs) {
+        if (inputs.length == 0 || inputs.length != outputs.length) {
+            throw new IllegalArgumentException("A curve needs the same number of inputs and outputs, and at least one");
+        }
+        for (int i = 0; i < inputs.length; i++) {
+            if (inputs[i] < 0 || inputs[i] > 255 || outputs[i] < 0 || outputs[i] > 255) {
+                throw new IllegalArgumentException("Point (" + inputs[i] + ", " + outputs[i] + ") is out of range");
+            }
+            if (i > 0 && inputs[i] <= inputs[i - 1]) {
+                throw new IllegalArgumentException("Curve inputs must be in increasing order");
+            }
+        }
+        this.inputs = Arrays.copyOf(inputs, inputs.length);
+        this.outputs = Arrays.copyOf(outputs, outputs.length);
+    }
+
+    /**
+     * Get the table of the curve.
+     *
+     * @return The new value of each channel value.
+     */
+    public LookupTable getLookupTable() {
+        if (table == null) {
+            table = LookupTable.of(alpha -> alpha, this::curve);
+        }
+        return table;
+    }
+
+    /**
+     * Find the value of the curve at one colour value.
+     *
+     * @param value The value, from 0 to 255.
+     * @return The new value.
+     */
+    private int curve(int value) {
+        int last = inputs.length - 1;
+        if (value <= inputs[0]) {
+            return outputs[0];
+        }
+        if (value >= inputs[last]) {
+            return outputs[last];
+        }
+        int i = 1;
+        while (inputs[i] < value) {
+            i++;
+        }
+        double t = (double) (value - inputs[i - 1]) / (inputs[i] - inputs[i - 1]);
+        return (int) Math.round(outputs[i - 1] + t * (outputs[i] - outputs[i - 1]));
+    }
+
+    /**
+     * Write the settings of this operation to an <code>.ops</code> file.
+     *
+     * Writes the number of points, followed by the old and new value of each point as a byte.
+     *
+     * @param out Where to write the settings.
+     * @throws IOException If the settings cannot be written.
+     */
+    public void encode(DataOutput out) throws IOException {
+        out.writeShort(inputs.length);
+        for (int i = 0; i < inputs.length; i++) {
+            out.writeByte(inputs[i]);
+            out.writeByte(outputs[i]);
+        }
+    }
+
+    /**
+     * Rebuild an operation from the settings written by {@link #encode}.
+     *
+     * @param in      The settings.
+     * @param version The version of the <code>.ops</code> file.
+     * @return The operation.
+     * @throws IOException If the settings cannot be read.
+     */
+    static CurvesFilter decode(DataInput in, int version) throws IOException {
+        int count = in.readUnsignedShort();
+        int[] inputs = new int[count];
+        int[] outputs = new int[count];
+        for (int i = 0; i < count; i++) {
+            inputs[i] = in.readUnsignedByte();
+            outputs[i] = in.readUnsignedByte();
+        }
+        try {
+            return new CurvesFilter(inputs, outputs);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidObjectException(e.getMessage());
+        }
+    }
+}
@@ -3,6 +3,9 @@ package cosc202.andie;
 import java.awt.Color;
 import java.awt.image.*;
 import java.util.Random;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * <p>
@@ -26,11 +29,15 @@ import java.util.Random;
  * @author Hannah Srzich, highly adapted from the MeanFilter class by Steven Mills
  * @version 1.0
  */
-public class DitherFilter implements ImageOperation, java.io.Serializable {  
+public class DitherFilter implements TileableOperation, EncodableOperation, java.io.Serializable {
+
+    private static final long serialVersionUID = 2269258803385621617L;  
     // Default values for default constructor
     private int ditherLevel = 1; // The higher the dither level the less "dark" random pixels there will be
     Color lightColor = Color.white;
     Color darkColor = Color.black;
+    /** The dither matrix, created the first time the filter is applied so that every tile and replay uses the same pattern. */
+    private int[][] ditherMatrix = null;
 
     /**
      * Constructs a new instance of the DitherFilter class with default values.
@@ -51,6 +58,17 @@ public class DitherFilter implements ImageOperation, java.io.Serializable {
         this.darkColor = darkColor;
     }
 
+    /**
+     * Get the footprint of this operation.
+     * 
+     * Each pixel is compared against one entry of the dither matrix, chosen by its position in the image.
+     * 
+     * @return The footprint of the operation.
+     */
+    public Footprint getFootprint() {
+        return Footprint.perPixel();
+    }
+
     /**
      * Applies the dither filter to the given image.
      *
@@ -58,6 +76,21 @@ public class DitherFilter implements ImageOperation, java.io.Serializable {
      * @return The filtered output image.
      */
     public BufferedImage apply(BufferedImage image) {
+        return applyTile(image, 0, 0);
+    }
+
+    /**
+     * Applies the dither filter to one tile of a larger image.
+     * 
+     * The dither matrix is indexed by the position of each pixel in the whole image, so the pattern
+     * lines up across tile boundaries.
+     *
+     * @param image The tile to which the filter will be applied.
+     * @param originX The x coordinate of the tile in the whole image.
+     * @param originY The y coordinate of the tile in the whole image.
+     * @return The filtered tile.
+     */
+    public BufferedImage applyTile(BufferedImage image, int originX, int originY) {
         // Get dimensions of input image
         int width = image.getWidth();
         int height = image.getHeight();
@@ -66,32 +99,45 @@ public class DitherFilter implements ImageOperation, java.io.Serializable {
         BufferedImage outputImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
 
         // Get dither matrix
-        int[][] ditherMatrix = createDitherMatrix(ditherLevel);
+        int[][] ditherMatrix = getDitherMatrix();
+
+        int[] pixels = ImagePixels.read(image);
+        int[] output = ImagePixels.data(outputImage);
+        int light = lightColor.getRGB() & 0xFFFFFF;
+        int dark = darkColor.getRGB() & 0xFFFFFF;
 
         // Loop over each pixel in the input image
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
                 // Get grayscale value of current pixel
-                int oldPixel = getGreyscaleValue(image.getRGB(x, y));
+                int oldPixel = getGreyscaleValue(pixels[y * width + x]);
 
                 // Get corresponding value in dither matrix
-                int ditherValue = ditherMatrix[x % ditherMatrix.length][y % ditherMatrix.length];
+                int ditherValue = ditherMatrix[(originX + x) % ditherMatrix.length][(originY + y) % ditherMatrix.length];
 
                 // Calculate new pixel value
                 int newPixel = oldPixel + ditherValue;
 
                 // Set new pixel value to either light or dark color depending on its value
-                if (newPixel >= 128) {
-                    outputImage.setRGB(x, y, lightColor.getRGB());
-                } else {
-                    outputImage.setRGB(x, y, darkColor.getRGB());
-                }
+                output[y * width + x] = newPixel >= 128 ? light : dark;
             }
         }
         // Return the dithered image
         return outputImage;
     }
 
+    /**
+     * Gets the dither matrix of this filter, creating it if it has not been created yet.
+     *
+     * @return The dither matrix.
+     */
+    private synchronized int[][] getDitherMatrix() {
+        if (ditherMatrix == null) {
+            ditherMatrix = createDitherMatrix(ditherLevel);
+        }
+        return ditherMatrix;
+    }
+
     /**
      * Creates a dither matrix based on the specified dither level.
      *
@@ -157,5 +203,48 @@ public class DitherFilter implements ImageOperation, java.io.Serializable {
         return grey;
     }
 
+    /**
+     * Write the settings of this operation to an <code>.ops</code> file.
+     *
+     * Writes the dither level and colours, and the dither matrix itself, since it is random and
+     * has to be the same when the operation is replayed.
+     *
+     * @param out Where to write the settings.
+     * @throws IOException If the settings cannot be written.
+     */
+    public void encode(DataOutput out) throws IOException {
+        out.writeInt(ditherLevel);
+        out.writeInt(lightColor.getRGB());
+        out.writeInt(darkColor.getRGB());
+        int[][] matrix = getDitherMatrix();
+        out.writeInt(matrix.length);
+        for (int[] row : matrix) {
+            out.writeInt(row.length);
+            for (int value : row) {
+                out.writeInt(value);
+            }
+        }
+    }
 
-}
\ No newline at end of file
+    /**
+     * Rebuild an operation from the settings written by {@link #encode}.
+     *
+     * @param in      The settings.
+     * @param version The version of the <code>.ops</code> file.
+     * @return The operation.
+     * @throws IOException If the settings cannot be read.
+     */
+    static DitherFilter decode(DataInput in, int version) throws IOException {
+        DitherFilter filter = new DitherFilter(in.readInt(), new Color(in.readInt(), true), new Color(in.readInt(), true));
+        // each row takes at least the four bytes of its length
+        int[][] matrix = new int[OpsFile.readCount(in, 4)][];
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = new int[OpsFile.readCount(in, 4)];
+            for (int j = 0; j < matrix[i].length; j++) {
+                matrix[i][j] = in.readInt();
+            }
+        }
+        filter.ditherMatrix = matrix;
+        return filter;
+    }
+}
@@ -74,6 +74,17 @@ public class DrawActions {
         return DrawMenu;
     }
 
+    /**
+     * Tell the user that the shape they chose to draw is not on the image.
+     */
+    private static void showOutsideImageError() {
+        // Play error sound, play the audio in a separate thread
+        Thread audioThread = new Thread(() -> Andie.sound.playErrorSound());
+        audioThread.start();
+        JOptionPane.showMessageDialog(null, Andie.bundle.getString("cropRegionErrorMessage") + "       ",
+                Andie.bundle.getString("DrawShapesError"), JOptionPane.ERROR_MESSAGE, Andie.icon);
+    }
+
     /**
      * The ColourChooserAction class represents a drawing action that opens a color chooser dialog for selecting a color.
      * It extends the ImageAction class.
@@ -176,11 +187,18 @@ public class DrawActions {
             }
             DrawActions.shape = "Square";
             Color colour = DrawActions.colour;
+            Rectangle area = target.toImage(ImagePanel.region);
+            if (isOutsideImage(area)) {
+                showOutsideImageError();
+                return;
+            }
             if (isOutline) {
-                target.getImage().apply(new DrawOutline("square", colour, ImagePanel.x, ImagePanel.y, ImagePanel.width, ImagePanel.height));
+                target.getImage().apply(new DrawOutline("square", colour, area.x, area.y, area.width, area.height));
             } else {
-                target.getImage().apply(new DrawSquare(colour, ImagePanel.x, ImagePanel.y, ImagePanel.width, ImagePanel.height));
+                target.getImage().apply(new DrawSquare(colour, area.x, area.y, area.width, area.height));
             }
+            // the shape is drawn onto the tiles of the image rather than through apply, which would clear the selection
+            ImagePanel.region = null;
             target.repaint();
             target.getParent().revalidate();
         }
@@ -233,11 +251,18 @@ public class DrawActions {
 
             DrawActions.shape = "Oval";
             Color colour = DrawActions.colour;
+            Rectangle area = target.toImage(ImagePanel.region);
+            if (isOutsideImage(area)) {
+                showOutsideImageError();
+                return;
+            }
             if (isOutline) {
-                target.getImage().apply(new DrawOutline("oval", colour, ImagePanel.x, ImagePanel.y, ImagePanel.width, ImagePanel.height));
+                target.getImage().apply(new DrawOutline("oval", colour, area.x, area.y, area.width, area.height));
             } else {
-                target.getImage().apply(new DrawOval(colour, ImagePanel.x, ImagePanel.y, ImagePanel.width, ImagePanel.height));
+                target.getImage().apply(new DrawOval(colour, area.x, area.y, area.width, area.height));
             }
+            // the shape is drawn onto the tiles of the image rather than through apply, which would clear the selection
+            ImagePanel.region = null;
             target.repaint();
             target.getParent().revalidate();
         }
@@ -300,8 +325,17 @@ public class DrawActions {
             Color colour = DrawActions.colour;
             DrawActions.shape = "Line";
 
-            target.getImage().apply(
-                    new DrawLine(colour, ImagePanel.lineX1, ImagePanel.lineY1, ImagePanel.lineX2, ImagePanel.lineY2));
+            Point start = target.toImage(ImagePanel.lineX1, ImagePanel.lineY1);
+            Point end = target.toImage(ImagePanel.lineX2, ImagePanel.lineY2);
+            Rectangle area = new Rectangle(start);
+            area.add(end);
+            if (isOutsideImage(area)) {
+                showOutsideImageError();
+                return;
+            }
+            target.getImage().apply(new DrawLine(colour, start.x, start.y, end.x, end.y));
+            // the shape is drawn onto the tiles of the image rather than through apply, which would clear the selection
+            ImagePanel.region = null;
             target.repaint();
             target.getParent().revalidate();
         }
@@ -2,13 +2,15 @@ package cosc202.andie;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import javax.swing.JOptionPane;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * The DrawLine class represents an image operation that draws a line on an image.
  * It implements the ImageOperation interface.
  */
-public class DrawLine implements ImageOperation {
+public class DrawLine implements EncodableOperation, RegionOperation {
 
     public Color colour;
     public int x1;
@@ -19,6 +21,9 @@ public class DrawLine implements ImageOperation {
     /**
      * Constructs a new DrawLine object with the specified color and coordinates.
      *
+     * The coordinates are in the image, not on the panel; use
+     * {@link ImagePanel#toImage(int, int)} to convert where the user drew.
+     *
      * @param colour The color of the line.
      * @param x1     The x-coordinate of the starting point of the line.
      * @param y1     The y-coordinate of the starting point of the line.
@@ -44,51 +49,6 @@ public class DrawLine implements ImageOperation {
      * @return The modified image with the line drawn on it.
      */
     public BufferedImage drawLine(BufferedImage input, int x1, int y1, int x2, int y2) {
-        double scale = Andie.imagePanel.getScale();
-        // get the unscaled and centred region params of the rectangle
-        // Calculate the unscaled coordinates and dimensions of the region
-        int x1Scaled = (int) ((x1 - Andie.imagePanel.topLeftX) / scale);
-        int y1Scaled = (int) ((y1 - Andie.imagePanel.topLeftY) / scale);
-        int x2Scaled = (int) ((x2 - Andie.imagePanel.topLeftX) / scale);
-        int y2Scaled = (int) ((y2 - Andie.imagePanel.topLeftY) / scale);
-
-        boolean xSwapped = false;
-        boolean ySwapped = false;
-        // Swap so that the below conditions for drawing an image still hold
-        if(x1Scaled > x2Scaled){
-            int temp = x1Scaled;
-            x1Scaled = x2Scaled;
-            x2Scaled = temp;
-            xSwapped = true;
-        }
-        if(y1Scaled > y2Scaled){
-            int temp = y1Scaled;
-            y1Scaled = y2Scaled;
-            y2Scaled = temp;
-            ySwapped = true;
-        }
-
-        // If the whole region is outside of the image
-        if (x1Scaled > input.getWidth() || y1Scaled > input.getHeight() || x1Scaled + Math.abs(x2Scaled - x1Scaled) < input.getMinX() || y1Scaled + Math.abs(y2Scaled - y1Scaled) < input.getMinY()) {
-            // Play error sound, play the audio in a separate thread
-            Thread audioThread = new Thread(() -> Andie.sound.playErrorSound());
-            audioThread.start();
-            JOptionPane.showMessageDialog(null, Andie.bundle.getString("cropRegionErrorMessage")+ "       ", Andie.bundle.getString("DrawShapesError"),
-                    JOptionPane.ERROR_MESSAGE, Andie.icon);
-            return input;
-        }
-        // if swapped swap back
-        if(xSwapped){
-            int temp = x1Scaled;
-            x1Scaled = x2Scaled;
-            x2Scaled = temp;
-        }
-        if(ySwapped){
-            int temp = y1Scaled;
-            y1Scaled = y2Scaled;
-            y2Scaled = temp;
-        }
-
         Graphics2D g2d = input.createGraphics();
         // smooths edges
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
@@ -96,15 +56,18 @@ public class DrawLine implements ImageOperation {
 
         g2d.setColor(colour);
 
-        g2d.drawLine(x1Scaled, y1Scaled, x2Scaled, y2Scaled);
+        g2d.drawLine(x1, y1, x2, y2);
         g2d.dispose();
-        ImagePanel.region = null;
         return input;
     }
 
     /**
      * Applies the draw line operation to the input image.
      *
+     * This has no effect but drawing, so it can be replayed in the background or in a batch.
+     * A line wholly outside the image leaves it unchanged; {@link DrawActions} warns the user
+     * about that before applying it.
+     *
      * @param input The input image to apply the operation on.
      * @return The modified image with the line drawn on it.
      */
@@ -112,5 +75,75 @@ public class DrawLine implements ImageOperation {
         return drawLine(input, x1, y1, x2, y2);
     }
 
-}
+    /**
+     * Get the part of the image the line is drawn over.
+     *
+     * The line is antialiased, which can touch one pixel either side of it.
+     *
+     * @param width  The width of the image the line is about to be drawn on.
+     * @param height The height of the image.
+     * @return The area of the image that may change.
+     */
+    public Rectangle getRegion(int width, int height) {
+        Rectangle bounds = new Rectangle(x1, y1, 0, 0);
+        bounds.add(x2, y2);
+        // add() leaves out the right and bottom edges, which the line covers
+        bounds.width++;
+        bounds.height++;
+        bounds.grow(1, 1);
+        return bounds;
+    }
+
+    /**
+     * Draw the line on one area of a larger image.
+     *
+     * @param area The pixels of the area, which are drawn on.
+     * @param x    The x coordinate of the top left pixel of the area in the whole image.
+     * @param y    The y coordinate of the top left pixel of the area in the whole image.
+     * @return The area with the line drawn on it.
+     */
+    public BufferedImage applyArea(BufferedImage area, int x, int y) {
+        Graphics2D g2d = area.createGraphics();
+        g2d.translate(-x, -y);
+        // smooths edges
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
 
+        g2d.setColor(colour);
+
+        g2d.drawLine(x1, y1, x2, y2);
+        g2d.dispose();
+        return area;
+    }
+
+    /**
+     * Write the settings of this operation to an <code>.ops</code> file.
+     *
+     * Writes the colour, as packed ARGB, and the end points of the line.
+     *
+     * @param out Where to write the settings.
+     * @throws IOException If the settings cannot be written.
+     */
+    public void encode(DataOutput out) throws IOException {
+        out.writeInt(colour.getRGB());
+        out.writeInt(x1);
+        out.writeInt(y1);
+        out.writeInt(x2);
+        out.writeInt(y2);
+    }
+
+    /**
+     * Rebuild an operation from the settings written by {@link #encode}.
+     *
+     * Files before version 2 held the position on the panel, which depended on the window at the
+     * time and cannot be recovered, so it is read as a position in the image.
+     *
+     * @param in      The settings.
+     * @param version The version of the <code>.ops</code> file.
+     * @return The operation.
+     * @throws IOException If the settings cannot be read.
+     */
+    static DrawLine decode(DataInput in, int version) throws IOException {
+        return new DrawLine(new Color(in.readInt(), true), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+    }
+}
@@ -2,13 +2,15 @@ package cosc202.andie;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import javax.swing.JOptionPane;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * The DrawOutline class represents an image operation that draws an outline shape on an image.
  * It implements the ImageOperation interface.
  */
-public class DrawOutline implements ImageOperation {
+public class DrawOutline implements EncodableOperation, RegionOperation {
 
     private Color colour;
     private int x1;
@@ -20,6 +22,9 @@ public class DrawOutline implements ImageOperation {
     /**
      * Constructs a new DrawOutline object with the specified shape, color, and coordinates.
      *
+     * The coordinates are in the image, not on the panel; use
+     * {@link ImagePanel#toImage(Rectangle)} to convert where the user drew.
+     *
      * @param shape  The shape of the outline ("square" or "oval").
      * @param colour The color of the outline.
      * @param x1     The x-coordinate of the starting point of the outline.
@@ -39,47 +44,105 @@ public class DrawOutline implements ImageOperation {
     /**
      * Applies the draw outline operation to the input image.
      *
+     * This has no effect but drawing, so it can be replayed in the background or in a batch.
+     * A outline wholly outside the image leaves it unchanged; {@link DrawActions} warns the user
+     * about that before applying it.
+     *
      * @param input The input image to apply the operation on.
      * @return The modified image with the outline drawn on it.
      */
     public BufferedImage apply(BufferedImage input) {
-        double scale = Andie.imagePanel.getScale();
-        // get the unscaled and centered region params of the rectangle
-        // Calculate the unscaled coordinates and dimensions of the region
-        int x1Scaled = (int) ((x1 - Andie.imagePanel.topLeftX) / scale);
-        int y1Scaled = (int) ((y1 - Andie.imagePanel.topLeftY) / scale);
-        int widthScaled = (int) (width / scale);
-        int heightScaled = (int) (height / scale);
+        return applyArea(input, 0, 0);
+    }
 
-        // If the whole region is outside of the image
-        if (x1Scaled > input.getWidth() || y1Scaled > input.getHeight() || x1Scaled + widthScaled < input.getMinX() || y1Scaled + heightScaled < input.getMinY()) {
-            // Play error sound, play the audio in a separate thread
-            Thread audioThread = new Thread(() -> Andie.sound.playErrorSound());
-            audioThread.start();
-            JOptionPane.showMessageDialog(null, Andie.bundle.getString("cropRegionErrorMessage")+ "       ", Andie.bundle.getString("DrawShapesError"),
-                    JOptionPane.ERROR_MESSAGE, Andie.icon);
-            return input;
-        }
+    /**
+     * Get the shape in image coordinates.
+     *
+     * @return The position and size of the shape.
+     */
+    private Rectangle getBounds() {
+        return new Rectangle(x1, y1, width, height);
+    }
 
+    /**
+     * Get the part of the image the shape is drawn over.
+     *
+     * An outline covers one pixel more than its width and height, and the edge of an oval
+     * outline is antialiased, which can touch one pixel past that.
+     *
+     * @param width  The width of the image the shape is about to be drawn on.
+     * @param height The height of the image.
+     * @return The area of the image that may change.
+     */
+    public Rectangle getRegion(int width, int height) {
+        Rectangle bounds = getBounds();
+        bounds.width++;
+        bounds.height++;
+        bounds.grow(1, 1);
+        return bounds;
+    }
+
+    /**
+     * Draw the outline on one area of a larger image.
+     *
+     * @param area The pixels of the area, which are drawn on.
+     * @param x    The x coordinate of the top left pixel of the area in the whole image.
+     * @param y    The y coordinate of the top left pixel of the area in the whole image.
+     * @return The area with the outline drawn on it.
+     */
+    public BufferedImage applyArea(BufferedImage area, int x, int y) {
+        Rectangle bounds = getBounds();
+        Graphics2D g2d = area.createGraphics();
+        g2d.translate(-x, -y);
         if (this.shape.equals("square")) {
-            Graphics2D g2d = input.createGraphics();
             g2d.setColor(colour);
-            g2d.drawRect(x1Scaled, y1Scaled, widthScaled, heightScaled);
-            g2d.dispose();
-            ImagePanel.region = null;
-            return input;
+            g2d.drawRect(bounds.x, bounds.y, bounds.width, bounds.height);
         } else if (this.shape.equals("oval")) {
-            Graphics2D g2d = input.createGraphics();
             // smooths edges
             g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
             // sets color
             g2d.setColor(colour);
             // draws outline
-            g2d.drawOval(x1Scaled, y1Scaled, widthScaled, heightScaled);
-            g2d.dispose();
-            ImagePanel.region = null;
-            return input;
+            g2d.drawOval(bounds.x, bounds.y, bounds.width, bounds.height);
         }
-        return input;
+        g2d.dispose();
+        return area;
+    }
+
+    /**
+     * Write the settings of this operation to an <code>.ops</code> file.
+     *
+     * Writes whether there is a shape name and the name itself, then the colour, as packed ARGB,
+     * and the position and size of the outline.
+     *
+     * @param out Where to write the settings.
+     * @throws IOException If the settings cannot be written.
+     */
+    public void encode(DataOutput out) throws IOException {
+        out.writeBoolean(shape != null);
+        if (shape != null) {
+            out.writeUTF(shape);
+        }
+        out.writeInt(colour.getRGB());
+        out.writeInt(x1);
+        out.writeInt(y1);
+        out.writeInt(width);
+        out.writeInt(height);
+    }
+
+    /**
+     * Rebuild an operation from the settings written by {@link #encode}.
+     *
+     * Files before version 2 held the position on the panel, which depended on the window at the
+     * time and cannot be recovered, so it is read as a position in the image.
+     *
+     * @param in      The settings.
+     * @param version The version of the <code>.ops</code> file.
+     * @return The operation.
+     * @throws IOException If the settings cannot be read.
+     */
+    static DrawOutline decode(DataInput in, int version) throws IOException {
+        String shape = in.readBoolean() ? in.readUTF() : null;
+        return new DrawOutline(shape, new Color(in.readInt(), true), in.readInt(), in.readInt(), in.readInt(), in.readInt());
     }
 }
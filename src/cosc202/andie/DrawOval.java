@@ -2,13 +2,15 @@ package cosc202.andie;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import javax.swing.JOptionPane;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * The DrawOval class represents an image operation that draws an oval shape on an image.
  * It implements the ImageOperation interface.
  */
-public class DrawOval implements ImageOperation {
+public class DrawOval implements EncodableOperation, RegionOperation {
 
     private Color colour;
     private int x1;
@@ -19,6 +21,9 @@ public class DrawOval implements ImageOperation {
     /**
      * Constructs a new DrawOval object with the specified color and coordinates.
      *
+     * The coordinates are in the image, not on the panel; use
+     * {@link ImagePanel#toImage(Rectangle)} to convert where the user drew.
+     *
      * @param colour The color of the oval.
      * @param x1     The x-coordinate of the top-left corner of the bounding rectangle of the oval.
      * @param y1     The y-coordinate of the top-left corner of the bounding rectangle of the oval.
@@ -36,39 +41,91 @@ public class DrawOval implements ImageOperation {
     /**
      * Applies the draw oval operation to the input image.
      *
+     * This has no effect but drawing, so it can be replayed in the background or in a batch.
+     * A oval wholly outside the image leaves it unchanged; {@link DrawActions} warns the user
+     * about that before applying it.
+     *
      * @param input The input image to apply the operation on.
      * @return The modified image with the oval drawn on it.
      */
     public BufferedImage apply(BufferedImage input) {
-        double scale = Andie.imagePanel.getScale();
-        // get the unscaled and centered region params of the rectangle
-        // Calculate the unscaled coordinates and dimensions of the region
-        int x1Scaled = (int) ((x1 - Andie.imagePanel.topLeftX) / scale);
-        int y1Scaled = (int) ((y1 - Andie.imagePanel.topLeftY) / scale);
-        int widthScaled = (int) (width / scale);
-        int heightScaled = (int) (height / scale);
+        return applyArea(input, 0, 0);
+    }
+
+    /**
+     * Get the oval in image coordinates.
+     *
+     * @return The position and size of the oval.
+     */
+    private Rectangle getBounds() {
+        return new Rectangle(x1, y1, width, height);
+    }
 
-        // If the whole region is outside of the image
-        if (x1Scaled > input.getWidth() || y1Scaled > input.getHeight() || x1Scaled + widthScaled < input.getMinX() || y1Scaled + heightScaled < input.getMinY()) {
-            // Play error sound, play the audio in a separate thread
-            Thread audioThread = new Thread(() -> Andie.sound.playErrorSound());
-            audioThread.start();
-            JOptionPane.showMessageDialog(null, Andie.bundle.getString("cropRegionErrorMessage")+ "       ", Andie.bundle.getString("DrawShapesError"),
-                    JOptionPane.ERROR_MESSAGE, Andie.icon);
-            return input;
-        }
+    /**
+     * Get the part of the image the oval is drawn over.
+     *
+     * The edge of the oval is antialiased, which can touch one pixel past its bounds.
+     *
+     * @param width  The width of the image the oval is about to be drawn on.
+     * @param height The height of the image.
+     * @return The area of the image that may change.
+     */
+    public Rectangle getRegion(int width, int height) {
+        Rectangle bounds = getBounds();
+        bounds.grow(1, 1);
+        return bounds;
+    }
 
-        Graphics2D g2d = input.createGraphics();
+    /**
+     * Draw the oval on one area of a larger image.
+     *
+     * @param area The pixels of the area, which are drawn on.
+     * @param x    The x coordinate of the top left pixel of the area in the whole image.
+     * @param y    The y coordinate of the top left pixel of the area in the whole image.
+     * @return The area with the oval drawn on it.
+     */
+    public BufferedImage applyArea(BufferedImage area, int x, int y) {
+        Rectangle bounds = getBounds();
+        Graphics2D g2d = area.createGraphics();
+        g2d.translate(-x, -y);
         // smooths edges
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         // sets color
         g2d.setColor(colour);
         // draws oval
-        g2d.fillOval(x1Scaled, y1Scaled, widthScaled, heightScaled);
+        g2d.fillOval(bounds.x, bounds.y, bounds.width, bounds.height);
         g2d.dispose();
-        ImagePanel.region = null;
-        return input;
+        return area;
     }
-}
 
+    /**
+     * Write the settings of this operation to an <code>.ops</code> file.
+     *
+     * Writes the colour, as packed ARGB, and the position and size of the oval.
+     *
+     * @param out Where to write the settings.
+     * @throws IOException If the settings cannot be written.
+     */
+    public void encode(DataOutput out) throws IOException {
+        out.writeInt(colour.getRGB());
+        out.writeInt(x1);
+        out.writeInt(y1);
+        out.writeInt(width);
+        out.writeInt(height);
+    }
 
+    /**
+     * Rebuild an operation from the settings written by {@link #encode}.
+     *
+     * Files before version 2 held the position on the panel, which depended on the window at the
+     * time and cannot be recovered, so it is read as a position in the image.
+     *
+     * @param in      The settings.
+     * @param version The version of the <code>.ops</code> file.
+     * @return The operation.
+     * @throws IOException If the settings cannot be read.
+     */
+    static DrawOval decode(DataInput in, int version) throws IOException {
+        return new DrawOval(new Color(in.readInt(), true), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+    }
+}
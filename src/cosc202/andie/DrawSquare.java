@@ -2,13 +2,15 @@ package cosc202.andie;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import javax.swing.JOptionPane;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * The DrawSquare class represents an image operation that draws a square shape on an image.
  * It implements the ImageOperation interface.
  */
-public class DrawSquare implements ImageOperation {
+public class DrawSquare implements EncodableOperation, RegionOperation {
 
     private Color colour;
     private int x1;
@@ -19,6 +21,9 @@ public class DrawSquare implements ImageOperation {
     /**
      * Constructs a new DrawSquare object with the specified color and coordinates.
      *
+     * The coordinates are in the image, not on the panel; use
+     * {@link ImagePanel#toImage(Rectangle)} to convert where the user drew.
+     *
      * @param colour The color of the square.
      * @param x1     The x-coordinate of the top-left corner of the square.
      * @param y1     The y-coordinate of the top-left corner of the square.
@@ -36,34 +41,85 @@ public class DrawSquare implements ImageOperation {
     /**
      * Applies the draw square operation to the input image.
      *
+     * This has no effect but drawing, so it can be replayed in the background or in a batch.
+     * A square wholly outside the image leaves it unchanged; {@link DrawActions} warns the user
+     * about that before applying it.
+     *
      * @param input The input image to apply the operation on.
      * @return The modified image with the square drawn on it.
      */
     public BufferedImage apply(BufferedImage input) {
-        double scale = Andie.imagePanel.getScale();
-        // get the unscaled and centered region params of the rectangle
-        // Calculate the unscaled coordinates and dimensions of the region
-        int x1Scaled = (int) ((x1 - Andie.imagePanel.topLeftX) / scale);
-        int y1Scaled = (int) ((y1 - Andie.imagePanel.topLeftY) / scale);
-        int widthScaled = (int) (width / scale);
-        int heightScaled = (int) (height / scale);
+        return applyArea(input, 0, 0);
+    }
+
+    /**
+     * Get the square in image coordinates.
+     *
+     * @return The position and size of the square.
+     */
+    private Rectangle getBounds() {
+        return new Rectangle(x1, y1, width, height);
+    }
 
-        // If the whole region is outside of the image
-        if (x1Scaled > input.getWidth() || y1Scaled > input.getHeight() || x1Scaled + widthScaled < input.getMinX() || y1Scaled + heightScaled < input.getMinY()) {
-            // Play error sound, play the audio in a separate thread
-            Thread audioThread = new Thread(() -> Andie.sound.playErrorSound());
-            audioThread.start();
-            JOptionPane.showMessageDialog(null, Andie.bundle.getString("cropRegionErrorMessage")+ "       ", Andie.bundle.getString("DrawShapesError"),
-                    JOptionPane.ERROR_MESSAGE, Andie.icon);
-            return input;
-        }
-        
-        Graphics2D g2d = input.createGraphics();
+    /**
+     * Get the part of the image the square is drawn over.
+     *
+     * The square is filled without antialiasing, so this is exactly the square.
+     *
+     * @param width  The width of the image the square is about to be drawn on.
+     * @param height The height of the image.
+     * @return The area of the image that may change.
+     */
+    public Rectangle getRegion(int width, int height) {
+        return getBounds();
+    }
+
+    /**
+     * Draw the square on one area of a larger image.
+     *
+     * @param area The pixels of the area, which are drawn on.
+     * @param x    The x coordinate of the top left pixel of the area in the whole image.
+     * @param y    The y coordinate of the top left pixel of the area in the whole image.
+     * @return The area with the square drawn on it.
+     */
+    public BufferedImage applyArea(BufferedImage area, int x, int y) {
+        Rectangle bounds = getBounds();
+        Graphics2D g2d = area.createGraphics();
+        g2d.translate(-x, -y);
         g2d.setColor(colour);
-        g2d.fillRect(x1Scaled, y1Scaled, widthScaled, heightScaled);
+        g2d.fillRect(bounds.x, bounds.y, bounds.width, bounds.height);
         g2d.dispose();
-        ImagePanel.region = null;
-        return input;
+        return area;
     }
-}
 
+    /**
+     * Write the settings of this operation to an <code>.ops</code> file.
+     *
+     * Writes the colour, as packed ARGB, and the position and size of the square.
+     *
+     * @param out Where to write the settings.
+     * @throws IOException If the settings cannot be written.
+     */
+    public void encode(DataOutput out) throws IOException {
+        out.writeInt(colour.getRGB());
+        out.writeInt(x1);
+        out.writeInt(y1);
+        out.writeInt(width);
+        out.writeInt(height);
+    }
+
+    /**
+     * Rebuild an operation from the settings written by {@link #encode}.
+     *
+     * Files before version 2 held the position on the panel, which depended on the window at the
+     * time and cannot be recovered, so it is read as a position in the image.
+     *
+     * @param in      The settings.
+     * @param version The version of the <code>.ops</code> file.
+     * @return The operation.
+     * @throws IOException If the settings cannot be read.
+     */
+    static DrawSquare decode(DataInput in, int version) throws IOException {
+        return new DrawSquare(new Color(in.readInt(), true), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+    }
+}
@@ -199,7 +199,7 @@ public class EditActions {
      * Action to undo all {@link ImageOperation}.
      * </p>
      * 
-     * @see EditableImage#undo()
+     * @see EditableImage#undoAll()
      * @author Hannah Srzich
      */
     public class UndoAllAction extends ImageAction {
@@ -241,9 +241,7 @@ public class EditActions {
                 JOptionPane.showMessageDialog(null, message, title, JOptionPane.ERROR_MESSAGE, Andie.icon);
                 return;
             }
-            try {
-                target.getImage().undo();
-            } catch (Exception undoException) {
+            if (!target.getImage().hasOps()) {
                 // Play error sound, play the audio in a separate thread
                 Thread audioThread = new Thread(() -> Andie.sound.playErrorSound());
                 audioThread.start();
@@ -252,6 +250,7 @@ public class EditActions {
                 JOptionPane.showMessageDialog(null, message, title, JOptionPane.ERROR_MESSAGE, Andie.icon);
                 return;
             }
+            // Undo everything in a single jump back to the original
             target.getImage().undoAll();
             target.repaint();
             target.getParent().revalidate();
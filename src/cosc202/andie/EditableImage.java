@@ -22,9 +22,9 @@ import java.awt.*;
  * </p>
  * 
  * <p>
- * Internally the EditableImage has two {@link BufferedImage}s - the original
- * image
- * and the result of applying the current set of operations to it.
+ * Internally the EditableImage has two images - the original image
+ * and the result of applying the current set of operations to it, which is kept as a
+ * {@link TiledRaster} so that it can share tiles with the original and with its snapshots.
  * The operations themselves are stored on a {@link Stack}, with a second
  * {@link Stack}
  * being used to allow undone operations to be redone.
@@ -42,10 +42,12 @@ public class EditableImage {
 
     /** The original image. This should never be altered by ANDIE. */
     private BufferedImage original;
+    /** The tiles of the {@link original} image, which {@link current} starts out sharing. */
+    private TiledRaster originalTiles;
     /**
      * The current image, the result of applying {@link ops} to {@link original}.
      */
-    private BufferedImage current;
+    private TiledRaster current;
     /** The sequence of operations currently applied to the image. */
     public Stack<ImageOperation> ops;
     /** A memory of 'undone' operations to support 'redo'. */
@@ -58,6 +60,38 @@ public class EditableImage {
     public Stack<ImageOperation> macro;
     /** tells us if the macro is recording so we know weather to add actions to it */
     public boolean recording;
+    /** Intermediate results of the operation stack, used to speed up {@link refresh}. */
+    private SnapshotCache snapshots;
+    /** Time spent applying operations since the last snapshot was taken, in nanoseconds. */
+    private long costSinceSnapshot;
+    /**
+     * The number of operations in {@link ops} that have been applied to {@link current}.
+     * Any after that are waiting to be computed, which only happens in {@link lazy} mode.
+     */
+    private int applied;
+    /** Whether tileable operations are left to be computed only where they are seen. */
+    private boolean lazy;
+    /** The render of the operations waiting to be computed, made when it is first needed. */
+    private PendingRender pendingRender;
+    /** The replay of the saved operations after the image was opened, while it is still running. */
+    private HistoryRestore restoring;
+    /**
+     * The pixels changed by the {@link RegionOperation}s on the stack, by the stack depth of their
+     * result, so they can be undone and redone without rebuilding the image.
+     */
+    private Map<Integer, RegionPatch> patches;
+
+    /**
+     * How long operations may take to recompute before a snapshot is taken, in
+     * nanoseconds. Cheap operations are not worth the memory of a snapshot.
+     */
+    private static final long SNAPSHOT_COST_THRESHOLD = 50_000_000L;
+
+    /**
+     * Images with at least this many pixels are opened in {@link lazy} mode, since filtering all
+     * of them takes long enough to notice even though only part of them fits on screen.
+     */
+    public static final long LAZY_PIXEL_THRESHOLD = 16_000_000L;
 
     /**
      * <p>
@@ -71,6 +105,7 @@ public class EditableImage {
      */
     public EditableImage() {
         original = null;
+        originalTiles = null;
         current = null;
         ops = new Stack<ImageOperation>();
         redoOps = new Stack<ImageOperation>();
@@ -78,6 +113,13 @@ public class EditableImage {
         opsFilename = null;
         macro = new Stack<ImageOperation>();
         recording = false;
+        snapshots = new SnapshotCache();
+        costSinceSnapshot = 0;
+        applied = 0;
+        lazy = false;
+        pendingRender = null;
+        restoring = null;
+        patches = new HashMap<Integer, RegionPatch>();
     }
 
     /**
@@ -163,54 +205,18 @@ public class EditableImage {
 
     /**
      * <p>
-     * Make a 'deep' copy of a BufferedImage.
+     * Make a copy of this image and its history, such as to preview an operation on.
      * </p>
      * 
      * <p>
-     * Object instances in Java are accessed via references, which means that
-     * assignment does
-     * not copy an object, it merely makes another reference to the original.
-     * In order to make an independent copy, the {@code clone()} method is generally
-     * used.
-     * {@link BufferedImage} does not implement {@link Cloneable} interface, and so
-     * the
-     * {@code clone()} method is not accessible.
+     * The copy shares the tiles of the current image, so making it takes time in proportion to the
+     * number of tiles, and only the tiles the copy writes to are ever duplicated.
      * </p>
      * 
-     * <p>
-     * This method makes a cloned copy of a BufferedImage.
-     * This requires knoweldge of some details about the internals of the
-     * BufferedImage,
-     * but essentially comes down to making a new BufferedImage made up of copies of
-     * the internal parts of the input.
-     * </p>
-     * 
-     * <p>
-     * This code is taken from StackOverflow:
-     * <a href=
-     * "https://stackoverflow.com/a/3514297">https://stackoverflow.com/a/3514297</a>
-     * in response to
-     * <a href=
-     * "https://stackoverflow.com/questions/3514158/how-do-you-clone-a-bufferedimage">https://stackoverflow.com/questions/3514158/how-do-you-clone-a-bufferedimage</a>.
-     * Code by Klark used under the CC BY-SA 2.5 license.
-     * </p>
-     * 
-     * <p>
-     * This method (only) is released under
-     * <a href="https://creativecommons.org/licenses/by-sa/2.5/">CC BY-SA 2.5</a>
-     * </p>
-     * 
-     * @param bi The BufferedImage to copy.
-     * @return A deep copy of the input.
+     * @return A copy that can be changed without changing this image.
      */
-    private static BufferedImage deepCopy(BufferedImage bi) {
-        ColorModel cm = bi.getColorModel();
-        boolean isAlphaPremultiplied = cm.isAlphaPremultiplied();
-        WritableRaster raster = bi.copyData(null);
-        return new BufferedImage(cm, raster, isAlphaPremultiplied, null);
-    }
-
     public EditableImage deepCopyEditable() {
+        awaitRestore();
         EditableImage newImage = new EditableImage();
         Stack<ImageOperation> newRedoOps = new Stack<>();
         for (ImageOperation op : redoOps) {
@@ -220,12 +226,18 @@ public class EditableImage {
         for (ImageOperation op : ops) {
             newOps.push(op);
         }
-        newImage.original = deepCopy(original);
-        newImage.current = deepCopy(current);
+        // the original is never altered, so it can be shared as it is
+        newImage.original = original;
+        newImage.originalTiles = originalTiles.copy();
+        newImage.current = current.copy();
         newImage.ops = newOps;
         newImage.redoOps = newRedoOps;
+        newImage.applied = applied;
+        newImage.lazy = lazy;
         newImage.imageFilename = null;
         newImage.opsFilename = null;
+        // Copies are only used for previews, which are never undone
+        newImage.snapshots = new SnapshotCache(0);
         return newImage;
     }
 
@@ -243,36 +255,85 @@ public class EditableImage {
      * read the operations from <code>some/path/to/image.png.ops</code>.
      * </p>
      * 
+     * <p>
+     * The image is shown as soon as it is read.
+     * If the result of its operations was saved with them and still matches, that is shown;
+     * otherwise the operations are replayed in the background by a {@link HistoryRestore}, and
+     * anything that needs the result before it is ready waits for it.
+     * </p>
+     * 
      * @param filePath The file to open the image from.
      * @throws Exception If something goes wrong.
      */
     public void open(String filePath) throws Exception {
+        AndieEvents.FileEvent event = new AndieEvents.FileEvent();
+        event.begin();
+        read(filePath);
+        commitFileEvent(event, "open", new File(imageFilename), new File(opsFilename), original);
+    }
+
+    /**
+     * <p>
+     * Read an image and its operations from a file, as {@link open} does.
+     * </p>
+     * 
+     * @param filePath The file to open the image from.
+     * @throws Exception If something goes wrong.
+     */
+    private void read(String filePath) throws Exception {
         imageFilename = filePath;
         opsFilename = imageFilename + ".ops";
         File imageFile = new File(imageFilename);
         original = ImageIO.read(imageFile);
-        current = deepCopy(original);
+        releaseTiles();
+        originalTiles = TiledRaster.wrap(original);
+        current = originalTiles.copy();
         ops = new Stack<ImageOperation>(); // clear the ops
         redoOps = new Stack<ImageOperation>();
+        snapshots.clear();
+        patches.clear();
+        costSinceSnapshot = 0;
+        applied = 0;
+        discardPending();
+        cancelRestore();
+        lazy = (long) original.getWidth() * original.getHeight() >= LAZY_PIXEL_THRESHOLD;
 
+        File opsFile = new File(opsFilename);
+        if (!opsFile.isFile()) {
+            return;
+        }
         try {
-            FileInputStream fileIn = new FileInputStream(this.opsFilename);
-            ObjectInputStream objIn = new ObjectInputStream(fileIn);
-
-            // Silence the Java compiler warning about type casting.
-            // Understanding the cause of the warning is way beyond
-            // the scope of COSC202, but if you're interested, it has
-            // to do with "type erasure" in Java: the compiler cannot
-            // produce code that fails at this point in all cases in
-            // which there is actually a type mismatch for one of the
-            // elements within the Stack, i.e., a non-ImageOperation.
-            objIn.close();
-            fileIn.close();
+            ops = OpsFile.read(opsFile);
         } catch (Exception ex) {
-            // Could be no file or something else. Carry on for now.
+            // The history cannot be read, so open the image without it
+            ops = new Stack<ImageOperation>();
+            return;
+        }
+        BufferedImage rendered = RenderCache.read(imageFile, opsFile);
+        if (rendered != null) {
+            current.release();
+            current = TiledRaster.wrap(rendered);
+            applied = ops.size();
+            return;
+        }
+        // Tileable operations at the top of the stack are left for lazy mode as usual
+        int end = ops.size();
+        while (end > 0 && isDeferred(ops.get(end - 1))) {
+            end--;
+        }
+        if (end > 0) {
+            HistoryRestore restore = new HistoryRestore(original, ops.subList(0, end));
+            restoring = restore;
+            restore.addListener(() -> {
+                // take the result as soon as it is ready, unless something has already waited for it
+                if (restoring == restore && restore.isDone()) {
+                    awaitRestore();
+                }
+            });
+            restore.start();
         }
-        this.refresh();
     }
+
     /**
      * The `makeFrameDimensions` method is responsible for adjusting the dimensions and position of the main application frame
      * based on the size of the current image.
@@ -329,9 +390,16 @@ public class EditableImage {
      * the current operations to <code>some/path/to/image.png.ops</code>.
      * </p>
      * 
+     * <p>
+     * If the operations have all been computed, the result is saved in a {@link RenderCache} as
+     * well, so it can be shown straight away when the image is opened again.
+     * </p>
+     * 
      * @throws Exception If something goes wrong.
      */
     public void save() throws Exception {
+        AndieEvents.FileEvent event = new AndieEvents.FileEvent();
+        event.begin();
         if (this.opsFilename == null) {
             this.opsFilename = this.imageFilename + ".ops";
         }
@@ -339,11 +407,46 @@ public class EditableImage {
         String extension = imageFilename.substring(1 + imageFilename.lastIndexOf(".")).toLowerCase();
         ImageIO.write(original, extension, new File(imageFilename));
         // Write operations file
-        FileOutputStream fileOut = new FileOutputStream(this.opsFilename);
-        ObjectOutputStream objOut = new ObjectOutputStream(fileOut);
-        objOut.writeObject(this.ops);
-        objOut.close();
-        fileOut.close();
+        File opsFile = new File(this.opsFilename);
+        OpsFile.write(this.ops, opsFile);
+        // Save the result too if it is already computed, so reopening does not have to replay it
+        if (!ops.isEmpty() && restoring == null && applied == ops.size()) {
+            try {
+                RenderCache.write(new File(imageFilename), opsFile, current.toBufferedImage());
+            } catch (IOException e) {
+                RenderCache.delete(opsFile);
+            }
+        } else {
+            RenderCache.delete(opsFile);
+        }
+        commitFileEvent(event, "save", new File(imageFilename), opsFile, original);
+    }
+
+    /**
+     * <p>
+     * Record that an image file was read or written, if a flight recording is running.
+     * </p>
+     * 
+     * @param event   The event, begun before the file was read or written.
+     * @param action  What was done: <code>open</code>, <code>save</code> or <code>export</code>.
+     * @param file    The image file.
+     * @param opsFile The operations file that was read or written with it, or null if there was none.
+     * @param image   The image that was read or written.
+     */
+    private static void commitFileEvent(AndieEvents.FileEvent event, String action, File file, File opsFile,
+            BufferedImage image) {
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        String name = file.getName();
+        event.action = action;
+        event.path = file.getPath();
+        event.format = name.substring(1 + name.lastIndexOf(".")).toLowerCase();
+        event.bytes = file.length() + (opsFile != null && opsFile.isFile() ? opsFile.length() : 0);
+        event.width = image == null ? 0 : image.getWidth();
+        event.height = image == null ? 0 : image.getHeight();
+        event.commit();
     }
 
     /**
@@ -385,6 +488,8 @@ public class EditableImage {
      * @author Hannah Srzich, adapted from Werner Kvalem Vesterås
      */
     public void export(String imageFilename, String extension) throws IOException {
+        AndieEvents.FileEvent event = new AndieEvents.FileEvent();
+        event.begin();
         try {
             BufferedImage currentImage = getCurrentImage(); // Retrieve image.
             File outputFile = new File(imageFilename + "." + extension);
@@ -403,6 +508,7 @@ public class EditableImage {
             } else {
                 throw new IllegalArgumentException(Andie.bundle.getString("unsupError") + " " + extension);
             }
+            commitFileEvent(event, "export", outputFile, null, currentImage);
         } catch (IOException e) {
             System.err.println(Andie.bundle.getString("expError") + " " + e.getMessage());
             e.printStackTrace();
@@ -418,7 +524,37 @@ public class EditableImage {
      * @param op The operation to apply.
      */
     public void apply(ImageOperation op) {
-        current = op.apply(current);
+        // Any snapshots past this point belong to a different history
+        invalidateAbove(ops.size());
+        push(op);
+    }
+
+    /**
+     * <p>
+     * Apply an {@link ImageOperation} and add it to the top of the stack.
+     * </p>
+     * 
+     * @param op The operation to apply.
+     */
+    private void push(ImageOperation op) {
+        if (isDeferred(op)) {
+            // computed later, where it is seen
+            discardPending();
+        } else {
+            materialise();
+            RegionPatch patch = op instanceof RegionOperation ? RegionPatch.before((RegionOperation) op, current) : null;
+            try {
+                current = applyAndSnapshot(op, current, ops.size() + 1, OperationMetrics.Trigger.APPLY);
+            } catch (RuntimeException | Error e) {
+                // the operation may have written some tiles in place before it failed
+                recover(applied, e);
+                throw e;
+            }
+            applied = ops.size() + 1;
+            if (patch != null && patch.after(current)) {
+                patches.put(applied, patch);
+            }
+        }
         // add to ops
         ops.add(op);
         if (recording) {
@@ -426,12 +562,84 @@ public class EditableImage {
         }
     }
 
+    /**
+     * <p>
+     * Apply an operation and take a snapshot of the result if it is worth keeping.
+     * </p>
+     * 
+     * <p>
+     * A snapshot is taken once the operations applied since the last snapshot have
+     * taken longer than {@link SNAPSHOT_COST_THRESHOLD} to compute, so that
+     * expensive filters are not recomputed on undo, while runs of cheap
+     * operations do not use up the memory budget.
+     * </p>
+     * 
+     * <p>
+     * The operation is run through the {@link TileEngine}, so operations that can be
+     * split into tiles are applied in parallel, and is recorded in the {@link OperationMetrics}.
+     * The snapshot shares the tiles of the result, so it costs no copying until one of them
+     * is written to.
+     * </p>
+     * 
+     * @param op      The operation to apply.
+     * @param input   The image to apply it to, which is used up.
+     * @param depth   The stack depth of the result.
+     * @param trigger Whether the operation is being applied or replayed.
+     * @return The result of applying the operation.
+     */
+    private TiledRaster applyAndSnapshot(ImageOperation op, TiledRaster input, int depth,
+            OperationMetrics.Trigger trigger) {
+        long start = System.nanoTime();
+        TiledRaster result = OperationMetrics.apply(op, input, trigger);
+        costSinceSnapshot += System.nanoTime() - start;
+        if (costSinceSnapshot >= SNAPSHOT_COST_THRESHOLD) {
+            snapshots.put(depth, result);
+            costSinceSnapshot = 0;
+        }
+        return result;
+    }
+
+    /**
+     * <p>
+     * Apply a sequence of {@link ImageOperation}s to this image, such as a macro.
+     * </p>
+     * 
+     * <p>
+     * The result is the same as calling {@link apply} on each operation in turn, but the image is
+     * only rebuilt once at the end, so runs of per-pixel operations are fused into one pass.
+     * </p>
+     * 
+     * @param newOps The operations to apply, in order.
+     */
+    public void applyAll(java.util.List<? extends ImageOperation> newOps) {
+        if (newOps.isEmpty()) {
+            return;
+        }
+        invalidateAbove(ops.size());
+        for (ImageOperation op : newOps) {
+            ops.add(op);
+            if (recording) {
+                macro.add(op);
+            }
+        }
+        refresh();
+    }
+
     /**
      * <p>
      * Undo the last {@link ImageOperation} applied to the image.
      * </p>
+     * 
+     * <p>
+     * A {@link RegionOperation} is undone by putting back the pixels it changed; anything else
+     * rebuilds the image.
+     * </p>
      */
     public void undo() throws Exception {
+        awaitRestore();
+        if (undoPatch()) {
+            return;
+        }
         try {
             redoOps.push(ops.pop());
             if(recording){
@@ -449,19 +657,64 @@ public class EditableImage {
      * </p>
      */
     public void undoAll() {
-        // Put all operations on the redo ops stack.
-        boolean loop = true;
         if(recording){
             macro = new Stack<ImageOperation>();
         }
-        while (loop) {
-            try {
-                redoOps.push(ops.pop());
-            } catch (EmptyStackException e) {
-                loop = false;
+        // Put all operations on the redo ops stack, then rebuild once.
+        goToStep(0);
+    }
+
+    /**
+     * <p>
+     * Jump to a point in the history of the image.
+     * </p>
+     * 
+     * <p>
+     * The history is moved to the state where the first <code>step</code>
+     * operations are applied.
+     * Going back moves operations onto the redo stack, as if {@link undo} had been
+     * called repeatedly, and going forward takes them off the redo stack, as if
+     * {@link redo} had been called repeatedly.
+     * Either way the image is only rebuilt once, starting from the nearest
+     * snapshot of the target state, unless the only operations in between are
+     * {@link RegionOperation}s, which are stepped over with their patches.
+     * </p>
+     * 
+     * @param step The number of operations that should be applied, between 0 and
+     *             {@link getOpsSize} plus the number of operations that can be
+     *             redone.
+     * @throws IllegalArgumentException If the step is not in the history.
+     */
+    public void goToStep(int step) {
+        if (step < 0 || step > ops.size() + redoOps.size()) {
+            throw new IllegalArgumentException("Step " + step + " is not in the history");
+        }
+        if (step == ops.size()) {
+            return;
+        }
+        awaitRestore();
+        // Step over region operations by patching the image, as long as they are next
+        while (ops.size() > step && undoPatch()) {
+        }
+        while (ops.size() < step && redoPatch()) {
+        }
+        if (step == ops.size()) {
+            return;
+        }
+        while (ops.size() > step) {
+            redoOps.push(ops.pop());
+            if (recording && !macro.isEmpty()) {
+                macro.pop();
             }
-            refresh();
         }
+        while (ops.size() < step) {
+            ImageOperation op = redoOps.pop();
+            ops.push(op);
+            if (recording) {
+                macro.push(op);
+            }
+        }
+        refresh();
     }
 
     /**
@@ -470,26 +723,399 @@ public class EditableImage {
      * </p>
      */
     public void redo() throws Exception {
+        awaitRestore();
+        if (redoPatch()) {
+            return;
+        }
         try {
             if(recording){
                 macro.push(redoOps.peek());
             }
-            apply(redoOps.pop());
+            ImageOperation op = redoOps.pop();
+            if (snapshots.contains(ops.size() + 1)) {
+                // The result of this operation is still cached from before it was undone
+                current.release();
+                current = snapshots.restoreTiles(ops.size() + 1);
+                costSinceSnapshot = 0;
+                ops.add(op);
+                applied = ops.size();
+                discardPending();
+                if (recording) {
+                    macro.add(op);
+                }
+                return;
+            }
+            // Redoing replays the same history, so deeper snapshots stay valid
+            push(op);
         } catch (EmptyStackException e) {
             throw new Exception(Andie.bundle.getString("undoErrorNoneMessage"));
         }
     }
 
+    /**
+     * <p>
+     * Change an operation in the history of the image, such as to try a different setting for a
+     * filter applied several steps ago.
+     * </p>
+     * 
+     * <p>
+     * The operations after it are kept, and applied on top of the new one.
+     * If both the old and new operations are {@link RegionOperation}s and everything after them
+     * is local, only the tiles the change reaches are recomputed, as worked out by
+     * {@link TileDependencies}, and the rest of the image is kept.
+     * Otherwise the image is rebuilt from the nearest snapshot before the change.
+     * In {@link lazy} mode, operations that have not been computed yet are left pending as usual.
+     * </p>
+     * 
+     * @param index The position of the operation in the history, from 0 for the first applied.
+     * @param op    The operation to put in its place.
+     * @throws IllegalArgumentException If there is no operation at that position.
+     */
+    public void replaceOperation(int index, ImageOperation op) {
+        awaitRestore();
+        if (index < 0 || index >= ops.size()) {
+            throw new IllegalArgumentException("Operation " + index + " is not in the history");
+        }
+        ImageOperation old = ops.get(index);
+        int start = snapshots.nearest(index);
+        ops.set(index, op);
+        if (recording && macro != null) {
+            int recorded = macro.lastIndexOf(old);
+            if (recorded >= 0) {
+                macro.set(recorded, op);
+            }
+        }
+        // Snapshots and patches of the old operation and everything after it no longer match
+        invalidateAbove(index);
+        discardPending();
+        if (index >= applied) {
+            // not computed yet, so there is nothing to change
+            return;
+        }
+
+        if (old instanceof RegionOperation && op instanceof RegionOperation && TileDependencies.isLocal(ops, start, applied)) {
+            int width = current.getWidth();
+            int height = current.getHeight();
+            java.util.List<Rectangle> changed = new ArrayList<Rectangle>();
+            changed.add(((RegionOperation) old).getRegion(width, height));
+            changed.add(((RegionOperation) op).getRegion(width, height));
+            // each area is recomputed from the image before the change, so overlaps do no harm
+            for (Rectangle area : changed) {
+                Rectangle dirty = TileDependencies.spread(ops, index + 1, applied, area, width, height);
+                for (Rectangle part : TileDependencies.tilesOver(dirty, width, height)) {
+                    BufferedImage pixels = TileDependencies.render(region -> start == 0
+                            ? originalTiles.copyArea(region)
+                            : snapshots.restoreArea(start, region), ops, start, applied, part, width, height);
+                    current.write(pixels, part.x, part.y);
+                }
+            }
+            return;
+        }
+
+        restoreSnapshot(start);
+        refresh();
+    }
+
+    /**
+     * Undo the top operation by putting back the pixels it changed, if it has a patch.
+     * 
+     * @return True if the operation was undone, or false if nothing was changed because the
+     *         image has to be rebuilt instead.
+     */
+    private boolean undoPatch() {
+        RegionPatch patch = patches.get(ops.size());
+        if (patch == null || applied != ops.size() || patch.getOperation() != ops.peek()) {
+            return false;
+        }
+        patch.undo(current);
+        redoOps.push(ops.pop());
+        if (recording && !macro.isEmpty()) {
+            macro.pop();
+        }
+        applied = ops.size();
+        discardPending();
+        return true;
+    }
+
+    /**
+     * Redo the next operation by putting back the pixels it changed, if it has a patch.
+     * 
+     * @return True if the operation was redone, or false if nothing was changed because it has
+     *         to be applied again instead.
+     */
+    private boolean redoPatch() {
+        RegionPatch patch = patches.get(ops.size() + 1);
+        if (patch == null || applied != ops.size() || redoOps.isEmpty() || patch.getOperation() != redoOps.peek()) {
+            return false;
+        }
+        patch.redo(current);
+        ImageOperation op = redoOps.pop();
+        ops.push(op);
+        if (recording) {
+            macro.push(op);
+        }
+        applied = ops.size();
+        discardPending();
+        return true;
+    }
+
+    /**
+     * Go back to the image at a snapshot, sharing its tiles.
+     * 
+     * @param depth The depth of the snapshot, or 0 for the original image.
+     */
+    private void restoreSnapshot(int depth) {
+        current.release();
+        current = depth == 0 ? originalTiles.copy() : snapshots.restoreTiles(depth);
+        applied = depth;
+        costSinceSnapshot = 0;
+    }
+
+    /**
+     * <p>
+     * Rebuild {@link current} after an operation failed part way through it.
+     * </p>
+     * 
+     * <p>
+     * An operation that writes its tiles in place may have changed some of them before it failed,
+     * so the image is rebuilt from the nearest snapshot at or below the last depth that was
+     * complete, and left there.
+     * The operations above that depth are not applied until the image is next refreshed.
+     * If the rebuild fails too, its exception is added to the original one and the image is left
+     * at whatever depth it got back to.
+     * </p>
+     * 
+     * @param depth The depth of the last state that was complete.
+     * @param cause The exception thrown by the operation that failed.
+     */
+    private void recover(int depth, Throwable cause) {
+        try {
+            restoreSnapshot(snapshots.nearest(depth));
+            replay(applied, depth);
+            applied = depth;
+        } catch (RuntimeException | Error e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Give up the tiles of the original and current images, because they are being replaced.
+     */
+    private void releaseTiles() {
+        if (current != null) {
+            current.release();
+        }
+        if (originalTiles != null) {
+            originalTiles.release();
+        }
+    }
+
+    /**
+     * Forget the snapshots and patches of a history that is being replaced.
+     * 
+     * @param depth The stack depth the new history starts from.
+     */
+    private void invalidateAbove(int depth) {
+        snapshots.invalidateAbove(depth);
+        patches.keySet().removeIf(key -> key > depth);
+    }
+
     /**
      * <p>
      * Get the current image after the operations have been applied.
      * </p>
      * 
+     * <p>
+     * In {@link lazy} mode, any operations that have not been computed yet are applied to the
+     * whole image first.
+     * To show the image without doing that, use {@link getPendingRender}.
+     * </p>
+     * 
+     * <p>
+     * The image is for reading, such as to show or export it, and must not be changed; operations
+     * should be {@link apply}ed instead.
+     * It is not a copy: it holds the pixels of the current image, which are shared with any
+     * snapshot of the same step, with the original image if nothing has been applied, and with
+     * copies of this EditableImage, so drawing on it would change those too and the history would
+     * no longer replay to what is shown.
+     * Copy it first if it has to be changed.
+     * </p>
+     * 
      * @return The result of applying all of the current operations to the
      *         {@link original} image.
      */
     public BufferedImage getCurrentImage() {
-        return current;
+        materialise();
+        return current.toBufferedImage();
+    }
+
+    /**
+     * <p>
+     * Get the width of the current image, without computing any pending operations.
+     * </p>
+     * 
+     * @return The width of the current image in pixels.
+     */
+    public int getWidth() {
+        // pending operations are all tileable, so they never change the size, and while the saved
+        // operations are being restored the image shown is the original
+        return current.getWidth();
+    }
+
+    /**
+     * <p>
+     * Get the height of the current image, without computing any pending operations.
+     * </p>
+     * 
+     * @return The height of the current image in pixels.
+     */
+    public int getHeight() {
+        return current.getHeight();
+    }
+
+    /**
+     * <p>
+     * Check if tileable operations are left to be computed where they are seen.
+     * </p>
+     * 
+     * @return True if the image is in lazy mode.
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * <p>
+     * Turn lazy mode on or off.
+     * </p>
+     * 
+     * <p>
+     * In lazy mode, operations that can be applied one tile at a time are not computed when they
+     * are applied.
+     * They are kept in a {@link PendingRender}, which the {@link ImagePanel} uses to compute just
+     * the tiles that are on screen, and are only applied to the whole image when something needs
+     * all of it, such as {@link getCurrentImage}, or when an operation that cannot be tiled is
+     * applied after them.
+     * Large images are opened in lazy mode.
+     * Turning lazy mode off computes any pending operations.
+     * </p>
+     * 
+     * @param lazy True to leave tileable operations until they are seen.
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+        if (!lazy) {
+            materialise();
+        }
+    }
+
+    /**
+     * <p>
+     * Get the operations that have been applied but not computed yet.
+     * </p>
+     * 
+     * @return The pending operations and the image they apply to, or null if there are none.
+     */
+    public PendingRender getPendingRender() {
+        if (restoring != null || applied >= ops.size()) {
+            return null;
+        }
+        if (pendingRender == null) {
+            java.util.List<TileableOperation> pending = new ArrayList<TileableOperation>();
+            for (int i = applied; i < ops.size(); i++) {
+                if (!isDeferred(ops.get(i))) {
+                    // only happens if lazy mode was turned on with operations waiting
+                    materialise();
+                    return null;
+                }
+                pending.add((TileableOperation) ops.get(i));
+            }
+            pendingRender = new PendingRender(current.toBufferedImage(), pending);
+        }
+        return pendingRender;
+    }
+
+    /**
+     * Check if an operation is left to be computed later.
+     * 
+     * @param op The operation.
+     * @return True if the image is lazy and the operation can be computed one tile at a time.
+     */
+    private boolean isDeferred(ImageOperation op) {
+        return lazy && op instanceof TileableOperation && ((TileableOperation) op).getFootprint().isTileable();
+    }
+
+    /**
+     * Apply any pending operations to the whole image.
+     */
+    private void materialise() {
+        awaitRestore();
+        if (applied >= ops.size()) {
+            return;
+        }
+        replay(applied, ops.size());
+        applied = ops.size();
+        discardPending();
+    }
+
+    /**
+     * Throw away the render of the pending operations, since they or the image they apply to have changed.
+     */
+    private void discardPending() {
+        if (pendingRender != null) {
+            pendingRender.cancel();
+            pendingRender = null;
+        }
+    }
+
+    /**
+     * <p>
+     * Get the replay of the saved operations, if the image was opened with some and they are
+     * still being applied.
+     * </p>
+     * 
+     * <p>
+     * Until it is done, the image is shown as its {@link HistoryRestore#getBase base}.
+     * </p>
+     * 
+     * @return The replay, or null if there is none running.
+     */
+    public HistoryRestore getRestore() {
+        return restoring;
+    }
+
+    /**
+     * Wait for the replay of the saved operations, if there is one, and take its result.
+     * 
+     * <p>
+     * If the replay failed, its operations are left to be applied again on this thread, where the
+     * error is reported as it would be for any other operation.
+     * </p>
+     */
+    private void awaitRestore() {
+        if (restoring == null) {
+            return;
+        }
+        HistoryRestore restore = restoring;
+        restoring = null;
+        try {
+            BufferedImage result = restore.await();
+            current.release();
+            current = TiledRaster.wrap(result);
+            applied = restore.getTotal();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stop the replay of the saved operations, because the image has been replaced.
+     */
+    private void cancelRestore() {
+        if (restoring != null) {
+            restoring.cancel();
+            restoring = null;
+        }
     }
 
     /**
@@ -516,18 +1142,190 @@ public class EditableImage {
      * {@link current}
      * cannot be easily incrementally updated.
      * </p>
+     * 
+     * <p>
+     * Rather than starting from the original every time, the replay starts from
+     * the nearest {@link SnapshotCache snapshot} below the top of the stack, so only
+     * the operations after it are reapplied.
+     * In {@link lazy} mode, if the image already holds some of the operations (as after undoing an
+     * operation that was never computed), it is kept, and any tileable operations at the top of
+     * the stack are left pending.
+     * </p>
      */
     private void refresh() {
+        awaitRestore();
         boolean wasRecording = recording;
         Stack<ImageOperation> saveMacro = macro;
-        current = deepCopy(original);
-        for (ImageOperation op : ops) {
-            current = op.apply(current);
+        int start = snapshots.nearest(ops.size());
+        if (applied > ops.size() || start > applied) {
+            restoreSnapshot(start);
+        }
+        int end = ops.size();
+        while (end > applied && isDeferred(ops.get(end - 1))) {
+            end--;
         }
+        replay(applied, end);
+        applied = end;
+        discardPending();
         recording = wasRecording;
         macro = saveMacro;
     }
 
+    /**
+     * <p>
+     * Apply a range of the operations on the stack to {@link current}.
+     * </p>
+     * 
+     * <p>
+     * Runs of per-pixel operations are {@link FusedPixelOperation fused} into one pass over the
+     * image, so a chain of colour adjustments costs about the same as one of them.
+     * Snapshots are only taken at the end of a run.
+     * The replay is recorded as an {@link AndieEvents.ReplayEvent} if a flight recording is running.
+     * </p>
+     * 
+     * @param from The first operation to apply.
+     * @param to   One past the last operation to apply.
+     */
+    private void replay(int from, int to) {
+        AndieEvents.ReplayEvent event = new AndieEvents.ReplayEvent();
+        event.width = current.getWidth();
+        event.height = current.getHeight();
+        event.begin();
+        int passes = 0;
+        int i = from;
+        while (i < to) {
+            int end = Math.min(FusedPixelOperation.runEnd(ops, i), to);
+            try {
+                if (end - i >= 2) {
+                    ImageOperation fused = new FusedPixelOperation(FusedPixelOperation.pixelOps(ops, i, end));
+                    current = applyAndSnapshot(fused, current, end, OperationMetrics.Trigger.REFRESH);
+                    i = end;
+                } else {
+                    current = applyAndSnapshot(ops.get(i), current, i + 1, OperationMetrics.Trigger.REFRESH);
+                    i++;
+                }
+            } catch (RuntimeException | Error e) {
+                recover(i, e);
+                throw e;
+            }
+            passes++;
+        }
+        event.end();
+        if (passes > 0 && event.shouldCommit()) {
+            event.fromDepth = from;
+            event.toDepth = to;
+            event.operations = to - from;
+            event.passes = passes;
+            event.commit();
+        }
+    }
+
+    /**
+     * <p>
+     * Get the cache of intermediate results used when rebuilding the image.
+     * </p>
+     * 
+     * @return The snapshot cache of this image.
+     */
+    public SnapshotCache getSnapshots() {
+        return snapshots;
+    }
+
+    /**
+     * <p>
+     * Get the number of bytes held by the pixels of the original image.
+     * </p>
+     * 
+     * @return The bytes held, or 0 if there is no image.
+     */
+    public long getOriginalBytes() {
+        return original == null ? 0 : SnapshotCache.sizeOf(original);
+    }
+
+    /**
+     * <p>
+     * Get the number of bytes held by the pixels of the current image, apart from any it still
+     * shares with the original.
+     * </p>
+     * 
+     * @return The bytes held, or 0 if there is no image.
+     */
+    public long getCurrentBytes() {
+        if (current == null) {
+            return 0;
+        }
+        Set<Object> counted = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        originalTiles.countBytes(counted);
+        return current.countBytes(counted);
+    }
+
+    /**
+     * <p>
+     * Get the number of bytes held by the snapshots and the patches kept for undoing drawing.
+     * </p>
+     * 
+     * <p>
+     * Snapshots may share tiles with the current image, in which case those tiles are counted
+     * here as well as in {@link getCurrentBytes}.
+     * </p>
+     * 
+     * @return The bytes held.
+     */
+    public long getCachedBytes() {
+        long bytes = snapshots.getBytesHeld();
+        for (RegionPatch patch : patches.values()) {
+            bytes += patch.getBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * <p>
+     * Forget the snapshots and the patches kept for undoing drawing, to free the memory they hold.
+     * </p>
+     * 
+     * <p>
+     * Nothing is lost: undoing or redoing just takes longer, since the image is rebuilt from the
+     * original.
+     * </p>
+     */
+    public void flushCaches() {
+        snapshots.clear();
+        patches.clear();
+        costSinceSnapshot = 0;
+    }
+
+    /**
+     * <p>
+     * Take a snapshot of the image as it is now, so going back to this point does not replay the
+     * operations before it.
+     * </p>
+     * 
+     * <p>
+     * Any operations that have not been computed yet are left out, so the snapshot is of the
+     * image with the operations that have been.
+     * The snapshot shares the tiles of the current image, so it costs no copying until one of
+     * them is written to.
+     * If the saved operations are still being replayed in the background, no snapshot is taken,
+     * since waiting for them would hold up the event thread.
+     * </p>
+     * 
+     * @return True if a snapshot was taken, or false if there was nothing to take a snapshot of
+     *         or the image is still being restored.
+     */
+    public boolean takeSnapshot() {
+        if (restoring != null && !restoring.isDone()) {
+            return false;
+        }
+        awaitRestore();
+        if (!hasImage() || applied == 0) {
+            return false;
+        }
+        snapshots.put(applied, current);
+        costSinceSnapshot = 0;
+        return true;
+    }
+
     /**
      * Method to check if the macro is recording
      * @return returns true if the macro is recording, false if not
@@ -559,12 +1357,9 @@ public class EditableImage {
      */
     public void stopRecording(String fileName) throws Exception {
         recording = false;
-        FileOutputStream fileOut = new FileOutputStream(fileName + ".ops");
-        ObjectOutputStream objOut = new ObjectOutputStream(fileOut);
-        objOut.writeObject(macro);
+        Stack<ImageOperation> recorded = macro;
         macro = null;
-        objOut.close();
-        fileOut.close();
+        OpsFile.write(recorded, new File(fileName + ".ops"));
     }
 
     /**
@@ -575,22 +1370,8 @@ public class EditableImage {
      */
     public Stack<ImageOperation> openMacro(String fileName) {
         try {
-            FileInputStream fileIn = new FileInputStream(fileName);
-            ObjectInputStream objIn = new ObjectInputStream(fileIn);
-
-            // Silence the Java compiler warning about type casting.
-            // Understanding the cause of the warning is way beyond
-            // the scope of COSC202, but if you're interested, it has
-            // to do with "type erasure" in Java: the compiler cannot
-            // produce code that fails at this point in all cases in
-            // which there is actually a type mismatch for one of the
-            // elements within the Stack, i.e., a non-ImageOperation.
-            @SuppressWarnings("unchecked")
-            Stack<ImageOperation> opsFromFile = (Stack<ImageOperation>) objIn.readObject();
-            objIn.close();
-            fileIn.close();
-            
-            return opsFromFile;
+            // Macros saved by older versions with Java serialization are read too
+            return OpsFile.read(new File(fileName));
         } catch (Exception ex) {
             // Could be no file or something else. Carry on for now.
         }
@@ -616,6 +1397,7 @@ public class EditableImage {
      * @param op the operation we wish to add to the ops stack
      */
     public void addToOps(ImageOperation op){
+        invalidateAbove(ops.size());
         ops.push(op);
     }
 }
\ No newline at end of file
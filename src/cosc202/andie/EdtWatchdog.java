@@ -0,0 +1,454 @@
+package cosc202.andie;
+
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.SwingUtilities;
+
+/**
+ * <p>
+ * Watches the Swing event thread for freezes, and reports what caused them.
+ * </p>
+ *
+ * <p>
+ * Many actions, such as those in {@link ColourActions}, {@link FilterActions},
+ * {@link TransformationActions} and {@link MacroActions}, apply their operations on the event
+ * thread, and ANDIE cannot repaint or respond to the mouse until they are done.
+ * The watchdog posts a small task to the event thread every so often. If it has not run within
+ * the threshold, the event thread is stalled, so the watchdog samples its stack and logs the
+ * action and {@link ImageOperation} responsible. Stalls are counted by that cause, so the worst
+ * offenders stand out; see {@link #getStallCounts()}.
+ * </p>
+ *
+ * <p>
+ * The threshold is {@value #DEFAULT_THRESHOLD} ms unless the system property
+ * <code>andie.stallThreshold</code> sets another, as in
+ * <code>java -Dandie.stallThreshold=200 ...</code>; 0 turns the watchdog off.
+ * It can also be changed while ANDIE runs, through {@link EngineStats}.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public class EdtWatchdog implements Runnable {
+
+    /** The system property giving the threshold in milliseconds. */
+    public static final String THRESHOLD_PROPERTY = "andie.stallThreshold";
+
+    /** The threshold when the system property is not set, in milliseconds. */
+    public static final long DEFAULT_THRESHOLD = 500;
+
+    /** The most stack frames logged for a stall. */
+    private static final int LOGGED_FRAMES = 40;
+
+    /** The prefix of ANDIE's classes, which are the ones a stall is put down to. */
+    private static final String PACKAGE = "cosc202.andie.";
+
+    /** The watchdog installed for ANDIE, or null if there is none. */
+    private static EdtWatchdog installed;
+
+    /** Where stalls are logged. */
+    private final PrintStream log;
+
+    /** The number of stalls for each cause. */
+    private final Map<String, AtomicLong> counts = new ConcurrentHashMap<String, AtomicLong>();
+
+    /** How long the event thread may go without processing events, in milliseconds. */
+    private volatile long threshold;
+
+    /** The event thread, as last seen by a heartbeat. */
+    private volatile Thread eventThread;
+
+    /** The most recent stall, or null if there has not been one. */
+    private volatile Stall last;
+
+    /** The thread doing the watching, or null if it has not been started or has been stopped. */
+    private volatile Thread watcher;
+
+    /**
+     * <p>
+     * A stall of the event thread, and what it was doing when it was caught.
+     * </p>
+     */
+    public static final class Stall {
+        /** The action that was running, or the outermost ANDIE method if there was no action. */
+        private final String action;
+        /** The simple name of the operation being applied, or null if there was none. */
+        private final String operation;
+        /** The stack of the event thread when the stall was caught. */
+        private final StackTraceElement[] stack;
+        /** How long the stall has lasted, in milliseconds. */
+        private volatile long millis;
+        /** Whether the event thread has started processing events again. */
+        private volatile boolean over;
+
+        /**
+         * Create a stall.
+         *
+         * @param action    The action that was running.
+         * @param operation The operation being applied, or null.
+         * @param stack     The stack of the event thread.
+         */
+        private Stall(String action, String operation, StackTraceElement[] stack) {
+            this.action = action;
+            this.operation = operation;
+            this.stack = stack;
+        }
+
+        /**
+         * Get the action that was running.
+         *
+         * @return The action's class, such as <code>FilterActions.MeanFilterAction</code>, the
+         *         outermost ANDIE method if no action was running, or <code>unknown</code>.
+         */
+        public String getAction() {
+            return action;
+        }
+
+        /**
+         * Get the operation that was being applied.
+         *
+         * @return The simple name of the operation's class, or null if none was being applied.
+         */
+        public String getOperation() {
+            return operation;
+        }
+
+        /**
+         * Get the cause the stall is counted under.
+         *
+         * @return The action, followed by the operation if there was one.
+         */
+        public String getCause() {
+            return operation == null ? action : action + " / " + operation;
+        }
+
+        /**
+         * Get the stack of the event thread when the stall was caught.
+         *
+         * @return The stack, innermost frame first.
+         */
+        public StackTraceElement[] getStack() {
+            return stack.clone();
+        }
+
+        /**
+         * Get how long the stall lasted, or has lasted so far.
+         *
+         * @return The length of the stall, in milliseconds.
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * Find out whether the stall is over.
+         *
+         * @return True if the event thread has started processing events again.
+         */
+        public boolean isOver() {
+            return over;
+        }
+    }
+
+    /**
+     * <p>
+     * Create a watchdog. It does not watch until it is {@link #start}ed.
+     * </p>
+     *
+     * @param threshold How long the event thread may go without processing events, in milliseconds.
+     * @param log       Where to log stalls.
+     * @throws IllegalArgumentException If the threshold is not positive.
+     */
+    public EdtWatchdog(long threshold, PrintStream log) {
+        setThreshold(threshold);
+        this.log = log;
+    }
+
+    /**
+     * <p>
+     * Install the watchdog for ANDIE, with the threshold from the system property.
+     * </p>
+     *
+     * @return The watchdog, or null if the threshold turns it off.
+     * @see #install(long)
+     */
+    public static EdtWatchdog install() {
+        return install(Long.getLong(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD));
+    }
+
+    /**
+     * <p>
+     * Install the watchdog for ANDIE, or change the threshold of the one already installed.
+     * </p>
+     *
+     * <p>
+     * Stalls are logged to the standard error stream.
+     * </p>
+     *
+     * @param threshold How long the event thread may go without processing events, in
+     *                  milliseconds, or 0 to stop the installed watchdog.
+     * @return The watchdog, or null if it has been stopped.
+     */
+    public static synchronized EdtWatchdog install(long threshold) {
+        if (threshold <= 0) {
+            if (installed != null) {
+                installed.stop();
+                installed = null;
+            }
+        } else if (installed == null) {
+            installed = new EdtWatchdog(threshold, System.err);
+            installed.start();
+        } else {
+            installed.setThreshold(threshold);
+        }
+        return installed;
+    }
+
+    /**
+     * <p>
+     * Get the watchdog installed for ANDIE.
+     * </p>
+     *
+     * @return The watchdog, or null if none is installed.
+     */
+    public static synchronized EdtWatchdog getInstalled() {
+        return installed;
+    }
+
+    /**
+     * <p>
+     * Start watching the event thread, on a daemon thread of its own.
+     * </p>
+     */
+    public synchronized void start() {
+        if (watcher != null) {
+            return;
+        }
+        watcher = new Thread(this, "ANDIE EDT watchdog");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * <p>
+     * Stop watching the event thread.
+     * </p>
+     */
+    public synchronized void stop() {
+        if (watcher != null) {
+            watcher.interrupt();
+            watcher = null;
+        }
+    }
+
+    /**
+     * <p>
+     * Watch the event thread until stopped.
+     * </p>
+     *
+     * <p>
+     * A heartbeat is posted to the event thread, and the watchdog waits up to the threshold for it
+     * to run. If it does not, the stall is reported, and the watchdog waits for the heartbeat to
+     * run to time the whole stall.
+     * Between heartbeats it sleeps for a quarter of the threshold, so a stall is caught within
+     * about 1.25 times the threshold of it starting.
+     * </p>
+     */
+    @Override
+    public void run() {
+        Thread self = Thread.currentThread();
+        try {
+            while (watcher == self) {
+                CountDownLatch beat = new CountDownLatch(1);
+                long sent = System.nanoTime();
+                SwingUtilities.invokeLater(() -> {
+                    eventThread = Thread.currentThread();
+                    beat.countDown();
+                });
+                if (!beat.await(threshold, TimeUnit.MILLISECONDS)) {
+                    Thread thread = findEventThread();
+                    if (thread != null) {
+                        Stall stall = diagnose(thread.getStackTrace(), OperationMetrics.getRunning(thread));
+                        stall.millis = (System.nanoTime() - sent) / 1000000;
+                        report(stall);
+                        while (!beat.await(threshold, TimeUnit.MILLISECONDS)) {
+                            stall.millis = (System.nanoTime() - sent) / 1000000;
+                        }
+                        stall.millis = (System.nanoTime() - sent) / 1000000;
+                        log.println("ANDIE: event thread recovered after " + stall.millis + " ms ("
+                                + stall.getCause() + ")");
+                        stall.over = true;
+                    } else {
+                        beat.await();
+                    }
+                }
+                Thread.sleep(Math.max(1, threshold / 4));
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    /**
+     * Find the event thread, which may have been replaced since the last heartbeat if an
+     * exception killed it.
+     *
+     * @return The event thread, or null if it cannot be found.
+     */
+    private Thread findEventThread() {
+        Thread thread = eventThread;
+        if (thread != null && thread.isAlive()) {
+            return thread;
+        }
+        for (Thread candidate : Thread.getAllStackTraces().keySet()) {
+            if (candidate.getName().startsWith("AWT-EventQueue")) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Count a stall under its cause and log it with the stack of the event thread.
+     *
+     * @param stall The stall.
+     */
+    private void report(Stall stall) {
+        counts.computeIfAbsent(stall.getCause(), cause -> new AtomicLong()).incrementAndGet();
+        last = stall;
+        StringBuilder message = new StringBuilder();
+        message.append("ANDIE: event thread stalled for ").append(stall.millis).append(" ms in ")
+                .append(stall.getCause());
+        for (int i = 0; i < stall.stack.length && i < LOGGED_FRAMES; i++) {
+            message.append(System.lineSeparator()).append("\tat ").append(stall.stack[i]);
+        }
+        if (stall.stack.length > LOGGED_FRAMES) {
+            message.append(System.lineSeparator()).append("\t... ").append(stall.stack.length - LOGGED_FRAMES)
+                    .append(" more");
+        }
+        log.println(message);
+    }
+
+    /**
+     * <p>
+     * Work out what caused a stall from the stack of the event thread.
+     * </p>
+     *
+     * <p>
+     * The action is the outermost ANDIE class whose <code>actionPerformed</code> method is running,
+     * or if there is none, the outermost ANDIE method, which may be painting or a listener.
+     * The operation is the one being measured by {@link OperationMetrics} if there is one,
+     * otherwise the innermost {@link ImageOperation} on the stack.
+     * </p>
+     *
+     * @param stack   The stack of the event thread, innermost frame first.
+     * @param running The operation being measured on the event thread, or null.
+     * @return The stall, which has not lasted any time yet.
+     */
+    public static Stall diagnose(StackTraceElement[] stack, ImageOperation running) {
+        String action = null;
+        String outermost = null;
+        for (int i = stack.length - 1; i >= 0; i--) {
+            String className = stack[i].getClassName();
+            if (!className.startsWith(PACKAGE)) {
+                continue;
+            }
+            String name = className.substring(PACKAGE.length()).replace('$', '.');
+            if (outermost == null) {
+                outermost = name + "." + stack[i].getMethodName();
+            }
+            if (stack[i].getMethodName().equals("actionPerformed")) {
+                action = name;
+                break;
+            }
+        }
+        if (action == null) {
+            action = outermost == null ? "unknown" : outermost;
+        }
+        String operation = running == null ? null : operationName(running.getClass());
+        for (int i = 0; operation == null && i < stack.length; i++) {
+            operation = operationName(stack[i].getClassName());
+        }
+        return new Stall(action, operation, stack.clone());
+    }
+
+    /**
+     * Get the name of an ANDIE class if it is an image operation.
+     *
+     * @param className The fully qualified name of the class.
+     * @return The simple name of the class, or null if it is not an ANDIE image operation.
+     */
+    private static String operationName(String className) {
+        if (!className.startsWith(PACKAGE)) {
+            return null;
+        }
+        try {
+            Class<?> type = Class.forName(className, false, EdtWatchdog.class.getClassLoader());
+            return ImageOperation.class.isAssignableFrom(type) ? operationName(type) : null;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the name of an operation's class.
+     *
+     * @param type The class.
+     * @return The simple name of the class, or the name without its package if it is anonymous.
+     */
+    private static String operationName(Class<?> type) {
+        String name = type.getSimpleName();
+        return name.isEmpty() ? type.getName().substring(type.getName().lastIndexOf('.') + 1) : name;
+    }
+
+    /**
+     * Get how long the event thread may go without processing events before it counts as stalled.
+     *
+     * @return The threshold, in milliseconds.
+     */
+    public long getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Set how long the event thread may go without processing events before it counts as stalled.
+     *
+     * @param threshold The threshold, in milliseconds.
+     * @throws IllegalArgumentException If the threshold is not positive.
+     */
+    public void setThreshold(long threshold) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("The stall threshold must be positive: " + threshold);
+        }
+        this.threshold = threshold;
+    }
+
+    /**
+     * <p>
+     * Get the number of stalls for each cause.
+     * </p>
+     *
+     * @return The counts, by {@link Stall#getCause()}, in name order.
+     */
+    public SortedMap<String, Long> getStallCounts() {
+        SortedMap<String, Long> copy = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : counts.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().get());
+        }
+        return copy;
+    }
+
+    /**
+     * Get the most recent stall.
+     *
+     * @return The stall, which may still be going on, or null if there has not been one.
+     */
+    public Stall getLastStall() {
+        return last;
+    }
+}
@@ -1,7 +1,9 @@
 package cosc202.andie;
 
-import java.awt.Color;
 import java.awt.image.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * The EmbossFilter class represents an image operation for applying an emboss filter to an image.
@@ -13,7 +15,9 @@ import java.awt.image.*;
  * @author Hannah Srzich
  * @version 1.0
  */
-public class EmbossFilter implements ImageOperation, java.io.Serializable {  
+public class EmbossFilter implements TileableOperation, EncodableOperation, java.io.Serializable {
+
+    private static final long serialVersionUID = -615121520917731308L;  
     
     // Eight basic emboss filters
     private int[][] kernel1 = {{0, 0, 0}, {1, 0, -1}, {0, 0, 0}};
@@ -58,6 +62,17 @@ public class EmbossFilter implements ImageOperation, java.io.Serializable {
       // Or else default is kernel 1
     }
 
+    /**
+     * Get the footprint of this operation.
+     * 
+     * Every emboss kernel is 3x3, so each pixel reads its immediate neighbours.
+     * 
+     * @return The footprint of the operation.
+     */
+    public Footprint getFootprint() {
+        return Footprint.neighbourhood(1);
+    }
+
     /**
      * Applies the emboss filter to the given image, with negative pixel 
      * handling that makes entire image grey to see edges clearer.
@@ -66,12 +81,11 @@ public class EmbossFilter implements ImageOperation, java.io.Serializable {
      * @return a new BufferedImage with the emboss effect applied
      */
     public BufferedImage apply(BufferedImage image) {
-      // Extend the image by 3 pixels on each size
-      image = ImageEdgeExtension.extendImage(image);
-
       int width = image.getWidth();
       int height = image.getHeight();
       BufferedImage newImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      int[] pixels = ImagePixels.read(image);
+      int[] result = ImagePixels.data(newImage);
   
       // Define the emboss kernel
       int[][] kernel = this.kernel;
@@ -83,20 +97,15 @@ public class EmbossFilter implements ImageOperation, java.io.Serializable {
           int sumG = 0;
           int sumB = 0;
   
-          // Apply the kernel to the neighbouring pixels
+          // Apply the kernel to the neighbouring pixels, using the closest edge pixel outside the image
           for (int i = 0; i < 3; i++) {
+            int dy = Math.min(Math.max(y + i - 1, 0), height - 1);
             for (int j = 0; j < 3; j++) {
-              int dx = x + j - 1;
-              int dy = y + i - 1;
-  
-              if (dx < 0 || dx >= width || dy < 0 || dy >= height) {
-                continue;
-              }
-  
-              Color c = new Color(image.getRGB(dx, dy));
-              sumR += c.getRed() * kernel[i][j];
-              sumG += c.getGreen() * kernel[i][j];
-              sumB += c.getBlue() * kernel[i][j];
+              int dx = Math.min(Math.max(x + j - 1, 0), width - 1);
+              int rgb = pixels[dy * width + dx];
+              sumR += ((rgb >> 16) & 0xFF) * kernel[i][j];
+              sumG += ((rgb >> 8) & 0xFF) * kernel[i][j];
+              sumB += (rgb & 0xFF) * kernel[i][j];
             }
           }
   
@@ -106,12 +115,40 @@ public class EmbossFilter implements ImageOperation, java.io.Serializable {
           int newB = Math.min(Math.max(sumB + 128, 0), 255);
   
           // Set the new pixel colour values
-          Color newColor = new Color(newR, newG, newB);
-          newImage.setRGB(x, y, newColor.getRGB());
+          result[y * width + x] = (newR << 16) | (newG << 8) | newB;
         }
       }
-      // Crop the image back to original size
-      newImage = ImageEdgeExtension.cropImage(newImage);
       return newImage;
   }
+
+    /**
+     * Write the settings of this operation to an <code>.ops</code> file.
+     *
+     * Writes the emboss type, from 1 to 8, as a byte.
+     *
+     * @param out Where to write the settings.
+     * @throws IOException If the settings cannot be written.
+     */
+    public void encode(DataOutput out) throws IOException {
+        int[][][] kernels = {kernel1, kernel2, kernel3, kernel4, kernel5, kernel6, kernel7, kernel8};
+        int type = 1;
+        for (int i = 0; i < kernels.length; i++) {
+            if (kernel == kernels[i]) {
+                type = i + 1;
+            }
+        }
+        out.writeByte(type);
+    }
+
+    /**
+     * Rebuild an operation from the settings written by {@link #encode}.
+     *
+     * @param in      The settings.
+     * @param version The version of the <code>.ops</code> file.
+     * @return The operation.
+     * @throws IOException If the settings cannot be read.
+     */
+    static EmbossFilter decode(DataInput in, int version) throws IOException {
+        return new EmbossFilter(in.readUnsignedByte());
+    }
 }
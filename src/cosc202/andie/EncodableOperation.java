@@ -0,0 +1,33 @@
+package cosc202.andie;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * <p>
+ * Interface for operations that can be saved in an <code>.ops</code> file.
+ * </p>
+ *
+ * <p>
+ * An operation writes its settings with {@link #encode}, and reads them back with the decoder it
+ * is {@link OpsFile#register registered} with, under a tag that identifies its class in the file.
+ * Only the settings needed to rebuild the operation should be written, in a fixed order.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @see OpsFile
+ * @version 1.0
+ */
+public interface EncodableOperation extends ImageOperation {
+
+    /**
+     * Write the settings of this operation.
+     *
+     * @param out Where to write the settings.
+     * @throws IOException If the settings cannot be written.
+     */
+    public void encode(DataOutput out) throws IOException;
+}
@@ -0,0 +1,358 @@
+package cosc202.andie;
+
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.management.*;
+import javax.swing.SwingUtilities;
+
+/**
+ * <p>
+ * Publishes live statistics about ANDIE's image engine as a JMX MBean.
+ * </p>
+ *
+ * <p>
+ * Once {@link #register}ed, the MBean <code>cosc202.andie:type=EngineStats</code> can be watched
+ * with JConsole, VisualVM or any local JMX agent, without attaching a profiler.
+ * It shows how many operations of each type have run and how long they take, from
+ * {@link OperationMetrics}; how deep the history of the open image is and how much memory its
+ * original, current image and caches hold; how many previews were started and cancelled; and how
+ * many images are queued in running batches; and how often the {@link EdtWatchdog} has caught the
+ * event thread stalled, by cause.
+ * It also has operations to flush the caches of the open image and to take a snapshot of it.
+ * </p>
+ *
+ * <p>
+ * JMX clients call in on their own threads, while the {@link EditableImage} belongs to the Swing
+ * event thread, so anything to do with the image is run there.
+ * Attributes and operations wait only a moment for it, so a client keeps working while ANDIE is
+ * stuck in a long operation; see {@link EngineStatsMXBean}.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public class EngineStats implements EngineStatsMXBean {
+
+    /** The name the MBean is registered under. */
+    public static final String NAME = "cosc202.andie:type=EngineStats";
+
+    /** How long attributes and operations wait for the event thread, in milliseconds. */
+    private static final long EVENT_THREAD_WAIT = 500;
+
+    /** The panel whose image is described, or null if there is none, as in batch mode. */
+    private final ImagePanel panel;
+
+    /**
+     * <p>
+     * The statistics of one type of operation, as shown by JMX clients.
+     * </p>
+     */
+    public static class OperationStats {
+        /** The simple name of the operation's class. */
+        private final String operation;
+        /** The number of times it has run. */
+        private final long count;
+        /** The mean time it took, in milliseconds. */
+        private final double meanMillis;
+        /** The 99th percentile of the time it took, in milliseconds. */
+        private final double p99Millis;
+        /** The rate it processed pixels at, in megapixels per second. */
+        private final double megapixelsPerSecond;
+
+        /**
+         * Create the statistics of a type of operation.
+         *
+         * @param operation           The simple name of the operation's class.
+         * @param count               The number of times it has run.
+         * @param meanMillis          The mean time it took, in milliseconds.
+         * @param p99Millis           The 99th percentile of the time it took, in milliseconds.
+         * @param megapixelsPerSecond The rate it processed pixels at, in megapixels per second.
+         */
+        @ConstructorProperties({ "operation", "count", "meanMillis", "p99Millis", "megapixelsPerSecond" })
+        public OperationStats(String operation, long count, double meanMillis, double p99Millis,
+                double megapixelsPerSecond) {
+            this.operation = operation;
+            this.count = count;
+            this.meanMillis = meanMillis;
+            this.p99Millis = p99Millis;
+            this.megapixelsPerSecond = megapixelsPerSecond;
+        }
+
+        /**
+         * Get the name of the operation.
+         *
+         * @return The simple name of the operation's class.
+         */
+        public String getOperation() {
+            return operation;
+        }
+
+        /**
+         * Get the number of times the operation has run.
+         *
+         * @return The count.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Get the mean time the operation took.
+         *
+         * @return The mean, in milliseconds.
+         */
+        public double getMeanMillis() {
+            return meanMillis;
+        }
+
+        /**
+         * Get the 99th percentile of the time the operation took, from its histogram.
+         *
+         * @return The percentile, in milliseconds.
+         */
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        /**
+         * Get the rate the operation processed pixels at.
+         *
+         * @return The rate, in megapixels per second.
+         */
+        public double getMegapixelsPerSecond() {
+            return megapixelsPerSecond;
+        }
+    }
+
+    /**
+     * <p>
+     * Create the statistics for the image in a panel.
+     * </p>
+     *
+     * @param panel The panel whose image is described, or null if there is none.
+     */
+    public EngineStats(ImagePanel panel) {
+        this.panel = panel;
+    }
+
+    /**
+     * <p>
+     * Register the statistics with the platform MBean server, replacing any registered before.
+     * </p>
+     *
+     * <p>
+     * Monitoring is not needed for ANDIE to work, so if the MBean cannot be registered a warning
+     * is printed and nothing else happens.
+     * </p>
+     *
+     * @param panel The panel whose image is described, or null if there is none.
+     * @return The statistics, or null if they could not be registered.
+     */
+    public static EngineStats register(ImagePanel panel) {
+        EngineStats stats = new EngineStats(panel);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(stats, name);
+            return stats;
+        } catch (JMException | SecurityException e) {
+            System.err.println("Could not register " + NAME + ": " + e);
+            return null;
+        }
+    }
+
+    @Override
+    public long getOperationCount() {
+        long count = 0;
+        for (OperationMetrics.Stats stats : OperationMetrics.getStats().values()) {
+            count += stats.getCount();
+        }
+        return count;
+    }
+
+    @Override
+    public List<OperationStats> getOperations() {
+        List<OperationStats> operations = new ArrayList<OperationStats>();
+        for (Map.Entry<String, OperationMetrics.Stats> entry : OperationMetrics.getStats().entrySet()) {
+            OperationMetrics.Stats stats = entry.getValue();
+            operations.add(new OperationStats(entry.getKey(), stats.getCount(), stats.getMeanMillis(),
+                    stats.getPercentileMillis(99), stats.getMegapixelsPerSecond()));
+        }
+        return operations;
+    }
+
+    @Override
+    public int getHistoryDepth() {
+        return onEventThread(image -> image.getOpsSize(), 0, -1);
+    }
+
+    @Override
+    public long getOriginalBytes() {
+        return onEventThread(EditableImage::getOriginalBytes, 0L, -1L);
+    }
+
+    @Override
+    public long getCurrentBytes() {
+        return onEventThread(EditableImage::getCurrentBytes, 0L, -1L);
+    }
+
+    @Override
+    public long getCachedBytes() {
+        return onEventThread(EditableImage::getCachedBytes, 0L, -1L);
+    }
+
+    @Override
+    public int getSnapshotCount() {
+        return onEventThread(image -> image.getSnapshots().size(), 0, -1);
+    }
+
+    @Override
+    public long getPreviewRendersStarted() {
+        return PreviewScheduler.getRendersStarted();
+    }
+
+    @Override
+    public long getPreviewRendersCancelled() {
+        return PreviewScheduler.getRendersCancelled();
+    }
+
+    @Override
+    public int getBatchQueueDepth() {
+        return BatchRunner.getQueuedImages();
+    }
+
+    @Override
+    public int getBatchPending() {
+        return BatchRunner.getPendingImages();
+    }
+
+    @Override
+    public Map<String, Long> getEventThreadStalls() {
+        EdtWatchdog watchdog = EdtWatchdog.getInstalled();
+        return watchdog == null ? new TreeMap<String, Long>() : watchdog.getStallCounts();
+    }
+
+    @Override
+    public long getEventThreadStallThreshold() {
+        EdtWatchdog watchdog = EdtWatchdog.getInstalled();
+        return watchdog == null ? 0 : watchdog.getThreshold();
+    }
+
+    @Override
+    public void setEventThreadStallThreshold(long threshold) {
+        EdtWatchdog.install(threshold);
+    }
+
+    @Override
+    public void flushCaches() {
+        onEventThread(image -> {
+            image.flushCaches();
+            return null;
+        }, null, null, true);
+    }
+
+    @Override
+    public void takeSnapshot() {
+        onEventThread(image -> {
+            if (!image.takeSnapshot() && image.getRestore() != null) {
+                throw new IllegalStateException("The image is still being restored, so no snapshot was taken");
+            }
+            return null;
+        }, null, null, true);
+    }
+
+    @Override
+    public void resetOperationStats() {
+        OperationMetrics.reset();
+    }
+
+    /**
+     * Find out something about the open image on the event thread, waiting only a moment.
+     *
+     * @param <T>     The type of the answer.
+     * @param query   What to find out.
+     * @param noImage The answer if there is no image.
+     * @param busy    The answer if the event thread is too busy.
+     * @return The answer.
+     */
+    private <T> T onEventThread(ImageQuery<T> query, T noImage, T busy) {
+        return onEventThread(query, noImage, busy, false);
+    }
+
+    /**
+     * Find out something about the open image, or change it, on the event thread, waiting only a
+     * moment.
+     *
+     * <p>
+     * A change that the event thread has not started in time is called off, and the caller is
+     * told, rather than left waiting or having the change happen some time later.
+     * </p>
+     *
+     * @param <T>     The type of the answer.
+     * @param query   What to find out or do.
+     * @param noImage The answer if there is no image.
+     * @param busy    The answer if the event thread is too busy to find something out.
+     * @param change  Whether the query changes the image.
+     * @return The answer.
+     * @throws IllegalStateException If the query fails, or it is a change and the event thread
+     *                               is too busy.
+     */
+    private <T> T onEventThread(ImageQuery<T> query, T noImage, T busy, boolean change) {
+        Callable<T> task = () -> {
+            EditableImage image = panel == null ? null : panel.getImage();
+            return image == null || !image.hasImage() ? noImage : query.ask(image);
+        };
+        FutureTask<T> future = new FutureTask<T>(task);
+        if (SwingUtilities.isEventDispatchThread()) {
+            future.run();
+        } else {
+            SwingUtilities.invokeLater(future);
+        }
+        try {
+            return future.get(EVENT_THREAD_WAIT, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (!change) {
+                // left to run when the event thread gets to it
+                return busy;
+            }
+            throw new IllegalStateException(future.cancel(false)
+                    ? "The event thread is busy, so the image was not changed"
+                    : "The event thread did not finish changing the image in time");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (change) {
+                future.cancel(false);
+                throw new IllegalStateException("Interrupted while waiting for the event thread");
+            }
+            return busy;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalStateException) {
+                throw (IllegalStateException) e.getCause();
+            }
+            throw new IllegalStateException("Could not read the image statistics", e.getCause());
+        }
+    }
+
+    /**
+     * Something to find out about an image, or do to it.
+     *
+     * @param <T> The type of the answer.
+     */
+    private interface ImageQuery<T> {
+        /**
+         * Find out about the image.
+         *
+         * @param image The open image.
+         * @return The answer.
+         */
+        T ask(EditableImage image);
+    }
+}
@@ -0,0 +1,144 @@
+package cosc202.andie;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * The management interface of {@link EngineStats}, which JConsole and other JMX clients see.
+ * </p>
+ *
+ * <p>
+ * Attributes about the open image are read on the Swing event thread. If it is too busy to
+ * answer within a moment, they are -1 rather than holding up the client.
+ * The operations on the open image are run there too, and fail with an
+ * {@link IllegalStateException} if it does not get to them within the same moment, in which case
+ * the image is left as it was.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public interface EngineStatsMXBean {
+
+    /**
+     * Get the number of operations applied, replayed, previewed or run in batches.
+     *
+     * @return The number of operations recorded by {@link OperationMetrics}.
+     */
+    public long getOperationCount();
+
+    /**
+     * Get the count and latencies of each type of operation.
+     *
+     * @return The statistics of each operation class that has been recorded, in name order.
+     */
+    public List<EngineStats.OperationStats> getOperations();
+
+    /**
+     * Get the number of operations in the history of the open image.
+     *
+     * @return The number of operations that can be undone, or -1 if the event thread is busy.
+     */
+    public int getHistoryDepth();
+
+    /**
+     * Get the bytes held by the pixels of the original image.
+     *
+     * @return The bytes held, or -1 if the event thread is busy.
+     */
+    public long getOriginalBytes();
+
+    /**
+     * Get the bytes held by the pixels of the current image, apart from any shared with the original.
+     *
+     * @return The bytes held, or -1 if the event thread is busy.
+     */
+    public long getCurrentBytes();
+
+    /**
+     * Get the bytes held by the snapshots and drawing patches of the open image.
+     *
+     * @return The bytes held, or -1 if the event thread is busy.
+     */
+    public long getCachedBytes();
+
+    /**
+     * Get the number of snapshots kept for the open image.
+     *
+     * @return The number of snapshots, or -1 if the event thread is busy.
+     */
+    public int getSnapshotCount();
+
+    /**
+     * Get the number of previews that have started rendering.
+     *
+     * @return The number of renders started.
+     */
+    public long getPreviewRendersStarted();
+
+    /**
+     * Get the number of previews that were stopped or thrown away because they were stale.
+     *
+     * @return The number of renders cancelled.
+     */
+    public long getPreviewRendersCancelled();
+
+    /**
+     * Get the number of images waiting between the stages of running batches.
+     *
+     * @return The number of images queued.
+     */
+    public int getBatchQueueDepth();
+
+    /**
+     * Get the number of images running batches have still to read.
+     *
+     * @return The number of images pending.
+     */
+    public int getBatchPending();
+
+    /**
+     * Get the number of times the event thread stalled, by what caused it.
+     *
+     * @return The counts from the {@link EdtWatchdog}, or none if it is not installed.
+     */
+    public Map<String, Long> getEventThreadStalls();
+
+    /**
+     * Get how long the event thread may go without processing events before it counts as stalled.
+     *
+     * @return The threshold of the {@link EdtWatchdog} in milliseconds, or 0 if it is not installed.
+     */
+    public long getEventThreadStallThreshold();
+
+    /**
+     * Set how long the event thread may go without processing events before it counts as stalled.
+     *
+     * @param threshold The threshold in milliseconds, or 0 to stop the {@link EdtWatchdog}.
+     */
+    public void setEventThreadStallThreshold(long threshold);
+
+    /**
+     * Forget the snapshots and drawing patches of the open image, to free their memory.
+     *
+     * @throws IllegalStateException If the event thread is busy.
+     */
+    public void flushCaches();
+
+    /**
+     * Take a snapshot of the open image as it is now.
+     *
+     * @throws IllegalStateException If the event thread is busy, or the image is still being
+     *                               restored from its saved operations.
+     */
+    public void takeSnapshot();
+
+    /**
+     * Forget the operation statistics, to start measuring afresh.
+     */
+    public void resetOperationStats();
+}
@@ -199,8 +199,7 @@ public class FilterActions {
    /**
     * Creates a slider with the specified minimum and maximum values, title, and
     * target image panel.
-    * The slider is associated with a specific filter type and supports timed
-    * updates.
+    * The filter is previewed in the background as the slider moves.
     * Solely used for the Sobel filter.
     *
     * @param min    the minimum value of the slider
@@ -210,40 +209,23 @@ public class FilterActions {
     */
    public void makeSliderVH(int min, int max, String title, ImagePanel target) {
 
-      EditableImage realImage = target.getImage();
-
       // get slider object
       JSlider slider = getSliderVH(min, max, title);
 
       Andie.colorFontSlider(slider);
       Andie.setOptionStyle();
 
-      // update the image on screen as the slider moves
+      // preview the filter in the background as the slider moves
+      PreviewScheduler preview = new PreviewScheduler(target);
       slider.addChangeListener(new ChangeListener() {
-         // keep track of the last value of the slider
-         int lastSilderValue = 1;
-
          public void stateChanged(ChangeEvent ce) {
             // Update for mouse listener bug
             Andie.chooserOperating = true;
-            // create a deep copy of the editable image (so that we don't change the actual
-            // editable image)
-            EditableImage copyImage = realImage.deepCopyEditable();
-            // set the target to have this new copy of the actual image.
-            target.setImage(copyImage);
-            // apply the median filter to the new copy of the actual image.
             if (slider.getValue() == 0) { // No change to apply.
+               preview.request(null);
                return;
             }
-            // update the image if the difference between the last slider value and new
-            // slider value is greater than or equal to 2
-            if (Math.abs(lastSilderValue - slider.getValue()) >= 1) {
-               target.getImage().apply(new SobelFilter(slider.getValue()));
-               target.repaint();
-               target.getParent().revalidate();
-               // update the last value of the slider
-               lastSilderValue = slider.getValue();
-            }
+            preview.request(new SobelFilter(slider.getValue()));
          }
       });
 
@@ -252,8 +234,8 @@ public class FilterActions {
             JOptionPane.QUESTION_MESSAGE, Andie.icon, null, null);
       // Update for mouse listener bug
       Andie.chooserOperating = false;
-      // reset image as the origional image
-      target.setImage(realImage);
+      // stop any preview still being rendered, and take it off the image
+      preview.close();
 
       // if user presses cancel
       if (select == JOptionPane.CANCEL_OPTION) {
@@ -272,8 +254,8 @@ public class FilterActions {
    /**
     * Creates a slider with the specified minimum and maximum values, title, and
     * target image panel.
-    * The slider is associated with a specific filter type and supports timed
-    * updates.
+    * The slider is associated with a specific filter type, and previews the
+    * filter in the background as the slider moves, using a {@link PreviewScheduler}.
     *
     * @param min        the minimum value of the slider
     * @param max        the maximum value of the slider
@@ -285,10 +267,8 @@ public class FilterActions {
     *                   3 - Gaussian blur filter
     *                   4 - Emboss filter
     *                   5 - Sobel filter
-    * @param timed      flag indicating whether timed updates should be used for
-    *                   the median filter
     */
-   public void makeSlider(int min, int max, String title, ImagePanel target, int filterType, boolean timed) {
+   public void makeSlider(int min, int max, String title, ImagePanel target, int filterType) {
       // Note, it does not include Sharpen filter, because it does not have a value
       // Mean filter = 1
       // Median filter = 2
@@ -296,59 +276,22 @@ public class FilterActions {
       // Emboss filter = 4
       // Sobel filter = 5
 
-      EditableImage realImage = target.getImage();
-
       // get slider object
       JSlider slider = getSlider(min, max, title);
 
       Andie.colorFontSlider(slider);
 
-      // update the image on screen as the slider moves
+      // preview the filter in the background as the slider moves
+      PreviewScheduler preview = new PreviewScheduler(target);
       slider.addChangeListener(new ChangeListener() {
-         // keep track of the last value of the slider
-         int lastSilderValue = 0;
-
          public void stateChanged(ChangeEvent ce) {
             // Update for mouse listener bug
             Andie.chooserOperating = true;
-            // timer for the median filter due to lagging
-            long startTime = System.nanoTime();
-            // create a deep copy of the editable image (so that we don't change the actual
-            // editable image)
-            EditableImage copyImage = realImage.deepCopyEditable();
-            // set the target to have this new copy of the actual image.
-            target.setImage(copyImage);
-            // apply the median filter to the new copy of the actual image.
             if (slider.getValue() == 0) { // No change to apply.
+               preview.request(null);
                return;
             }
-            // update the image if the difference between the last slider value and new
-            // slider value is greater than or equal to 2
-            if (Math.abs(lastSilderValue - slider.getValue()) >= 1) {
-               if (filterType == 1) {
-                  target.getImage().apply(new MeanFilter(slider.getValue()));
-               } else if (filterType == 2) {
-                  long endTime = System.nanoTime(); // get the end time in nanoseconds
-                  long elapsedTime = endTime - startTime; // calculate the elapsed time in nanoseconds
-                  double elapsedSeconds = (double) elapsedTime / 1000000000; // convert to seconds
-                  if (elapsedSeconds >= 0.02) {
-                     // if time is more than 1/5 seconds, apply the median filter
-                     // reset the timer
-                     startTime = System.nanoTime();
-                     target.getImage().apply(new MedianFilter(slider.getValue()));
-                  }
-               } else if (filterType == 3) {
-                  target.getImage().apply(new GaussianBlurFilter(slider.getValue()));
-               } else if (filterType == 4) {
-                  target.getImage().apply(new EmbossFilter(slider.getValue()));
-               } else if (filterType == 5) {
-                  target.getImage().apply(new SobelFilter(slider.getValue()));
-               }
-               target.repaint();
-               target.getParent().revalidate();
-               // update the last value of the slider
-               lastSilderValue = slider.getValue();
-            }
+            preview.request(makeFilter(filterType, slider.getValue()));
          }
       });
 
@@ -356,8 +299,8 @@ public class FilterActions {
       int select = JOptionPane.showOptionDialog(null, slider, title, JOptionPane.OK_CANCEL_OPTION,
             JOptionPane.QUESTION_MESSAGE, Andie.icon, null, null);
       Andie.chooserOperating = false;
-      // reset image as the original image
-      target.setImage(realImage);
+      // stop any preview still being rendered, and take it off the image
+      preview.close();
 
       // if user presses cancel
       if (select == JOptionPane.CANCEL_OPTION) {
@@ -368,19 +311,34 @@ public class FilterActions {
       }
 
       // create and apply the filter
+      ImageOperation filter = makeFilter(filterType, slider.getValue());
+      if (filter != null) {
+         target.getImage().apply(filter);
+      }
+      target.repaint();
+      target.getParent().revalidate();
+   }
+
+   /**
+    * Creates the filter for a slider made by {@link #makeSlider}.
+    *
+    * @param filterType the type of filter, as for {@link #makeSlider}
+    * @param value      the value of the slider
+    * @return the filter, or null if the filter type is unknown
+    */
+   private ImageOperation makeFilter(int filterType, int value) {
       if (filterType == 1) {
-         target.getImage().apply(new MeanFilter(slider.getValue()));
+         return new MeanFilter(value);
       } else if (filterType == 2) {
-         target.getImage().apply(new MedianFilter(slider.getValue()));
+         return new MedianFilter(value);
       } else if (filterType == 3) {
-         target.getImage().apply(new GaussianBlurFilter(slider.getValue()));
+         return new GaussianBlurFilter(value);
       } else if (filterType == 4) {
-         target.getImage().apply(new EmbossFilter(slider.getValue()));
+         return new EmbossFilter(value);
       } else if (filterType == 5) {
-         target.getImage().apply(new SobelFilter(slider.getValue()));
+         return new SobelFilter(value);
       }
-      target.repaint();
-      target.getParent().revalidate();
+      return null;
    }
 
    /**
@@ -434,7 +392,7 @@ public class FilterActions {
             return;
          }
 
-         makeSlider(minRadius, maxRadius, title, target, 1, false);
+         makeSlider(minRadius, maxRadius, title, target, 1);
       }
    }
 
@@ -526,7 +484,7 @@ public class FilterActions {
             return;
          }
          // Create and apply the filter with slider and listener
-         makeSlider(minEmbossType, maxEmbossType, title, target, 4, false);
+         makeSlider(minEmbossType, maxEmbossType, title, target, 4);
       }
    }
 
@@ -572,7 +530,7 @@ public class FilterActions {
             return;
          }
          // Create and apply the filter with slider and listener
-         // makeSlider(minSobelType, maxSobelType, title, target, 5, false);
+         // makeSlider(minSobelType, maxSobelType, title, target, 5);
          makeSliderVH(minSobelType, maxSobelType, title, target);
       }
    }
@@ -624,7 +582,7 @@ public class FilterActions {
          }
 
          // Create and apply the filter with slider and listener
-         makeSlider(minRadius, maxRadius, title, target, 3, false);
+         makeSlider(minRadius, maxRadius, title, target, 3);
       }
    }
 
@@ -677,8 +635,7 @@ public class FilterActions {
             JOptionPane.showMessageDialog(null, message, title, JOptionPane.ERROR_MESSAGE, Andie.icon);
             return;
          }
-         // note that timed is true, because the median filter lags
-         makeSlider(minRadius, maxRadius, title, target, 2, true);
+         makeSlider(minRadius, maxRadius, title, target, 2);
       }
    }
 }
@@ -1,12 +1,17 @@
 package cosc202.andie;
 
 import java.awt.image.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 
 /**
  * Class to apply flipImage to a given image, either vertically or horizontally
  */
-public class FlipImage implements ImageOperation, java.io.Serializable {
+public class FlipImage implements ImageOperation, EncodableOperation, java.io.Serializable {
+
+    private static final long serialVersionUID = -570594985523215636L;
     
     // Boolean to check if flip is vertical or horizontal
     boolean isVertical;
@@ -28,44 +33,49 @@ public class FlipImage implements ImageOperation, java.io.Serializable {
         // Find height and width of image
         int rows = input.getHeight();
         int cols = input.getWidth();
-
-        // Create an empty 2D array
-        int[][] test = new int[rows][cols];
-
-        // Create a copy of image
-        BufferedImage testImage = new BufferedImage(cols, rows, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ImagePixels.read(input);
+        int[] flipped = new int[pixels.length];
 
         // Vertical flip
         if(isVertical) {
-            // Loop through input image
+            // Copy each row from the opposite end of the image
             for (int row = 0; row < rows; row++) {
-                for (int col = 0; col < cols; col++) {
-                    // Set test array location to vertically flipped position
-                    test[row][col] = input.getRGB(col, rows - row - 1);
-                }
+                System.arraycopy(pixels, (rows - row - 1) * cols, flipped, row * cols, cols);
             }
+        // Horizontal flip
         } else {
-            // Horizontal Flip
+            // Loop through input image backwards on each row
             for (int row = 0; row < rows; row++) {
                 for (int col = 0; col < cols; col++) {
-                    // Set test array location to horizontally flipped position
-                    test[row][col] = input.getRGB(cols - col - 1, row);
+                    flipped[row * cols + col] = pixels[row * cols + cols - col - 1];
                 }
             }
         }
 
-        // Loop through test array
-        for (int x = 0; x < cols; x++) {
-            for (int y = 0; y < rows; y++) {
-                // Grab each x and y from array and store as pixel
-                int pixel = test[y][x];
-                // Set each pixel of the testImage
-                testImage.setRGB(x, y, pixel);
-            }
-        }
+        return ImagePixels.wrap(cols, rows, flipped);
+    }
 
-        // Store input as new rotated image
-        input = testImage;
-        return input;
+    /**
+     * Write the settings of this operation to an <code>.ops</code> file.
+     *
+     * Writes whether the flip is vertical.
+     *
+     * @param out Where to write the settings.
+     * @throws IOException If the settings cannot be written.
+     */
+    public void encode(DataOutput out) throws IOException {
+        out.writeBoolean(isVertical);
+    }
+
+    /**
+     * Rebuild an operation from the settings written by {@link #encode}.
+     *
+     * @param in      The settings.
+     * @param version The version of the <code>.ops</code> file.
+     * @return The operation.
+     * @throws IOException If the settings cannot be read.
+     */
+    static FlipImage decode(DataInput in, int version) throws IOException {
+        return new FlipImage(in.readBoolean());
     }
 }
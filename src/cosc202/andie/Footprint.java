@@ -0,0 +1,140 @@
+package cosc202.andie;
+
+/**
+ * <p>
+ * Describes which input pixels an {@link ImageOperation} reads to compute each output pixel.
+ * </p>
+ * 
+ * <p>
+ * The {@link TileEngine} uses the footprint of an operation to decide how the image can be split
+ * into tiles:
+ * </p>
+ * <ul>
+ * <li>A <em>per-pixel</em> operation only reads the pixel it is writing, so tiles can be processed
+ * independently with no overlap.</li>
+ * <li>A <em>neighbourhood</em> operation reads pixels up to some radius away (convolutions, the median
+ * filter), so each tile needs a halo of that radius around it.</li>
+ * <li>A <em>global</em> operation may read anywhere in the image, or change its size (rotations, resizing,
+ * cropping), so it has to be applied to the whole image at once.</li>
+ * </ul>
+ * 
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class Footprint {
+
+    /** The different kinds of footprint. */
+    public enum Kind {
+        /** Each output pixel depends only on the input pixel at the same position. */
+        PER_PIXEL,
+        /** Each output pixel depends on the input pixels within a fixed radius. */
+        NEIGHBOURHOOD,
+        /** Output pixels may depend on any input pixel. */
+        GLOBAL
+    }
+
+    /** The footprint shared by all per-pixel operations. */
+    private static final Footprint PER_PIXEL = new Footprint(Kind.PER_PIXEL, 0);
+    /** The footprint shared by all global operations. */
+    private static final Footprint GLOBAL = new Footprint(Kind.GLOBAL, 0);
+
+    /** The kind of footprint. */
+    private final Kind kind;
+    /** The radius of the neighbourhood read around each pixel, 0 unless the kind is NEIGHBOURHOOD. */
+    private final int radius;
+
+    /**
+     * Create a new footprint.
+     * 
+     * @param kind   The kind of footprint.
+     * @param radius The radius of the neighbourhood read around each pixel.
+     */
+    private Footprint(Kind kind, int radius) {
+        this.kind = kind;
+        this.radius = radius;
+    }
+
+    /**
+     * <p>
+     * Get the footprint of an operation that only reads the pixel it writes.
+     * </p>
+     * 
+     * @return A per-pixel footprint.
+     */
+    public static Footprint perPixel() {
+        return PER_PIXEL;
+    }
+
+    /**
+     * <p>
+     * Get the footprint of an operation that reads the pixels within a radius.
+     * </p>
+     * 
+     * @param radius The distance, in pixels, of the furthest pixel read in x or y.
+     * @return A neighbourhood footprint, or a per-pixel footprint if the radius is 0.
+     */
+    public static Footprint neighbourhood(int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Radius must not be negative: " + radius);
+        }
+        if (radius == 0) {
+            return PER_PIXEL;
+        }
+        return new Footprint(Kind.NEIGHBOURHOOD, radius);
+    }
+
+    /**
+     * <p>
+     * Get the footprint of an operation that must see the whole image.
+     * </p>
+     * 
+     * @return A global footprint.
+     */
+    public static Footprint global() {
+        return GLOBAL;
+    }
+
+    /**
+     * <p>
+     * Get the kind of this footprint.
+     * </p>
+     * 
+     * @return The kind of footprint.
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * <p>
+     * Get the width of the halo needed around a tile for this footprint.
+     * </p>
+     * 
+     * @return The halo radius in pixels, 0 for per-pixel and global footprints.
+     */
+    public int getHalo() {
+        return radius;
+    }
+
+    /**
+     * <p>
+     * Check if an operation with this footprint can be split into tiles.
+     * </p>
+     * 
+     * @return True unless the footprint is global.
+     */
+    public boolean isTileable() {
+        return kind != Kind.GLOBAL;
+    }
+
+    @Override
+    public String toString() {
+        if (kind == Kind.NEIGHBOURHOOD) {
+            return "neighbourhood(" + radius + ")";
+        }
+        return kind == Kind.PER_PIXEL ? "per-pixel" : "global";
+    }
+}
@@ -0,0 +1,204 @@
+package cosc202.andie;
+
+import java.awt.image.BufferedImage;
+import java.util.*;
+
+/**
+ * <p>
+ * A run of {@link PixelOperation}s applied in one pass over the image.
+ * </p>
+ *
+ * <p>
+ * Applying a chain of per-pixel operations one after another reads and writes every pixel of the
+ * image once per operation.
+ * This operation instead reads each pixel once, passes it through the {@link PixelOperation#filter}
+ * of every operation in turn, and writes it back once, so the memory traffic does not grow with
+ * the length of the chain.
+ * </p>
+ *
+ * <p>
+ * The result is exactly the same as applying the operations separately.
+ * Packed <code>int</code> images are fused, masking off the alpha between operations if the image
+ * has none, as storing it would.
+ * Other types of image can lose precision each time a colour is stored, so the operations are
+ * applied separately to them.
+ * </p>
+ *
+ * <p>
+ * Consecutive {@link LookupOperation}s are composed into a single {@link LookupTable} first, so a
+ * run of tonal adjustments costs one lookup per channel however long it is.
+ * Their tables treat each channel separately, so composing them gives the same colours even when
+ * the alpha is masked between operations: the alpha only feeds into the alpha of the next table.
+ * </p>
+ *
+ * <p>
+ * Fused operations are only made when the operation stack is replayed, and are never stored, so
+ * this class is not serializable.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public class FusedPixelOperation implements PixelOperation {
+
+    /**
+     * How many pixels are passed through all of the operations at a time.
+     * A block fits in the processor's fastest cache, so only the first operation reads it from memory.
+     */
+    private static final int BLOCK_SIZE = 4096;
+
+    /** The operations, in the order they are applied. */
+    private final PixelOperation[] ops;
+    /** The operations with runs of lookup operations composed, which is how packed images are filtered. */
+    private final PixelOperation[] passes;
+
+    /**
+     * Create an operation that applies a run of per-pixel operations in one pass.
+     *
+     * @param ops The operations, in the order they are applied.
+     */
+    public FusedPixelOperation(List<? extends PixelOperation> ops) {
+        List<PixelOperation> composed = new ArrayList<PixelOperation>();
+        LookupTable table = null;
+        for (PixelOperation op : ops) {
+            if (op instanceof LookupOperation) {
+                LookupTable next = ((LookupOperation) op).getLookupTable();
+                table = table == null ? next : table.then(next);
+            } else {
+                if (table != null) {
+                    composed.add(table);
+                    table = null;
+                }
+                composed.add(op);
+            }
+        }
+        if (table != null) {
+            composed.add(table);
+        }
+        this.ops = ops.toArray(new PixelOperation[0]);
+        this.passes = composed.toArray(new PixelOperation[0]);
+    }
+
+    /**
+     * <p>
+     * Combine each run of fusable operations in a list.
+     * </p>
+     *
+     * @param ops The operations, in the order they are applied.
+     * @return The same operations, with every run of two or more fusable {@link PixelOperation}s
+     *         replaced by a single {@link FusedPixelOperation}.
+     */
+    public static List<ImageOperation> fuse(List<? extends ImageOperation> ops) {
+        List<ImageOperation> result = new ArrayList<ImageOperation>();
+        int i = 0;
+        while (i < ops.size()) {
+            int end = runEnd(ops, i);
+            if (end - i >= 2) {
+                result.add(new FusedPixelOperation(pixelOps(ops, i, end)));
+                i = end;
+            } else {
+                result.add(ops.get(i));
+                i++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the end of the run of fusable operations starting at an index.
+     *
+     * @param ops   The operations.
+     * @param start The index to start from.
+     * @return One past the last fusable operation in the run, or start if the operation at start
+     *         cannot be fused.
+     */
+    public static int runEnd(List<? extends ImageOperation> ops, int start) {
+        int end = start;
+        while (end < ops.size() && isFusable(ops.get(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Get a run of operations as per-pixel operations.
+     *
+     * @param ops   The operations.
+     * @param start The first operation in the run.
+     * @param end   One past the last operation in the run, which must all be fusable.
+     * @return The operations in the run.
+     */
+    public static List<PixelOperation> pixelOps(List<? extends ImageOperation> ops, int start, int end) {
+        List<PixelOperation> run = new ArrayList<PixelOperation>();
+        for (int i = start; i < end; i++) {
+            run.add((PixelOperation) ops.get(i));
+        }
+        return run;
+    }
+
+    /**
+     * Check if an operation can be fused with its neighbours.
+     *
+     * @param op The operation.
+     * @return True if it is a {@link PixelOperation} that can be fused.
+     */
+    public static boolean isFusable(ImageOperation op) {
+        return op instanceof PixelOperation && ((PixelOperation) op).isFusable();
+    }
+
+    /**
+     * Get the footprint of this operation.
+     *
+     * @return A per-pixel footprint.
+     */
+    public Footprint getFootprint() {
+        return Footprint.perPixel();
+    }
+
+    /**
+     * Work out the new colour of a pixel, passing it through every operation in turn.
+     *
+     * @param argb The colour of the pixel, as packed ARGB.
+     * @return The colour after all of the operations.
+     */
+    public int filter(int argb) {
+        for (PixelOperation op : passes) {
+            argb = op.filter(argb);
+        }
+        return argb;
+    }
+
+    /**
+     * Apply all of the operations to an image.
+     *
+     * @param input The image to apply the operations to.
+     * @return The resulting image.
+     */
+    public BufferedImage apply(BufferedImage input) {
+        if (!ImagePixels.isPacked(input)) {
+            for (PixelOperation op : ops) {
+                input = op.apply(input);
+            }
+            return input;
+        }
+        // an image without alpha stores every pixel as opaque, so each operation sees it that way
+        int opaque = input.getColorModel().hasAlpha() ? 0 : 0xFF000000;
+        int[] pixels = ImagePixels.read(input);
+        for (int from = 0; from < pixels.length; from += BLOCK_SIZE) {
+            int to = Math.min(from + BLOCK_SIZE, pixels.length);
+            for (PixelOperation op : passes) {
+                if (opaque != 0) {
+                    for (int i = from; i < to; i++) {
+                        pixels[i] |= opaque;
+                    }
+                }
+                op.filter(pixels, from, to);
+            }
+        }
+        ImagePixels.write(input, pixels);
+        return input;
+    }
+}
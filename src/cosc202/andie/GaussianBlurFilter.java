@@ -1,205 +1,332 @@
 package cosc202.andie;
 
-import java.awt.Graphics2D;
 import java.awt.image.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * <p>
- * ImageOperation to apply a Mean (simple blur) filter.
+ * ImageOperation to apply a Gaussian blur filter.
  * </p>
- * 
+ *
  * <p>
- * A gaussian filter blurs an image by replacing each pixel by that provided by the
- * gaussuan function, then using the avergae of this and can be implemented by a convoloution.
+ * A gaussian filter blurs an image by replacing each pixel with a weighted average of its
+ * neighbours, where the weights follow the gaussian function, so closer pixels count for more.
  * </p>
- * 
+ *
+ * <p>
+ * The 2D gaussian is separable, so rather than convolving with a full (2r+1)x(2r+1) kernel the
+ * blur is done as a horizontal 1D pass followed by a vertical 1D pass, costing O(r) per pixel
+ * instead of O(r<sup>2</sup>).
+ * Both passes work on the raw samples of the image in a <code>float</code> buffer, and pixels
+ * beyond the edges of the image take the value of the nearest edge pixel.
+ * </p>
+ *
+ * <p>
+ * For large radii the filter can instead use the recursive approximation of Young and van Vliet,
+ * which runs a short IIR filter forwards and then backwards along each line.
+ * Its cost per pixel does not depend on the radius at all, at the price of a small difference
+ * from the exact gaussian.
+ * </p>
+ *
  * <p>
  * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA
  * 4.0</a>
  * </p>
- * 
- * @see java.awt.image.ConvolveOp
+ *
+ * @see <a href="https://doi.org/10.1016/0165-1684(95)00020-E">Young and van Vliet, Recursive
+ *      implementation of the Gaussian filter, Signal Processing 44 (1995)</a>
  * @author Eszter Scarlett Herbert, adapted from Mean Filter by Steven Mills
- * @version 2.0
+ * @version 3.0
  */
 
-public class GaussianBlurFilter implements ImageOperation, java.io.Serializable {
+public class GaussianBlurFilter implements TileableOperation, ScalableOperation, EncodableOperation, java.io.Serializable {
+
+    private static final long serialVersionUID = -206522085362750955L;
+
+    /**
+     * The largest radius blurred with the exact kernel when the mode is not given explicitly.
+     * This is the largest radius offered in the user interface, so slider blurs are always exact.
+     */
+    public static final int MAX_KERNEL_RADIUS = 10;
+
+    /**
+     * Added to each result before it is truncated, so that float rounding in the normalised kernel
+     * does not darken flat areas by one level.
+     */
+    private static final float ROUNDING_GUARD = 1e-3f;
+
     /*
      * creates an int radius and a floar sigma which
      * will be used in the equations/ specified by the radius the user enters
      */
     private int radius;
     private float sigma;
+    /* whether to use the recursive approximation instead of the exact kernel */
+    private boolean recursive;
 
     /**
-     * is going to take in 
+     * is going to take in
      * radius: the radius of the gaussian blur that the
      * user has entered,
      * sigma: is going to be a float variable which is equal to the radius divided by three
+     *
+     * <p>
+     * Radii up to {@link #MAX_KERNEL_RADIUS} use the exact kernel, and larger ones use the
+     * recursive approximation.
+     * </p>
+     *
+     * @param radius The radius of the blur.
      */
     public GaussianBlurFilter(int radius) {
+        this(radius, radius > MAX_KERNEL_RADIUS);
+    }
+
+    /**
+     * Create a gaussian blur, choosing whether to use the exact kernel or the recursive approximation.
+     *
+     * @param radius    The radius of the blur.
+     * @param recursive True to use the recursive approximation, whose cost does not depend on the
+     *                  radius; false to convolve with the exact kernel.
+     */
+    public GaussianBlurFilter(int radius, boolean recursive) {
         this.radius = radius;
         this.sigma = radius / 3.0f;
+        this.recursive = recursive;
     }
 
-    /**@param input The image to apply the Sharpen filter to.
-     * @return The resulting (blurred) image. */
+    /**
+     * Get the footprint of this operation.
+     *
+     * <p>
+     * The exact kernel reads pixels up to the radius away.
+     * The recursive filter carries its state along the whole line, and starts each line from the
+     * pixel at its end, so a tile with any halo would not start from the same state as the whole
+     * image does and could round some pixels differently.
+     * It is cheap at any radius, so it is applied to the whole image rather than in tiles.
+     * </p>
+     *
+     * @return The footprint of the operation.
+     */
+    public Footprint getFootprint() {
+        if (recursive) {
+            return Footprint.global();
+        }
+        return Footprint.neighbourhood(padding());
+    }
+
+    /**
+     * Get an equivalent filter for a scaled copy of the image.
+     *
+     * The radius, and so sigma, is scaled, keeping the same choice of exact or recursive blur.
+     *
+     * @param factor The scale of the image the filter will be applied to.
+     * @return A filter with the radius scaled to match.
+     */
+    public ImageOperation scaled(double factor) {
+        return new GaussianBlurFilter(Math.max(1, (int) Math.round(radius * factor)), recursive);
+    }
+
+    /**
+     * Get how many edge pixels each line is padded with before it is blurred.
+     *
+     * @return The number of pixels of padding at each end of a line.
+     */
+    private int padding() {
+        return recursive ? 2 * radius : radius;
+    }
+
+    /**@param input The image to apply the blur to.
+     * @return The resulting (blurred) image, of the same type as the input. */
     public BufferedImage apply(BufferedImage input) {
-        int crop = radius + 3;
-        // extened the image by edge number of pixels on each size
-        input = ImageEdgeExtension.extendImage(input, crop);
-
-        /*
-         * creates an int called size, which will be created to ensure that the size
-         * will always be an odd number- and thus there will be a middle
-         * then creates a double array of kernelData, where the grid of the image/
-         * radius will always be an odd number
-         * additionally the array will have with a length equal to the size of the size
-         * squared.
-         * the float sum, starts as zero and will be used afterwards to divide the blur
-         * the centerIndex
-         */
-        int size = (2 * radius + 1);
-        float[][] kernelData = new float[size][size];
-        float sum = 0.0f;
+        int width = input.getWidth();
+        int height = input.getHeight();
+        int type = input.getType();
+        ColorModel cm = input.getColorModel();
+        if (cm instanceof IndexColorModel) {
+            // blurring palette indices makes no sense, so blur the colours they stand for instead
+            BufferedImage blurred = apply(ImagePixels.wrap(width, height, ImagePixels.copy(input)));
+            return ImagePixels.create(width, height, type, ImagePixels.read(blurred));
+        }
+        // Images in other colour spaces, such as linear grey, have always gone to and from packed
+        // ARGB on the way through the filter, so keep their colours the same
+        boolean convert = !cm.getColorSpace().isCS_sRGB() && type != BufferedImage.TYPE_CUSTOM;
+        if (convert) {
+            input = ImagePixels.create(width, height, type, ImagePixels.read(input));
+        }
+        WritableRaster raster = input.getRaster();
+        int bands = raster.getNumBands();
 
-        /*
-         * this is used to determine where the center of the kernel will be, the center
-         * of the matrix is when the row and column parts are equal to the radius
-         * so for example, if the radius is 3, then the size will be 7 x 7, and the
-         * centre of
-         * x and y will be 3, 3
-         */
-        int centerOfKernel = radius;
-
-        /*
-         * where the row is less than the size, iterate through the row
-         * where the column is less than the size, iterate through the column
-         */
-        for (int row = 0; row < size; row++) {
-            for (int col = 0; col < size; col++) {
-
-                // will determine the distance of the current x- position (the row) from the
-                // center of the image
-                // then will determine the distance of the current y- position (the column) from
-                // the center of the image
-                float distancex = (float) row - centerOfKernel;
-                float distancey = (float) col - centerOfKernel;
-
-                // the constant part of the gaussian blur is (1.0 / (2 * Math.PI * sigma)) ;
-                // then the exponent part of the gaussian blur is (-(Math.pow(distance, 2) +
-                // Math.pow(distance, 2)) / (2 * Math.pow( sigma, 2)));
-                // this combines the two equations together is that the kernel value in this
-                // position is equal to the equation
-                // then this value is added to the sum which will be used later on to create the
-                // actual blur
-                kernelData[row][col] = (float) ((1.0 / (2 * Math.PI * sigma))
-                        * Math.exp(-(Math.pow(distancex, 2) + Math.pow(distancey, 2)) / (2 * Math.pow(sigma, 2))));
-                sum += kernelData[row][col];
+        float[] samples = raster.getPixels(0, 0, width, height, (float[]) null);
+        if (radius > 0) {
+            float[] kernel = recursive ? null : kernel();
+            float[] line = new float[Math.max(width, height) + 2 * padding()];
+            // horizontal pass along each row, then vertical pass down each column, one band at a time
+            for (int y = 0; y < height; y++) {
+                for (int b = 0; b < bands; b++) {
+                    blurLine(samples, y * width * bands + b, bands, width, kernel, line);
+                }
+            }
+            for (int x = 0; x < width; x++) {
+                for (int b = 0; b < bands; b++) {
+                    blurLine(samples, x * bands + b, width * bands, height, kernel, line);
+                }
             }
         }
 
-        /*
-         * the kernel values become 'normalised' where
-         * the kernel data for each pixel is calculated by dividing through by the sum
-         * so that the filter values do not add up to more than one and the image doesn't
-         * get brighter
-         */
-        for (int row = 0; row < size; row++) {
-            for (int col = 0; col < size; col++) {
-                kernelData[row][col] /= sum;
-            }
+        // ConvolveOp truncated its results, so this does too, clamping to the range of each band
+        int[] sampleSizes = raster.getSampleModel().getSampleSize();
+        int[] result = new int[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            float max = (1 << sampleSizes[i % bands]) - 1;
+            result[i] = (int) Math.min(Math.max(samples[i] + ROUNDING_GUARD, 0), max);
+        }
+        WritableRaster outRaster = raster.createCompatibleWritableRaster();
+        outRaster.setPixels(0, 0, width, height, result);
+        BufferedImage output = new BufferedImage(input.getColorModel(), outRaster, input.isAlphaPremultiplied(), null);
+        if (convert) {
+            output = ImagePixels.create(width, height, type, ImagePixels.read(output));
+        }
+        return output;
+    }
+
+    /**
+     * <p>
+     * Build the normalised 1D gaussian kernel.
+     * </p>
+     *
+     * <p>
+     * The 2D kernel this filter has always used, exp(-(x<sup>2</sup>+y<sup>2</sup>)/2&sigma;<sup>2</sup>),
+     * is the product of this kernel with itself.
+     * </p>
+     *
+     * @return The 2r+1 weights of the kernel, which add up to one.
+     */
+    private float[] kernel() {
+        int size = 2 * radius + 1;
+        float[] kernel = new float[size];
+        float sum = 0.0f;
+        for (int i = 0; i < size; i++) {
+            int distance = i - radius;
+            kernel[i] = (float) Math.exp(-(distance * distance) / (2 * Math.pow(sigma, 2)));
+            sum += kernel[i];
         }
+        for (int i = 0; i < size; i++) {
+            kernel[i] /= sum;
+        }
+        return kernel;
+    }
 
-        /* the 2d array needs to be flattened into a 1d array so it can be recognised by the kernel */
-        float finalKernelArray[] = new float[kernelData.length * kernelData[0].length];
-        int counter = 0;
+    /**
+     * <p>
+     * Blur one line of samples in place.
+     * </p>
+     *
+     * <p>
+     * The line is copied into a buffer with {@link #padding()} copies of its first and last sample
+     * on either end, which is the only border handling the filter needs.
+     * </p>
+     *
+     * @param samples The samples of the whole image.
+     * @param start   The index of the first sample in the line.
+     * @param stride  The distance between consecutive samples in the line.
+     * @param length  The number of samples in the line.
+     * @param kernel  The 1D kernel, or null to use the recursive filter.
+     * @param line    A buffer with room for the line and its padding.
+     */
+    private void blurLine(float[] samples, int start, int stride, int length, float[] kernel, float[] line) {
+        int pad = padding();
+        float first = samples[start];
+        float last = samples[start + (length - 1) * stride];
+        for (int i = 0; i < pad; i++) {
+            line[i] = first;
+            line[pad + length + i] = last;
+        }
+        for (int i = 0, j = start; i < length; i++, j += stride) {
+            line[pad + i] = samples[j];
+        }
 
-        for (int row = 0; row < kernelData.length; row++) {
-            for (int col = 0; col < kernelData[row].length; col++) {
-                finalKernelArray[counter] = kernelData[row][col];
-                counter++;
+        if (kernel == null) {
+            recursiveLine(line, length + 2 * pad);
+            for (int i = 0, j = start; i < length; i++, j += stride) {
+                samples[j] = line[pad + i];
             }
+            return;
         }
+        for (int i = 0, j = start; i < length; i++, j += stride) {
+            float sum = 0.0f;
+            for (int k = 0; k < kernel.length; k++) {
+                sum += kernel[k] * line[i + k];
+            }
+            samples[j] = sum;
+        }
+    }
 
-        /**
-         * this is going to apply the kernel, by creating a new kernel object of a
-         * specified size, and the matrix of values stored in the final kernel array
-         * to reduce the appearance of the black from the average calculation being low because of the "missing" pixels off each side
-         * mirrored padding is used. border size is to use for the padded dimensions which is equal to
-         * half the size of the input image
-         */
-        Kernel kernel = new Kernel(size, size, finalKernelArray);
-        int borderSize = size / 2;
-
-        /*
-         * creates a new BufferedImage called paddedInput with the size of the input
-         * image plus a border of size borderSize on each side. The getType() method
-         * returns the type of the input image
-         */
-        BufferedImage paddedInput = new BufferedImage(
-                input.getWidth() + borderSize * 2,
-                input.getHeight() + borderSize * 2,
-                input.getType());
-
-        /*
-         * creates a Graphics2D object from the paddedInput image and draws the original
-         * input image at the center of the paddedInput image.
-         * @param input: the input image to copy from 
-         * @param dx1, dy1: the x and y coordinates of the (desired corner) of the output rectangle
-         * @param borderSize, borderSize: the width and height of the output rectangle
-         * @param sx1, sx2: the x and y coordinates of the (desired corner) of the source rectangle
-         * @param borderSize, borderSize: the width and height of the source rectangle
-         * @param null: ImageObserver, which is not needed
-         */
-        Graphics2D g = paddedInput.createGraphics();
-        g.drawImage(input, borderSize, borderSize, null);
-
-        /** copy the left and right, top and bottom borders of the input image to the padded image.*/
-        g.drawImage(input, 0, borderSize, borderSize, input.getHeight(), borderSize, 0, 0, input.getHeight(), null); // left border
-        g.drawImage(input, input.getWidth() - borderSize, borderSize, input.getWidth(), input.getHeight(),
-                input.getWidth() - borderSize, 0, input.getWidth(), input.getHeight(), null); // right border
-        g.drawImage(input, borderSize, 0, input.getWidth(), borderSize, 0, borderSize, input.getWidth(), 0, null); // top border
-        g.drawImage(input, borderSize, input.getHeight() - borderSize, input.getWidth(), input.getHeight(), 0,
-                input.getHeight() - borderSize, input.getWidth(), input.getHeight(), null); // bottom border
-
-        /**
-         * copy the four corners of the input image to the padded image.
-         * @param input: the input image to copy from 
-         * @param dx1, dy1: the x and y coordinates of the (desired corner) of the output rectangle
-         * @param borderSize, borderSize: the width and height of the output rectangle
-         * @param sx1, sx2: the x and y coordinates of the (desired corner) of the source rectangle
-         * @param borderSize, borderSize: the width and height of the source rectangle
-         * @param null: ImageObserver, which is not needed
-         */
-        g.drawImage(input, 0, 0, borderSize, borderSize, 0, 0, borderSize, borderSize, null); // top left
-        g.drawImage(input, input.getWidth() - borderSize, 0, input.getWidth(), borderSize,
-                input.getWidth() - borderSize, 0, input.getWidth(), borderSize, null); // top right
-        g.drawImage(input, 0, input.getHeight() - borderSize, borderSize, input.getHeight(), 0,
-                input.getHeight() - borderSize, borderSize, input.getHeight(), null); // bottom left
-        g.drawImage(input, input.getWidth() - borderSize, input.getHeight() - borderSize, input.getWidth(),
-                input.getHeight(), input.getWidth() - borderSize, input.getHeight() - borderSize, input.getWidth(),
-                input.getHeight(), null); // bottom right
-
-        /* releases the system resources used by the Graphics2D object. */
-        g.dispose();
-
-        /*
-         * apply the ConvolveOp to the padded image and crop the output
-         * image to remove the padded pixels.
-         */
-        ConvolveOp op = new ConvolveOp(kernel);
-        BufferedImage output = op.filter(paddedInput, null);
-
-        /*
-         * returns a cropped image that excludes the border pixels, The output image has
-         * the same size as the input image.
-         */
-        output = output.getSubimage(borderSize, borderSize, input.getWidth(), input.getHeight());
-        // crop the image back to original size
-        output = ImageEdgeExtension.cropImage(output, crop);
+    /**
+     * <p>
+     * Apply the recursive gaussian of Young and van Vliet to a line, in place.
+     * </p>
+     *
+     * <p>
+     * A third-order causal filter runs from left to right, and then the same filter runs from
+     * right to left, so the result is symmetric.
+     * Each filter starts as if the line continued forever with its end value.
+     * </p>
+     *
+     * @param line   The samples to blur.
+     * @param length The number of samples in the line.
+     */
+    private void recursiveLine(float[] line, int length) {
+        double q = sigma >= 2.5 ? 0.98711 * sigma - 0.96330 : 3.97156 - 4.14554 * Math.sqrt(1 - 0.26891 * Math.max(sigma, 0.5));
+        double b0 = 1.57825 + 2.44413 * q + 1.4281 * q * q + 0.422205 * q * q * q;
+        double b1 = (2.44413 * q + 2.85619 * q * q + 1.26661 * q * q * q) / b0;
+        double b2 = -(1.4281 * q * q + 1.26661 * q * q * q) / b0;
+        double b3 = (0.422205 * q * q * q) / b0;
+        double scale = 1 - (b1 + b2 + b3);
 
-        return output;
+        double w1 = line[0], w2 = line[0], w3 = line[0];
+        for (int i = 0; i < length; i++) {
+            double w = scale * line[i] + b1 * w1 + b2 * w2 + b3 * w3;
+            w3 = w2;
+            w2 = w1;
+            w1 = w;
+            line[i] = (float) w;
+        }
+        w1 = line[length - 1];
+        w2 = w1;
+        w3 = w1;
+        for (int i = length - 1; i >= 0; i--) {
+            double w = scale * line[i] + b1 * w1 + b2 * w2 + b3 * w3;
+            w3 = w2;
+            w2 = w1;
+            w1 = w;
+            line[i] = (float) w;
+        }
+    }
 
+    /**
+     * Write the settings of this operation to an <code>.ops</code> file.
+     *
+     * Writes the radius, and whether the recursive approximation is used.
+     *
+     * @param out Where to write the settings.
+     * @throws IOException If the settings cannot be written.
+     */
+    public void encode(DataOutput out) throws IOException {
+        out.writeInt(radius);
+        out.writeBoolean(recursive);
+    }
+
+    /**
+     * Rebuild an operation from the settings written by {@link #encode}.
+     *
+     * @param in      The settings.
+     * @param version The version of the <code>.ops</code> file.
+     * @return The operation.
+     * @throws IOException If the settings cannot be read.
+     */
+    static GaussianBlurFilter decode(DataInput in, int version) throws IOException {
+        return new GaussianBlurFilter(in.readInt(), in.readBoolean());
     }
 }
@@ -0,0 +1,218 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.swing.SwingUtilities;
+
+/**
+ * <p>
+ * Replays the saved operations of an image in the background after it is opened.
+ * </p>
+ *
+ * <p>
+ * An image with a long history can take a while to rebuild, so rather than making the user wait
+ * before seeing anything, {@link EditableImage#open} shows the image as it was before the
+ * operations and starts one of these to apply them.
+ * The {@link ImagePanel} shows the progress, and the result takes the place of the image once it
+ * is ready.
+ * Anything that needs the result sooner, such as applying another operation, waits for it with
+ * {@link #await}.
+ * </p>
+ *
+ * <p>
+ * The replay works on its own copy of the image and list of operations, so nothing it uses is
+ * changed by the event thread while it runs.
+ * Runs of per-pixel operations are {@link FusedPixelOperation fused}, as they are when the
+ * image is rebuilt after an undo.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public class HistoryRestore {
+
+    /** The image the operations are applied to, shown until they are done. */
+    private final BufferedImage base;
+    /** The operations to replay, in order. */
+    private final List<ImageOperation> ops;
+    /** The replay, which gives the final image. */
+    private final FutureTask<BufferedImage> task = new FutureTask<BufferedImage>(this::replay) {
+        @Override
+        protected void done() {
+            SwingUtilities.invokeLater(HistoryRestore.this::notifyListeners);
+        }
+    };
+    /** Called on the event thread whenever another operation is done, and when the replay ends. */
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<Runnable>();
+    /** The number of operations applied so far. */
+    private volatile int completed;
+
+    /**
+     * <p>
+     * Create a replay of operations, which does nothing until it is {@link #start}ed.
+     * </p>
+     *
+     * @param base The image to apply the operations to, which is not changed.
+     * @param ops  The operations to apply, in order.
+     */
+    public HistoryRestore(BufferedImage base, List<? extends ImageOperation> ops) {
+        this.base = base;
+        this.ops = new ArrayList<ImageOperation>(ops);
+    }
+
+    /**
+     * <p>
+     * Start replaying the operations on a background thread.
+     * </p>
+     */
+    public void start() {
+        Thread thread = new Thread(task, "ANDIE restore");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Apply the operations to a copy of the base image.
+     *
+     * @return The image with every operation applied.
+     */
+    private BufferedImage replay() {
+        ColorModel cm = base.getColorModel();
+        BufferedImage image = new BufferedImage(cm, base.copyData(null), cm.isAlphaPremultiplied(), null);
+        AndieEvents.ReplayEvent event = new AndieEvents.ReplayEvent();
+        event.begin();
+        int passes = 0;
+        int i = 0;
+        while (i < ops.size()) {
+            int end = FusedPixelOperation.runEnd(ops, i);
+            ImageOperation op;
+            if (end - i >= 2) {
+                op = new FusedPixelOperation(FusedPixelOperation.pixelOps(ops, i, end));
+            } else {
+                op = ops.get(i);
+                end = i + 1;
+            }
+            image = OperationMetrics.apply(op, image, OperationMetrics.Trigger.REFRESH);
+            i = end;
+            completed = i;
+            passes++;
+            SwingUtilities.invokeLater(this::notifyListeners);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.toDepth = ops.size();
+            event.operations = ops.size();
+            event.passes = passes;
+            event.width = base.getWidth();
+            event.height = base.getHeight();
+            event.background = true;
+            event.commit();
+        }
+        return image;
+    }
+
+    /**
+     * Tell the listeners that the replay has moved on.
+     */
+    private void notifyListeners() {
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Get the image the operations are applied to, to show until they are done.
+     *
+     * @return The image before the operations.
+     */
+    public BufferedImage getBase() {
+        return base;
+    }
+
+    /**
+     * Get the number of operations being replayed.
+     *
+     * @return The total number of operations.
+     */
+    public int getTotal() {
+        return ops.size();
+    }
+
+    /**
+     * Get the number of operations that have been applied so far.
+     *
+     * @return The number of operations done.
+     */
+    public int getCompleted() {
+        return completed;
+    }
+
+    /**
+     * Check if the replay has finished, successfully or not.
+     *
+     * @return True if the replay is over.
+     */
+    public boolean isDone() {
+        return task.isDone();
+    }
+
+    /**
+     * <p>
+     * Ask to be told when another operation has been applied, and when the replay ends,
+     * whether it finished, failed or was cancelled.
+     * </p>
+     *
+     * @param listener Called on the event thread.
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * <p>
+     * Wait for the replay to finish.
+     * </p>
+     *
+     * @return The image with every operation applied.
+     * @throws CancellationException If the replay was cancelled.
+     * @throws RuntimeException      If an operation failed.
+     */
+    public BufferedImage await() {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Stop the replay, because the image it belongs to has been closed.
+     * </p>
+     */
+    public void cancel() {
+        task.cancel(true);
+    }
+}
@@ -2,6 +2,9 @@ package cosc202.andie;
 
 import java.awt.Color;
 import java.awt.image.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * The HueFilter class implements the ImageOperation interface and represents a filter that modifies the hue of an image
@@ -14,9 +17,13 @@ import java.awt.image.*;
  * @author Hannah Srzich, highly adapted from the MeanFilter class by Steven Mills
  * @version 1.0
  */
-public class HueFilter implements ImageOperation, java.io.Serializable {  
+public class HueFilter implements PixelOperation, EncodableOperation, java.io.Serializable {
+
+    private static final long serialVersionUID = -2028474549263301307L;  
 
     Color color = null; // Must be set before apply() is called
+    /* the hue of the colour, worked out the first time it is needed */
+    private transient Float cachedHue;
 
     /**
      * Constructs a new HueFilter with the specified color.
@@ -27,6 +34,76 @@ public class HueFilter implements ImageOperation, java.io.Serializable {
         this.color = color;
     }
 
+    /**
+     * Get the footprint of this operation.
+     * 
+     * The hue of each pixel is replaced independently of its neighbours.
+     * 
+     * @return The footprint of the operation.
+     */
+    public Footprint getFootprint() {
+        return Footprint.perPixel();
+    }
+
+    /**
+     * Replaces the hue of one pixel.
+     *
+     * @param argb the colour of the pixel as packed ARGB
+     * @return the opaque colour with the hue of this filter's colour
+     */
+    public int filter(int argb) {
+        return shift(argb, hue(), new float[3]);
+    }
+
+    /**
+     * Replaces the hue of a range of pixels, in place.
+     *
+     * @param argb the colours of the pixels as packed ARGB
+     * @param from the first pixel to change
+     * @param to   one past the last pixel to change
+     */
+    public void filter(int[] argb, int from, int to) {
+        float hue = hue();
+        float[] hsb = new float[3];
+        // Iterate over each pixel in the range, reusing the same array for every pixel
+        for (int i = from; i < to; i++) {
+            argb[i] = shift(argb[i], hue, hsb);
+        }
+    }
+
+    /**
+     * Gets the hue of the colour this filter applies.
+     *
+     * @return the hue, between 0 and 1
+     */
+    private float hue() {
+        if (cachedHue == null) {
+            // Convert the given color to HSB format and extract the hue value from the array
+            cachedHue = Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(), null)[0];
+        }
+        return cachedHue;
+    }
+
+    /**
+     * Replaces the hue of one colour, keeping its saturation and brightness.
+     *
+     * @param rgb the colour as packed RGB
+     * @param hue the new hue
+     * @param hsb an array of three floats to work in
+     * @return the opaque colour with the new hue
+     */
+    private static int shift(int rgb, float hue, float[] hsb) {
+        // Extract the red, green, and blue components from the RGB value
+        int red = (rgb >> 16) & 0xFF;
+        int green = (rgb >> 8) & 0xFF;
+        int blue = rgb & 0xFF;
+
+        // Convert the RGB color to HSB format
+        Color.RGBtoHSB(red, green, blue, hsb);
+        // Convert the color to RGB format using the given hue and the extracted saturation and brightness values
+        return Color.HSBtoRGB(hue, hsb[1], hsb[2]);
+    }
+
     /**
      * Applies the hue filter to the given image by modifying the hue value of each pixel.
      * It converts the given color to HSV format, extracts the hue value, and iterates over each pixel in the image.
@@ -38,34 +115,35 @@ public class HueFilter implements ImageOperation, java.io.Serializable {
      * @return the modified image with the hue filter applied
      */
     public BufferedImage apply(BufferedImage image) {
-        // Convert the given color to HSB format
-        float[] hsv = Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(), null);
-        // Extract the hue value from the array
-        float hue = hsv[0];
-
-        // Iterate over each pixel in the image
-        for (int x = 0; x < image.getWidth(); x++) {
-            for (int y = 0; y < image.getHeight(); y++) {
-                // Get the RGB value of the pixel at (x, y)
-                int rgb = image.getRGB(x, y);
-                // Extract the red, green, and blue components from the RGB value
-                int red = (rgb >> 16) & 0xFF;
-                int green = (rgb >> 8) & 0xFF;
-                int blue = rgb & 0xFF;
-    
-                // Convert the RGB color to HSB format
-                float[] hsb = Color.RGBtoHSB(red, green, blue, null);
-                // Extract the brightness value from the HSB array
-                float brightness = hsb[2];
-                // Convert the color to RGB format using the given hue and the extracted saturation and brightness values
-                int rgb2 = Color.HSBtoRGB(hue, hsb[1], brightness);
-    
-                // Set the pixel at (x, y) to the new RGB value
-                image.setRGB(x, y, rgb2);
-            }
-        }
+        int[] pixels = ImagePixels.read(image);
+        filter(pixels, 0, pixels.length);
+        ImagePixels.write(image, pixels);
     
         // Return the modified image
         return image;
     }
+
+    /**
+     * Write the settings of this operation to an <code>.ops</code> file.
+     *
+     * Writes the colour whose hue is applied, as packed ARGB.
+     *
+     * @param out Where to write the settings.
+     * @throws IOException If the settings cannot be written.
+     */
+    public void encode(DataOutput out) throws IOException {
+        out.writeInt(color.getRGB());
+    }
+
+    /**
+     * Rebuild an operation from the settings written by {@link #encode}.
+     *
+     * @param in      The settings.
+     * @param version The version of the <code>.ops</code> file.
+     * @return The operation.
+     * @throws IOException If the settings cannot be read.
+     */
+    static HueFilter decode(DataInput in, int version) throws IOException {
+        return new HueFilter(new Color(in.readInt(), true));
+    }
 }
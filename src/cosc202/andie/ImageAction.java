@@ -1,5 +1,6 @@
 package cosc202.andie;
 
+import java.awt.Rectangle;
 import javax.swing.*;
 
 /**
@@ -72,6 +73,25 @@ public abstract class ImageAction extends AbstractAction {
         target = newTarget;
     } 
 
+    /**
+     * <p>
+     * Check whether an area, such as a shape about to be drawn, misses the target's image.
+     * </p>
+     * 
+     * <p>
+     * Operations do not warn about this themselves, since they are also replayed in the
+     * background and in batches, so actions check before applying them.
+     * </p>
+     * 
+     * @param area The area in image coordinates.
+     * @return True if the whole area is outside the image.
+     */
+    protected static boolean isOutsideImage(Rectangle area) {
+        EditableImage image = target.getImage();
+        return area.x > image.getWidth() || area.y > image.getHeight() || area.x + area.width < 0
+                || area.y + area.height < 0;
+    }
+
     /**
      * <p>
      * Get the target for ImageActions.
@@ -25,30 +25,9 @@ public class ImageEdgeExtension {
      * @return the extended image
      */
     public static BufferedImage extendImage(BufferedImage image) {
-        // Get the width and height of the image
-        int width = image.getWidth();
-        int height = image.getHeight();
-    
         // Create a new BufferedImage with the extended size
-        BufferedImage extendedImage = new BufferedImage(width + 6, height + 6, BufferedImage.TYPE_INT_RGB);
-    
-        // Set the pixels in the extended image
-        for (int y = 0; y < height + 6; y++) {
-            for (int x = 0; x < width + 6; x++) {
-                int pixel;
-                if (x < 3 || y < 3 || x >= width + 3 || y >= height + 3) {
-                    // If the pixel is outside the original image, set it to the color of the closest edge pixel
-                    int closestX = Math.min(Math.max(x - 3, 0), width - 1);
-                    int closestY = Math.min(Math.max(y - 3, 0), height - 1);
-                    pixel = image.getRGB(closestX, closestY);
-                } else {
-                    // Otherwise, copy the pixel from the original image
-                    pixel = image.getRGB(x - 3, y - 3);
-                }
-                extendedImage.setRGB(x, y, pixel);
-            }
-        }
-    
+        BufferedImage extendedImage = new BufferedImage(image.getWidth() + 6, image.getHeight() + 6, BufferedImage.TYPE_INT_RGB);
+        ImagePixels.write(extendedImage, extendPixels(image, 3));
         return extendedImage;
     }
 
@@ -59,24 +38,9 @@ public class ImageEdgeExtension {
      * @return the cropped image
      */
     public static BufferedImage cropImage(BufferedImage image) {
-        // Get the width and height of the original image
-        int width = image.getWidth();
-        int height = image.getHeight();
-    
         // Create a new BufferedImage to store the cropped image
-        BufferedImage croppedImage = new BufferedImage(width - 6, height - 6, BufferedImage.TYPE_INT_RGB);
-    
-        // Loop through each pixel in the cropped image
-        for (int y = 3; y < height - 3; y++) {
-            for (int x = 3; x < width - 3; x++) {
-                // Get the pixel value at (x, y)
-                int pixel = image.getRGB(x, y);
-    
-                // Set the pixel value in the cropped image
-                croppedImage.setRGB(x - 3, y - 3, pixel);
-            }
-        }
-    
+        BufferedImage croppedImage = new BufferedImage(image.getWidth() - 6, image.getHeight() - 6, BufferedImage.TYPE_INT_RGB);
+        ImagePixels.write(croppedImage, cropPixels(image, 3));
         return croppedImage;
     }
 
@@ -89,58 +53,72 @@ public class ImageEdgeExtension {
      * @return the extended image
      */
     public static BufferedImage extendImage(BufferedImage image, int n) {
+        BufferedImage extendedImage = new BufferedImage(image.getWidth() + 2 * n, image.getHeight() + 2 * n, image.getType());
+        ImagePixels.write(extendedImage, extendPixels(image, n));
+        return extendedImage;
+    }
+    
+    /**
+     * Crops the given image by removing n pixels on each side.
+     *
+     * @param image the image to crop
+     * @param n the number of pixels to remove on each side
+     * @return the cropped image
+     */
+    public static BufferedImage cropImage(BufferedImage image, int n) {
+        BufferedImage croppedImage = new BufferedImage(image.getWidth() - 2 * n, image.getHeight() - 2 * n, image.getType());
+        ImagePixels.write(croppedImage, cropPixels(image, n));
+        return croppedImage;
+    }
+
+    /**
+     * Gets the pixels of the given image extended by n pixels on each side, as packed ARGB values.
+     * The pixels outside the original image are set to the color of the closest edge pixel.
+     *
+     * @param image the image to extend
+     * @param n the number of pixels to add on each side
+     * @return the pixels of the extended image, in row-major order
+     */
+    private static int[] extendPixels(BufferedImage image, int n) {
         int width = image.getWidth();
         int height = image.getHeight();
         int extWidth = width + 2 * n;
         int extHeight = height + 2 * n;
-        
-        BufferedImage extendedImage = new BufferedImage(extWidth, extHeight, image.getType());
-        
-        // Color the border pixels based on the original edge pixels
+        int[] pixels = ImagePixels.read(image);
+        int[] extended = new int[extWidth * extHeight];
+
         for (int y = 0; y < extHeight; y++) {
-            for (int x = 0; x < extWidth; x++) {
-                if (x < n || y < n || x >= width + n || y >= height + n) {
-                    // This is a border pixel
-                    int originalX = Math.min(Math.max(x - n, 0), width - 1);
-                    int originalY = Math.min(Math.max(y - n, 0), height - 1);
-                    int color = image.getRGB(originalX, originalY);
-                    extendedImage.setRGB(x, y, color);
-                } else {
-                    // This is not a border pixel, copy the pixel from the original image
-                    int originalX = x - n;
-                    int originalY = y - n;
-                    int color = image.getRGB(originalX, originalY);
-                    extendedImage.setRGB(x, y, color);
-                }
+            // Rows above and below the image copy the closest edge row
+            int row = Math.min(Math.max(y - n, 0), height - 1) * width;
+            int extRow = y * extWidth;
+            // Color the border pixels based on the original edge pixels
+            for (int x = 0; x < n; x++) {
+                extended[extRow + x] = pixels[row];
+                extended[extRow + n + width + x] = pixels[row + width - 1];
             }
+            // Copy the pixels from the original image
+            System.arraycopy(pixels, row, extended, extRow + n, width);
         }
-        
-        return extendedImage;
+        return extended;
     }
-    
+
     /**
-     * Crops the given image by removing n pixels on each side.
+     * Gets the pixels of the given image with n pixels removed from each side, as packed ARGB values.
      *
      * @param image the image to crop
      * @param n the number of pixels to remove on each side
-     * @return the cropped image
+     * @return the pixels of the cropped image, in row-major order
      */
-    public static BufferedImage cropImage(BufferedImage image, int n) {
+    private static int[] cropPixels(BufferedImage image, int n) {
         int width = image.getWidth();
-        int height = image.getHeight();
         int croppedWidth = width - 2 * n;
-        int croppedHeight = height - 2 * n;
-    
-        BufferedImage croppedImage = new BufferedImage(croppedWidth, croppedHeight, image.getType());
-    
-        for (int y = n; y < height - n; y++) {
-            for (int x = n; x < width - n; x++) {
-                int pixel = image.getRGB(x, y);
-                croppedImage.setRGB(x - n, y - n, pixel);
-            }
+        int croppedHeight = image.getHeight() - 2 * n;
+        int[] pixels = ImagePixels.read(image);
+        int[] cropped = new int[croppedWidth * croppedHeight];
+
+        for (int y = 0; y < croppedHeight; y++) {
+            System.arraycopy(pixels, (y + n) * width + n, cropped, y * croppedWidth, croppedWidth);
         }
-    
-        return croppedImage;
+        return cropped;
     }
-    
 }
@@ -75,6 +75,30 @@ public class ImagePanel extends JPanel implements ActionListener{
     private static final int DASH_DELAY_MS = 100; //50
     private float dashPhase = 0.0f;
 
+    /**
+     * A preview drawn over part of the image while an operation is being adjusted, or null if
+     * there is none.
+     */
+    private BufferedImage preview;
+
+    /**
+     * The part of the image, in image coordinates, that the {@link #preview} covers.
+     */
+    private Rectangle previewArea;
+
+    /**
+     * The restore of saved operations the panel is listening to, so it only starts listening once.
+     */
+    private HistoryRestore watchedRestore;
+
+    /**
+     * Whether the timings of operations from {@link OperationMetrics} are shown over the image.
+     */
+    private boolean metricsShown;
+
+    /** The most operations listed in the timings overlay. */
+    private static final int METRICS_LINES = 8;
+
     /**
      * <p>
      * Create a new ImagePanel. 
@@ -205,10 +229,88 @@ public class ImagePanel extends JPanel implements ActionListener{
      * Set the currently displayed image
      * </p>
      *
+     * <p>
+     * Any {@link #setPreview preview} is removed, since it was a preview of the previous image.
+     * </p>
+     *
      * returns the image currently displayed.
      */
     public void setImage(EditableImage image) {
         this.image = image;
+        this.preview = null;
+        this.previewArea = null;
+    }
+
+    /**
+     * <p>
+     * Show a preview over part of the image.
+     * </p>
+     *
+     * <p>
+     * The preview is stretched to cover the given area of the image, so it can be rendered at a
+     * lower resolution than the image itself to give quick feedback while an operation is being
+     * adjusted.
+     * </p>
+     *
+     * @param preview The preview to draw, or null to remove the preview.
+     * @param area    The area of the image the preview covers, in image coordinates.
+     */
+    public void setPreview(BufferedImage preview, Rectangle area) {
+        this.preview = preview;
+        this.previewArea = preview == null ? null : new Rectangle(area);
+        repaint();
+    }
+
+    /**
+     * <p>
+     * Get the preview being shown over part of the image.
+     * </p>
+     *
+     * @return The preview, or null if there is none.
+     */
+    public BufferedImage getPreview() {
+        return preview;
+    }
+
+    /**
+     * <p>
+     * Get the area of the image covered by the preview.
+     * </p>
+     *
+     * @return The area in image coordinates, or null if there is no preview.
+     */
+    public Rectangle getPreviewArea() {
+        return previewArea == null ? null : new Rectangle(previewArea);
+    }
+
+    /**
+     * <p>
+     * Get the part of the image that can currently be seen.
+     * </p>
+     *
+     * <p>
+     * This is the visible part of the panel, such as the view of a scroll pane, converted to image
+     * coordinates at the current zoom level and cut off at the edges of the image.
+     * </p>
+     *
+     * @return The visible area of the image, in image coordinates, which is empty if no image is
+     *         open or none of it can be seen.
+     */
+    public Rectangle getVisibleImageArea() {
+        if (!image.hasImage()) {
+            return new Rectangle();
+        }
+        Rectangle visible = getVisibleRect();
+        // The image is centred in the panel, as in paintComponent
+        double left = (getWidth() - image.getWidth() * scale) / 2;
+        double top = (getHeight() - image.getHeight() * scale) / 2;
+        int x0 = (int) Math.floor((visible.x - left) / scale);
+        int y0 = (int) Math.floor((visible.y - top) / scale);
+        int x1 = (int) Math.ceil((visible.x + visible.width - left) / scale);
+        int y1 = (int) Math.ceil((visible.y + visible.height - top) / scale);
+        Rectangle area = new Rectangle(x0, y0, x1 - x0, y1 - y0)
+                .intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+        return area.isEmpty() ? new Rectangle() : area;
     }
 
     /**
@@ -240,6 +342,39 @@ public class ImagePanel extends JPanel implements ActionListener{
         return scale;
     }
 
+    /**
+     * <p>
+     * Convert a point on the panel, such as where the mouse was pressed, to image coordinates.
+     * </p>
+     *
+     * <p>
+     * The result depends on the zoom and on where the image is centred in the panel, so
+     * operations are given image coordinates when they are created rather than converting them
+     * when they are applied, which may be long after the window has changed.
+     * </p>
+     *
+     * @param x The x-coordinate on the panel.
+     * @param y The y-coordinate on the panel.
+     * @return The same point in image coordinates.
+     */
+    public Point toImage(int x, int y) {
+        return new Point((int) ((x - topLeftX) / scale), (int) ((y - topLeftY) / scale));
+    }
+
+    /**
+     * <p>
+     * Convert an area of the panel, such as the selected region, to image coordinates.
+     * </p>
+     *
+     * @param area The area on the panel.
+     * @return The same area in image coordinates.
+     * @see #toImage(int, int)
+     */
+    public Rectangle toImage(Rectangle area) {
+        Point corner = toImage(area.x, area.y);
+        return new Rectangle(corner.x, corner.y, (int) (area.width / scale), (int) (area.height / scale));
+    }
+
     /**
      * <p>
      * Set the current zoom level as a percentage.
@@ -281,7 +416,7 @@ public class ImagePanel extends JPanel implements ActionListener{
     @Override
     public Dimension getPreferredSize() {
         if (image.hasImage()) {
-            return new Dimension(image.getCurrentImage().getWidth(), image.getCurrentImage().getHeight());
+            return new Dimension(image.getWidth(), image.getHeight());
         } else {
             return new Dimension(450, 450);
         }
@@ -292,28 +427,64 @@ public class ImagePanel extends JPanel implements ActionListener{
      * (Re)draw the component in the GUI.
      * </p>
      * 
+     * <p>
+     * If the image has operations that have not been computed yet (see
+     * {@link EditableImage#setLazy}), only the tiles that are visible are rendered, in the
+     * background.
+     * Until each one is ready, that part of the image is drawn without the pending operations.
+     * Each paint is recorded as an {@link AndieEvents.PaintEvent} if a flight recording is running.
+     * </p>
+     * 
      * @param g The Graphics component to draw the image on.
      */
     @Override
     public void paintComponent(Graphics g) {
+        AndieEvents.PaintEvent event = new AndieEvents.PaintEvent();
+        event.begin();
+        event.source = "none";
         super.paintComponent(g);
         if (image.hasImage()) {
             Graphics2D g2 = (Graphics2D) g.create();
             g2.scale(scale, scale);
 
             // Get the scaled dimensions of the image
-            this.scaledWidth = (int) (image.getCurrentImage().getWidth() * scale);
-            this.scaledHeight = (int) (image.getCurrentImage().getHeight() * scale);
+            this.scaledWidth = (int) (image.getWidth() * scale);
+            this.scaledHeight = (int) (image.getHeight() * scale);
 
             // Calculate the scaled top-left coordinates
             this.topLeftX = (int) ((getWidth() - scaledWidth) / (2 * scale));
             this.topLeftY = (int) ((getHeight() - scaledHeight) / (2 * scale));
 
             // Draw the scaled image at the centered coordinates
-            g2.drawImage(image.getCurrentImage(), topLeftX, topLeftY, null);
+            HistoryRestore restore = image.getRestore();
+            PendingRender pending = image.getPendingRender();
+            if (restore != null) {
+                g2.drawImage(restore.getBase(), topLeftX, topLeftY, null);
+                event.source = "restoring";
+            } else if (pending == null) {
+                g2.drawImage(image.getCurrentImage(), topLeftX, topLeftY, null);
+                event.source = "current";
+            } else {
+                g2.drawImage(pending.getBase(), topLeftX, topLeftY, null);
+                drawPendingTiles(g2, pending);
+                event.source = "pending";
+            }
+
+            // Draw any preview stretched over the part of the image it covers, clearing the image
+            // underneath first so translucent pixels look as they would with the operation applied
+            if (preview != null) {
+                g2.setColor(getBackground());
+                g2.fillRect(topLeftX + previewArea.x, topLeftY + previewArea.y, previewArea.width, previewArea.height);
+                g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g2.drawImage(preview, topLeftX + previewArea.x, topLeftY + previewArea.y, previewArea.width,
+                        previewArea.height, null);
+            }
 
             // Call customer listener
             g2.dispose();
+            if (restore != null) {
+                drawRestoreProgress(g, restore);
+            }
         }
         // If mouse region is present and image is open
         if (region != null && image.hasImage()) {
@@ -332,6 +503,140 @@ public class ImagePanel extends JPanel implements ActionListener{
             g2.drawRect(region.x, region.y, region.width, region.height);
             g2.dispose();
         }
+        if (metricsShown) {
+            drawMetrics(g);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.scale = scale;
+            event.imageWidth = image.hasImage() ? image.getWidth() : 0;
+            event.imageHeight = image.hasImage() ? image.getHeight() : 0;
+            event.preview = preview != null;
+            event.commit();
+        }
+    }
+
+    /**
+     * <p>
+     * Show or hide the timings of operations over the image.
+     * </p>
+     * 
+     * @param shown True to show the timings.
+     */
+    public void setMetricsShown(boolean shown) {
+        metricsShown = shown;
+        repaint();
+    }
+
+    /**
+     * <p>
+     * Check whether the timings of operations are shown over the image.
+     * </p>
+     * 
+     * @return True if the timings are shown.
+     */
+    public boolean isMetricsShown() {
+        return metricsShown;
+    }
+
+    /**
+     * <p>
+     * Draw the timings of the operations from {@link OperationMetrics} in the top left corner of
+     * the visible part of the panel.
+     * </p>
+     * 
+     * <p>
+     * The panel repaints itself for the region animation, so the timings keep up as operations
+     * are applied.
+     * </p>
+     * 
+     * @param g The graphics to draw on, in panel coordinates.
+     */
+    private void drawMetrics(Graphics g) {
+        java.util.List<String> lines = OperationMetrics.summarise(METRICS_LINES);
+        if (lines.isEmpty()) {
+            lines = java.util.Collections.singletonList(Andie.bundle.getString("metricsEmpty"));
+        }
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        FontMetrics metrics = g2.getFontMetrics();
+        int width = 0;
+        for (String line : lines) {
+            width = Math.max(width, metrics.stringWidth(line));
+        }
+        Rectangle visible = getVisibleRect();
+        int lineHeight = metrics.getHeight();
+        g2.setColor(new Color(0, 0, 0, 170));
+        g2.fillRect(visible.x + 4, visible.y + 4, width + 8, lineHeight * lines.size() + 6);
+        g2.setColor(Color.WHITE);
+        for (int i = 0; i < lines.size(); i++) {
+            g2.drawString(lines.get(i), visible.x + 8, visible.y + 6 + metrics.getAscent() + i * lineHeight);
+        }
+        g2.dispose();
+    }
+
+    /**
+     * <p>
+     * Draw how far the saved operations of the image have been restored, along the bottom of the
+     * visible part of the panel.
+     * </p>
+     * 
+     * <p>
+     * The panel repaints itself as the restore goes on, and once it is done.
+     * </p>
+     * 
+     * @param g       The graphics to draw on, in panel coordinates.
+     * @param restore The restore in progress.
+     */
+    private void drawRestoreProgress(Graphics g, HistoryRestore restore) {
+        if (watchedRestore != restore) {
+            watchedRestore = restore;
+            restore.addListener(() -> {
+                // the image may have changed size once the operations are applied
+                revalidate();
+                repaint();
+            });
+        }
+        Rectangle visible = getVisibleRect();
+        int barHeight = 6;
+        int total = Math.max(1, restore.getTotal());
+        int done = (int) ((long) visible.width * restore.getCompleted() / total);
+        g.setColor(Color.DARK_GRAY);
+        g.fillRect(visible.x, visible.y + visible.height - barHeight, visible.width, barHeight);
+        g.setColor(Color.LIGHT_GRAY);
+        g.fillRect(visible.x, visible.y + visible.height - barHeight, done, barHeight);
+        String text = restore.getCompleted() + " / " + restore.getTotal();
+        int textWidth = g.getFontMetrics().stringWidth(text);
+        g.setColor(Color.DARK_GRAY);
+        g.fillRect(visible.x + visible.width - textWidth - 8, visible.y + visible.height - barHeight - g.getFontMetrics().getHeight() - 2,
+                textWidth + 8, g.getFontMetrics().getHeight() + 2);
+        g.setColor(Color.WHITE);
+        g.drawString(text, visible.x + visible.width - textWidth - 4, visible.y + visible.height - barHeight - 4);
+    }
+
+    /**
+     * Draw the tiles of the pending operations that are visible, asking for any that are missing
+     * to be rendered.
+     * 
+     * @param g2      The graphics to draw on, already scaled to the zoom level.
+     * @param pending The pending operations.
+     */
+    private void drawPendingTiles(Graphics2D g2, PendingRender pending) {
+        Rectangle area = getVisibleImageArea();
+        if (area.isEmpty()) {
+            return;
+        }
+        int size = PendingRender.TILE_SIZE;
+        for (int row = area.y / size; row <= (area.y + area.height - 1) / size; row++) {
+            for (int column = area.x / size; column <= (area.x + area.width - 1) / size; column++) {
+                BufferedImage tile = pending.getTile(column, row);
+                if (tile == null) {
+                    pending.requestTile(column, row, this::repaint);
+                } else {
+                    g2.drawImage(tile, topLeftX + column * size, topLeftY + row * size, null);
+                }
+            }
+        }
     }
 
     /**
@@ -355,24 +660,24 @@ public class ImagePanel extends JPanel implements ActionListener{
      * @return true if the image is too light, false otherwise.
      */
     private boolean imageTooLight() {
-        BufferedImage ourImage = image.getCurrentImage();
+        // Near enough while operations are pending or being restored, and much cheaper than computing them
+        HistoryRestore restore = image.getRestore();
+        PendingRender pending = image.getPendingRender();
+        BufferedImage ourImage = restore != null ? restore.getBase()
+                : pending == null ? image.getCurrentImage() : pending.getBase();
 
-        int width = ourImage.getWidth();
-        int height = ourImage.getHeight();
+        int[] pixels = ImagePixels.read(ourImage);
         int whitePixelCount = 0;
-        int totalPixelCount = width * height;
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                Color pixelColor = new Color(ourImage.getRGB(x, y));
-                int red = pixelColor.getRed();
-                int green = pixelColor.getGreen();
-                int blue = pixelColor.getBlue();
-
-                // Check if the pixel is white or almost white
-                if (red >= 240 && green >= 240 && blue >= 240) {
-                    whitePixelCount++;
-                }
+        int totalPixelCount = pixels.length;
+
+        for (int pixel : pixels) {
+            int red = (pixel >> 16) & 0xFF;
+            int green = (pixel >> 8) & 0xFF;
+            int blue = pixel & 0xFF;
+
+            // Check if the pixel is white or almost white
+            if (red >= 240 && green >= 240 && blue >= 240) {
+                whitePixelCount++;
             }
         }
 
@@ -0,0 +1,221 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+
+/**
+ * <p>
+ * Fast access to the pixels of a {@link BufferedImage} as an array of packed ARGB ints.
+ * </p>
+ *
+ * <p>
+ * Reading and writing pixels one at a time with {@link BufferedImage#getRGB(int, int)} and
+ * {@link BufferedImage#setRGB(int, int, int)} goes through the image's colour model for every
+ * pixel, which is slow for whole-image operations.
+ * This class lets operations work on a plain <code>int[]</code> in row-major order instead, where the
+ * pixel at (x, y) is at index <code>y * width + x</code>, in the same packed
+ * <code>0xAARRGGBB</code> format that <code>getRGB</code> returns.
+ * </p>
+ *
+ * <p>
+ * For images that are already stored as packed <code>TYPE_INT_ARGB</code> pixels the array is the
+ * image's own {@link DataBufferInt}, so no copying is done at all.
+ * <code>TYPE_INT_RGB</code> images are copied with a simple loop, and any other type of image is
+ * converted to and from ARGB in bulk, with the same results as the per-pixel methods.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public class ImagePixels {
+
+    /**
+     * ImagePixels only has static methods, so should not be constructed.
+     */
+    private ImagePixels() {
+    }
+
+    /**
+     * <p>
+     * Check if an image stores its pixels as one packed int per pixel, with no padding.
+     * </p>
+     *
+     * @param image The image to check.
+     * @return True if the image is a plain <code>TYPE_INT_ARGB</code> or <code>TYPE_INT_RGB</code>
+     *         image whose data buffer can be used directly.
+     */
+    public static boolean isPacked(BufferedImage image) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_ARGB && type != BufferedImage.TYPE_INT_RGB) {
+            return false;
+        }
+        WritableRaster raster = image.getRaster();
+        SampleModel sm = raster.getSampleModel();
+        return sm instanceof SinglePixelPackedSampleModel
+                && ((SinglePixelPackedSampleModel) sm).getScanlineStride() == image.getWidth()
+                && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+                && raster.getDataBuffer().getOffset() == 0;
+    }
+
+    /**
+     * <p>
+     * Get the data buffer of a packed image.
+     * </p>
+     *
+     * <p>
+     * Changes to the returned array change the image.
+     * For <code>TYPE_INT_RGB</code> images the top byte of each element is ignored.
+     * </p>
+     *
+     * @param image A packed image.
+     * @return The array backing the image.
+     * @throws IllegalArgumentException If the image is not {@link #isPacked packed}.
+     */
+    public static int[] data(BufferedImage image) {
+        if (!isPacked(image)) {
+            throw new IllegalArgumentException("Image is not a packed int image: type " + image.getType());
+        }
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * <p>
+     * Get the pixels of an image as packed ARGB values.
+     * </p>
+     *
+     * <p>
+     * For a <code>TYPE_INT_ARGB</code> image this is the image's own data buffer, so writing to the
+     * array changes the image. For every other type it is a new array.
+     * Either way, the values are the same as <code>getRGB</code> would return.
+     * </p>
+     *
+     * @param image The image to read.
+     * @return The pixels of the image, in row-major order.
+     */
+    public static int[] read(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (isPacked(image)) {
+            int[] data = data(image);
+            if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+                return data;
+            }
+            int[] argb = new int[width * height];
+            for (int i = 0; i < argb.length; i++) {
+                argb[i] = 0xFF000000 | data[i];
+            }
+            return argb;
+        }
+        return image.getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    /**
+     * <p>
+     * Get a copy of the pixels of an image as packed ARGB values.
+     * </p>
+     *
+     * <p>
+     * Unlike {@link #read}, the returned array never shares storage with the image.
+     * </p>
+     *
+     * @param image The image to read.
+     * @return A new array with the pixels of the image, in row-major order.
+     */
+    public static int[] copy(BufferedImage image) {
+        int[] argb = read(image);
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB && isPacked(image)) {
+            return argb.clone();
+        }
+        return argb;
+    }
+
+    /**
+     * <p>
+     * Set every pixel of an image from packed ARGB values.
+     * </p>
+     *
+     * <p>
+     * This has the same effect as calling <code>setRGB</code> for every pixel, so the values are
+     * converted to the image's colour model, dropping the alpha if it has none.
+     * If the array is the image's own data buffer, as returned by {@link #read}, there is nothing
+     * to do.
+     * </p>
+     *
+     * @param image The image to write to.
+     * @param argb  The pixels to write, in row-major order.
+     */
+    public static void write(BufferedImage image, int[] argb) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (argb.length < width * height) {
+            throw new IllegalArgumentException("Expected " + width * height + " pixels but got " + argb.length);
+        }
+        if (isPacked(image)) {
+            int[] data = data(image);
+            if (data == argb) {
+                return;
+            }
+            if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+                System.arraycopy(argb, 0, data, 0, width * height);
+            } else {
+                for (int i = 0; i < width * height; i++) {
+                    data[i] = argb[i] & 0xFFFFFF;
+                }
+            }
+            return;
+        }
+        image.setRGB(0, 0, width, height, argb, 0, width);
+    }
+
+    /**
+     * <p>
+     * Create a new image of a given type with the given pixels.
+     * </p>
+     *
+     * @param width  The width of the new image.
+     * @param height The height of the new image.
+     * @param type   The type of the new image, one of the <code>BufferedImage.TYPE_*</code> constants.
+     *               <code>TYPE_CUSTOM</code>, which images copied from a tile often have, gives a
+     *               <code>TYPE_INT_ARGB</code> image, since a custom type cannot be created.
+     * @param argb   The pixels of the new image, in row-major order.
+     * @return The new image.
+     */
+    public static BufferedImage create(int width, int height, int type, int[] argb) {
+        if (type == BufferedImage.TYPE_CUSTOM) {
+            type = BufferedImage.TYPE_INT_ARGB;
+        }
+        if (type == BufferedImage.TYPE_INT_ARGB && argb.length == width * height) {
+            return wrap(width, height, argb);
+        }
+        BufferedImage image = new BufferedImage(width, height, type);
+        write(image, argb);
+        return image;
+    }
+
+    /**
+     * <p>
+     * Create a <code>TYPE_INT_ARGB</code> image that uses an array as its data buffer.
+     * </p>
+     *
+     * <p>
+     * No pixels are copied, so later changes to the array change the image.
+     * </p>
+     *
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @param argb   The pixels of the image, in row-major order, with exactly
+     *               <code>width * height</code> elements.
+     * @return An image backed by the array.
+     */
+    public static BufferedImage wrap(int width, int height, int[] argb) {
+        if (argb.length != width * height) {
+            throw new IllegalArgumentException("Expected " + width * height + " pixels but got " + argb.length);
+        }
+        DirectColorModel cm = (DirectColorModel) ColorModel.getRGBdefault();
+        WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(argb, argb.length), width, height, width,
+                cm.getMasks(), null);
+        return new BufferedImage(cm, raster, false, null);
+    }
+}
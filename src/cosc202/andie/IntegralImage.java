@@ -0,0 +1,217 @@
+package cosc202.andie;
+
+import java.awt.image.*;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A summed-area table of the samples of an image.
+ * </p>
+ *
+ * <p>
+ * Each entry of the table holds the sum of every sample above and to the left of it, in one band.
+ * Once the table is built, the sum of the samples in any rectangle of the image can be found from
+ * just four entries, so box filters cost the same per pixel whatever their size.
+ * </p>
+ *
+ * <p>
+ * The table is built once for an image and can then answer any number of queries, of any size,
+ * so operations that need several box statistics of the same image (for example a local mean at
+ * two different radii, as in local contrast or adaptive thresholds) should share one table rather
+ * than building their own.
+ * The table is a snapshot: it does not change if the image is changed after it is built.
+ * </p>
+ *
+ * <p>
+ * The sums are stored as <code>int</code>s and read back as unsigned differences, which is exact
+ * as long as the sum of any box queried is less than 2<sup>32</sup>.
+ * For 8-bit samples that allows boxes of over 16 million pixels, which is a radius of 2000.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/Summed-area_table">Summed-area table</a>
+ * @version 1.0
+ */
+public class IntegralImage {
+
+    /** The width of the image. */
+    private final int width;
+    /** The height of the image. */
+    private final int height;
+    /** The number of bands in the image. */
+    private final int bands;
+    /**
+     * The table, with an extra row and column of zeros at the top and left.
+     * The sum of the samples in band b above and left of (x, y) is at
+     * <code>((y * (width + 1)) + x) * bands + b</code>.
+     */
+    private final int[] sums;
+
+    /**
+     * <p>
+     * Build the summed-area table of all the bands of an image.
+     * </p>
+     *
+     * <p>
+     * The table is built from the raw samples of the image's raster, so for a
+     * <code>TYPE_INT_ARGB</code> image there are four bands: red, green, blue and alpha.
+     * </p>
+     *
+     * @param image The image to build the table for.
+     */
+    public IntegralImage(BufferedImage image) {
+        this(image.getRaster());
+    }
+
+    /**
+     * Build the summed-area table of all the bands of a raster.
+     *
+     * @param raster The raster to build the table for.
+     */
+    public IntegralImage(Raster raster) {
+        this(raster.getPixels(raster.getMinX(), raster.getMinY(), raster.getWidth(), raster.getHeight(),
+                (int[]) null), raster.getWidth(), raster.getHeight(), raster.getNumBands());
+    }
+
+    /**
+     * Build the summed-area table of interleaved samples.
+     *
+     * @param samples The samples, in row-major order with all of the bands of each pixel together.
+     * @param width   The width of the image.
+     * @param height  The height of the image.
+     * @param bands   The number of bands per pixel.
+     */
+    public IntegralImage(int[] samples, int width, int height, int bands) {
+        if (samples.length < width * height * bands) {
+            throw new IllegalArgumentException("Expected " + width * height * bands + " samples but got " + samples.length);
+        }
+        this.width = width;
+        this.height = height;
+        this.bands = bands;
+        this.sums = new int[(width + 1) * (height + 1) * bands];
+
+        int stride = (width + 1) * bands;
+        int[] rowSums = new int[bands];
+        for (int y = 0; y < height; y++) {
+            Arrays.fill(rowSums, 0);
+            int in = y * width * bands;
+            int out = (y + 1) * stride + bands;
+            for (int x = 0; x < width; x++) {
+                for (int b = 0; b < bands; b++, in++, out++) {
+                    // the sum above plus the sum of this row so far
+                    rowSums[b] += samples[in];
+                    sums[out] = sums[out - stride] + rowSums[b];
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the width of the image the table was built for.
+     *
+     * @return The width of the image.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Get the height of the image the table was built for.
+     *
+     * @return The height of the image.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get the number of bands in the table.
+     *
+     * @return The number of bands.
+     */
+    public int getBands() {
+        return bands;
+    }
+
+    /**
+     * <p>
+     * Get the sum of the samples of one band in a rectangle that lies within the image.
+     * </p>
+     *
+     * @param x0   The left column of the rectangle.
+     * @param y0   The top row of the rectangle.
+     * @param x1   The right column of the rectangle, inclusive.
+     * @param y1   The bottom row of the rectangle, inclusive.
+     * @param band The band to sum.
+     * @return The sum of the samples, or zero if the rectangle is empty.
+     */
+    public long sum(int x0, int y0, int x1, int y1, int band) {
+        if (x1 < x0 || y1 < y0) {
+            return 0;
+        }
+        int stride = (width + 1) * bands;
+        int top = y0 * stride + band;
+        int bottom = (y1 + 1) * stride + band;
+        int left = x0 * bands;
+        int right = (x1 + 1) * bands;
+        // int overflow cancels out in the differences, as long as the true sum fits in 32 bits
+        return Integer.toUnsignedLong(sums[bottom + right] - sums[bottom + left] - sums[top + right] + sums[top + left]);
+    }
+
+    /**
+     * <p>
+     * Get the sum of the samples of one band in a rectangle that may extend past the edges of the
+     * image.
+     * </p>
+     *
+     * <p>
+     * Pixels outside the image count as copies of the closest edge pixel, the same as if the image
+     * had been extended with {@link ImageEdgeExtension}, so the sum always covers the full area of
+     * the rectangle.
+     * </p>
+     *
+     * @param x0   The left column of the rectangle.
+     * @param y0   The top row of the rectangle.
+     * @param x1   The right column of the rectangle, inclusive.
+     * @param y1   The bottom row of the rectangle, inclusive.
+     * @param band The band to sum.
+     * @return The sum of the samples.
+     */
+    public long clampedSum(int x0, int y0, int x1, int y1, int band) {
+        if (x0 >= 0 && y0 >= 0 && x1 < width && y1 < height) {
+            return sum(x0, y0, x1, y1, band);
+        }
+        // How many times the first and last rows and columns are repeated beyond each edge
+        int left = Math.max(0, -x0);
+        int top = Math.max(0, -y0);
+        int right = Math.max(0, x1 - (width - 1));
+        int bottom = Math.max(0, y1 - (height - 1));
+        // The part of the rectangle inside the image, or the nearest edge if it misses the image entirely
+        int cx0 = Math.min(Math.max(x0, 0), width - 1);
+        int cy0 = Math.min(Math.max(y0, 0), height - 1);
+        int cx1 = Math.min(Math.max(x1, 0), width - 1);
+        int cy1 = Math.min(Math.max(y1, 0), height - 1);
+        if (x1 < 0) {
+            left = x1 - x0;
+        } else if (x0 >= width) {
+            right = x1 - x0;
+        }
+        if (y1 < 0) {
+            top = y1 - y0;
+        } else if (y0 >= height) {
+            bottom = y1 - y0;
+        }
+
+        long total = sum(cx0, cy0, cx1, cy1, band);
+        total += left * sum(0, cy0, 0, cy1, band) + right * sum(width - 1, cy0, width - 1, cy1, band);
+        total += top * sum(cx0, 0, cx1, 0, band) + bottom * sum(cx0, height - 1, cx1, height - 1, band);
+        total += (long) left * top * sum(0, 0, 0, 0, band);
+        total += (long) right * top * sum(width - 1, 0, width - 1, 0, band);
+        total += (long) left * bottom * sum(0, height - 1, 0, height - 1, band);
+        total += (long) right * bottom * sum(width - 1, height - 1, width - 1, height - 1, band);
+        return total;
+    }
+}
@@ -0,0 +1,119 @@
+package cosc202.andie;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * <p>
+ * ImageOperation to adjust the levels of an image.
+ * </p>
+ *
+ * <p>
+ * Colour values at or below the black point become 0, those at or above the white point become
+ * 255, and those in between are stretched over the full range and bent by a gamma curve, so a
+ * gamma above 1 brightens the mid-tones and a gamma below 1 darkens them.
+ * Alpha is left as it is.
+ * </p>
+ *
+ * <p>
+ * The new value of each channel only depends on its old value, so the adjustment is a
+ * {@link LookupOperation} and is applied, and composed with its neighbours, by table lookup.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public class LevelsFilter implements LookupOperation, EncodableOperation, java.io.Serializable {
+
+    /** The value that becomes black. */
+    private int black;
+    /** The value that becomes white. */
+    private int white;
+    /** The gamma applied to the values in between. */
+    private double gamma;
+    /** The adjustment of every channel value, made the first time it is needed. */
+    private transient LookupTable table;
+
+    /**
+     * <p>
+     * Create a new levels adjustment.
+     * </p>
+     *
+     * @param black The value that becomes black, from 0 to 254.
+     * @param white The value that becomes white, greater than black and up to 255.
+     * @param gamma The gamma of the mid-tones, greater than 0; 1 leaves them in a straight line.
+     * @throws IllegalArgumentException If the black and white points are out of order or out of
+     *                                  range, or the gamma is not positive.
+     */
+    public LevelsFilter(int black, int white, double gamma) {
+        if (black < 0 || white > 255 || black >= white) {
+            throw new IllegalArgumentException("Black point " + black + " and white point " + white
+                    + " must satisfy 0 <= black < white <= 255");
+        }
+        if (!(gamma > 0)) {
+            throw new IllegalArgumentException("Gamma must be positive, not " + gamma);
+        }
+        this.black = black;
+        this.white = white;
+        this.gamma = gamma;
+    }
+
+    /**
+     * Get the table of the levels adjustment.
+     *
+     * @return The new value of each channel value.
+     */
+    public LookupTable getLookupTable() {
+        if (table == null) {
+            table = LookupTable.of(alpha -> alpha, this::adjust);
+        }
+        return table;
+    }
+
+    /**
+     * Adjust one colour value.
+     *
+     * @param value The value, from 0 to 255.
+     * @return The adjusted value.
+     */
+    private int adjust(int value) {
+        if (value <= black) {
+            return 0;
+        }
+        if (value >= white) {
+            return 255;
+        }
+        double level = (double) (value - black) / (white - black);
+        return (int) Math.round(255 * Math.pow(level, 1 / gamma));
+    }
+
+    /**
+     * Write the settings of this operation to an <code>.ops</code> file.
+     *
+     * Writes the black and white points and the gamma.
+     *
+     * @param out Where to write the settings.
+     * @throws IOException If the settings cannot be written.
+     */
+    public void encode(DataOutput out) throws IOException {
+        out.writeInt(black);
+        out.writeInt(white);
+        out.writeDouble(gamma);
+    }
+
+    /**
+     * Rebuild an operation from the settings written by {@link #encode}.
+     *
+     * @param in      The settings.
+     * @param version The version of the <code>.ops</code> file.
+     * @return The operation.
+     * @throws IOException If the settings cannot be read.
+     */
+    static LevelsFilter decode(DataInput in, int version) throws IOException {
+        return new LevelsFilter(in.readInt(), in.readInt(), in.readDouble());
+    }
+}
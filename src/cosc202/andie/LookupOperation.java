@@ -0,0 +1,77 @@
+package cosc202.andie;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * <p>
+ * Interface for tonal operations, which change each channel of a pixel as a function of that
+ * channel's value alone.
+ * </p>
+ *
+ * <p>
+ * An operation only has to describe itself with a {@link LookupTable}, and it is applied by table
+ * lookups automatically: this interface provides {@link #filter(int)}, {@link #filter(int[], int, int)}
+ * and {@link #apply} from the table.
+ * Runs of these operations are composed into a single table when the operation stack is replayed
+ * (see {@link FusedPixelOperation}), so they cost the same as one.
+ * </p>
+ *
+ * <p>
+ * The table should be made once and kept, since it is asked for whenever the operation is applied.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public interface LookupOperation extends PixelOperation {
+
+    /**
+     * Get the table that describes this operation.
+     *
+     * @return The new value of each channel value.
+     */
+    public LookupTable getLookupTable();
+
+    /**
+     * Get the footprint of this operation.
+     *
+     * @return A per-pixel footprint.
+     */
+    public default Footprint getFootprint() {
+        return Footprint.perPixel();
+    }
+
+    /**
+     * Look up the new colour of a pixel.
+     *
+     * @param argb The colour of the pixel, as packed ARGB.
+     * @return The new colour.
+     */
+    public default int filter(int argb) {
+        return getLookupTable().filter(argb);
+    }
+
+    /**
+     * Look up the new colours of a range of pixels, in place.
+     *
+     * @param argb The colours of the pixels, as packed ARGB.
+     * @param from The first pixel to change.
+     * @param to   One past the last pixel to change.
+     */
+    public default void filter(int[] argb, int from, int to) {
+        getLookupTable().filter(argb, from, to);
+    }
+
+    /**
+     * Apply the operation to every pixel of an image.
+     *
+     * @param input The image, which is changed in place.
+     * @return The same image.
+     */
+    public default BufferedImage apply(BufferedImage input) {
+        return getLookupTable().apply(input);
+    }
+}
@@ -0,0 +1,223 @@
+package cosc202.andie;
+
+import java.awt.image.BufferedImage;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * <p>
+ * A set of 256-entry tables, one per channel, that say what each 8-bit channel value becomes.
+ * </p>
+ *
+ * <p>
+ * Tonal adjustments such as brightness, contrast, inversion, levels and curves change each channel
+ * of a pixel as a function of that channel's value alone.
+ * There are only 256 possible values, so rather than working the function out for every pixel,
+ * it can be worked out once for each value and stored in a table, and applying the adjustment
+ * becomes one table lookup per channel.
+ * </p>
+ *
+ * <p>
+ * Tables also {@link #then compose}: following one table with another is the same as a single
+ * table, so a run of tonal adjustments costs no more to apply than one of them.
+ * {@link FusedPixelOperation} does this for runs of {@link LookupOperation}s.
+ * </p>
+ *
+ * <p>
+ * A table is itself a {@link LookupOperation}, so it can be applied to an image directly.
+ * Tables never change once made, and can be shared between threads.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class LookupTable implements LookupOperation {
+
+    /** The table that leaves every value as it is. */
+    private static final LookupTable IDENTITY = of(IntUnaryOperator.identity(), IntUnaryOperator.identity());
+
+    /** The new value of each alpha value. */
+    private final int[] alpha;
+    /** The new value of each red value. */
+    private final int[] red;
+    /** The new value of each green value. */
+    private final int[] green;
+    /** The new value of each blue value. */
+    private final int[] blue;
+
+    /**
+     * Create a table from the new value of each channel value.
+     *
+     * @param alpha The new alpha values.
+     * @param red   The new red values.
+     * @param green The new green values.
+     * @param blue  The new blue values.
+     */
+    private LookupTable(int[] alpha, int[] red, int[] green, int[] blue) {
+        this.alpha = alpha;
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+    }
+
+    /**
+     * <p>
+     * Get the table that leaves every value as it is.
+     * </p>
+     *
+     * @return The identity table.
+     */
+    public static LookupTable identity() {
+        return IDENTITY;
+    }
+
+    /**
+     * <p>
+     * Make a table that changes the red, green and blue channels with the same function, and the
+     * alpha channel with another.
+     * </p>
+     *
+     * @param alpha  The function for the alpha channel, from 0-255 to 0-255.
+     * @param colour The function for the colour channels, from 0-255 to 0-255.
+     * @return The table.
+     * @throws IllegalArgumentException If a function gives a value outside 0-255.
+     */
+    public static LookupTable of(IntUnaryOperator alpha, IntUnaryOperator colour) {
+        int[] colourTable = tabulate(colour);
+        return new LookupTable(tabulate(alpha), colourTable, colourTable, colourTable);
+    }
+
+    /**
+     * <p>
+     * Make a table with a different function for each channel.
+     * </p>
+     *
+     * @param alpha The function for the alpha channel, from 0-255 to 0-255.
+     * @param red   The function for the red channel, from 0-255 to 0-255.
+     * @param green The function for the green channel, from 0-255 to 0-255.
+     * @param blue  The function for the blue channel, from 0-255 to 0-255.
+     * @return The table.
+     * @throws IllegalArgumentException If a function gives a value outside 0-255.
+     */
+    public static LookupTable of(IntUnaryOperator alpha, IntUnaryOperator red, IntUnaryOperator green,
+            IntUnaryOperator blue) {
+        return new LookupTable(tabulate(alpha), tabulate(red), tabulate(green), tabulate(blue));
+    }
+
+    /**
+     * Work out a function for every channel value.
+     *
+     * @param function The function.
+     * @return The 256 results.
+     * @throws IllegalArgumentException If the function gives a value outside 0-255.
+     */
+    private static int[] tabulate(IntUnaryOperator function) {
+        int[] table = new int[256];
+        for (int value = 0; value < 256; value++) {
+            table[value] = function.applyAsInt(value);
+            if (table[value] < 0 || table[value] > 255) {
+                throw new IllegalArgumentException("Lookup table value " + table[value] + " for " + value
+                        + " is out of range");
+            }
+        }
+        return table;
+    }
+
+    /**
+     * <p>
+     * Get the table that applies this table and then another.
+     * </p>
+     *
+     * @param next The table to apply after this one.
+     * @return A single table with the same effect as both.
+     */
+    public LookupTable then(LookupTable next) {
+        return new LookupTable(compose(alpha, next.alpha), compose(red, next.red), compose(green, next.green),
+                compose(blue, next.blue));
+    }
+
+    /**
+     * Compose two tables for one channel.
+     *
+     * @param first  The table applied first.
+     * @param second The table applied second.
+     * @return The combined table.
+     */
+    private static int[] compose(int[] first, int[] second) {
+        int[] table = new int[256];
+        for (int value = 0; value < 256; value++) {
+            table[value] = second[first[value]];
+        }
+        return table;
+    }
+
+    /**
+     * Get the new value of a channel value.
+     *
+     * @param channel The channel: 0 for alpha, 1 for red, 2 for green and 3 for blue.
+     * @param value   The value, from 0 to 255.
+     * @return The new value.
+     */
+    public int lookup(int channel, int value) {
+        switch (channel) {
+            case 0:
+                return alpha[value];
+            case 1:
+                return red[value];
+            case 2:
+                return green[value];
+            case 3:
+                return blue[value];
+            default:
+                throw new IllegalArgumentException("No channel " + channel);
+        }
+    }
+
+    /**
+     * Get this table.
+     *
+     * @return This table.
+     */
+    public LookupTable getLookupTable() {
+        return this;
+    }
+
+    /**
+     * Look up the new colour of a pixel.
+     *
+     * @param argb The colour of the pixel, as packed ARGB.
+     * @return The new colour.
+     */
+    public int filter(int argb) {
+        return alpha[argb >>> 24] << 24 | red[(argb >> 16) & 0xFF] << 16 | green[(argb >> 8) & 0xFF] << 8
+                | blue[argb & 0xFF];
+    }
+
+    /**
+     * Look up the new colours of a range of pixels, in place.
+     *
+     * @param argb The colours of the pixels, as packed ARGB.
+     * @param from The first pixel to change.
+     * @param to   One past the last pixel to change.
+     */
+    public void filter(int[] argb, int from, int to) {
+        for (int i = from; i < to; i++) {
+            argb[i] = filter(argb[i]);
+        }
+    }
+
+    /**
+     * Apply the table to every pixel of an image.
+     *
+     * @param input The image, which is changed in place.
+     * @return The same image.
+     */
+    public BufferedImage apply(BufferedImage input) {
+        int[] pixels = ImagePixels.read(input);
+        filter(pixels, 0, pixels.length);
+        ImagePixels.write(input, pixels);
+        return input;
+    }
+}
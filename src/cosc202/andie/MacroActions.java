@@ -400,14 +400,9 @@ public class MacroActions {
                 try {
                     macroFile = fileChooser.getSelectedFile().getCanonicalPath();
                     Stack<ImageOperation> fileMacro = target.getImage().openMacro(macroFile);
-                    Stack<ImageOperation> reverseStack = new Stack<ImageOperation>();
-                    while(!fileMacro.isEmpty()){
-                        reverseStack.push(fileMacro.pop());
-                    }
-                    //adds the operations from the macro onto the image, in the correct order.  
-                    while(!reverseStack.isEmpty()){
-                        target.getImage().apply(reverseStack.pop());
-                    }
+                    //adds the operations from the macro onto the image, in the correct order
+                    //(bottom of the stack first), rebuilding the image once at the end
+                    target.getImage().applyAll(fileMacro);
                 } catch (Exception ex) {
                     // Play error sound, play the audio in a separate thread
                     Thread audioThread = new Thread(() -> Andie.sound.playErrorSound());
@@ -1,7 +1,9 @@
 package cosc202.andie;
 
 import java.awt.image.*;
-import java.util.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * <p>
@@ -10,18 +12,21 @@ import java.util.*;
  * 
  * <p>
  * A Mean filter blurs an image by replacing each pixel by the average of the
- * pixels in a surrounding neighborhood, and can be implemented by a convolution.
+ * pixels in a surrounding neighborhood. It could be implemented by a convolution,
+ * but summing each neighbourhood from a summed-area table is much faster for large radii.
  * </p>
  * 
  * <p> 
  * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
  * </p>
  * 
- * @see java.awt.image.ConvolveOp
+ * @see IntegralImage
  * @author Steven Mills
- * @version 1.0
+ * @version 2.0
  */
-public class MeanFilter implements ImageOperation, java.io.Serializable {
+public class MeanFilter implements TileableOperation, ScalableOperation, EncodableOperation, java.io.Serializable {
+
+    private static final long serialVersionUID = 5589744882475085057L;
     
     /**
      * The size of filter to apply. A radius of 1 is a 3x3 filter, a radius of 2 a 5x5 filter, and so forth.
@@ -60,38 +65,105 @@ public class MeanFilter implements ImageOperation, java.io.Serializable {
         this(1);
     }
 
+    /**
+     * Get the footprint of this operation.
+     *
+     * A box of the given radius is averaged around each pixel.
+     *
+     * @return The footprint of the operation.
+     */
+    public Footprint getFootprint() {
+        return Footprint.neighbourhood(radius);
+    }
+
+    /**
+     * Get an equivalent filter for a scaled copy of the image.
+     * 
+     * The radius is scaled, but kept at least 1 so the preview still shows some blur.
+     * 
+     * @param factor The scale of the image the filter will be applied to.
+     * @return A filter with the radius scaled to match.
+     */
+    public ImageOperation scaled(double factor) {
+        return new MeanFilter(Math.max(1, (int) Math.round(radius * factor)));
+    }
+
     /**
      * <p>
      * Apply a Mean filter to an image.
      * </p>
      * 
      * <p>
-     * As with many filters, the Mean filter is implemented via convolution.
-     * The size of the convolution kernel is specified by the {@link radius}.  
+     * The mean of each (2r+1)x(2r+1) box is found from an {@link IntegralImage} of the input, so
+     * the cost per pixel is the same for any {@link radius}.
      * Larger radii lead to stronger blurring.
+     * Pixels beyond the edges of the image count as copies of the nearest edge pixel, and the
+     * mean is rounded down, as with the convolution this replaced.
      * </p>
      * 
      * @param input The image to apply the Mean filter to.
      * @return The resulting (blurred)) image.
      */
     public BufferedImage apply(BufferedImage input) {
-        int crop = radius + 3;
-        // extened the image by edge number of pixels on each size
-        input = ImageEdgeExtension.extendImage(input, crop);
-        int size = (2*radius+1) * (2*radius+1);
-        float [] array = new float[size];
-        Arrays.fill(array, 1.0f/size);
-
-        Kernel kernel = new Kernel(2*radius+1, 2*radius+1, array);
-        ConvolveOp convOp = new ConvolveOp(kernel);
-        BufferedImage output = new BufferedImage(input.getColorModel(), input.copyData(null), input.isAlphaPremultiplied(), null);
-        convOp.filter(input, output);
+        int width = input.getWidth();
+        int height = input.getHeight();
+        int type = input.getType();
+        ColorModel cm = input.getColorModel();
+        if (cm instanceof IndexColorModel) {
+            // average the colours of a palette image, not its indices
+            BufferedImage blurred = apply(ImagePixels.wrap(width, height, ImagePixels.copy(input)));
+            return ImagePixels.create(width, height, type, ImagePixels.read(blurred));
+        }
+        // the edge extension always converted through packed ARGB, which changes non-sRGB images slightly
+        boolean convert = !cm.getColorSpace().isCS_sRGB() && type != BufferedImage.TYPE_CUSTOM;
+        if (convert) {
+            input = ImagePixels.create(width, height, type, ImagePixels.read(input));
+        }
 
-        // crop the image back to origional size
-        output = ImageEdgeExtension.cropImage(output, crop);
+        IntegralImage table = new IntegralImage(input);
+        int bands = table.getBands();
+        // the same float weight the box kernel had, so results round the same way they always have
+        double weight = 1.0f / ((2 * radius + 1) * (2 * radius + 1));
+        int[] result = new int[width * height * bands];
+        int i = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                for (int b = 0; b < bands; b++) {
+                    result[i++] = (int) (table.clampedSum(x - radius, y - radius, x + radius, y + radius, b) * weight);
+                }
+            }
+        }
 
+        WritableRaster raster = input.getRaster().createCompatibleWritableRaster();
+        raster.setPixels(0, 0, width, height, result);
+        BufferedImage output = new BufferedImage(input.getColorModel(), raster, input.isAlphaPremultiplied(), null);
+        if (convert) {
+            output = ImagePixels.create(width, height, type, ImagePixels.read(output));
+        }
         return output;
     }
 
+    /**
+     * Write the settings of this operation to an <code>.ops</code> file.
+     *
+     * Writes the radius of the filter.
+     *
+     * @param out Where to write the settings.
+     * @throws IOException If the settings cannot be written.
+     */
+    public void encode(DataOutput out) throws IOException {
+        out.writeInt(radius);
+    }
 
+    /**
+     * Rebuild an operation from the settings written by {@link #encode}.
+     *
+     * @param in      The settings.
+     * @param version The version of the <code>.ops</code> file.
+     * @return The operation.
+     * @throws IOException If the settings cannot be read.
+     */
+    static MeanFilter decode(DataInput in, int version) throws IOException {
+        return new MeanFilter(in.readInt());
+    }
 }
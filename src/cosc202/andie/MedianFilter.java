@@ -2,6 +2,9 @@ package cosc202.andie;
 
 import java.awt.image.*;
 import java.util.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 /**
  * <p>
  * ImageOperation to apply a Median filter.
@@ -21,12 +24,19 @@ import java.util.*;
  * @author Hannah Srzich, adapted from Mean Filter by Steven Mills
  * @version 1.0
  */
-public class MedianFilter implements ImageOperation, java.io.Serializable {
+public class MedianFilter implements TileableOperation, ScalableOperation, EncodableOperation, java.io.Serializable {
+
+    private static final long serialVersionUID = -6183681302939531040L;
     
     /**
      * The size of filter to apply. A radius of 1 is a 3x3 filter, a radius of 2 a 5x5 filter, and so forth.
      */
     private int radius;
+
+    /** The largest radius filtered by selection rather than with histograms. */
+    private static final int SELECTION_MAX_RADIUS = 1;
+    /** The number of channels in a packed ARGB pixel. */
+    private static final int CHANNELS = 4;
     /**
      * <p>
      * Construct a Median filter with the given size.
@@ -57,6 +67,30 @@ public class MedianFilter implements ImageOperation, java.io.Serializable {
     public MedianFilter() {
         this(1);
     }
+    /**
+     * Get the footprint of this operation.
+     * 
+     * The median of each pixel is taken over the neighbourhood within the {@link radius},
+     * so tiles need a halo of that radius.
+     * 
+     * @return The footprint of the operation.
+     */
+    public Footprint getFootprint() {
+        return Footprint.neighbourhood(radius);
+    }
+
+    /**
+     * Get an equivalent filter for a scaled copy of the image.
+     * 
+     * The radius is scaled, but kept at least 1 so the preview still shows some effect.
+     * 
+     * @param factor The scale of the image the filter will be applied to.
+     * @return A filter with the radius scaled to match.
+     */
+    public ImageOperation scaled(double factor) {
+        return new MedianFilter(Math.max(1, (int) Math.round(radius * factor)));
+    }
+
     /**
      * <p>
      * Apply a Median filter to an image.
@@ -66,22 +100,50 @@ public class MedianFilter implements ImageOperation, java.io.Serializable {
      * The Median filter is is a nonlinear operation, not implemented via convolution.
      * The size of the local neighbourhood is specified by the {@link radius}.  
      * Larger radii leads to stronger blurring.
+     * Pixels outside the image take the value of the closest edge pixel.
+     * </p>
+     * 
+     * <p>
+     * Small neighbourhoods are sorted directly, using {@link applySelection}.
+     * Larger ones use {@link applyHistogram}, which takes the same time per pixel
+     * whatever the radius.
      * </p>
      * 
      * @param input The image to apply the Median filter to.
      * @return The resulting (blurred) image.
      */
     public BufferedImage apply(BufferedImage input) {
-        int edge = radius + 1;
-        int crop = edge + 2;
-        // extened the image by edge number of pixels on each size
-        input = ImageEdgeExtension.extendImage(input, crop);
+        int width = input.getWidth();
+        int height = input.getHeight();
+        int[] pixels = ImagePixels.read(input);
+        int[] result;
+        if (radius <= SELECTION_MAX_RADIUS) {
+            result = applySelection(pixels, width, height);
+        } else {
+            result = applyHistogram(pixels, width, height);
+        }
+        // The output has the same type as the input
+        return ImagePixels.create(width, height, input.getType(), result);
+    }
 
-        // Create a BufferedImage output image.
-        BufferedImage output = new BufferedImage(input.getColorModel(), input.copyData(null), input.isAlphaPremultiplied(), null);
+    /**
+     * <p>
+     * Find the medians by selecting the middle value of each neighbourhood.
+     * </p>
+     * 
+     * <p>
+     * This costs O(r<sup>2</sup>) per pixel, but has very little overhead, so it is
+     * the fastest method for small radii.
+     * </p>
+     * 
+     * @param pixels The pixels of the input image as packed ARGB values.
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @return The pixels of the filtered image.
+     */
+    private int[] applySelection(int[] pixels, int width, int height) {
+        int[] result = new int[pixels.length];
         int numberNeighbours = (1+(radius*2))*(1+(radius*2)); // The number of cells contained in the radius r.
-        int neighbour = 0; // An index counter for each array of a, r, g, b neighbours.
-         
         int center = (numberNeighbours - 1)/2; // Index of the median value once the arrays are sorted.
         // Initalize arrays of length "number of neighbours."
         int[] medianA = new int [numberNeighbours];
@@ -89,60 +151,289 @@ public class MedianFilter implements ImageOperation, java.io.Serializable {
         int[] medianG = new int [numberNeighbours];
         int[] medianB = new int [numberNeighbours];
 
-        
-
-        /*
-         * Note that for now we iterate over the entire images pixels,
-         * excluding edge cases, still need to deal with the edge cases. TBC.
-         */
-        for (int y = edge; y < input.getHeight() - edge; ++y) {
-            for (int x = edge; x < input.getWidth() - edge; ++x) {
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
                 /*
                  * Iterate over the local neighbours, adding their a, r, g, b 
-                 * values respectively into the median arrays. Starting from the
-                 * top left corner of the local neighbourhood.
+                 * values respectively into the median arrays. Pixels outside
+                 * the image take the value of the closest edge pixel.
                  */ 
-                
-                for (int i = x - radius; i <= x + radius; i++){
-                    for(int j = y - radius; j <= y + radius; j++){
+                int neighbour = 0; // An index counter for each array of a, r, g, b neighbours.
+                for (int j = y - radius; j <= y + radius; j++){
+                    int row = Math.min(Math.max(j, 0), height - 1) * width;
+                    for (int i = x - radius; i <= x + radius; i++){
                         // Unpacking a, r, g, b from argb into their arrays.
-                        try{
-                            int argb = input.getRGB(i, j);
-                            medianA[neighbour] = (argb & 0xFF000000) >> 24;
-                            medianR[neighbour] = (argb & 0x00FF0000) >> 16;
-                            medianG[neighbour] = (argb & 0x0000FF00) >> 8;
-                            medianB[neighbour] = (argb & 0x000000FF);
-                        }catch(ArrayIndexOutOfBoundsException e){
-                            /*If accessing a pixel value outside image boundaries, 
-                              (which in practice never happens), leave the pixel value as is.
-                            */
-                        }
+                        int argb = pixels[row + Math.min(Math.max(i, 0), width - 1)];
+                        medianA[neighbour] = (argb & 0xFF000000) >> 24;
+                        medianR[neighbour] = (argb & 0x00FF0000) >> 16;
+                        medianG[neighbour] = (argb & 0x0000FF00) >> 8;
+                        medianB[neighbour] = (argb & 0x000000FF);
                         neighbour++;
                     }
                 }
-                /*
-                 * Iterate over the local neighbours, adding their a, r, g, b 
-                 * values respectively into the median arrays. Starting from the
-                 * top left corner of the local neighbourhood.
-                 */ 
-                Arrays.sort(medianA);
-                Arrays.sort(medianR);
-                Arrays.sort(medianG);
-                Arrays.sort(medianB);
-                int a = medianA[center];
-                int r = medianR[center];
-                int g = medianG[center];
-                int b = medianB[center];
+                int a = select(medianA, center);
+                int r = select(medianR, center);
+                int g = select(medianG, center);
+                int b = select(medianB, center);
                 
                 // Packing a, r, g, b into argb int.
-                int argb = (a << 24) | (r << 16) | (g << 8) | b;
-                output.setRGB(x, y, argb);
-                // Reset the neighbour array index counter and count for the next loop.
-                neighbour = 0;
+                result[y * width + x] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * <p>
+     * Find the k-th smallest value in an array, as if it was sorted.
+     * </p>
+     * 
+     * <p>
+     * This uses quickselect, which partially reorders the array.
+     * </p>
+     * 
+     * @param values The values to select from.
+     * @param k      The index of the value to find in sorted order.
+     * @return The k-th smallest value.
+     */
+    private static int select(int[] values, int k) {
+        int left = 0;
+        int right = values.length - 1;
+        while (left < right) {
+            int pivot = values[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int temp = values[i];
+                    values[i] = values[j];
+                    values[j] = temp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return values[k];
+            }
+        }
+        return values[k];
+    }
+
+    /**
+     * <p>
+     * Find the medians with sliding histograms, using the method of Perreault and Hébert,
+     * "Median Filtering in Constant Time", IEEE Transactions on Image Processing, 2007.
+     * </p>
+     * 
+     * <p>
+     * A histogram is kept for every column of the image, counting the values in the
+     * 2r+1 rows around the current row. Moving down a row removes one pixel from each
+     * column histogram and adds one.
+     * Along a row, the histogram of the neighbourhood is the sum of 2r+1 column histograms,
+     * so moving right subtracts the column that leaves and adds the one that enters.
+     * Each histogram has 16 coarse bins and 256 fine bins. The coarse bins of the
+     * neighbourhood are kept up to date at every pixel, while a block of fine bins is
+     * only brought up to date when the median falls in it.
+     * All of this is independent of the radius, apart from setting up each row.
+     * </p>
+     * 
+     * <p>
+     * Alpha is stored with its top bit flipped, so that it is ordered as a signed byte,
+     * the same as in {@link applySelection}.
+     * </p>
+     * 
+     * @param pixels The pixels of the input image as packed ARGB values.
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @return The pixels of the filtered image.
+     */
+    private int[] applyHistogram(int[] pixels, int width, int height) {
+        int[] result = new int[pixels.length];
+        int center = ((1+(radius*2))*(1+(radius*2)) - 1)/2;
+
+        // Column histograms, indexed by (column * 4 + channel) * 256 + value, and the coarse ones by 16
+        int[] columnFine = new int[width * CHANNELS * 256];
+        int[] columnCoarse = new int[width * CHANNELS * 16];
+        // Histograms of the neighbourhood of the current pixel, indexed by channel * 256 + value
+        int[] kernelFine = new int[CHANNELS * 256];
+        int[] kernelCoarse = new int[CHANNELS * 16];
+        // The column each block of fine bins of the neighbourhood was last brought up to date for
+        int[] fineColumn = new int[CHANNELS * 16];
+
+        // Fill the column histograms for the first row, including rows above the image
+        for (int j = -radius; j <= radius; j++) {
+            int row = Math.min(Math.max(j, 0), height - 1) * width;
+            for (int x = 0; x < width; x++) {
+                addPixel(columnFine, columnCoarse, x, pixels[row + x], 1);
             }
         }
-        // crop the image back to origional size
-        output = ImageEdgeExtension.cropImage(output, crop);
-        return output;
+
+        for (int y = 0; y < height; y++) {
+            if (y > 0) {
+                // Slide every column histogram down a row
+                int oldRow = Math.min(Math.max(y - radius - 1, 0), height - 1) * width;
+                int newRow = Math.min(y + radius, height - 1) * width;
+                for (int x = 0; x < width; x++) {
+                    addPixel(columnFine, columnCoarse, x, pixels[oldRow + x], -1);
+                    addPixel(columnFine, columnCoarse, x, pixels[newRow + x], 1);
+                }
+            }
+
+            // Start the neighbourhood at the left of the row, with only the coarse bins filled
+            Arrays.fill(kernelCoarse, 0);
+            Arrays.fill(fineColumn, Integer.MIN_VALUE);
+            for (int i = -radius; i <= radius; i++) {
+                addColumn(kernelCoarse, 0, columnCoarse, clampColumn(i, width) * CHANNELS * 16, CHANNELS * 16, 1);
+            }
+
+            for (int x = 0; x < width; x++) {
+                if (x > 0) {
+                    addColumn(kernelCoarse, 0, columnCoarse, clampColumn(x - radius - 1, width) * CHANNELS * 16, CHANNELS * 16, -1);
+                    addColumn(kernelCoarse, 0, columnCoarse, clampColumn(x + radius, width) * CHANNELS * 16, CHANNELS * 16, 1);
+                }
+                int argb = 0;
+                for (int channel = 0; channel < CHANNELS; channel++) {
+                    // Find the coarse bin holding the median
+                    int coarse = channel * 16;
+                    int count = 0;
+                    while (count + kernelCoarse[coarse] <= center) {
+                        count += kernelCoarse[coarse];
+                        coarse++;
+                    }
+                    updateFine(kernelFine, fineColumn, columnFine, coarse, x, width);
+                    // Then the fine bin within it
+                    int fine = (coarse - channel * 16) * 16 + channel * 256;
+                    while (count + kernelFine[fine] <= center) {
+                        count += kernelFine[fine];
+                        fine++;
+                    }
+                    int value = fine - channel * 256;
+                    if (channel == 0) {
+                        value ^= 0x80;
+                    }
+                    argb |= value << (24 - 8 * channel);
+                }
+                result[y * width + x] = argb;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Add or remove one pixel from the histograms of a column.
+     * 
+     * @param fine   The fine column histograms.
+     * @param coarse The coarse column histograms.
+     * @param x      The column.
+     * @param argb   The pixel, as a packed ARGB value.
+     * @param delta  1 to add the pixel, -1 to remove it.
+     */
+    private static void addPixel(int[] fine, int[] coarse, int x, int argb, int delta) {
+        int base = x * CHANNELS;
+        for (int channel = 0; channel < CHANNELS; channel++) {
+            int value = (argb >>> (24 - 8 * channel)) & 0xFF;
+            if (channel == 0) {
+                value ^= 0x80;
+            }
+            fine[((base + channel) << 8) + value] += delta;
+            coarse[((base + channel) << 4) + (value >> 4)] += delta;
+        }
+    }
+
+    /**
+     * Bring one block of 16 fine bins of the neighbourhood histogram up to date for a column.
+     * 
+     * If the block was last updated a few columns ago, the columns that have left and entered the
+     * neighbourhood since then are applied. Otherwise it is cheaper to rebuild the block from the
+     * 2r+1 column histograms.
+     * 
+     * @param kernelFine The fine bins of the neighbourhood histogram.
+     * @param fineColumn The column each block of fine bins was last updated for.
+     * @param columnFine The fine column histograms.
+     * @param block      The block to update, as channel * 16 + coarse bin.
+     * @param x          The current column.
+     * @param width      The width of the image.
+     */
+    private void updateFine(int[] kernelFine, int[] fineColumn, int[] columnFine, int block, int x, int width) {
+        int last = fineColumn[block];
+        if (last == x) {
+            return;
+        }
+        int channel = block >> 4;
+        int offset = (block & 15) * 16;
+        int kernelStart = channel * 256 + offset;
+        if (last != Integer.MIN_VALUE && x - last <= radius) {
+            for (int column = last + 1; column <= x; column++) {
+                addColumn(kernelFine, kernelStart, columnFine, ((clampColumn(column - radius - 1, width) * CHANNELS + channel) << 8) + offset, 16, -1);
+                addColumn(kernelFine, kernelStart, columnFine, ((clampColumn(column + radius, width) * CHANNELS + channel) << 8) + offset, 16, 1);
+            }
+        } else {
+            Arrays.fill(kernelFine, kernelStart, kernelStart + 16, 0);
+            for (int i = x - radius; i <= x + radius; i++) {
+                addColumn(kernelFine, kernelStart, columnFine, ((clampColumn(i, width) * CHANNELS + channel) << 8) + offset, 16, 1);
+            }
+        }
+        fineColumn[block] = x;
+    }
+
+    /**
+     * Add or subtract a run of bins of a column histogram to a neighbourhood histogram.
+     * 
+     * @param kernel      The neighbourhood histogram.
+     * @param kernelStart The first bin of the neighbourhood histogram to change.
+     * @param column      The column histograms.
+     * @param columnStart The first bin of the column histogram to use.
+     * @param length      The number of bins.
+     * @param sign        1 to add the column, -1 to subtract it.
+     */
+    private static void addColumn(int[] kernel, int kernelStart, int[] column, int columnStart, int length, int sign) {
+        for (int i = 0; i < length; i++) {
+            kernel[kernelStart + i] += sign * column[columnStart + i];
+        }
+    }
+
+    /**
+     * Clamp a column to the image, so that columns outside it repeat the edge column.
+     * 
+     * @param x     The column.
+     * @param width The width of the image.
+     * @return The closest column inside the image.
+     */
+    private static int clampColumn(int x, int width) {
+        return Math.min(Math.max(x, 0), width - 1);
+    }
+
+    /**
+     * Write the settings of this operation to an <code>.ops</code> file.
+     *
+     * Writes the radius of the filter.
+     *
+     * @param out Where to write the settings.
+     * @throws IOException If the settings cannot be written.
+     */
+    public void encode(DataOutput out) throws IOException {
+        out.writeInt(radius);
+    }
+
+    /**
+     * Rebuild an operation from the settings written by {@link #encode}.
+     *
+     * @param in      The settings.
+     * @param version The version of the <code>.ops</code> file.
+     * @return The operation.
+     * @throws IOException If the settings cannot be read.
+     */
+    static MedianFilter decode(DataInput in, int version) throws IOException {
+        return new MedianFilter(in.readInt());
     }
 }
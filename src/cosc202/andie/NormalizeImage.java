@@ -1,6 +1,5 @@
 package cosc202.andie;
 
-import java.awt.Color;
 import java.awt.image.*;
 
 /**
@@ -37,35 +36,34 @@ public class NormalizeImage {
         // Create a new BufferedImage to store the rescaled image
         BufferedImage rescaledImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
         
+        int[] pixels = ImagePixels.read(image);
+        int[] rescaled = ImagePixels.data(rescaledImage);
+
         // Loop through each pixel in the image
-        for (int y = 0; y < height; y++) {
-           for (int x = 0; x < width; x++) {
-              // Get the pixel value at (x, y)
-              int pixel = image.getRGB(x, y);
-              
-              // Extract the red, green, and blue components from the pixel value
-              int alpha = (pixel >> 24) & 0xff; // new
-              int red = (pixel >> 16) & 0xff;
-              int green = (pixel >> 8) & 0xff;
-              int blue = pixel & 0xff;
-              
-              // Rescale each component to the new range
-              double rescaledAlpha = (alpha - min) / (max - min) * 255; // new 
-              double rescaledRed = (red - min) / (max - min) * 255;
-              double rescaledGreen = (green - min) / (max - min) * 255;
-              double rescaledBlue = (blue - min) / (max - min) * 255;
+        for (int i = 0; i < pixels.length; i++) {
+           int pixel = pixels[i];
+           
+           // Extract the red, green, and blue components from the pixel value
+           int alpha = (pixel >> 24) & 0xff; // new
+           int red = (pixel >> 16) & 0xff;
+           int green = (pixel >> 8) & 0xff;
+           int blue = pixel & 0xff;
+           
+           // Rescale each component to the new range
+           double rescaledAlpha = (alpha - min) / (max - min) * 255; // new 
+           double rescaledRed = (red - min) / (max - min) * 255;
+           double rescaledGreen = (green - min) / (max - min) * 255;
+           double rescaledBlue = (blue - min) / (max - min) * 255;
 
-              // Convert the rescaled component values back to integers
-              int rescaledAlphaInt = (int) Math.round(rescaledAlpha); // new 
-              int rescaledRedInt = (int) Math.round(rescaledRed);
-              int rescaledGreenInt = (int) Math.round(rescaledGreen);
-              int rescaledBlueInt = (int) Math.round(rescaledBlue);
-              
-              // Set the rescaled pixel value in the new image
-              //int rescaledPixel = (rescaledRedInt << 16) | (rescaledGreenInt << 8) | rescaledBlueInt;
-              int rescaledPixel = (rescaledAlphaInt << 24) | (rescaledRedInt << 16) | (rescaledGreenInt << 8) | rescaledBlueInt; // new 
-              rescaledImage.setRGB(x, y, rescaledPixel);
-           }
+           // Convert the rescaled component values back to integers
+           int rescaledAlphaInt = (int) Math.round(rescaledAlpha); // new 
+           int rescaledRedInt = (int) Math.round(rescaledRed);
+           int rescaledGreenInt = (int) Math.round(rescaledGreen);
+           int rescaledBlueInt = (int) Math.round(rescaledBlue);
+           
+           // Set the rescaled pixel value in the new image, which has no alpha channel
+           int rescaledPixel = (rescaledAlphaInt << 24) | (rescaledRedInt << 16) | (rescaledGreenInt << 8) | rescaledBlueInt; // new 
+           rescaled[i] = rescaledPixel & 0xFFFFFF;
         }
         
         return rescaledImage;
@@ -83,35 +81,28 @@ public class NormalizeImage {
         int width = image.getWidth();
         int height = image.getHeight();
 
-        // loop through every pixel in the image and add 127 to its ARGB values
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                // get the current pixel's ARGB value
-                int pixel = image.getRGB(x, y);
+        int[] pixels = ImagePixels.read(image);
 
-                // extract the alpha, red, green, and blue values from the pixel
-                int alpha = (pixel >> 24) & 0xff;
-                int red = (pixel >> 16) & 0xff;
-                int green = (pixel >> 8) & 0xff;
-                int blue = pixel & 0xff;
+        // loop through every pixel in the image and add 127 to its ARGB values
+        for (int i = 0; i < pixels.length; i++) {
+            // get the current pixel's ARGB value
+            int pixel = pixels[i];
 
-                // add 127 to each of the ARGB values (except for alpha)
-                red = red/2 + 127;
-                green = green/2 + 127;
-                blue = blue/2 + 127;
-                /* 
-                red = Math.min(red + 127, 255);
-                green = Math.min(green + 127, 255);
-                blue = Math.min(blue + 127, 255);
-                */
+            // extract the alpha, red, green, and blue values from the pixel
+            int alpha = (pixel >> 24) & 0xff;
+            int red = (pixel >> 16) & 0xff;
+            int green = (pixel >> 8) & 0xff;
+            int blue = pixel & 0xff;
 
-                // create a new pixel value with the updated ARGB values
-                int newPixel = (alpha << 24) | (red << 16) | (green << 8) | blue;
+            // halve each of the RGB values and add 127 (except for alpha)
+            red = red/2 + 127;
+            green = green/2 + 127;
+            blue = blue/2 + 127;
 
-                // set the current pixel's value to the new value in the image
-                image.setRGB(x, y, newPixel);
-            }
+            // create a new pixel value with the updated ARGB values
+            pixels[i] = (alpha << 24) | (red << 16) | (green << 8) | blue;
         }
+        ImagePixels.write(image, pixels);
 
         return image;
     }
@@ -127,6 +118,9 @@ public class NormalizeImage {
          int height = image.getHeight();
          BufferedImage newImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
     
+         int[] pixels = ImagePixels.read(image);
+         int[] shifted = ImagePixels.data(newImage);
+    
          // Apply the kernel to each pixel
          for (int y = 0; y < height; y++) {
            for (int x = 0; x < width; x++) {
@@ -134,20 +128,13 @@ public class NormalizeImage {
              int sumG = 0;
              int sumB = 0;
      
-             // Apply the kernel to the neighboring pixels
-             for (int i = 0; i < 3; i++) {
-               for (int j = 0; j < 3; j++) {
-                 int dx = x + j - 1;
-                 int dy = y + i - 1;
-     
-                 if (dx < 0 || dx >= width || dy < 0 || dy >= height) {
-                   continue;
-                 }
-     
-                 Color c = new Color(image.getRGB(dx, dy));
-                 sumR += c.getRed();
-                 sumG += c.getGreen();
-                 sumB += c.getBlue();
+             // Apply the kernel to the neighboring pixels, skipping those outside the image
+             for (int dy = Math.max(y - 1, 0); dy <= Math.min(y + 1, height - 1); dy++) {
+               for (int dx = Math.max(x - 1, 0); dx <= Math.min(x + 1, width - 1); dx++) {
+                 int rgb = pixels[dy * width + dx];
+                 sumR += (rgb >> 16) & 0xff;
+                 sumG += (rgb >> 8) & 0xff;
+                 sumB += rgb & 0xff;
                }
              }
              // Calculate the new pixel color values
@@ -156,8 +143,7 @@ public class NormalizeImage {
              int newB = Math.min(Math.max(sumB + 128, 0), 255);
      
              // Set the new pixel color values
-             Color newColor = new Color(newR, newG, newB);
-             newImage.setRGB(x, y, newColor.getRGB());
+             shifted[y * width + x] = (newR << 16) | (newG << 8) | newB;
            }
          }
 
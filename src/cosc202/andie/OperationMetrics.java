@@ -0,0 +1,647 @@
+package cosc202.andie;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Records how long {@link ImageOperation}s take, how many pixels they process and how much memory
+ * they allocate.
+ * </p>
+ *
+ * <p>
+ * Every operation ANDIE applies to an image goes through {@link #measure}, which notes the wall
+ * time, the number of pixels in the input and the bytes allocated for the operation,
+ * together with the {@link Trigger} that asked for it.
+ * The measurements are kept per operation class, with a histogram of latencies, so that a report
+ * that "ANDIE is slow" can be traced to the operations and paths responsible.
+ * They can be shown over the image by the {@link ImagePanel} and written to a file with
+ * {@link #dump}.
+ * </p>
+ *
+ * <p>
+ * The bytes allocated are counted with the JVM's per-thread allocation counters: those of the
+ * thread that calls the operation, plus those of each tile the {@link TileEngine} processes for
+ * it on its pool, where tiled operations do most of their work.
+ * Each tile is counted on the pool thread that runs it, so other work sharing the pool at the same
+ * time, such as a preview or a batch, is not charged to the operation.
+ * If the JVM does not count allocations per thread the bytes are recorded as 0.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class OperationMetrics {
+
+    /**
+     * What an operation was applied for.
+     */
+    public enum Trigger {
+        /** The user applied the operation to the image. */
+        APPLY,
+        /**
+         * The operation was replayed to rebuild the image, on undo, redo or when opening it, or
+         * was left pending in lazy mode and is now being computed.
+         */
+        REFRESH,
+        /** The operation was rendered as a preview while its dialog was open. */
+        PREVIEW,
+        /** The operation was applied by the {@link BatchRunner}. */
+        BATCH
+    }
+
+    /** The upper bounds of the latency histogram buckets, in milliseconds; the last is unbounded. */
+    private static final long[] BUCKET_BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+
+    /** The statistics for each operation class, by the simple name of the class. */
+    private static final Map<String, Stats> STATS = new ConcurrentHashMap<String, Stats>();
+
+    /** The JVM's per-thread allocation counters, or null if it does not have them. */
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounters();
+
+    /**
+     * The bytes the pool's threads have allocated for the innermost operation being measured on
+     * each thread, which the {@link TileEngine}'s tasks add to.
+     */
+    private static final ThreadLocal<AtomicLong> POOLED = new ThreadLocal<AtomicLong>();
+
+    /** The most recent measurement, or null if there has not been one. */
+    private static volatile Sample last;
+
+    /** The operation each thread is in the middle of measuring, for the {@link EdtWatchdog}. */
+    private static final Map<Thread, ImageOperation> RUNNING = new ConcurrentHashMap<Thread, ImageOperation>();
+
+    /**
+     * OperationMetrics only has static methods, so should not be constructed.
+     */
+    private OperationMetrics() {
+    }
+
+    /**
+     * <p>
+     * One measurement of an operation.
+     * </p>
+     */
+    public static final class Sample {
+        /** The simple name of the operation's class. */
+        private final String operation;
+        /** What the operation was applied for. */
+        private final Trigger trigger;
+        /** The wall time, in nanoseconds. */
+        private final long nanos;
+        /** The number of pixels in the input. */
+        private final long pixels;
+        /** The bytes allocated for the operation. */
+        private final long bytes;
+
+        /**
+         * Create a measurement.
+         *
+         * @param operation The simple name of the operation's class.
+         * @param trigger   What the operation was applied for.
+         * @param nanos     The wall time, in nanoseconds.
+         * @param pixels    The number of pixels in the input.
+         * @param bytes     The bytes allocated for the operation.
+         */
+        Sample(String operation, Trigger trigger, long nanos, long pixels, long bytes) {
+            this.operation = operation;
+            this.trigger = trigger;
+            this.nanos = nanos;
+            this.pixels = pixels;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Get the simple name of the operation's class.
+         *
+         * @return The name of the operation.
+         */
+        public String getOperation() {
+            return operation;
+        }
+
+        /**
+         * Get what the operation was applied for.
+         *
+         * @return The trigger.
+         */
+        public Trigger getTrigger() {
+            return trigger;
+        }
+
+        /**
+         * Get how long the operation took.
+         *
+         * @return The wall time, in nanoseconds.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Get the number of pixels in the input.
+         *
+         * @return The number of pixels.
+         */
+        public long getPixels() {
+            return pixels;
+        }
+
+        /**
+         * Get the number of bytes allocated for the operation.
+         *
+         * @return The bytes allocated.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Describe the measurement in one line.
+         *
+         * @return The description.
+         */
+        @Override
+        public String toString() {
+            return String.format("%s (%s) %.1f ms, %.2f MPix, %.1f MB", operation,
+                    trigger.name().toLowerCase(Locale.ROOT), nanos / 1e6, pixels / 1e6, bytes / 1e6);
+        }
+    }
+
+    /**
+     * <p>
+     * The measurements of one operation class, added up.
+     * </p>
+     *
+     * <p>
+     * Instances returned by {@link OperationMetrics#getStats} are copies, so they do not change as
+     * more operations are recorded.
+     * </p>
+     */
+    public static final class Stats {
+        /** The number of times the operation was applied. */
+        private long count;
+        /** The number of times the operation was applied for each {@link Trigger}. */
+        private final long[] byTrigger = new long[Trigger.values().length];
+        /** The total wall time, in nanoseconds. */
+        private long nanos;
+        /** The longest wall time, in nanoseconds. */
+        private long maxNanos;
+        /** The total number of pixels processed. */
+        private long pixels;
+        /** The total bytes allocated. */
+        private long bytes;
+        /** The number of times that fell in each bucket of {@link OperationMetrics#BUCKET_BOUNDS}. */
+        private final long[] buckets = new long[BUCKET_BOUNDS.length + 1];
+
+        /**
+         * Add a measurement.
+         *
+         * @param sample The measurement.
+         */
+        private synchronized void add(Sample sample) {
+            count++;
+            byTrigger[sample.trigger.ordinal()]++;
+            nanos += sample.nanos;
+            maxNanos = Math.max(maxNanos, sample.nanos);
+            pixels += sample.pixels;
+            bytes += sample.bytes;
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS.length && sample.nanos > BUCKET_BOUNDS[bucket] * 1_000_000) {
+                bucket++;
+            }
+            buckets[bucket]++;
+        }
+
+        /**
+         * Make a copy that does not change.
+         *
+         * @return The copy.
+         */
+        private synchronized Stats copy() {
+            Stats copy = new Stats();
+            copy.count = count;
+            System.arraycopy(byTrigger, 0, copy.byTrigger, 0, byTrigger.length);
+            copy.nanos = nanos;
+            copy.maxNanos = maxNanos;
+            copy.pixels = pixels;
+            copy.bytes = bytes;
+            System.arraycopy(buckets, 0, copy.buckets, 0, buckets.length);
+            return copy;
+        }
+
+        /**
+         * Get the number of times the operation was applied.
+         *
+         * @return The count.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Get the number of times the operation was applied for a reason.
+         *
+         * @param trigger What the operation was applied for.
+         * @return The count.
+         */
+        public long getCount(Trigger trigger) {
+            return byTrigger[trigger.ordinal()];
+        }
+
+        /**
+         * Get the total time spent in the operation.
+         *
+         * @return The total wall time, in nanoseconds.
+         */
+        public long getTotalNanos() {
+            return nanos;
+        }
+
+        /**
+         * Get the average time the operation took.
+         *
+         * @return The mean wall time, in milliseconds, or 0 if it has not been applied.
+         */
+        public double getMeanMillis() {
+            return count == 0 ? 0 : nanos / 1e6 / count;
+        }
+
+        /**
+         * Get the longest time the operation took.
+         *
+         * @return The longest wall time, in milliseconds.
+         */
+        public double getMaxMillis() {
+            return maxNanos / 1e6;
+        }
+
+        /**
+         * <p>
+         * Estimate a percentile of the time the operation took, from the histogram.
+         * </p>
+         *
+         * <p>
+         * The result is the upper bound of the bucket the percentile falls in, or the longest time
+         * if that is less, so it errs on the slow side.
+         * </p>
+         *
+         * @param percentile The percentile, between 0 and 100.
+         * @return The estimated wall time, in milliseconds, or 0 if it has not been applied.
+         */
+        public double getPercentileMillis(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKET_BOUNDS.length; bucket++) {
+                seen += buckets[bucket];
+                if (seen >= rank) {
+                    return Math.min(BUCKET_BOUNDS[bucket], getMaxMillis());
+                }
+            }
+            return getMaxMillis();
+        }
+
+        /**
+         * Get the total number of pixels the operation processed.
+         *
+         * @return The number of pixels.
+         */
+        public long getPixels() {
+            return pixels;
+        }
+
+        /**
+         * Get the rate the operation processes pixels at.
+         *
+         * @return The rate in megapixels per second, or 0 if it has not been applied.
+         */
+        public double getMegapixelsPerSecond() {
+            return nanos == 0 ? 0 : pixels / 1e6 / (nanos / 1e9);
+        }
+
+        /**
+         * Get the total bytes allocated for the operation.
+         *
+         * @return The number of bytes.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Get the number of times the operation's time fell in each bucket of the histogram.
+         *
+         * @return The counts, one for each of {@link OperationMetrics#getBucketBounds} and one more
+         *         for anything slower.
+         */
+        public long[] getHistogram() {
+            return buckets.clone();
+        }
+    }
+
+    /**
+     * <p>
+     * Apply an operation and record it.
+     * </p>
+     *
+     * @param op      The operation to apply.
+     * @param input   The image to apply it to.
+     * @param trigger What the operation is applied for.
+     * @return The result of {@link TileEngine#apply(ImageOperation, BufferedImage)}.
+     */
+    public static BufferedImage apply(ImageOperation op, BufferedImage input, Trigger trigger) {
+        int width = input == null ? 0 : input.getWidth();
+        int height = input == null ? 0 : input.getHeight();
+        return measure(op, width, height, trigger, () -> TileEngine.apply(op, input));
+    }
+
+    /**
+     * <p>
+     * Apply an operation to a tiled image and record it.
+     * </p>
+     *
+     * @param op      The operation to apply.
+     * @param input   The image to apply it to.
+     * @param trigger What the operation is applied for.
+     * @return The result of {@link TileEngine#apply(ImageOperation, TiledRaster)}.
+     */
+    public static TiledRaster apply(ImageOperation op, TiledRaster input, Trigger trigger) {
+        return measure(op, input.getWidth(), input.getHeight(), trigger, () -> TileEngine.apply(op, input));
+    }
+
+    /**
+     * <p>
+     * Do the work of an operation and record how long it took and what it allocated.
+     * </p>
+     *
+     * <p>
+     * The measurement is recorded even if the work throws, since a failing operation may well be
+     * the slow one, unless it was cancelled, as stale previews are.
+     * It is also committed as an {@link AndieEvents.OperationEvent} if a flight recording is running.
+     * While the work runs, the operation is the one {@link #getRunning} gives for this thread.
+     * </p>
+     *
+     * @param <T>     The type of the result.
+     * @param op      The operation the work is for.
+     * @param width   The width of the area the work covers, in pixels.
+     * @param height  The height of the area the work covers, in pixels.
+     * @param trigger What the operation is applied for.
+     * @param work    The work.
+     * @return The result of the work.
+     */
+    public static <T> T measure(ImageOperation op, int width, int height, Trigger trigger, Supplier<T> work) {
+        AndieEvents.OperationEvent event = new AndieEvents.OperationEvent();
+        long allocated = allocatedByThisThread();
+        AtomicLong pooled = new AtomicLong();
+        AtomicLong outerPooled = POOLED.get();
+        POOLED.set(pooled);
+        Thread thread = Thread.currentThread();
+        ImageOperation outer = RUNNING.put(thread, op);
+        event.begin();
+        long start = System.nanoTime();
+        boolean cancelled = false;
+        try {
+            return work.get();
+        } catch (CancellationException e) {
+            cancelled = true;
+            throw e;
+        } finally {
+            if (outer == null) {
+                RUNNING.remove(thread);
+            } else {
+                RUNNING.put(thread, outer);
+            }
+            if (outerPooled == null) {
+                POOLED.remove();
+            } else {
+                // the outer operation counts this thread itself, but not the pool's threads
+                outerPooled.addAndGet(pooled.get());
+                POOLED.set(outerPooled);
+            }
+            if (!cancelled) {
+                long nanos = System.nanoTime() - start;
+                event.end();
+                long after = allocatedByThisThread();
+                long bytes = (allocated < 0 || after < 0 ? 0 : after - allocated) + pooled.get();
+                record(new Sample(op.getClass().getSimpleName(), trigger, nanos, (long) width * height, bytes));
+                if (event.shouldCommit()) {
+                    event.operation = op.getClass().getSimpleName();
+                    event.parameters = AndieEvents.describe(op);
+                    event.trigger = trigger.name().toLowerCase(Locale.ROOT);
+                    event.width = width;
+                    event.height = height;
+                    event.allocated = bytes;
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Get the operation a thread is in the middle of measuring.
+     * </p>
+     *
+     * @param thread The thread.
+     * @return The innermost operation being measured on the thread, or null if there is none.
+     */
+    public static ImageOperation getRunning(Thread thread) {
+        return RUNNING.get(thread);
+    }
+
+    /**
+     * Add a measurement to the statistics of its operation.
+     *
+     * @param sample The measurement.
+     */
+    static void record(Sample sample) {
+        STATS.computeIfAbsent(sample.operation, name -> new Stats()).add(sample);
+        last = sample;
+    }
+
+    /**
+     * <p>
+     * Get the statistics of every operation that has been recorded.
+     * </p>
+     *
+     * @return Copies of the statistics, by the simple name of the operation's class, in name order.
+     */
+    public static SortedMap<String, Stats> getStats() {
+        SortedMap<String, Stats> copy = new TreeMap<String, Stats>();
+        for (Map.Entry<String, Stats> entry : STATS.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().copy());
+        }
+        return copy;
+    }
+
+    /**
+     * Get the most recent measurement.
+     *
+     * @return The measurement, or null if nothing has been recorded.
+     */
+    public static Sample getLast() {
+        return last;
+    }
+
+    /**
+     * Get the upper bounds of the buckets of the latency histograms.
+     *
+     * @return The bounds, in milliseconds.
+     */
+    public static long[] getBucketBounds() {
+        return BUCKET_BOUNDS.clone();
+    }
+
+    /**
+     * Forget everything that has been recorded.
+     */
+    public static void reset() {
+        STATS.clear();
+        last = null;
+    }
+
+    /**
+     * <p>
+     * Describe the statistics in a few lines, slowest operation first, to show over the image.
+     * </p>
+     *
+     * @param limit The most operations to list.
+     * @return The lines, starting with column headings, or just the most recent measurement line
+     *         if nothing has been recorded.
+     */
+    public static List<String> summarise(int limit) {
+        List<Map.Entry<String, Stats>> entries = new ArrayList<Map.Entry<String, Stats>>(getStats().entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().getTotalNanos(), a.getValue().getTotalNanos()));
+        List<String> lines = new ArrayList<String>();
+        Sample sample = last;
+        if (sample != null) {
+            lines.add(sample.toString());
+        }
+        if (!entries.isEmpty()) {
+            lines.add(String.format("%-20s %6s %8s %8s %8s %9s %8s", "", "n", "mean ms", "p95 ms", "max ms", "MPix/s",
+                    "MB/op"));
+        }
+        for (Map.Entry<String, Stats> entry : entries.subList(0, Math.min(limit, entries.size()))) {
+            Stats stats = entry.getValue();
+            lines.add(String.format("%-20s %6d %8.1f %8.1f %8.1f %9.1f %8.1f", entry.getKey(), stats.getCount(),
+                    stats.getMeanMillis(), stats.getPercentileMillis(95), stats.getMaxMillis(),
+                    stats.getMegapixelsPerSecond(), stats.getBytes() / 1e6 / stats.getCount()));
+        }
+        return lines;
+    }
+
+    /**
+     * <p>
+     * Write the statistics to a file, as comma-separated values.
+     * </p>
+     *
+     * <p>
+     * There is a row for each operation class, with its counts for each trigger, its times in
+     * milliseconds, the pixels and bytes it processed and allocated, and its latency histogram.
+     * </p>
+     *
+     * @param file The file to write to.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void dump(File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+            dump(out);
+            if (out.checkError()) {
+                throw new IOException("Could not write " + file);
+            }
+        }
+    }
+
+    /**
+     * Write the statistics as comma-separated values.
+     *
+     * @param out Where to write them.
+     */
+    static void dump(PrintWriter out) {
+        StringBuilder header = new StringBuilder("operation,count");
+        for (Trigger trigger : Trigger.values()) {
+            header.append(',').append(trigger.name().toLowerCase(Locale.ROOT));
+        }
+        header.append(",total_ms,mean_ms,p50_ms,p95_ms,p99_ms,max_ms,megapixels,mpix_per_s,allocated_bytes");
+        for (long bound : BUCKET_BOUNDS) {
+            header.append(",le_").append(bound).append("ms");
+        }
+        header.append(",gt_").append(BUCKET_BOUNDS[BUCKET_BOUNDS.length - 1]).append("ms");
+        out.println(header);
+
+        for (Map.Entry<String, Stats> entry : getStats().entrySet()) {
+            Stats stats = entry.getValue();
+            StringBuilder row = new StringBuilder(entry.getKey()).append(',').append(stats.getCount());
+            for (Trigger trigger : Trigger.values()) {
+                row.append(',').append(stats.getCount(trigger));
+            }
+            row.append(String.format(Locale.ROOT, ",%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%d",
+                    stats.getTotalNanos() / 1e6, stats.getMeanMillis(), stats.getPercentileMillis(50),
+                    stats.getPercentileMillis(95), stats.getPercentileMillis(99), stats.getMaxMillis(),
+                    stats.getPixels() / 1e6, stats.getMegapixelsPerSecond(), stats.getBytes()));
+            for (long bucket : stats.buckets) {
+                row.append(',').append(bucket);
+            }
+            out.println(row);
+        }
+    }
+
+    /**
+     * Get the JVM's per-thread allocation counters, turning them on if need be.
+     *
+     * @return The counters, or null if the JVM does not have them.
+     */
+    private static com.sun.management.ThreadMXBean allocationCounters() {
+        try {
+            java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+                return null;
+            }
+            com.sun.management.ThreadMXBean counters = (com.sun.management.ThreadMXBean) threads;
+            if (!counters.isThreadAllocatedMemorySupported()) {
+                return null;
+            }
+            counters.setThreadAllocatedMemoryEnabled(true);
+            return counters;
+        } catch (LinkageError | UnsupportedOperationException | SecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read the bytes allocated so far by the calling thread.
+     *
+     * @return The bytes allocated by the thread since it started, or -1 if they cannot be counted.
+     */
+    static long allocatedByThisThread() {
+        return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Get the counter that work done on another thread for the operation being measured on the
+     * calling thread is added to.
+     *
+     * <p>
+     * The {@link TileEngine} gets this when an operation hands it an image, and adds what each of
+     * its pool's threads allocates while processing a tile of it.
+     * </p>
+     *
+     * @return The counter, or null if no operation is being measured or allocations cannot be
+     *         counted.
+     */
+    static AtomicLong getPoolCounter() {
+        return THREADS == null ? null : POOLED.get();
+    }
+}
@@ -0,0 +1,468 @@
+package cosc202.andie;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * <p>
+ * Reads and writes lists of operations in <code>.ops</code> files.
+ * </p>
+ *
+ * <p>
+ * Operations are written in a compact binary format rather than with Java serialization, which is
+ * slow to load, breaks whenever a class changes, and cannot store operations that are not
+ * serializable.
+ * A file starts with a header:
+ * </p>
+ * <ul>
+ * <li>the four bytes <code>AOPS</code>;</li>
+ * <li>the version of the format, as an unsigned short;</li>
+ * <li>the number of operations, as an int.</li>
+ * </ul>
+ * <p>
+ * Each operation follows in order as a record: the tag of its class as an unsigned short, the
+ * length of its settings in bytes as an int, and then the settings written by its
+ * {@link EncodableOperation#encode}.
+ * All values are big-endian, as written by {@link DataOutput}.
+ * </p>
+ *
+ * <p>
+ * Every operation class has a fixed tag and a {@link Decoder}, which are {@link #register}ed
+ * here.
+ * Tags are never reused, so a file always means the same thing.
+ * Since each record gives its own length, a decoder can tell from the version of the file
+ * whether settings added later are present.
+ * </p>
+ *
+ * <p>
+ * Records are decoded one at a time as they are read, with a {@link Reader}, so a long file
+ * does not have to be read in full first.
+ * Nothing in a file refers to its position, so it can equally be decoded from a memory-mapped
+ * {@link ByteBuffer} with {@link #read(ByteBuffer)}.
+ * Files are not mapped by default, because on some systems a mapped file cannot be saved over
+ * until the mapping is garbage collected.
+ * </p>
+ *
+ * <p>
+ * Files written by older versions of ANDIE, with Java serialization, are still read.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class OpsFile {
+
+    /** The bytes <code>AOPS</code> that start every file. */
+    public static final int MAGIC = 0x414F5053;
+
+    /**
+     * The version of the format written.
+     * Since version 2, drawings and crops are saved in image coordinates rather than panel ones.
+     */
+    public static final int VERSION = 2;
+
+    /** The first two bytes of a file written with Java serialization. */
+    private static final int SERIALIZED_MAGIC = 0xACED;
+
+    /**
+     * The only classes that may be read from a file written with Java serialization, and how deep
+     * and large it may be.
+     * The <code>.ops</code> file next to an image is read whenever the image is opened, so it may
+     * have come from anyone; without this, deserializing it could make objects of any class on the
+     * class path.
+     * Arrays are checked by their element type, and arrays of primitives are allowed.
+     */
+    private static final ObjectInputFilter SERIALIZED_FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=10;maxarray=65536;maxrefs=100000;maxbytes=16777216;"
+                    + "cosc202.andie.*;java.util.Stack;java.util.Vector;java.awt.Color;java.awt.Rectangle;"
+                    + "java.lang.Object;java.lang.String;java.lang.Number;java.lang.Integer;java.lang.Double;"
+                    + "java.lang.Float;java.lang.Boolean;!*");
+
+    /**
+     * <p>
+     * Interface for reading the settings of one class of operation.
+     * </p>
+     */
+    @FunctionalInterface
+    public interface Decoder {
+
+        /**
+         * Read the settings of an operation and rebuild it.
+         *
+         * @param in      The settings written by {@link EncodableOperation#encode}.
+         * @param version The version of the file being read.
+         * @return The operation.
+         * @throws IOException If the settings cannot be read.
+         */
+        public ImageOperation decode(DataInput in, int version) throws IOException;
+    }
+
+    /** The decoder for each tag. */
+    private static final Map<Integer, Decoder> DECODERS = new HashMap<Integer, Decoder>();
+    /** The tag of each class of operation. */
+    private static final Map<Class<?>, Integer> TAGS = new HashMap<Class<?>, Integer>();
+
+    static {
+        register(1, InvertFilter.class, InvertFilter::decode);
+        register(2, Brightness.class, Brightness::decode);
+        register(3, ConvertToGrey.class, ConvertToGrey::decode);
+        register(4, HueFilter.class, HueFilter::decode);
+        register(5, LevelsFilter.class, LevelsFilter::decode);
+        register(6, CurvesFilter.class, CurvesFilter::decode);
+        register(7, MeanFilter.class, MeanFilter::decode);
+        register(8, MedianFilter.class, MedianFilter::decode);
+        register(9, GaussianBlurFilter.class, GaussianBlurFilter::decode);
+        register(10, SharpenFilter.class, SharpenFilter::decode);
+        register(11, SobelFilter.class, SobelFilter::decode);
+        register(12, EmbossFilter.class, EmbossFilter::decode);
+        register(13, DitherFilter.class, DitherFilter::decode);
+        register(14, ResizeImage.class, ResizeImage::decode);
+        register(15, FlipImage.class, FlipImage::decode);
+        register(16, RotateImage.class, RotateImage::decode);
+        register(17, CropImage.class, CropImage::decode);
+        register(18, DrawLine.class, DrawLine::decode);
+        register(19, DrawOval.class, DrawOval::decode);
+        register(20, DrawSquare.class, DrawSquare::decode);
+        register(21, DrawOutline.class, DrawOutline::decode);
+    }
+
+    /**
+     * This class only has static methods.
+     */
+    private OpsFile() {
+    }
+
+    /**
+     * <p>
+     * Register a class of operation so it can be saved and loaded.
+     * </p>
+     *
+     * @param tag     The tag that identifies the class in files, from 1 to 65535, which must never
+     *                change once files have been written with it.
+     * @param type    The class of operation.
+     * @param decoder Rebuilds an operation from the settings it encoded.
+     * @throws IllegalArgumentException If the tag is out of range, or the tag or class is already
+     *                                  registered.
+     */
+    public static synchronized void register(int tag, Class<? extends EncodableOperation> type, Decoder decoder) {
+        if (tag < 1 || tag > 0xFFFF) {
+            throw new IllegalArgumentException("Tag " + tag + " is out of range");
+        }
+        if (DECODERS.containsKey(tag) || TAGS.containsKey(type)) {
+            throw new IllegalArgumentException("Tag " + tag + " or " + type.getName() + " is already registered");
+        }
+        DECODERS.put(tag, decoder);
+        TAGS.put(type, tag);
+    }
+
+    /**
+     * Get the tag of an operation's class.
+     *
+     * @param op The operation.
+     * @return The tag.
+     * @throws IOException If the class is not registered.
+     */
+    private static synchronized int tagOf(ImageOperation op) throws IOException {
+        Integer tag = TAGS.get(op.getClass());
+        if (tag == null || !(op instanceof EncodableOperation)) {
+            throw new NotSerializableException(op.getClass().getName() + " cannot be saved in an .ops file");
+        }
+        return tag;
+    }
+
+    /**
+     * Get the decoder for a tag.
+     *
+     * @param tag The tag.
+     * @return The decoder.
+     * @throws IOException If no class is registered with the tag.
+     */
+    private static synchronized Decoder decoderOf(int tag) throws IOException {
+        Decoder decoder = DECODERS.get(tag);
+        if (decoder == null) {
+            throw new InvalidObjectException("Unknown operation tag " + tag);
+        }
+        return decoder;
+    }
+
+    /**
+     * <p>
+     * Write operations to a file.
+     * </p>
+     *
+     * @param ops  The operations, in the order they are applied.
+     * @param file The file to write.
+     * @throws IOException If an operation cannot be saved or the file cannot be written.
+     */
+    public static void write(List<? extends ImageOperation> ops, File file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            write(ops, out);
+        }
+    }
+
+    /**
+     * <p>
+     * Write operations to a stream.
+     * </p>
+     *
+     * @param ops The operations, in the order they are applied.
+     * @param out The stream to write to, which is flushed but not closed.
+     * @throws IOException If an operation cannot be saved or the stream cannot be written.
+     */
+    public static void write(List<? extends ImageOperation> ops, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeInt(ops.size());
+        ByteArrayOutputStream settings = new ByteArrayOutputStream();
+        DataOutputStream settingsOut = new DataOutputStream(settings);
+        for (ImageOperation op : ops) {
+            int tag = tagOf(op);
+            settings.reset();
+            ((EncodableOperation) op).encode(settingsOut);
+            settingsOut.flush();
+            data.writeShort(tag);
+            data.writeInt(settings.size());
+            settings.writeTo(data);
+        }
+        data.flush();
+    }
+
+    /**
+     * <p>
+     * Read the operations in a file.
+     * </p>
+     *
+     * @param file The file to read.
+     * @return The operations, in the order they are applied.
+     * @throws IOException If the file cannot be read or is not an operations file.
+     */
+    public static Stack<ImageOperation> read(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return read(in);
+        }
+    }
+
+    /**
+     * <p>
+     * Read operations from a stream, in either this format or the Java serialization of older
+     * versions.
+     * </p>
+     *
+     * @param in The stream to read from, which is not closed.
+     * @return The operations, in the order they are applied.
+     * @throws IOException If the stream cannot be read or does not hold operations.
+     */
+    public static Stack<ImageOperation> read(InputStream in) throws IOException {
+        if (!in.markSupported()) {
+            in = new BufferedInputStream(in);
+        }
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        if ((first << 8 | second) == SERIALIZED_MAGIC) {
+            return readSerialized(in);
+        }
+        Reader reader = new Reader(in);
+        Stack<ImageOperation> ops = new Stack<ImageOperation>();
+        while (reader.hasNext()) {
+            ops.add(reader.next());
+        }
+        return ops;
+    }
+
+    /**
+     * <p>
+     * Read operations from a buffer, such as a memory-mapped file.
+     * </p>
+     *
+     * @param buffer The buffer, read from its position to its limit.
+     * @return The operations, in the order they are applied.
+     * @throws IOException If the buffer does not hold operations.
+     */
+    public static Stack<ImageOperation> read(ByteBuffer buffer) throws IOException {
+        ByteBuffer view = buffer.duplicate();
+        return read(new InputStream() {
+            @Override
+            public int read() {
+                return view.hasRemaining() ? view.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) {
+                if (!view.hasRemaining()) {
+                    return -1;
+                }
+                length = Math.min(length, view.remaining());
+                view.get(bytes, offset, length);
+                return length;
+            }
+        });
+    }
+
+    /**
+     * Read operations saved with Java serialization.
+     *
+     * Only the classes operations are made of are read, as checked by {@link #SERIALIZED_FILTER}.
+     *
+     * @param in The stream to read from.
+     * @return The operations.
+     * @throws IOException If the stream does not hold a serialized list of operations, or holds
+     *                     any other class.
+     */
+    private static Stack<ImageOperation> readSerialized(InputStream in) throws IOException {
+        ObjectInputStream objIn = new ObjectInputStream(in);
+        objIn.setObjectInputFilter(SERIALIZED_FILTER);
+        Object read;
+        try {
+            read = objIn.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new InvalidClassException(e.getMessage());
+        }
+        if (!(read instanceof List)) {
+            throw new InvalidObjectException("Expected a list of operations but found " + read.getClass().getName());
+        }
+        Stack<ImageOperation> ops = new Stack<ImageOperation>();
+        for (Object op : (List<?>) read) {
+            if (!(op instanceof ImageOperation)) {
+                throw new InvalidObjectException(op + " is not an operation");
+            }
+            ops.add((ImageOperation) op);
+        }
+        return ops;
+    }
+
+    /**
+     * Read the number of elements in an array of settings, for a {@link Decoder}.
+     *
+     * A count that is negative, or larger than the rest of the record could hold, is rejected
+     * before anything is made that size, so a corrupt file cannot run out of memory.
+     *
+     * @param in           The settings being decoded.
+     * @param elementBytes The fewest bytes each element takes up.
+     * @return The number of elements.
+     * @throws IOException If the count cannot be read or does not fit the record.
+     */
+    static int readCount(DataInput in, int elementBytes) throws IOException {
+        int count = in.readInt();
+        // the Reader decodes each record from its own stream, which knows exactly what is left
+        long left = in instanceof InputStream ? ((InputStream) in).available() : Integer.MAX_VALUE;
+        if (count < 0 || (long) count * elementBytes > left) {
+            throw new StreamCorruptedException("Settings hold " + count + " elements of " + elementBytes
+                    + " bytes but only " + left + " bytes are left");
+        }
+        return count;
+    }
+
+    /**
+     * <p>
+     * Decodes the operations in a stream one at a time.
+     * </p>
+     *
+     * <p>
+     * Only the format written by {@link OpsFile#write} can be read this way.
+     * </p>
+     */
+    public static class Reader {
+
+        /** The stream being read. */
+        private final DataInputStream in;
+        /** The version of the format. */
+        private final int version;
+        /** The number of operations in the stream. */
+        private final int count;
+        /** The number of operations read so far. */
+        private int read;
+
+        /**
+         * Start reading a stream, reading its header.
+         *
+         * @param in The stream, which is not closed.
+         * @throws IOException If the stream does not start with a header this version can read.
+         */
+        public Reader(InputStream in) throws IOException {
+            this.in = new DataInputStream(in);
+            if (this.in.readInt() != MAGIC) {
+                throw new StreamCorruptedException("Not an operations file");
+            }
+            version = this.in.readUnsignedShort();
+            if (version < 1 || version > VERSION) {
+                throw new StreamCorruptedException("Operations file version " + version + " is not supported");
+            }
+            count = this.in.readInt();
+            if (count < 0) {
+                throw new StreamCorruptedException("Operations file holds " + count + " operations");
+            }
+        }
+
+        /**
+         * Get the version of the format being read.
+         *
+         * @return The version of the stream.
+         */
+        public int getVersion() {
+            return version;
+        }
+
+        /**
+         * Get the number of operations in the stream.
+         *
+         * @return The number of operations, read or not.
+         */
+        public int size() {
+            return count;
+        }
+
+        /**
+         * Check if there are more operations to read.
+         *
+         * @return True if {@link #next} will return another operation.
+         */
+        public boolean hasNext() {
+            return read < count;
+        }
+
+        /**
+         * Decode the next operation.
+         *
+         * @return The operation.
+         * @throws IOException           If the operation cannot be read or decoded.
+         * @throws NoSuchElementException If every operation has been read.
+         */
+        public ImageOperation next() throws IOException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int tag = in.readUnsignedShort();
+            int length = in.readInt();
+            if (length < 0) {
+                throw new StreamCorruptedException("Operation " + read + " has length " + length);
+            }
+            // read the record first, so a decoder cannot read past it whatever its settings say
+            byte[] record = in.readNBytes(length);
+            if (record.length != length) {
+                throw new EOFException("Operation " + read + " has length " + length + " but only " + record.length
+                        + " bytes are left");
+            }
+            DataInputStream settings = new DataInputStream(new ByteArrayInputStream(record));
+            ImageOperation op;
+            try {
+                op = decoderOf(tag).decode(settings, version);
+            } catch (EOFException e) {
+                throw new StreamCorruptedException("Operation " + read + " with tag " + tag
+                        + " has settings longer than its length " + length);
+            }
+            if (settings.available() != 0) {
+                throw new StreamCorruptedException("Operation " + read + " with tag " + tag + " has length " + length
+                        + " but " + (length - settings.available()) + " bytes were decoded");
+            }
+            read++;
+            return op;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package cosc202.andie;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * <p>
+ * Operations that have been applied to an image but not computed yet, which can be rendered one
+ * part at a time.
+ * </p>
+ *
+ * <p>
+ * When an {@link EditableImage} is {@link EditableImage#setLazy lazy}, tileable operations are
+ * not applied straight away.
+ * Instead the {@link ImagePanel} renders just the tiles of the image that are on screen, and more
+ * tiles as the user scrolls to them, so filtering a very large scan only costs as much as the part
+ * of it being looked at.
+ * </p>
+ *
+ * <p>
+ * Each area is rendered by copying it out of the base image, with a halo as wide as the halos of
+ * all of the operations added together, and applying each operation in turn with
+ * {@link TileableOperation#applyTile}.
+ * Each operation only spoils the outer edge of the copy as wide as its own halo, so the centre of
+ * the copy ends up exactly the same as in the whole image.
+ * </p>
+ *
+ * <p>
+ * Tiles are rendered in the background and kept until the render is {@link #cancel}led, which
+ * happens as soon as the image changes.
+ * A render never changes, so it can be used from any thread.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public class PendingRender {
+
+    /** The width and height of the tiles rendered for display, in pixels. */
+    public static final int TILE_SIZE = TileEngine.TILE_SIZE;
+
+    /**
+     * The threads tiles are rendered on, which do not keep ANDIE running on exit.
+     * The newest request is taken first, since it is most likely to still be on screen.
+     */
+    private static final ExecutorService WORKERS = new ThreadPoolExecutor(Runtime.getRuntime().availableProcessors(),
+            Runtime.getRuntime().availableProcessors(), 0, TimeUnit.MILLISECONDS, new LinkedBlockingDeque<Runnable>() {
+                @Override
+                public boolean offer(Runnable runnable) {
+                    return offerFirst(runnable);
+                }
+            }, runnable -> {
+                Thread thread = new Thread(runnable, "ANDIE tiles");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /** The image the operations are applied to. */
+    private final BufferedImage base;
+    /** The operations, in the order they are applied. */
+    private final List<TileableOperation> ops;
+    /** The operations with runs of per-pixel operations fused, which is how they are rendered. */
+    private final List<ImageOperation> fused;
+    /** The total width of the halos of the operations. */
+    private final int halo;
+    /** The tiles that have been rendered, by column and row. */
+    private final Map<Point, BufferedImage> tiles = new ConcurrentHashMap<Point, BufferedImage>();
+    /** The tiles that have been asked for, rendered or not. */
+    private final Set<Point> requested = ConcurrentHashMap.newKeySet();
+    /** Whether the render is no longer wanted. */
+    private volatile boolean cancelled;
+
+    /**
+     * <p>
+     * Create a render of operations applied to an image.
+     * </p>
+     *
+     * @param base The image to apply the operations to, which must not be changed afterwards.
+     * @param ops  The operations, in the order they are applied, which must all have tileable footprints.
+     */
+    public PendingRender(BufferedImage base, List<TileableOperation> ops) {
+        this.base = base;
+        this.ops = new ArrayList<TileableOperation>(ops);
+        int total = 0;
+        for (TileableOperation op : this.ops) {
+            if (!op.getFootprint().isTileable()) {
+                throw new IllegalArgumentException(op.getClass().getSimpleName() + " cannot be rendered in parts");
+            }
+            total += op.getFootprint().getHalo();
+        }
+        this.halo = total;
+        this.fused = FusedPixelOperation.fuse(this.ops);
+    }
+
+    /**
+     * Get the image the operations are applied to.
+     *
+     * @return The base image.
+     */
+    public BufferedImage getBase() {
+        return base;
+    }
+
+    /**
+     * Get the width of the halo each area is rendered with.
+     *
+     * @return The total width of the halos of the operations.
+     */
+    public int getHalo() {
+        return halo;
+    }
+
+    /**
+     * <p>
+     * Get a render of these operations followed by one more.
+     * </p>
+     *
+     * <p>
+     * The new render starts with no tiles, and this one is not changed.
+     * </p>
+     *
+     * @param op The operation to apply after the others, which must have a tileable footprint.
+     * @return A render of the same base image with the operation added.
+     */
+    public PendingRender then(TileableOperation op) {
+        List<TileableOperation> more = new ArrayList<TileableOperation>(ops);
+        more.add(op);
+        return new PendingRender(base, more);
+    }
+
+    /**
+     * <p>
+     * Render part of the image with all of the operations applied.
+     * </p>
+     *
+     * @param area The part of the image to render, which must lie within the image.
+     * @return The rendered area, the same as the same part of the whole image with the operations
+     *         applied.
+     */
+    public BufferedImage render(Rectangle area) {
+        Rectangle region = new Rectangle(area.x - halo, area.y - halo, area.width + 2 * halo, area.height + 2 * halo)
+                .intersection(new Rectangle(0, 0, base.getWidth(), base.getHeight()));
+        ColorModel cm = base.getColorModel();
+        WritableRaster raster = cm.createCompatibleWritableRaster(region.width, region.height);
+        raster.setRect(-region.x, -region.y, base.getRaster().createChild(region.x, region.y, region.width,
+                region.height, region.x, region.y, null));
+        BufferedImage result = new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
+        for (ImageOperation op : fused) {
+            result = ((TileableOperation) op).applyTile(result, region.x, region.y);
+            if (result.getWidth() != region.width || result.getHeight() != region.height) {
+                throw new IllegalStateException(op.getClass().getSimpleName() + " changed the size of an area from "
+                        + region.width + "x" + region.height + " to " + result.getWidth() + "x" + result.getHeight());
+            }
+        }
+        return result.getSubimage(area.x - region.x, area.y - region.y, area.width, area.height);
+    }
+
+    /**
+     * <p>
+     * Get a tile that has already been rendered.
+     * </p>
+     *
+     * <p>
+     * Tiles are {@link #TILE_SIZE} pixels square, apart from those at the right and bottom edges of
+     * the image, and the tile in column c and row r starts at (c * TILE_SIZE, r * TILE_SIZE).
+     * </p>
+     *
+     * @param column The column of the tile.
+     * @param row    The row of the tile.
+     * @return The tile, or null if it has not been rendered yet.
+     */
+    public BufferedImage getTile(int column, int row) {
+        return tiles.get(new Point(column, row));
+    }
+
+    /**
+     * <p>
+     * Ask for a tile to be rendered in the background.
+     * </p>
+     *
+     * <p>
+     * Nothing happens if the tile has already been asked for.
+     * </p>
+     *
+     * @param column The column of the tile.
+     * @param row    The row of the tile.
+     * @param done   Called on the rendering thread once the tile is ready, unless the render has
+     *               been cancelled.
+     */
+    public void requestTile(int column, int row, Runnable done) {
+        Point key = new Point(column, row);
+        if (cancelled || !requested.add(key)) {
+            return;
+        }
+        WORKERS.execute(() -> {
+            if (cancelled) {
+                return;
+            }
+            try {
+                tiles.put(key, render(tileBounds(column, row)));
+            } catch (RuntimeException e) {
+                // Leave the tile unfiltered; the error shows again when the image is computed in full
+                e.printStackTrace();
+                return;
+            }
+            if (!cancelled) {
+                done.run();
+            }
+        });
+    }
+
+    /**
+     * <p>
+     * Render every tile that overlaps an area, on the calling thread.
+     * </p>
+     *
+     * <p>
+     * This is used to fill the visible part of a preview before it is shown, so it does not appear
+     * unfiltered at first.
+     * </p>
+     *
+     * @param area The area to render, in image coordinates.
+     */
+    public void renderTiles(Rectangle area) {
+        area = area.intersection(new Rectangle(0, 0, base.getWidth(), base.getHeight()));
+        if (area.isEmpty()) {
+            return;
+        }
+        for (int row = area.y / TILE_SIZE; row <= (area.y + area.height - 1) / TILE_SIZE; row++) {
+            for (int column = area.x / TILE_SIZE; column <= (area.x + area.width - 1) / TILE_SIZE; column++) {
+                Point key = new Point(column, row);
+                if (!tiles.containsKey(key)) {
+                    tiles.put(key, render(tileBounds(column, row)));
+                    requested.add(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the area of the image covered by a tile.
+     *
+     * @param column The column of the tile.
+     * @param row    The row of the tile.
+     * @return The area of the tile, cut off at the edges of the image.
+     */
+    public Rectangle tileBounds(int column, int row) {
+        int x = column * TILE_SIZE;
+        int y = row * TILE_SIZE;
+        return new Rectangle(x, y, Math.min(TILE_SIZE, base.getWidth() - x), Math.min(TILE_SIZE, base.getHeight() - y));
+    }
+
+    /**
+     * <p>
+     * Stop rendering tiles, because the image has changed.
+     * </p>
+     *
+     * <p>
+     * Tiles that have not started are skipped, and no more callbacks are made.
+     * </p>
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Check if the render has been cancelled.
+     *
+     * @return True if the render is no longer wanted.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
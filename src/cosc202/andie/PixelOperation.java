@@ -0,0 +1,64 @@
+package cosc202.andie;
+
+/**
+ * <p>
+ * Interface for operations that change each pixel on its own, as a function of its colour.
+ * </p>
+ *
+ * <p>
+ * An operation that implements this interface describes itself with {@link #filter}, which takes
+ * the colour of one pixel as packed ARGB and returns the new colour.
+ * Runs of these operations can then be combined by {@link FusedPixelOperation} into a single
+ * pass over the image, instead of each operation reading and writing every pixel in turn.
+ * </p>
+ *
+ * <p>
+ * {@link #filter} must give exactly the same colours as {@link #apply} does on a
+ * <code>TYPE_INT_ARGB</code> image, must not depend on where the pixel is, and must be safe to call
+ * from several threads at once.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public interface PixelOperation extends TileableOperation {
+
+    /**
+     * Work out the new colour of a pixel.
+     *
+     * @param argb The colour of the pixel, as packed ARGB.
+     * @return The colour after the operation, as packed ARGB.
+     */
+    public int filter(int argb);
+
+    /**
+     * Work out the new colours of a range of pixels, in place.
+     *
+     * Operations should override this with the same loop, so that each has its own copy in which
+     * the call to {@link #filter(int)} can be inlined.
+     *
+     * @param argb The colours of the pixels, as packed ARGB.
+     * @param from The first pixel to change.
+     * @param to   One past the last pixel to change.
+     */
+    public default void filter(int[] argb, int from, int to) {
+        for (int i = from; i < to; i++) {
+            argb[i] = filter(argb[i]);
+        }
+    }
+
+    /**
+     * Check if this operation can be combined with others.
+     *
+     * Operations that only sometimes work pixel by pixel, depending on their settings, return
+     * false when they do not.
+     *
+     * @return True if {@link #filter} describes the whole operation.
+     */
+    public default boolean isFusable() {
+        return true;
+    }
+}
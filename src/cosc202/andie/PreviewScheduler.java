@@ -0,0 +1,455 @@
+package cosc202.andie;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.util.Collections;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.SwingUtilities;
+
+/**
+ * <p>
+ * Renders previews of an operation in the background while the user adjusts it.
+ * </p>
+ *
+ * <p>
+ * The dialogs for filters and colour adjustments show what the operation will do as its slider or
+ * colour chooser changes.
+ * Doing that on the Swing event thread freezes the interface while each preview is computed, so
+ * instead each change is passed to {@link #request}, and the preview is rendered on a worker
+ * thread.
+ * </p>
+ *
+ * <p>
+ * Previews never touch the real image.
+ * They are rendered into two buffers in turn, and shown over the image with
+ * {@link ImagePanel#setPreview}, so nothing the size of the image is allocated as the slider
+ * moves.
+ * A preview is only rendered into the buffer that is not on screen, and the buffers swap when it
+ * is shown, so a preview is never seen half drawn.
+ * </p>
+ *
+ * <ul>
+ * <li>Requests that arrive within a short delay of each other are coalesced, so a burst of slider
+ * events renders only the latest value.</li>
+ * <li>A new request cancels the render in progress, since its result would be stale.
+ * Tiled operations stop at the next tile (see {@link TileEngine}), and any result that does
+ * arrive late is discarded.</li>
+ * <li>Previews are progressive. Tileable operations are first rendered on a proxy: just the
+ * part of the image that is visible in the panel, at the resolution it is displayed at.
+ * Then the full-resolution result is rendered and replaces it. On large images the proxy is
+ * much quicker to render, so there is feedback straight away.</li>
+ * <li>The full-resolution preview of a tileable operation is also only rendered for the part of
+ * the image that is visible, since the dialogs are modal and the view cannot move while they are
+ * open. Other operations are previewed on the whole image.</li>
+ * <li>Previews are handed to the {@link ImagePanel} on the event thread, and only if they are for
+ * the latest request. A render that is cancelled part way leaves the last preview on screen.</li>
+ * </ul>
+ *
+ * <p>
+ * When the dialog closes, {@link #close} must be called, which takes the preview off the image and
+ * makes sure no preview still in flight is shown.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public class PreviewScheduler {
+
+    /** How long to wait for more changes before rendering, in milliseconds. */
+    public static final long DEFAULT_DELAY = 40;
+
+    /**
+     * A proxy is only rendered if it has at most this fraction of the pixels of the image,
+     * since otherwise it would not be much quicker than the full-resolution preview.
+     */
+    private static final double PROXY_MAX_FRACTION = 0.25;
+
+    /** The number of renders that have started, for {@link EngineStats}. */
+    private static final AtomicLong STARTED = new AtomicLong();
+    /** The number of renders whose result was thrown away because a newer request came first. */
+    private static final AtomicLong CANCELLED = new AtomicLong();
+
+    /** The thread all previews are rendered on, which does not keep ANDIE running on exit. */
+    private static final ScheduledExecutorService WORKER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ANDIE preview");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** The panel the previews are shown in. */
+    private final ImagePanel target;
+    /** The real image, which previews are rendered from but never change. */
+    private final EditableImage image;
+    /** The operations on the real image that have not been computed yet, or null if there are none. */
+    private final PendingRender source;
+    /** The real image with all its operations computed, or null if some are still pending. */
+    private final BufferedImage committed;
+    /** The delay before rendering, in milliseconds. */
+    private final long delay;
+    /** Incremented by every request, so renders can tell if they are out of date. */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** The operation most recently requested, or null to show the image unchanged. */
+    private ImageOperation pending;
+    /** The part of the image that was visible when the latest request was made. */
+    private Rectangle pendingArea;
+    /** The scale the image was displayed at when the latest request was made, at most 1. */
+    private double pendingFactor;
+    /** The render that is waiting to start or running, if any. */
+    private Future<?> task;
+    /** Whether {@link #task} has not started yet, and so will pick up the latest request. */
+    private boolean queued;
+    /** Whether the dialog has closed. */
+    private boolean closed;
+    /** The two buffers full-resolution previews are rendered into, only written on the worker thread. */
+    private final BufferedImage[] buffers = new BufferedImage[2];
+    /** Which of the {@link #buffers} holds the preview on screen, and so must not be rendered into. */
+    private int front;
+
+    /**
+     * <p>
+     * Create a scheduler for previews of the image currently in a panel.
+     * </p>
+     *
+     * @param target The panel to show the previews in.
+     */
+    public PreviewScheduler(ImagePanel target) {
+        this(target, DEFAULT_DELAY);
+    }
+
+    /**
+     * <p>
+     * Create a scheduler for previews of the image currently in a panel, with a given delay.
+     * </p>
+     *
+     * @param target The panel to show the previews in.
+     * @param delay  How long to wait for more requests before rendering, in milliseconds.
+     */
+    public PreviewScheduler(ImagePanel target, long delay) {
+        this.target = target;
+        this.image = target.getImage();
+        // Fetched here, on the event thread, since the image makes it on first use
+        this.source = image.hasImage() ? image.getPendingRender() : null;
+        this.committed = image.hasImage() && source == null ? image.getCurrentImage() : null;
+        this.delay = delay;
+    }
+
+    /**
+     * <p>
+     * Ask for a preview of an operation applied to the image.
+     * </p>
+     *
+     * <p>
+     * This returns immediately. The preview is shown over the panel's image once it has been
+     * rendered, unless another request or {@link #close} comes first.
+     * It should be called on the event thread, since it reads which part of the panel is visible.
+     * </p>
+     *
+     * @param op The operation to preview, or null to show the image without any change.
+     */
+    public synchronized void request(ImageOperation op) {
+        if (closed) {
+            return;
+        }
+        pending = op;
+        pendingArea = target.getVisibleImageArea();
+        pendingFactor = Math.min(1.0, target.getScale());
+        generation.incrementAndGet();
+        if (queued) {
+            // the waiting render will pick up this operation instead
+            return;
+        }
+        if (task != null) {
+            task.cancel(true);
+        }
+        queued = true;
+        task = WORKER.schedule(this::render, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * <p>
+     * Stop showing previews.
+     * </p>
+     *
+     * <p>
+     * Any pending or running render is cancelled and its result discarded, and the preview is
+     * taken off the image.
+     * This should be called on the event thread once the dialog has closed.
+     * </p>
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            generation.incrementAndGet();
+            if (task != null) {
+                task.cancel(true);
+                task = null;
+            }
+        }
+        target.setPreview(null, null);
+    }
+
+    /**
+     * Render the latest request on the worker thread, and publish it if it is still wanted.
+     */
+    private void render() {
+        ImageOperation op;
+        long requested;
+        Rectangle area;
+        double factor;
+        int back;
+        synchronized (this) {
+            queued = false;
+            op = pending;
+            requested = generation.get();
+            area = pendingArea;
+            factor = pendingFactor;
+            back = 1 - front;
+        }
+        STARTED.incrementAndGet();
+        BufferedImage preview = null;
+        Rectangle shown = null;
+        try {
+            if (op != null && useProxy(op, area, factor)) {
+                ImageOperation proxyOp = op;
+                BufferedImage proxy = OperationMetrics.measure(op, (int) (area.width * factor),
+                        (int) (area.height * factor), OperationMetrics.Trigger.PREVIEW,
+                        () -> renderProxy(proxyOp, area, factor));
+                if (generation.get() != requested) {
+                    CANCELLED.incrementAndGet();
+                    return;
+                }
+                SwingUtilities.invokeLater(() -> publish(proxy, area, requested, -1));
+            }
+            if (op != null) {
+                // nothing to render means the image is shown without a preview
+                shown = isTileable(op) && !area.isEmpty() ? area : new Rectangle(0, 0, image.getWidth(), image.getHeight());
+                ImageOperation previewOp = op;
+                Rectangle previewArea = shown;
+                preview = OperationMetrics.measure(op, shown.width, shown.height, OperationMetrics.Trigger.PREVIEW,
+                        () -> isTileable(previewOp)
+                                ? renderArea((TileableOperation) previewOp, previewArea, back)
+                                : renderWhole(previewOp, back));
+            }
+        } catch (CancellationException e) {
+            CANCELLED.incrementAndGet();
+            return;
+        } catch (RuntimeException e) {
+            // A failed preview leaves the last one on screen; the error shows again if the operation is applied
+            e.printStackTrace();
+            return;
+        }
+        if (generation.get() == requested) {
+            BufferedImage result = preview;
+            Rectangle resultArea = shown;
+            SwingUtilities.invokeLater(() -> publish(result, resultArea, requested, back));
+        } else {
+            CANCELLED.incrementAndGet();
+        }
+    }
+
+    /**
+     * <p>
+     * Get the number of previews that have started rendering, in any dialog.
+     * </p>
+     *
+     * @return The number of renders started.
+     */
+    public static long getRendersStarted() {
+        return STARTED.get();
+    }
+
+    /**
+     * <p>
+     * Get the number of previews whose rendering was stopped or thrown away because a newer
+     * request or the dialog closing made them stale.
+     * </p>
+     *
+     * @return The number of renders cancelled.
+     */
+    public static long getRendersCancelled() {
+        return CANCELLED.get();
+    }
+
+    /**
+     * Check whether an operation can be rendered on part of the image.
+     *
+     * @param op The operation.
+     * @return True if the operation is tileable with a footprint that allows it.
+     */
+    private boolean isTileable(ImageOperation op) {
+        return op instanceof TileableOperation && ((TileableOperation) op).getFootprint().isTileable();
+    }
+
+    /**
+     * <p>
+     * Render a tileable operation on part of the image, at full resolution, into a buffer.
+     * </p>
+     *
+     * <p>
+     * The area is rendered a tile at a time, and stops early if the worker is interrupted by a
+     * newer request.
+     * Each tile is rendered with {@link PendingRender}, along with any operations on the real
+     * image that are still pending, so it is exactly what applying the operation would give.
+     * </p>
+     *
+     * @param op     The operation to render.
+     * @param area   The part of the image to render.
+     * @param buffer Which of the buffers to render into, which must not be on screen.
+     * @return The buffer, cut down to the size of the area.
+     * @throws CancellationException If the worker was interrupted.
+     */
+    private BufferedImage renderArea(TileableOperation op, Rectangle area, int buffer) {
+        PendingRender render = source == null ? new PendingRender(committed, Collections.singletonList(op))
+                : source.then(op);
+        BufferedImage scratch = buffers[buffer];
+        if (scratch == null || scratch.getWidth() < area.width || scratch.getHeight() < area.height) {
+            scratch = new BufferedImage(area.width, area.height, BufferedImage.TYPE_INT_ARGB);
+            buffers[buffer] = scratch;
+        }
+        int size = TileEngine.TILE_SIZE;
+        for (int y = 0; y < area.height; y += size) {
+            for (int x = 0; x < area.width; x += size) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException("Preview of " + op.getClass().getSimpleName() + " was interrupted");
+                }
+                Rectangle tile = new Rectangle(area.x + x, area.y + y, Math.min(size, area.width - x),
+                        Math.min(size, area.height - y));
+                int[] pixels = ImagePixels.read(render.render(tile));
+                scratch.setRGB(x, y, tile.width, tile.height, pixels, 0, tile.width);
+            }
+        }
+        return scratch.getSubimage(0, 0, area.width, area.height);
+    }
+
+    /**
+     * <p>
+     * Render an operation that cannot be tiled on the whole image.
+     * </p>
+     *
+     * <p>
+     * The image is copied into a buffer first, since operations may change their input.
+     * </p>
+     *
+     * @param op     The operation to render.
+     * @param buffer Which of the buffers to copy the image into, which must not be on screen.
+     * @return The whole image with the operation applied.
+     */
+    private BufferedImage renderWhole(ImageOperation op, int buffer) {
+        BufferedImage input;
+        if (source != null) {
+            // a fresh copy anyway, so there is no need for a buffer
+            input = source.render(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+        } else {
+            ColorModel cm = committed.getColorModel();
+            BufferedImage scratch = buffers[buffer];
+            if (scratch == null || scratch.getColorModel() != cm || scratch.getWidth() != committed.getWidth()
+                    || scratch.getHeight() != committed.getHeight()) {
+                scratch = new BufferedImage(cm, cm.createCompatibleWritableRaster(committed.getWidth(),
+                        committed.getHeight()), cm.isAlphaPremultiplied(), null);
+                buffers[buffer] = scratch;
+            }
+            scratch.setData(committed.getRaster());
+            input = scratch;
+        }
+        return TileEngine.apply(op, input);
+    }
+
+    /**
+     * Check whether it is worth rendering a proxy before the full-resolution preview.
+     *
+     * @param op     The operation to preview.
+     * @param area   The visible part of the image.
+     * @param factor The scale the image is displayed at.
+     * @return True if the operation can be rendered on part of the image and the proxy would be
+     *         much smaller than the image.
+     */
+    private boolean useProxy(ImageOperation op, Rectangle area, double factor) {
+        if (!isTileable(op) || area.isEmpty()) {
+            return false;
+        }
+        double proxyPixels = area.width * factor * area.height * factor;
+        return proxyPixels <= PROXY_MAX_FRACTION * image.getWidth() * image.getHeight();
+    }
+
+    /**
+     * <p>
+     * Render an operation on the visible part of the image, scaled to the resolution it is displayed at.
+     * </p>
+     *
+     * <p>
+     * The visible area is copied with a halo as wide as the operation's footprint, so the edges of
+     * the proxy look the same as in the full preview, and operations with a radius are scaled to
+     * match the proxy if they are {@link ScalableOperation}s.
+     * </p>
+     *
+     * @param op     The operation to render, which must be tileable.
+     * @param area   The visible part of the image.
+     * @param factor The scale to render at, at most 1.
+     * @return The proxy, covering the visible area.
+     */
+    private BufferedImage renderProxy(ImageOperation op, Rectangle area, double factor) {
+        int halo = ((TileableOperation) op).getFootprint().getHalo();
+        Rectangle region = new Rectangle(area.x - halo, area.y - halo, area.width + 2 * halo, area.height + 2 * halo)
+                .intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+        BufferedImage current;
+        if (source == null) {
+            current = committed.getSubimage(region.x, region.y, region.width, region.height);
+        } else {
+            // the real image has operations waiting, so render just the part needed
+            current = source.render(region);
+        }
+        int width = Math.max(1, (int) Math.round(region.width * factor));
+        int height = Math.max(1, (int) Math.round(region.height * factor));
+
+        BufferedImage proxy = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = proxy.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(current, 0, 0, width, height, null);
+        g.dispose();
+
+        if (factor < 1 && op instanceof ScalableOperation) {
+            op = ((ScalableOperation) op).scaled(factor);
+        }
+        BufferedImage result = TileEngine.apply(op, proxy);
+
+        // Cut the halo back off
+        int x = Math.min((int) Math.round((area.x - region.x) * factor), result.getWidth() - 1);
+        int y = Math.min((int) Math.round((area.y - region.y) * factor), result.getHeight() - 1);
+        int w = Math.max(1, Math.min((int) Math.round(area.width * factor), result.getWidth() - x));
+        int h = Math.max(1, Math.min((int) Math.round(area.height * factor), result.getHeight() - y));
+        return result.getSubimage(x, y, w, h);
+    }
+
+    /**
+     * Show a preview over part of the image, on the event thread, unless a newer request has been
+     * made since.
+     *
+     * If the preview is in one of the buffers, that buffer becomes the front one, and the next
+     * preview is rendered into the other.
+     * The next render only starts after a newer request, so it sees the swap, or, if the request
+     * came first, this preview is not shown and its buffer is free again.
+     *
+     * @param preview   The preview to show, or null to show the image without a preview.
+     * @param area      The part of the image it covers.
+     * @param requested The generation of the request it was rendered for.
+     * @param buffer    Which of the buffers the preview is in, or -1 if it is in neither.
+     */
+    private void publish(BufferedImage preview, Rectangle area, long requested, int buffer) {
+        synchronized (this) {
+            if (closed || generation.get() != requested) {
+                return;
+            }
+            if (buffer >= 0) {
+                front = buffer;
+            }
+        }
+        target.setPreview(preview, area);
+    }
+}
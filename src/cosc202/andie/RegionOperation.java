@@ -0,0 +1,62 @@
+package cosc202.andie;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * <p>
+ * Interface for operations that only change a small part of an image.
+ * </p>
+ *
+ * <p>
+ * Drawing a shape changes the pixels under the shape and leaves the rest of the image alone, so
+ * there is no need to rebuild the whole image to undo it.
+ * When an operation that implements this interface is applied, {@link EditableImage} keeps a
+ * {@link RegionPatch} of the pixels in its region from before and after, and undo and redo just
+ * copy them back.
+ * </p>
+ *
+ * <p>
+ * An operation that implements this interface must not change the size or type of the image, or
+ * any pixel outside the region it reports, and each pixel it changes may only depend on the pixel
+ * at the same position, so it can also be applied to part of an image with {@link #applyArea}.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public interface RegionOperation extends ImageOperation {
+
+    /**
+     * Get the part of an image that this operation may change.
+     *
+     * The region is worked out from the same settings as {@link #apply}, so it should be asked for
+     * just before the operation is applied.
+     * It may reach past the edges of the image, and is cut down to fit by the caller.
+     * Only the size of the image is given, so the caller does not have to put together the
+     * whole image when only a few tiles of it will change.
+     *
+     * @param width  The width of the image the operation is about to be applied to.
+     * @param height The height of the image.
+     * @return The area of the image that may change, in image coordinates.
+     */
+    public Rectangle getRegion(int width, int height);
+
+    /**
+     * Apply the operation to one area of a larger image.
+     *
+     * This is how the operation is replayed when only part of the image has to be recomputed,
+     * such as after an earlier operation in the history is changed.
+     * Like {@link #apply}, it must not have any other effect, such as showing a message, since
+     * operations are also replayed off the event thread.
+     *
+     * @param area The pixels of the area. This is a copy that may be modified.
+     * @param x    The x coordinate of the top left pixel of the area in the whole image.
+     * @param y    The y coordinate of the top left pixel of the area in the whole image.
+     * @return The area resulting from the operation, the same size as the input area.
+     */
+    public BufferedImage applyArea(BufferedImage area, int x, int y);
+}
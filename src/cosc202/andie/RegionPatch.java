@@ -0,0 +1,163 @@
+package cosc202.andie;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * <p>
+ * The pixels changed by a {@link RegionOperation}, from before and after it was applied.
+ * </p>
+ *
+ * <p>
+ * {@link EditableImage} keeps one of these for each region operation on its stack, so undoing or
+ * redoing a drawing copies back a few pixels instead of rebuilding the whole image from the
+ * nearest snapshot.
+ * Putting the pixels back only copies the {@link TiledRaster} tiles they land on, if those are
+ * shared with a snapshot.
+ * </p>
+ *
+ * <p>
+ * A patch is taken in two steps: {@link #before} copies the region out of the image before the
+ * operation is applied, and {@link #after} copies it again from the result.
+ * Patches that would cover a large part of the image are not taken, since they would use almost
+ * as much memory as a snapshot, which is already budgeted for.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public class RegionPatch {
+
+    /**
+     * The largest share of the image a patch may cover.
+     * Larger regions are undone by rebuilding the image as usual.
+     */
+    public static final double MAX_AREA_FRACTION = 0.25;
+
+    /** The operation that changed the pixels. */
+    private final ImageOperation op;
+    /** The area of the image that changed, which may be empty. */
+    private final Rectangle area;
+    /** The width of the image the patch was taken from. */
+    private final int width;
+    /** The height of the image the patch was taken from. */
+    private final int height;
+    /** The type of the image the patch was taken from. */
+    private final int type;
+    /** The pixels of the area before the operation, or null if the area is empty. */
+    private final BufferedImage before;
+    /** The pixels of the area after the operation, or null if the area is empty or not taken yet. */
+    private BufferedImage after;
+
+    /**
+     * Create a patch from the pixels before an operation.
+     *
+     * @param op     The operation.
+     * @param area   The area of the image that may change.
+     * @param input  The image before the operation.
+     * @param before The pixels of the area, or null if it is empty.
+     */
+    private RegionPatch(ImageOperation op, Rectangle area, TiledRaster input, BufferedImage before) {
+        this.op = op;
+        this.area = area;
+        this.width = input.getWidth();
+        this.height = input.getHeight();
+        this.type = input.getType();
+        this.before = before;
+    }
+
+    /**
+     * <p>
+     * Copy the pixels a region operation may change out of an image, before it is applied.
+     * </p>
+     *
+     * @param op    The operation about to be applied.
+     * @param input The image it is about to be applied to.
+     * @return The first half of a patch, or null if the region is too large to be worth keeping.
+     */
+    public static RegionPatch before(RegionOperation op, TiledRaster input) {
+        Rectangle area = op.getRegion(input.getWidth(), input.getHeight()).intersection(new Rectangle(0, 0, input.getWidth(), input.getHeight()));
+        if (area.isEmpty()) {
+            return new RegionPatch(op, new Rectangle(), input, null);
+        }
+        if ((double) area.width * area.height > MAX_AREA_FRACTION * input.getWidth() * input.getHeight()) {
+            return null;
+        }
+        return new RegionPatch(op, area, input, input.copyArea(area));
+    }
+
+    /**
+     * <p>
+     * Copy the changed pixels out of the result of the operation.
+     * </p>
+     *
+     * @param result The image after the operation was applied.
+     * @return True if the patch is complete, or false if the operation changed the size or type of
+     *         the image, so it cannot be undone with a patch.
+     */
+    public boolean after(TiledRaster result) {
+        if (result.getWidth() != width || result.getHeight() != height || result.getType() != type) {
+            return false;
+        }
+        if (before != null) {
+            after = result.copyArea(area);
+        }
+        return true;
+    }
+
+    /**
+     * Get the operation that changed the pixels.
+     *
+     * @return The operation the patch was taken for.
+     */
+    public ImageOperation getOperation() {
+        return op;
+    }
+
+    /**
+     * Get the area of the image the patch covers.
+     *
+     * @return The area that changed, which is empty if the operation was entirely outside the image.
+     */
+    public Rectangle getArea() {
+        return new Rectangle(area);
+    }
+
+    /**
+     * Get the number of bytes held by the pixels of the patch.
+     *
+     * @return The bytes held by the pixels from before and after the operation.
+     */
+    public long getBytes() {
+        return (before == null ? 0 : SnapshotCache.sizeOf(before)) + (after == null ? 0 : SnapshotCache.sizeOf(after));
+    }
+
+    /**
+     * <p>
+     * Put back the pixels from before the operation.
+     * </p>
+     *
+     * @param image The image with the operation applied, which is changed in place.
+     */
+    public void undo(TiledRaster image) {
+        if (before != null) {
+            image.write(before, area.x, area.y);
+        }
+    }
+
+    /**
+     * <p>
+     * Put back the pixels from after the operation.
+     * </p>
+     *
+     * @param image The image without the operation applied, which is changed in place.
+     */
+    public void redo(TiledRaster image) {
+        if (after != null) {
+            image.write(after, area.x, area.y);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package cosc202.andie;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+
+/**
+ * <p>
+ * A saved copy of an image with all of its operations applied, kept next to its
+ * <code>.ops</code> file.
+ * </p>
+ *
+ * <p>
+ * ANDIE saves the original image and the operations applied to it, so reopening an image means
+ * applying all of its operations again.
+ * When an image is saved with its operations already applied, the result is also written to
+ * <code>&lt;image&gt;.ops.render</code>, so the next time it is opened the result can be shown
+ * straight away instead.
+ * </p>
+ *
+ * <p>
+ * The render starts with a SHA-256 digest of the image file and the <code>.ops</code> file it
+ * was made from, and is only used if both files still match it, so editing either file, or
+ * saving a different image over it, makes ANDIE ignore the render rather than show the wrong
+ * result.
+ * The image itself is stored as a PNG, along with its type so it comes back exactly as it was.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class RenderCache {
+
+    /** The bytes <code>ARND</code> that start every render file. */
+    private static final int MAGIC = 0x41524E44;
+    /** The version of the render file format. */
+    private static final int VERSION = 1;
+
+    /**
+     * This class only has static methods.
+     */
+    private RenderCache() {
+    }
+
+    /**
+     * Get the render file for an operations file.
+     *
+     * @param opsFile The <code>.ops</code> file.
+     * @return The render file next to it.
+     */
+    public static File fileFor(File opsFile) {
+        return new File(opsFile.getPath() + ".render");
+    }
+
+    /**
+     * <p>
+     * Save the result of applying an image's operations.
+     * </p>
+     *
+     * @param imageFile The saved original image.
+     * @param opsFile   The saved operations.
+     * @param result    The image with the operations applied.
+     * @throws IOException If the render cannot be written.
+     */
+    public static void write(File imageFile, File opsFile, BufferedImage result) throws IOException {
+        byte[] digest = digest(imageFile, opsFile);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileFor(opsFile))))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.write(digest);
+            out.writeInt(result.getType());
+            if (!ImageIO.write(result, "png", out)) {
+                throw new IOException("No PNG writer for an image of type " + result.getType());
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Remove the render of an image's operations, because it no longer matches.
+     * </p>
+     *
+     * @param opsFile The <code>.ops</code> file.
+     */
+    public static void delete(File opsFile) {
+        fileFor(opsFile).delete();
+    }
+
+    /**
+     * <p>
+     * Read the result of applying an image's operations, if it has been saved and still matches.
+     * </p>
+     *
+     * @param imageFile The original image.
+     * @param opsFile   The operations.
+     * @return The image with the operations applied, or null if there is no render, or it was made
+     *         from different files, or it cannot be read.
+     */
+    public static BufferedImage read(File imageFile, File opsFile) {
+        File renderFile = fileFor(opsFile);
+        if (!renderFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(renderFile)))) {
+            if (in.readInt() != MAGIC || in.readUnsignedShort() != VERSION) {
+                return null;
+            }
+            byte[] saved = new byte[32];
+            in.readFully(saved);
+            if (!Arrays.equals(saved, digest(imageFile, opsFile))) {
+                return null;
+            }
+            int type = in.readInt();
+            BufferedImage image = ImageIO.read(in);
+            if (image == null) {
+                return null;
+            }
+            // palette and custom images keep the type the PNG reader gives, which holds the same colours
+            if (image.getType() != type && type != BufferedImage.TYPE_CUSTOM && type != BufferedImage.TYPE_BYTE_INDEXED
+                    && type != BufferedImage.TYPE_BYTE_BINARY) {
+                image = ImagePixels.create(image.getWidth(), image.getHeight(), type, ImagePixels.read(image));
+            }
+            return image;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Work out the digest of an image file and its operations file together.
+     *
+     * @param imageFile The image file.
+     * @param opsFile   The operations file.
+     * @return The 32-byte SHA-256 digest.
+     * @throws IOException If either file cannot be read.
+     */
+    private static byte[] digest(File imageFile, File opsFile) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[65536];
+        for (File file : new File[] { imageFile, opsFile }) {
+            try (InputStream in = new FileInputStream(file)) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, n);
+                }
+            }
+            // keep the boundary between the files, so bytes cannot move from one to the other
+            digest.update((byte) 0);
+            digest.update(Long.toString(file.length()).getBytes("UTF-8"));
+        }
+        return digest.digest();
+    }
+}
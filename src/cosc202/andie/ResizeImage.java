@@ -3,11 +3,16 @@ package cosc202.andie;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * Resize the opened image to the specified size user gives in OptionPane
  */
-public class ResizeImage implements ImageOperation, java.io.Serializable{
+public class ResizeImage implements ImageOperation, EncodableOperation, java.io.Serializable{
+
+    private static final long serialVersionUID = -8955019886734342258L;
     
     double scale;
 
@@ -48,4 +53,30 @@ public class ResizeImage implements ImageOperation, java.io.Serializable{
         // Return resized image
         return resizedImage;
     }
+
+    /**
+     * Write the settings of this operation to an <code>.ops</code> file.
+     *
+     * Writes the scale as a percentage.
+     *
+     * @param out Where to write the settings.
+     * @throws IOException If the settings cannot be written.
+     */
+    public void encode(DataOutput out) throws IOException {
+        out.writeDouble(scale);
+    }
+
+    /**
+     * Rebuild an operation from the settings written by {@link #encode}.
+     *
+     * @param in      The settings.
+     * @param version The version of the <code>.ops</code> file.
+     * @return The operation.
+     * @throws IOException If the settings cannot be read.
+     */
+    static ResizeImage decode(DataInput in, int version) throws IOException {
+        ResizeImage resize = new ResizeImage(0);
+        resize.scale = in.readDouble();
+        return resize;
+    }
 }
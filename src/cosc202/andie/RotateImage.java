@@ -1,11 +1,16 @@
 package cosc202.andie;
 
 import java.awt.image.BufferedImage;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * RotateImage class rotates an input image 90 degrees to the right or left or 180 degrees depending on the user preference
  */
-public class RotateImage implements ImageOperation, java.io.Serializable {
+public class RotateImage implements ImageOperation, EncodableOperation, java.io.Serializable {
+
+    private static final long serialVersionUID = 8296723454883911373L;
 
     // Booleans to check which rotation is happening in apply
     boolean isRight;
@@ -31,74 +36,60 @@ public class RotateImage implements ImageOperation, java.io.Serializable {
         // Find height and width of image
         int rows = input.getHeight();
         int cols = input.getWidth();
+        int[] pixels = ImagePixels.read(input);
+        int[] rotated = new int[pixels.length];
 
-        // Create an emtpy 2D array
-        int [][] test90 = new int[rows][cols];
-        int [][] test180 = new int[cols][rows];
-
-        // Create a copy of image
-        BufferedImage rotate180Image = new BufferedImage(cols, rows, BufferedImage.TYPE_INT_ARGB);
-        BufferedImage rotate90Image = new BufferedImage(rows, cols, BufferedImage.TYPE_INT_ARGB);
-        
         // Flip image 180
         if(is180) {
             // Loop through input
             for (int row = 0; row < rows; row++) {
                 for (int col = 0; col < cols; col++) {
-                    // Store current pixel in testarray
-                    test180[cols-col-1][rows-row-1] = input.getRGB(col, row);
+                    // Move the current pixel to the opposite corner
+                    rotated[(rows-row-1) * cols + (cols-col-1)] = pixels[row * cols + col];
                 }
             }
-            rotate180Image = setRotatedImage(rotate180Image, test180, is180, rows, cols);
-            return rotate180Image;
+            return ImagePixels.wrap(cols, rows, rotated);
         } else {
-            // Loop through every pixel in image
+            // Loop through every pixel in image, the rotated image has rows columns
             for (int row = 0; row < rows; row++) {
                 for (int col = 0; col < cols; col++) {
                     // If rotation is 90 degrees to the right
                     if(isRight) {
                         // Make after rotation pixel set to current input pixel
-                        test90[rows-row-1][col] = input.getRGB(col, row);
+                        rotated[col * rows + (rows-row-1)] = pixels[row * cols + col];
                         // Otherwise rotate 90 degrees to the left
                     } else {
                         // Make after rotation pixel set to current input pixel
-                        test90[row][cols-col-1] = input.getRGB(col, row);
+                        rotated[(cols-col-1) * rows + row] = pixels[row * cols + col];
                     }
                 }
             }
-            // Copy image over
-            rotate90Image = setRotatedImage(rotate90Image, test90, is180, rows, cols);
-            // Set input to new rotatedImage
-            return rotate90Image;
+            return ImagePixels.wrap(rows, cols, rotated);
         }
     }
 
     /**
-     * Set the pixels of the new image to the array of pixels in rotated image
-     * @param input
-     * @param cloneArray
-     * @param is180
-     * @param rows
-     * @param cols
-     * @return new rotated image
+     * Write the settings of this operation to an <code>.ops</code> file.
+     *
+     * Writes whether the rotation is to the right, and whether it is by 180 degrees.
+     *
+     * @param out Where to write the settings.
+     * @throws IOException If the settings cannot be written.
      */
-    public BufferedImage setRotatedImage(BufferedImage input, int[][]cloneArray, boolean is180, int rows, int cols) {
-        for (int x = 0; x < rows; x++) {
-            for (int y = 0; y < cols; y++) {
-                if(is180) {
-                    // Grab each x and y from array and store as pixel
-                    int pixel = cloneArray[y][x];
-                    // Set each pixel of the image image
-                    input.setRGB(y, x, pixel);
-                } else {
-                    // Grab each x and y from array and store as pixel
-                    int pixel = cloneArray[x][y];
-                    // Set each pixel of the image image
-                    input.setRGB(x, y, pixel);
-                }            
-            }
-        }
-        // Return new image
-        return input;
+    public void encode(DataOutput out) throws IOException {
+        out.writeBoolean(isRight);
+        out.writeBoolean(is180);
+    }
+
+    /**
+     * Rebuild an operation from the settings written by {@link #encode}.
+     *
+     * @param in      The settings.
+     * @param version The version of the <code>.ops</code> file.
+     * @return The operation.
+     * @throws IOException If the settings cannot be read.
+     */
+    static RotateImage decode(DataInput in, int version) throws IOException {
+        return new RotateImage(in.readBoolean(), in.readBoolean());
     }
-}
\ No newline at end of file
+}
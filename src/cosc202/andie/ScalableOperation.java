@@ -0,0 +1,35 @@
+package cosc202.andie;
+
+/**
+ * <p>
+ * Interface for operations whose effect depends on the size of the image, such as filters with a
+ * radius.
+ * </p>
+ * 
+ * <p>
+ * Previews are sometimes rendered on a smaller copy of the image, to give quick feedback on large
+ * images. A blur with a radius of 10 pixels covers twice as much of a half-size copy as it does of
+ * the real image, so the preview would look much stronger than the result.
+ * Operations like this implement this interface to give a version of themselves that looks the
+ * same on the smaller copy.
+ * Operations that do not depend on the image size, such as colour adjustments, need not implement
+ * it.
+ * </p>
+ * 
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ * 
+ * @version 1.0
+ */
+public interface ScalableOperation extends ImageOperation {
+
+    /**
+     * Get an equivalent operation for an image scaled by a given factor.
+     * 
+     * @param factor The scale of the image the operation will be applied to, relative to the
+     *               image this operation was made for. For example 0.5 for a half-size copy.
+     * @return An operation that has about the same effect on the scaled image.
+     */
+    public ImageOperation scaled(double factor);
+}
@@ -2,6 +2,9 @@ package cosc202.andie;
 
 import java.awt.Graphics2D;
 import java.awt.image.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * <p>
@@ -22,7 +25,9 @@ import java.awt.image.*;
  * @author Eszter Scerlett-Herbert, highly adapted from the Mean filter by Steven Mills
  * @version 1.0
  */
-public class SharpenFilter implements ImageOperation, java.io.Serializable {
+public class SharpenFilter implements ImageOperation, EncodableOperation, java.io.Serializable {
+
+    private static final long serialVersionUID = -490798897434023036L;
     
     boolean rescaled = true; // boolean value to determine whether the image should be rescaled or not in the range {0,255}  
 
@@ -160,6 +165,28 @@ public class SharpenFilter implements ImageOperation, java.io.Serializable {
          */
         return output.getSubimage(borderSize, borderSize, input.getWidth(), input.getHeight());
     }
-    
 
+    /**
+     * Write the settings of this operation to an <code>.ops</code> file.
+     *
+     * Writes whether the result is rescaled.
+     *
+     * @param out Where to write the settings.
+     * @throws IOException If the settings cannot be written.
+     */
+    public void encode(DataOutput out) throws IOException {
+        out.writeBoolean(rescaled);
+    }
+
+    /**
+     * Rebuild an operation from the settings written by {@link #encode}.
+     *
+     * @param in      The settings.
+     * @param version The version of the <code>.ops</code> file.
+     * @return The operation.
+     * @throws IOException If the settings cannot be read.
+     */
+    static SharpenFilter decode(DataInput in, int version) throws IOException {
+        return new SharpenFilter(in.readBoolean());
+    }
 }
@@ -0,0 +1,345 @@
+package cosc202.andie;
+
+import java.awt.Rectangle;
+import java.awt.image.*;
+import java.util.*;
+
+/**
+ * <p>
+ * A memory-bounded store of intermediate images for an {@link EditableImage}.
+ * </p>
+ *
+ * <p>
+ * Each snapshot is the result of applying the first <code>depth</code>
+ * operations of the operation stack to the original image.
+ * When the image needs to be rebuilt (for example after an undo) the
+ * EditableImage restores the deepest snapshot that is not past the target
+ * depth and only replays the operations after it, rather than replaying the
+ * whole stack from the original.
+ * </p>
+ *
+ * <p>
+ * Snapshots are kept as {@link TiledRaster}s, so a snapshot of the current image shares its
+ * tiles rather than copying them, and so does the image restored from it.
+ * Only tiles that are written to afterwards are copied, by whichever side writes first.
+ * </p>
+ *
+ * <p>
+ * The total size of the stored images is kept under a memory budget, counting tiles that are
+ * shared between snapshots once.
+ * When a new snapshot would go over the budget the least recently used
+ * snapshots are evicted first.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA
+ * 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public class SnapshotCache {
+
+    /** The fraction of the maximum heap used as the default memory budget. */
+    private static final int DEFAULT_BUDGET_DIVISOR = 4;
+
+    /** The snapshots, keyed by stack depth, in least recently used order. */
+    private LinkedHashMap<Integer, TiledRaster> snapshots;
+    /** The maximum number of bytes the snapshots may hold. */
+    private long budget;
+    /** The number of bytes currently held by the snapshots. */
+    private long bytesHeld;
+    /** The number of snapshots using each tile, so that shared tiles are counted once. */
+    private final Map<Object, Integer> tileUses = new IdentityHashMap<Object, Integer>();
+
+    /**
+     * <p>
+     * Create a new SnapshotCache with the default memory budget.
+     * </p>
+     *
+     * <p>
+     * By default the cache may use a quarter of the maximum heap size.
+     * </p>
+     */
+    public SnapshotCache() {
+        this(Runtime.getRuntime().maxMemory() / DEFAULT_BUDGET_DIVISOR);
+    }
+
+    /**
+     * <p>
+     * Create a new SnapshotCache with the given memory budget.
+     * </p>
+     *
+     * @param budget The maximum number of bytes the snapshots may hold.
+     */
+    public SnapshotCache(long budget) {
+        this.snapshots = new LinkedHashMap<Integer, TiledRaster>(16, 0.75f, true);
+        this.budget = budget;
+        this.bytesHeld = 0;
+    }
+
+    /**
+     * <p>
+     * Store a copy of an image as the snapshot for a stack depth.
+     * </p>
+     *
+     * <p>
+     * The image is copied, so later in-place operations on it do not change the
+     * snapshot.
+     * Images larger than the whole budget are not stored.
+     * </p>
+     *
+     * @param depth The number of operations applied to produce the image.
+     * @param image The image to store.
+     */
+    public synchronized void put(int depth, BufferedImage image) {
+        if (depth <= 0 || sizeOf(image) > budget) {
+            return;
+        }
+        store(depth, TiledRaster.of(image));
+    }
+
+    /**
+     * <p>
+     * Store an image as the snapshot for a stack depth, sharing its tiles.
+     * </p>
+     *
+     * <p>
+     * Only a reference to each tile is copied, and the tiles are copied later by whichever of the
+     * image and the snapshot writes to them first, so later changes to the image do not change the
+     * snapshot.
+     * Images larger than the whole budget are not stored.
+     * </p>
+     *
+     * @param depth The number of operations applied to produce the image.
+     * @param image The image to store, which is not changed.
+     */
+    public synchronized void put(int depth, TiledRaster image) {
+        if (depth <= 0 || image.countBytes(newCounted()) > budget) {
+            return;
+        }
+        store(depth, image.copy());
+    }
+
+    /**
+     * Store a snapshot, evicting the least recently used snapshots until the total fits.
+     *
+     * @param depth    The depth of the snapshot.
+     * @param snapshot The snapshot, which the cache takes over.
+     */
+    private void store(int depth, TiledRaster snapshot) {
+        remove(depth);
+        snapshots.put(depth, snapshot);
+        bytesHeld += snapshot.addUses(tileUses);
+        Iterator<Map.Entry<Integer, TiledRaster>> it = snapshots.entrySet().iterator();
+        while (bytesHeld > budget && it.hasNext()) {
+            Map.Entry<Integer, TiledRaster> entry = it.next();
+            if (entry.getKey() != depth) {
+                discard(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Find the deepest snapshot at or above a given depth.
+     * </p>
+     *
+     * @param depth The depth of the state that is wanted.
+     * @return The depth of the nearest usable snapshot, or 0 if there is none.
+     */
+    public synchronized int nearest(int depth) {
+        int best = 0;
+        for (int key : snapshots.keySet()) {
+            if (key <= depth && key > best) {
+                best = key;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * <p>
+     * Check if there is a snapshot for a stack depth.
+     * </p>
+     *
+     * @param depth The depth to check.
+     * @return True if a snapshot is stored for that depth, false otherwise.
+     */
+    public synchronized boolean contains(int depth) {
+        return snapshots.containsKey(depth);
+    }
+
+    /**
+     * <p>
+     * Get a copy of the snapshot for a stack depth.
+     * </p>
+     *
+     * <p>
+     * The copy may be freely modified by the operations replayed on top of it.
+     * </p>
+     *
+     * @param depth The depth of the snapshot.
+     * @return A copy of the snapshot, or null if there is no snapshot at that depth.
+     */
+    public synchronized BufferedImage restore(int depth) {
+        TiledRaster snapshot = snapshots.get(depth);
+        if (snapshot == null) {
+            return null;
+        }
+        return snapshot.copy().detach();
+    }
+
+    /**
+     * <p>
+     * Get a copy of the snapshot for a stack depth that shares its tiles.
+     * </p>
+     *
+     * <p>
+     * The copy may be freely modified, and only the tiles that are written to are copied.
+     * </p>
+     *
+     * @param depth The depth of the snapshot.
+     * @return A copy of the snapshot, or null if there is no snapshot at that depth.
+     */
+    public synchronized TiledRaster restoreTiles(int depth) {
+        TiledRaster snapshot = snapshots.get(depth);
+        if (snapshot == null) {
+            return null;
+        }
+        return snapshot.copy();
+    }
+
+    /**
+     * Get a copy of part of the snapshot for a stack depth.
+     *
+     * @param depth The stack depth.
+     * @param area  The part of the snapshot to copy, which must lie within it.
+     * @return A copy of the area, with its top left pixel at (0, 0), or null if there is no
+     *         snapshot at that depth.
+     */
+    public synchronized BufferedImage restoreArea(int depth, Rectangle area) {
+        TiledRaster snapshot = snapshots.get(depth);
+        if (snapshot == null) {
+            return null;
+        }
+        return snapshot.copyArea(area);
+    }
+
+    /**
+     * <p>
+     * Remove all snapshots deeper than a given depth.
+     * </p>
+     *
+     * <p>
+     * This is needed when the operations above that depth are replaced, since
+     * the snapshots no longer describe the stack.
+     * </p>
+     *
+     * @param depth The deepest depth to keep.
+     */
+    public synchronized void invalidateAbove(int depth) {
+        Iterator<Map.Entry<Integer, TiledRaster>> it = snapshots.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, TiledRaster> entry = it.next();
+            if (entry.getKey() > depth) {
+                discard(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Remove every snapshot.
+     * </p>
+     */
+    public synchronized void clear() {
+        for (TiledRaster snapshot : snapshots.values()) {
+            snapshot.release();
+        }
+        snapshots.clear();
+        tileUses.clear();
+        bytesHeld = 0;
+    }
+
+    /**
+     * <p>
+     * Get the number of stored snapshots.
+     * </p>
+     *
+     * @return The number of snapshots.
+     */
+    public synchronized int size() {
+        return snapshots.size();
+    }
+
+    /**
+     * <p>
+     * Get the number of bytes held by the stored snapshots.
+     * </p>
+     *
+     * @return The bytes held.
+     */
+    public synchronized long getBytesHeld() {
+        return bytesHeld;
+    }
+
+    /**
+     * <p>
+     * Get the memory budget of this cache.
+     * </p>
+     *
+     * @return The maximum number of bytes the snapshots may hold.
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Remove the snapshot at a depth, if there is one.
+     *
+     * @param depth The depth of the snapshot to remove.
+     */
+    private void remove(int depth) {
+        TiledRaster old = snapshots.remove(depth);
+        if (old != null) {
+            discard(old);
+        }
+    }
+
+    /**
+     * Give up a snapshot that has been or is being taken out of the cache, taking away the bytes
+     * of the tiles no other snapshot shares.
+     *
+     * @param snapshot The snapshot to give up.
+     */
+    private void discard(TiledRaster snapshot) {
+        bytesHeld -= snapshot.removeUses(tileUses);
+        snapshot.release();
+    }
+
+    /**
+     * Make an empty set of tiles to count, compared by identity.
+     *
+     * @return The set.
+     */
+    private static Set<Object> newCounted() {
+        return Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+    }
+
+    /**
+     * <p>
+     * Estimate the number of bytes used by the pixel data of an image.
+     * </p>
+     *
+     * @param image The image to measure.
+     * @return The size of the image's data buffer in bytes.
+     */
+    public static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        long elementBytes = DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+        return (long) buffer.getSize() * buffer.getNumBanks() * elementBytes;
+    }
+}
@@ -1,7 +1,9 @@
 package cosc202.andie;
 
-import java.awt.Color;
 import java.awt.image.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * ImageOperation to apply a Sobel filter.
@@ -22,7 +24,9 @@ import java.awt.image.*;
  * @author Hannah Srzich
  * @version 1.0
  */
-public class SobelFilter implements ImageOperation, java.io.Serializable {  
+public class SobelFilter implements TileableOperation, EncodableOperation, java.io.Serializable {
+
+    private static final long serialVersionUID = 7698537437216464753L;  
 
     private int[][] kernelH = {{-1/2, 0, 1/2}, {-1, 0, 1}, {-1/2, 0, 1/2}}; // Horizontal kernel
     private int[][] kernelV = {{-1/2, -1, -1/2}, {0, 0, 0}, {1/2, 1, 1/2}}; // Vertical kernel
@@ -47,6 +51,17 @@ public class SobelFilter implements ImageOperation, java.io.Serializable {
         }
     }
 
+    /**
+     * Get the footprint of this operation.
+     * 
+     * The Sobel kernel is 3x3, so each pixel reads its immediate neighbours.
+     * 
+     * @return The footprint of the operation.
+     */
+    public Footprint getFootprint() {
+        return Footprint.neighbourhood(1);
+    }
+
     /**
      * Applies the Sobel filter to the given image.
      *
@@ -54,12 +69,11 @@ public class SobelFilter implements ImageOperation, java.io.Serializable {
      * @return The filtered output image.
      */
     public BufferedImage apply(BufferedImage image) {
-      // Extend the image by 3 pixels on each size
-      image = ImageEdgeExtension.extendImage(image);
-
       int width = image.getWidth();
       int height = image.getHeight();
       BufferedImage newImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      int[] pixels = ImagePixels.read(image);
+      int[] result = ImagePixels.data(newImage);
   
       // Define the Sobel kernel
       int[][] kernel = this.kernel;
@@ -71,37 +85,51 @@ public class SobelFilter implements ImageOperation, java.io.Serializable {
           int sumG = 0;
           int sumB = 0;
   
-          // Apply the kernel to the neighboring pixels
+          // Apply the kernel to the neighbouring pixels, using the closest edge pixel outside the image
           for (int i = 0; i < 3; i++) {
+            int dy = Math.min(Math.max(y + i - 1, 0), height - 1);
             for (int j = 0; j < 3; j++) {
-              int dx = x + j - 1;
-              int dy = y + i - 1;
-  
-              if (dx < 0 || dx >= width || dy < 0 || dy >= height) {
-                continue;
-              }
-  
-              Color c = new Color(image.getRGB(dx, dy));
-              sumR += c.getRed() * kernel[i][j];
-              sumG += c.getGreen() * kernel[i][j];
-              sumB += c.getBlue() * kernel[i][j];
+              int dx = Math.min(Math.max(x + j - 1, 0), width - 1);
+              int rgb = pixels[dy * width + dx];
+              sumR += ((rgb >> 16) & 0xFF) * kernel[i][j];
+              sumG += ((rgb >> 8) & 0xFF) * kernel[i][j];
+              sumB += (rgb & 0xFF) * kernel[i][j];
             }
           }
   
-          // Calculate the new pixel color values to account for negatives
+          // Calculate the new pixel colour values to deal with negatives
           int newR = Math.min(Math.max(sumR + 128, 0), 255);
           int newG = Math.min(Math.max(sumG + 128, 0), 255);
           int newB = Math.min(Math.max(sumB + 128, 0), 255);
   
-          // Set the new pixel color values
-          Color newColor = new Color(newR, newG, newB);
-          newImage.setRGB(x, y, newColor.getRGB());
+          // Set the new pixel colour values
+          result[y * width + x] = (newR << 16) | (newG << 8) | newB;
         }
       }
-      // crop the image back to origional size
-      newImage = ImageEdgeExtension.cropImage(newImage);
-
       return newImage;
     }
 
-}
\ No newline at end of file
+    /**
+     * Write the settings of this operation to an <code>.ops</code> file.
+     *
+     * Writes the Sobel type as a byte: 1 for horizontal, 2 for vertical.
+     *
+     * @param out Where to write the settings.
+     * @throws IOException If the settings cannot be written.
+     */
+    public void encode(DataOutput out) throws IOException {
+        out.writeByte(kernel == kernelH ? 1 : 2);
+    }
+
+    /**
+     * Rebuild an operation from the settings written by {@link #encode}.
+     *
+     * @param in      The settings.
+     * @param version The version of the <code>.ops</code> file.
+     * @return The operation.
+     * @throws IOException If the settings cannot be read.
+     */
+    static SobelFilter decode(DataInput in, int version) throws IOException {
+        return new SobelFilter(in.readUnsignedByte());
+    }
+}
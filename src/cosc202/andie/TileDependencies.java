@@ -0,0 +1,176 @@
+package cosc202.andie;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * Works out which parts of an image are affected when an operation in its history changes, and
+ * recomputes just those parts.
+ * </p>
+ *
+ * <p>
+ * An operation is <em>local</em> if each output pixel only depends on the input pixels near it:
+ * a {@link TileableOperation} reads within the halo of its {@link Footprint}, and a
+ * {@link RegionOperation} only reads the pixel it writes.
+ * If every operation after a change is local, the change can only spread as far as their halos
+ * added together, so the rest of the image is kept as it is and only the tiles the change reaches
+ * are recomputed.
+ * </p>
+ *
+ * <p>
+ * Each affected area is recomputed as a {@link PendingRender} renders a tile: it is copied out of
+ * an earlier image in the history with a halo wide enough for all of the operations after it, and
+ * the operations are applied to the copy in turn, each one spoiling only the outer edge of it.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class TileDependencies {
+
+    /**
+     * This class only has static methods.
+     */
+    private TileDependencies() {
+    }
+
+    /**
+     * <p>
+     * Get how far an operation spreads a change in its input.
+     * </p>
+     *
+     * @param op The operation.
+     * @return The width of its halo in pixels, or -1 if it is not local, so a change anywhere in
+     *         its input may change any pixel of its result.
+     */
+    public static int getHalo(ImageOperation op) {
+        if (op instanceof RegionOperation) {
+            return 0;
+        }
+        if (op instanceof TileableOperation) {
+            Footprint footprint = ((TileableOperation) op).getFootprint();
+            if (footprint.isTileable()) {
+                return footprint.getHalo();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * <p>
+     * Check if every operation in a range is local.
+     * </p>
+     *
+     * @param ops  The operations.
+     * @param from The first operation to check.
+     * @param to   One past the last operation to check.
+     * @return True if each of the operations has a halo.
+     */
+    public static boolean isLocal(List<? extends ImageOperation> ops, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (getHalo(ops.get(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * <p>
+     * Work out where the result of a range of operations may change, given where their input
+     * changed.
+     * </p>
+     *
+     * @param ops    The operations.
+     * @param from   The first operation after the change.
+     * @param to     One past the last operation.
+     * @param area   The area of the input that changed.
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @return The area of the result that may change, or null if any of the operations is not local.
+     */
+    public static Rectangle spread(List<? extends ImageOperation> ops, int from, int to, Rectangle area, int width,
+            int height) {
+        Rectangle bounds = new Rectangle(0, 0, width, height);
+        area = area.intersection(bounds);
+        for (int i = from; i < to && !area.isEmpty(); i++) {
+            int halo = getHalo(ops.get(i));
+            if (halo < 0) {
+                return null;
+            }
+            area = new Rectangle(area.x - halo, area.y - halo, area.width + 2 * halo, area.height + 2 * halo)
+                    .intersection(bounds);
+        }
+        return area;
+    }
+
+    /**
+     * <p>
+     * Split an area into the parts that fall in each tile of the image.
+     * </p>
+     *
+     * @param area   The area, which must lie within the image.
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @return The non-empty parts of the area in each {@link TileEngine#TILE_SIZE} tile, in rows.
+     */
+    public static List<Rectangle> tilesOver(Rectangle area, int width, int height) {
+        List<Rectangle> parts = new ArrayList<Rectangle>();
+        if (area.isEmpty()) {
+            return parts;
+        }
+        int size = TileEngine.TILE_SIZE;
+        for (int y = area.y / size * size; y < area.y + area.height; y += size) {
+            for (int x = area.x / size * size; x < area.x + area.width; x += size) {
+                Rectangle tile = new Rectangle(x, y, Math.min(size, width - x), Math.min(size, height - y));
+                parts.add(tile.intersection(area));
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * <p>
+     * Recompute one area of the result of a range of local operations.
+     * </p>
+     *
+     * @param source Gives a copy of part of the image the operations are applied to, with its top
+     *               left pixel at (0, 0).
+     * @param ops    The operations.
+     * @param from   The first operation to apply.
+     * @param to     One past the last operation to apply.
+     * @param area   The area of the result to compute, which must lie within the image.
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @return The area of the result, the same as the same part of the whole image with the
+     *         operations applied.
+     */
+    public static BufferedImage render(Function<Rectangle, BufferedImage> source, List<? extends ImageOperation> ops,
+            int from, int to, Rectangle area, int width, int height) {
+        int halo = 0;
+        for (int i = from; i < to; i++) {
+            halo += getHalo(ops.get(i));
+        }
+        Rectangle region = new Rectangle(area.x - halo, area.y - halo, area.width + 2 * halo, area.height + 2 * halo)
+                .intersection(new Rectangle(0, 0, width, height));
+        BufferedImage result = source.apply(region);
+        for (ImageOperation op : FusedPixelOperation.fuse(ops.subList(from, to))) {
+            if (op instanceof RegionOperation) {
+                result = ((RegionOperation) op).applyArea(result, region.x, region.y);
+            } else {
+                result = ((TileableOperation) op).applyTile(result, region.x, region.y);
+            }
+            if (result.getWidth() != region.width || result.getHeight() != region.height) {
+                throw new IllegalStateException(op.getClass().getSimpleName() + " changed the size of an area from "
+                        + region.width + "x" + region.height + " to " + result.getWidth() + "x" + result.getHeight());
+            }
+        }
+        return result.getSubimage(area.x - region.x, area.y - region.y, area.width, area.height);
+    }
+}
@@ -0,0 +1,453 @@
+package cosc202.andie;
+
+import java.awt.Rectangle;
+import java.awt.image.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Applies {@link ImageOperation}s to images in parallel, one tile at a time.
+ * </p>
+ *
+ * <p>
+ * Operations that implement {@link TileableOperation} are split into square tiles, which are
+ * processed concurrently on a shared {@link ForkJoinPool}.
+ * Each tile is copied out of the input along with a halo as wide as the radius of the operation's
+ * {@link Footprint}, so that pixels near the edge of a tile see the same neighbours as they would
+ * if the whole image was processed at once.
+ * The halo is then discarded and the centre of each processed tile is copied into the output image.
+ * </p>
+ *
+ * <p>
+ * Operations with a global footprint, operations that are not tileable, and images too small to
+ * be worth splitting are applied directly with {@link ImageOperation#apply}.
+ * </p>
+ *
+ * <p>
+ * Images kept as a {@link TiledRaster} are processed on its own tiles, so only the tiles an
+ * operation writes to are copied: a {@link RegionOperation} only touches the tiles under its
+ * region, and a per-pixel operation writes each tile in place unless it is shared.
+ * </p>
+ *
+ * <p>
+ * If the thread that called {@link #apply} is interrupted while the tiles are being processed, the
+ * tiles that have not started yet are skipped and a {@link CancellationException} is thrown, so
+ * that work which is no longer wanted, such as a stale preview, stops early.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public class TileEngine {
+
+    /** The default width and height of a tile, in pixels. */
+    public static final int TILE_SIZE = 256;
+
+    /** The pool the tiles are processed on, with one thread per processor. */
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * TileEngine only has static methods, so should not be constructed.
+     */
+    private TileEngine() {
+    }
+
+    /**
+     * <p>
+     * Apply an operation to an image, splitting it into tiles if the operation allows it.
+     * </p>
+     *
+     * @param op    The operation to apply.
+     * @param input The image to apply the operation to.
+     * @return The image resulting from the operation.
+     */
+    public static BufferedImage apply(ImageOperation op, BufferedImage input) {
+        return apply(op, input, TILE_SIZE);
+    }
+
+    /**
+     * <p>
+     * Apply an operation to an image, splitting it into tiles of a given size if the operation
+     * allows it.
+     * </p>
+     *
+     * <p>
+     * Unlike {@link ImageOperation#apply}, a tiled operation never modifies the input image, since
+     * each tile works on its own copy of the pixels.
+     * </p>
+     *
+     * @param op       The operation to apply.
+     * @param input    The image to apply the operation to.
+     * @param tileSize The width and height of the tiles, in pixels.
+     * @return The image resulting from the operation.
+     * @throws CancellationException If the calling thread was interrupted before all of the tiles
+     *                               were done.
+     */
+    public static BufferedImage apply(ImageOperation op, BufferedImage input, int tileSize) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive: " + tileSize);
+        }
+        if (!(op instanceof TileableOperation) || input == null) {
+            return op.apply(input);
+        }
+        TileableOperation tileable = (TileableOperation) op;
+        Footprint footprint = tileable.getFootprint();
+        if (!footprint.isTileable() || (input.getWidth() <= tileSize && input.getHeight() <= tileSize)) {
+            return op.apply(input);
+        }
+
+        List<Rectangle> tiles = new ArrayList<Rectangle>();
+        for (int y = 0; y < input.getHeight(); y += tileSize) {
+            for (int x = 0; x < input.getWidth(); x += tileSize) {
+                tiles.add(new Rectangle(x, y, Math.min(tileSize, input.getWidth() - x),
+                        Math.min(tileSize, input.getHeight() - y)));
+            }
+        }
+
+        // The first tile is done on its own, so the output can use the same colour model as the operation does
+        BufferedImage first = applyTile(tileable, input, tiles.get(0), footprint.getHalo());
+        ColorModel cm = first.getColorModel();
+        BufferedImage output = new BufferedImage(cm, cm.createCompatibleWritableRaster(input.getWidth(), input.getHeight()),
+                cm.isAlphaPremultiplied(), null);
+        copyTile(first, output, tiles.get(0), input, footprint.getHalo());
+
+        Thread caller = Thread.currentThread();
+        TileTask task = new TileTask(tileable, input, output, tiles, footprint.getHalo(), 1, tiles.size(), caller,
+                OperationMetrics.getPoolCounter());
+        if (ForkJoinTask.inForkJoinPool()) {
+            task.invoke();
+        } else {
+            POOL.invoke(task);
+        }
+        if (caller.isInterrupted()) {
+            throw new CancellationException("Tiled " + op.getClass().getSimpleName() + " was interrupted");
+        }
+        return output;
+    }
+
+    /**
+     * <p>
+     * Apply an operation to an image kept in tiles, working on the tiles themselves where the
+     * operation allows it.
+     * </p>
+     *
+     * <p>
+     * A {@link RegionOperation} is drawn with {@link RegionOperation#applyArea} on just the tiles
+     * under its region, and a tileable operation is applied to every tile in parallel, in place if
+     * it has no halo.
+     * Shared tiles are copied before they are written to, so other rasters sharing them, such as
+     * snapshots, are not changed.
+     * Any other operation, or a region operation that misses the image and so may want to say so,
+     * is given the whole image with {@link ImageOperation#apply}.
+     * </p>
+     *
+     * <p>
+     * If the operation throws an exception or is cancelled, some of the tiles of the input may
+     * already have been written, so the input is left part done and must not be used as the image
+     * before the operation; the caller has to rebuild it, as {@link EditableImage} does from its
+     * snapshots.
+     * </p>
+     *
+     * @param op    The operation to apply.
+     * @param input The image to apply the operation to, which is used up: it may become the result,
+     *              or be released.
+     * @return The image resulting from the operation.
+     * @throws CancellationException If the calling thread was interrupted before all of the tiles
+     *                               were done.
+     */
+    public static TiledRaster apply(ImageOperation op, TiledRaster input) {
+        Rectangle bounds = new Rectangle(0, 0, input.getWidth(), input.getHeight());
+        if (op instanceof RegionOperation) {
+            RegionOperation region = (RegionOperation) op;
+            Rectangle area = region.getRegion(bounds.width, bounds.height).intersection(bounds);
+            if (!area.isEmpty()) {
+                for (int row = area.y / TILE_SIZE; row <= (area.y + area.height - 1) / TILE_SIZE; row++) {
+                    for (int column = area.x / TILE_SIZE; column <= (area.x + area.width - 1) / TILE_SIZE; column++) {
+                        Rectangle tile = input.tileBounds(column, row);
+                        input.setTile(column, row, region.applyArea(input.getWritableTile(column, row), tile.x, tile.y));
+                    }
+                }
+                return input;
+            }
+        }
+        if (!(op instanceof TileableOperation) || !((TileableOperation) op).getFootprint().isTileable()) {
+            return TiledRaster.wrap(op.apply(input.detach()));
+        }
+        TileableOperation tileable = (TileableOperation) op;
+        int halo = tileable.getFootprint().getHalo();
+        int columns = input.getColumns();
+        BufferedImage[] results = new BufferedImage[columns * input.getRows()];
+        if (halo == 0) {
+            // claimed up front, so only this thread changes which tiles the raster holds
+            for (int i = 0; i < results.length; i++) {
+                results[i] = input.getWritableTile(i % columns, i / columns);
+            }
+        }
+
+        Thread caller = Thread.currentThread();
+        RasterTask task = new RasterTask(tileable, input, results, halo, 0, results.length, caller,
+                OperationMetrics.getPoolCounter());
+        if (ForkJoinTask.inForkJoinPool()) {
+            task.invoke();
+        } else {
+            POOL.invoke(task);
+        }
+        if (caller.isInterrupted()) {
+            throw new CancellationException("Tiled " + op.getClass().getSimpleName() + " was interrupted");
+        }
+
+        if (!results[0].getColorModel().equals(input.getColorModel())) {
+            // the operation changes the type of image, so none of the tiles can be kept
+            TiledRaster output = TiledRaster.fromTiles(input.getWidth(), input.getHeight(), results);
+            input.release();
+            return output;
+        }
+        for (int i = 0; i < results.length; i++) {
+            input.setTile(i % columns, i / columns, results[i]);
+        }
+        return input;
+    }
+
+    /**
+     * Get the area of the input a tile needs, which is the tile plus its halo, cut off at the edges of
+     * the image.
+     *
+     * @param tile  The tile.
+     * @param input The whole input image.
+     * @param halo  The width of the halo.
+     * @return The area of the input to copy for the tile.
+     */
+    private static Rectangle withHalo(Rectangle tile, BufferedImage input, int halo) {
+        Rectangle area = new Rectangle(tile.x - halo, tile.y - halo, tile.width + 2 * halo, tile.height + 2 * halo);
+        return area.intersection(new Rectangle(0, 0, input.getWidth(), input.getHeight()));
+    }
+
+    /**
+     * Copy a tile and its halo out of the input and apply the operation to it.
+     *
+     * @param op    The operation to apply.
+     * @param input The whole input image.
+     * @param tile  The tile to process.
+     * @param halo  The width of the halo.
+     * @return The processed tile, including its halo.
+     */
+    private static BufferedImage applyTile(TileableOperation op, BufferedImage input, Rectangle tile, int halo) {
+        Rectangle area = withHalo(tile, input, halo);
+        ColorModel cm = input.getColorModel();
+        WritableRaster raster = cm.createCompatibleWritableRaster(area.width, area.height);
+        raster.setRect(-area.x, -area.y, input.getRaster().createChild(area.x, area.y, area.width, area.height,
+                area.x, area.y, null));
+        BufferedImage copy = new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
+        return op.applyTile(copy, area.x, area.y);
+    }
+
+    /**
+     * Copy the centre of a processed tile, without its halo, into the output image.
+     *
+     * @param result The processed tile, including its halo.
+     * @param output The output image.
+     * @param tile   The tile that was processed.
+     * @param input  The whole input image.
+     * @param halo   The width of the halo.
+     */
+    private static void copyTile(BufferedImage result, BufferedImage output, Rectangle tile, BufferedImage input,
+            int halo) {
+        Rectangle area = withHalo(tile, input, halo);
+        if (result.getWidth() != area.width || result.getHeight() != area.height) {
+            throw new IllegalStateException(
+                    "Tiled operation changed the size of a tile from " + area.width + "x" + area.height
+                            + " to " + result.getWidth() + "x" + result.getHeight());
+        }
+        Raster centre = result.getRaster().createChild(tile.x - area.x, tile.y - area.y, tile.width, tile.height,
+                0, 0, null);
+        output.getRaster().setRect(tile.x, tile.y, centre);
+    }
+
+    /**
+     * Add what the current thread has allocated for some tiles to the operation they are for.
+     *
+     * The thread that applies the operation counts what it allocates itself, so tiles it happens
+     * to process are not added again.
+     *
+     * @param allocated The counter for the operation, or null if it is not counted.
+     * @param caller    The thread that applies the operation.
+     * @param before    What the current thread had allocated before the tiles.
+     */
+    private static void charge(AtomicLong allocated, Thread caller, long before) {
+        if (allocated != null && before >= 0 && Thread.currentThread() != caller) {
+            allocated.addAndGet(OperationMetrics.allocatedByThisThread() - before);
+        }
+    }
+
+    /**
+     * <p>
+     * A task that processes a range of the tiles of a {@link TiledRaster}, splitting the range in
+     * half until each task has a single tile.
+     * </p>
+     */
+    private static class RasterTask extends RecursiveAction {
+
+        /** The operation to apply. */
+        private final TileableOperation op;
+        /** The whole input image, which is only read. */
+        private final TiledRaster input;
+        /**
+         * The processed tiles, without their halos, in rows. Without a halo these start as the
+         * input tiles, which are processed in place.
+         */
+        private final BufferedImage[] results;
+        /** The width of the halo around each tile. */
+        private final int halo;
+        /** The first tile in the range. */
+        private final int from;
+        /** One past the last tile in the range. */
+        private final int to;
+        /** The thread waiting for the tiles, which cancels the remaining tiles if it is interrupted. */
+        private final Thread caller;
+        /** What the pool's threads allocate for the tiles is added to this, or null if it is not counted. */
+        private final AtomicLong allocated;
+
+        /**
+         * Create a new task for a range of tiles.
+         *
+         * @param op        The operation to apply.
+         * @param input     The whole input image.
+         * @param results   The processed tiles.
+         * @param halo      The width of the halo around each tile.
+         * @param from      The first tile in the range.
+         * @param to        One past the last tile in the range.
+         * @param caller    The thread waiting for the tiles.
+         * @param allocated The counter of bytes allocated for the operation, or null.
+         */
+        RasterTask(TileableOperation op, TiledRaster input, BufferedImage[] results, int halo, int from, int to,
+                Thread caller, AtomicLong allocated) {
+            this.op = op;
+            this.input = input;
+            this.results = results;
+            this.halo = halo;
+            this.from = from;
+            this.to = to;
+            this.caller = caller;
+            this.allocated = allocated;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                long before = OperationMetrics.allocatedByThisThread();
+                try {
+                    for (int i = from; i < to && !caller.isInterrupted(); i++) {
+                        Rectangle tile = input.tileBounds(i % input.getColumns(), i / input.getColumns());
+                        if (halo == 0) {
+                            results[i] = op.applyTile(results[i], tile.x, tile.y);
+                            checkSize(results[i], tile);
+                        } else {
+                            Rectangle area = new Rectangle(tile.x - halo, tile.y - halo, tile.width + 2 * halo,
+                                    tile.height + 2 * halo).intersection(new Rectangle(0, 0, input.getWidth(), input.getHeight()));
+                            BufferedImage result = op.applyTile(input.copyArea(area), area.x, area.y);
+                            checkSize(result, area);
+                            results[i] = result.getSubimage(tile.x - area.x, tile.y - area.y, tile.width, tile.height);
+                        }
+                    }
+                } finally {
+                    charge(allocated, caller, before);
+                }
+                return;
+            }
+            int middle = (from + to) / 2;
+            invokeAll(new RasterTask(op, input, results, halo, from, middle, caller, allocated),
+                    new RasterTask(op, input, results, halo, middle, to, caller, allocated));
+        }
+
+        /**
+         * Make sure the operation kept the size of a tile.
+         *
+         * @param result The processed tile.
+         * @param area   The area of the image it was made from.
+         */
+        private static void checkSize(BufferedImage result, Rectangle area) {
+            if (result.getWidth() != area.width || result.getHeight() != area.height) {
+                throw new IllegalStateException(
+                        "Tiled operation changed the size of a tile from " + area.width + "x" + area.height
+                                + " to " + result.getWidth() + "x" + result.getHeight());
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * A task that processes a range of tiles, splitting the range in half until each task has a
+     * single tile.
+     * </p>
+     */
+    private static class TileTask extends RecursiveAction {
+
+        /** The operation to apply. */
+        private final TileableOperation op;
+        /** The whole input image. */
+        private final BufferedImage input;
+        /** The output image the processed tiles are copied into. */
+        private final BufferedImage output;
+        /** All of the tiles in the image. */
+        private final List<Rectangle> tiles;
+        /** The width of the halo around each tile. */
+        private final int halo;
+        /** The first tile in the range. */
+        private final int from;
+        /** One past the last tile in the range. */
+        private final int to;
+        /** The thread waiting for the tiles, which cancels the remaining tiles if it is interrupted. */
+        private final Thread caller;
+        /** What the pool's threads allocate for the tiles is added to this, or null if it is not counted. */
+        private final AtomicLong allocated;
+
+        /**
+         * Create a new task for a range of tiles.
+         *
+         * @param op        The operation to apply.
+         * @param input     The whole input image.
+         * @param output    The output image.
+         * @param tiles     All of the tiles in the image.
+         * @param halo      The width of the halo around each tile.
+         * @param from      The first tile in the range.
+         * @param to        One past the last tile in the range.
+         * @param caller    The thread waiting for the tiles.
+         * @param allocated The counter of bytes allocated for the operation, or null.
+         */
+        TileTask(TileableOperation op, BufferedImage input, BufferedImage output, List<Rectangle> tiles, int halo,
+                int from, int to, Thread caller, AtomicLong allocated) {
+            this.op = op;
+            this.input = input;
+            this.output = output;
+            this.tiles = tiles;
+            this.halo = halo;
+            this.from = from;
+            this.to = to;
+            this.caller = caller;
+            this.allocated = allocated;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                long before = OperationMetrics.allocatedByThisThread();
+                try {
+                    for (int i = from; i < to && !caller.isInterrupted(); i++) {
+                        copyTile(applyTile(op, input, tiles.get(i), halo), output, tiles.get(i), input, halo);
+                    }
+                } finally {
+                    charge(allocated, caller, before);
+                }
+                return;
+            }
+            int middle = (from + to) / 2;
+            invokeAll(new TileTask(op, input, output, tiles, halo, from, middle, caller, allocated),
+                    new TileTask(op, input, output, tiles, halo, middle, to, caller, allocated));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package cosc202.andie;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * <p>
+ * Interface for operations that can be applied to an image one tile at a time.
+ * </p>
+ * 
+ * <p>
+ * An operation that implements this interface declares its {@link Footprint}, which tells the
+ * {@link TileEngine} whether it can split the image into tiles, and how wide a halo each tile
+ * needs so that pixels near the tile edge see the same neighbours as they would in the whole image.
+ * </p>
+ * 
+ * <p>
+ * Tiles are processed concurrently, so {@link #apply} and {@link #applyTile} must not modify any
+ * state shared between calls.
+ * </p>
+ * 
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ * 
+ * @version 1.0
+ */
+public interface TileableOperation extends ImageOperation {
+
+    /**
+     * Get the footprint of this operation.
+     * 
+     * @return Which input pixels are read to produce each output pixel.
+     */
+    public Footprint getFootprint();
+
+    /**
+     * Apply the operation to one tile of a larger image.
+     * 
+     * The tile includes its halo. Operations whose result depends on the position of a pixel in the
+     * image, not just its neighbours, should override this method to take the position of the tile
+     * into account. By default the tile is treated as a small image in its own right.
+     * 
+     * @param tile The pixels of the tile and its halo. This is a copy that may be modified.
+     * @param x    The x coordinate of the top left pixel of the tile in the whole image.
+     * @param y    The y coordinate of the top left pixel of the tile in the whole image.
+     * @return The tile resulting from the operation, the same size as the input tile.
+     */
+    public default BufferedImage applyTile(BufferedImage tile, int x, int y) {
+        return apply(tile);
+    }
+}
@@ -0,0 +1,618 @@
+package cosc202.andie;
+
+import java.awt.Rectangle;
+import java.awt.image.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * An image stored as square tiles that can be shared between copies.
+ * </p>
+ *
+ * <p>
+ * {@link EditableImage} keeps its current image and its {@link SnapshotCache snapshots} as
+ * TiledRasters, so taking a snapshot or restoring one only copies a reference to each tile rather
+ * than every pixel.
+ * Each tile counts the rasters that share it, and a tile that is shared is copied the first time
+ * one of them writes to it, so an operation that only changes part of the image, such as drawing a
+ * shape, only duplicates the tiles it touches.
+ * </p>
+ *
+ * <p>
+ * Tiles are {@link #TILE_SIZE} pixels square, apart from those at the right and bottom edges,
+ * laid out on the same grid as the {@link TileEngine} and {@link PendingRender} use.
+ * A raster made by {@link #wrap}ping a {@link BufferedImage} starts with tiles that are views of
+ * that image, so it can be handed back with {@link #toBufferedImage} or {@link #detach} without
+ * copying, as long as none of its tiles have been replaced since.
+ * Otherwise the tiles are copied into a new image when one is needed, for display or for an
+ * operation that has to see the whole image at once.
+ * </p>
+ *
+ * <p>
+ * Once a raster is no longer needed it should be {@link #release}d, so that the rasters it shared
+ * tiles with can write to them without copying.
+ * A raster that is not released is still correct, but the others copy any tile they shared with it
+ * the first time they write to it.
+ * </p>
+ *
+ * <p>
+ * <a href="https://creativecommons.org/licenses/by-nc-sa/4.0/">CC BY-NC-SA 4.0</a>
+ * </p>
+ *
+ * @version 1.0
+ */
+public final class TiledRaster {
+
+    /** The width and height of the tiles, in pixels. */
+    public static final int TILE_SIZE = TileEngine.TILE_SIZE;
+
+    /**
+     * One tile of pixels, with the number of rasters sharing it.
+     */
+    private static final class Tile {
+        /** The pixels of the tile, with its top left pixel at (0, 0). */
+        final WritableRaster raster;
+        /** The number of rasters that hold this tile. */
+        final AtomicInteger refs = new AtomicInteger(1);
+
+        /**
+         * Create a tile held by one raster.
+         *
+         * @param raster The pixels of the tile.
+         */
+        Tile(WritableRaster raster) {
+            this.raster = raster;
+        }
+
+        /**
+         * Work out how much memory the pixels of the tile take.
+         *
+         * @return The number of bytes of pixel data.
+         */
+        long bytes() {
+            SampleModel sm = raster.getSampleModel();
+            long elementBytes = Math.max(1, DataBuffer.getDataTypeSize(sm.getDataType()) / 8);
+            return (long) raster.getWidth() * raster.getHeight() * sm.getNumDataElements() * elementBytes;
+        }
+    }
+
+    /** The colour model of every tile. */
+    private final ColorModel cm;
+    /** The type of image the pixels came from, used when they are put back into one. */
+    private final int type;
+    /** The width of the image in pixels. */
+    private final int width;
+    /** The height of the image in pixels. */
+    private final int height;
+    /** The number of columns of tiles. */
+    private final int columns;
+    /** The number of rows of tiles. */
+    private final int rows;
+    /** The tiles, in rows. */
+    private final Tile[] tiles;
+    /** The image every tile is a view of, or null if any of them is separate. */
+    private BufferedImage whole;
+    /** Whether the tiles have been given up. */
+    private boolean released;
+
+    /**
+     * Create a raster with no tiles yet.
+     *
+     * @param cm     The colour model of the tiles.
+     * @param type   The type of image the pixels come from.
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     */
+    private TiledRaster(ColorModel cm, int type, int width, int height) {
+        this.cm = cm;
+        this.type = type;
+        this.width = width;
+        this.height = height;
+        this.columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        this.rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        this.tiles = new Tile[columns * rows];
+    }
+
+    /**
+     * <p>
+     * Make a raster whose tiles are views of an image, without copying any pixels.
+     * </p>
+     *
+     * <p>
+     * The raster takes over the image: writing to an unshared tile writes to the image, and the
+     * image may be handed back by {@link #detach}.
+     * The caller must not change the image afterwards, and should only keep reading it if the
+     * raster is never written to.
+     * </p>
+     *
+     * @param image The image.
+     * @return A raster with the same pixels.
+     */
+    public static TiledRaster wrap(BufferedImage image) {
+        TiledRaster raster = new TiledRaster(image.getColorModel(), image.getType(), image.getWidth(), image.getHeight());
+        WritableRaster pixels = image.getRaster();
+        for (int row = 0; row < raster.rows; row++) {
+            for (int column = 0; column < raster.columns; column++) {
+                Rectangle bounds = raster.tileBounds(column, row);
+                raster.tiles[row * raster.columns + column] = new Tile(pixels.createWritableChild(bounds.x, bounds.y,
+                        bounds.width, bounds.height, 0, 0, null));
+            }
+        }
+        raster.whole = image;
+        return raster;
+    }
+
+    /**
+     * <p>
+     * Make a raster with a copy of the pixels of an image.
+     * </p>
+     *
+     * @param image The image, which is not changed or kept.
+     * @return A raster with the same pixels.
+     */
+    public static TiledRaster of(BufferedImage image) {
+        ColorModel cm = image.getColorModel();
+        return wrap(new BufferedImage(cm, image.copyData(null), cm.isAlphaPremultiplied(), null));
+    }
+
+    /**
+     * <p>
+     * Make a raster from separate tiles.
+     * </p>
+     *
+     * <p>
+     * The tiles are taken over, and any whose colour model is not the same as the first tile's
+     * are converted to it.
+     * </p>
+     *
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @param images The tiles, in rows, each the size given by {@link #tileBounds}.
+     * @return A raster of the tiles.
+     */
+    public static TiledRaster fromTiles(int width, int height, BufferedImage[] images) {
+        TiledRaster raster = new TiledRaster(images[0].getColorModel(), images[0].getType(), width, height);
+        if (images.length != raster.tiles.length) {
+            throw new IllegalArgumentException("Expected " + raster.tiles.length + " tiles but got " + images.length);
+        }
+        for (int i = 0; i < images.length; i++) {
+            raster.tiles[i] = new Tile(raster.compatible(images[i]).getRaster());
+        }
+        return raster;
+    }
+
+    /**
+     * <p>
+     * Make a copy of this raster that shares all of its tiles.
+     * </p>
+     *
+     * <p>
+     * This takes time in proportion to the number of tiles, not pixels.
+     * </p>
+     *
+     * @return A raster with the same pixels, which is not changed by writes to this one, or this
+     *         one by writes to it.
+     */
+    public synchronized TiledRaster copy() {
+        checkHeld();
+        TiledRaster copy = new TiledRaster(cm, type, width, height);
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i].refs.incrementAndGet();
+            copy.tiles[i] = tiles[i];
+        }
+        copy.whole = whole;
+        return copy;
+    }
+
+    /**
+     * <p>
+     * Give up the tiles of this raster, because it is no longer needed.
+     * </p>
+     *
+     * <p>
+     * The raster must not be used afterwards.
+     * Releasing a raster more than once has no effect.
+     * </p>
+     */
+    public synchronized void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        for (Tile tile : tiles) {
+            tile.refs.decrementAndGet();
+        }
+        whole = null;
+    }
+
+    /**
+     * Get the width of the image.
+     *
+     * @return The width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Get the height of the image.
+     *
+     * @return The height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get the type of image the pixels came from.
+     *
+     * @return One of the <code>BufferedImage.TYPE_*</code> constants.
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Get the colour model of the pixels.
+     *
+     * @return The colour model of every tile.
+     */
+    public ColorModel getColorModel() {
+        return cm;
+    }
+
+    /**
+     * Get the number of columns of tiles.
+     *
+     * @return The number of tiles across the image.
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Get the number of rows of tiles.
+     *
+     * @return The number of tiles down the image.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * <p>
+     * Get the area of the image covered by a tile.
+     * </p>
+     *
+     * @param column The column of the tile.
+     * @param row    The row of the tile.
+     * @return The area of the tile, cut off at the edges of the image.
+     */
+    public Rectangle tileBounds(int column, int row) {
+        int x = column * TILE_SIZE;
+        int y = row * TILE_SIZE;
+        return new Rectangle(x, y, Math.min(TILE_SIZE, width - x), Math.min(TILE_SIZE, height - y));
+    }
+
+    /**
+     * <p>
+     * Get a tile for reading.
+     * </p>
+     *
+     * @param column The column of the tile.
+     * @param row    The row of the tile.
+     * @return The pixels of the tile, which must not be changed.
+     */
+    public synchronized BufferedImage getTile(int column, int row) {
+        checkHeld();
+        return image(tiles[row * columns + column].raster);
+    }
+
+    /**
+     * <p>
+     * Get a tile for writing, copying it first if it is shared.
+     * </p>
+     *
+     * @param column The column of the tile.
+     * @param row    The row of the tile.
+     * @return The pixels of the tile, which belong to this raster alone and may be changed in place.
+     */
+    public synchronized BufferedImage getWritableTile(int column, int row) {
+        checkHeld();
+        int i = row * columns + column;
+        Tile tile = tiles[i];
+        if (tile.refs.get() > 1) {
+            WritableRaster copy = tile.raster.createCompatibleWritableRaster();
+            copy.setRect(tile.raster);
+            tiles[i] = new Tile(copy);
+            tile.refs.decrementAndGet();
+            whole = null;
+        }
+        return image(tiles[i].raster);
+    }
+
+    /**
+     * <p>
+     * Replace a tile.
+     * </p>
+     *
+     * @param column The column of the tile.
+     * @param row    The row of the tile.
+     * @param image  The new pixels of the tile, which are taken over, the size given by
+     *               {@link #tileBounds}. They are converted if their colour model is not the same
+     *               as the rest of the tiles.
+     */
+    public synchronized void setTile(int column, int row, BufferedImage image) {
+        checkHeld();
+        int i = row * columns + column;
+        Rectangle bounds = tileBounds(column, row);
+        if (image.getWidth() != bounds.width || image.getHeight() != bounds.height) {
+            throw new IllegalArgumentException("Tile (" + column + ", " + row + ") must be " + bounds.width + "x"
+                    + bounds.height + " but is " + image.getWidth() + "x" + image.getHeight());
+        }
+        WritableRaster raster = compatible(image).getRaster();
+        if (raster == tiles[i].raster) {
+            return;
+        }
+        tiles[i].refs.decrementAndGet();
+        tiles[i] = new Tile(raster);
+        whole = null;
+    }
+
+    /**
+     * <p>
+     * Copy pixels into part of the raster, copying any shared tiles they land on first.
+     * </p>
+     *
+     * @param area The pixels to write, with the same colour model as the raster.
+     * @param x    The x coordinate to write the top left pixel at.
+     * @param y    The y coordinate to write the top left pixel at.
+     */
+    public synchronized void write(BufferedImage area, int x, int y) {
+        Rectangle target = new Rectangle(x, y, area.getWidth(), area.getHeight())
+                .intersection(new Rectangle(0, 0, width, height));
+        if (target.isEmpty()) {
+            return;
+        }
+        Raster source = compatible(area).getRaster();
+        for (int row = target.y / TILE_SIZE; row <= (target.y + target.height - 1) / TILE_SIZE; row++) {
+            for (int column = target.x / TILE_SIZE; column <= (target.x + target.width - 1) / TILE_SIZE; column++) {
+                Rectangle bounds = tileBounds(column, row);
+                Rectangle part = bounds.intersection(target);
+                WritableRaster tile = getWritableTile(column, row).getRaster();
+                tile.setRect(-bounds.x, -bounds.y, source.createChild(part.x - x, part.y - y, part.width, part.height,
+                        part.x, part.y, null));
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Copy part of the image out of its tiles.
+     * </p>
+     *
+     * <p>
+     * Several threads may copy areas at once, as long as nothing writes to the raster meanwhile.
+     * </p>
+     *
+     * @param area The part to copy, which must lie within the image.
+     * @return A copy of the area, with its top left pixel at (0, 0), which may be changed freely.
+     */
+    public BufferedImage copyArea(Rectangle area) {
+        checkHeld();
+        BufferedImage copy = blank(area.width, area.height);
+        WritableRaster raster = copy.getRaster();
+        for (int row = area.y / TILE_SIZE; row <= (area.y + area.height - 1) / TILE_SIZE; row++) {
+            for (int column = area.x / TILE_SIZE; column <= (area.x + area.width - 1) / TILE_SIZE; column++) {
+                Rectangle bounds = tileBounds(column, row);
+                Rectangle part = bounds.intersection(area);
+                raster.setRect(-area.x, -area.y, tiles[row * columns + column].raster.createChild(part.x - bounds.x,
+                        part.y - bounds.y, part.width, part.height, part.x, part.y, null));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * <p>
+     * Get the whole image for reading, such as to display or save it.
+     * </p>
+     *
+     * <p>
+     * If the tiles are all views of one image, such as the one they were wrapped from, it is returned
+     * without copying anything.
+     * Otherwise they are copied into a new image, and the tiles are replaced by views of it, so
+     * that it stays up to date as they are written to and does not need to be copied again.
+     * Any tiles that were shared stay with the other rasters, which this one no longer shares them
+     * with.
+     * The image is kept and handed on to any {@link #copy} made afterwards, so writing to it would
+     * change those copies as well.
+     * </p>
+     *
+     * @return An image with the pixels of this raster, which must not be changed.
+     */
+    public synchronized BufferedImage toBufferedImage() {
+        checkHeld();
+        if (whole == null) {
+            // the copy holds the pixels from now on, rather than each change having to copy them again
+            BufferedImage image = copyArea(new Rectangle(0, 0, width, height));
+            WritableRaster pixels = image.getRaster();
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    Rectangle bounds = tileBounds(column, row);
+                    int i = row * columns + column;
+                    tiles[i].refs.decrementAndGet();
+                    tiles[i] = new Tile(pixels.createWritableChild(bounds.x, bounds.y, bounds.width, bounds.height,
+                            0, 0, null));
+                }
+            }
+            whole = image;
+        }
+        return whole;
+    }
+
+    /**
+     * <p>
+     * Give up this raster for an image that may be changed, such as the input of an operation
+     * that works on the whole image at once.
+     * </p>
+     *
+     * <p>
+     * If none of the tiles are shared and they are still views of one image, that image is
+     * returned without copying anything.
+     * Otherwise the tiles are copied into a new image.
+     * Either way the raster is {@link #release}d.
+     * </p>
+     *
+     * @return An image with the pixels of this raster, which belongs to the caller.
+     */
+    public synchronized BufferedImage detach() {
+        checkHeld();
+        BufferedImage image;
+        if (whole != null && isExclusive()) {
+            image = whole;
+        } else {
+            image = copyArea(new Rectangle(0, 0, width, height));
+        }
+        release();
+        return image;
+    }
+
+    /**
+     * <p>
+     * Work out how much memory the tiles take, leaving out any that have already been counted.
+     * </p>
+     *
+     * <p>
+     * This is used to measure a group of rasters that share tiles, counting each tile once.
+     * </p>
+     *
+     * @param counted The tiles already counted, which the tiles of this raster are added to.
+     * @return The number of bytes of pixel data in the tiles that were not already counted.
+     */
+    public synchronized long countBytes(Set<Object> counted) {
+        checkHeld();
+        long bytes = 0;
+        for (Tile tile : tiles) {
+            if (counted.add(tile)) {
+                bytes += tile.bytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * <p>
+     * Add one use of each tile to a count of the rasters using them, and work out how much memory
+     * the tiles that were not used before take.
+     * </p>
+     *
+     * <p>
+     * This keeps the size of a changing group of rasters that share tiles, such as the snapshots
+     * in a {@link SnapshotCache}, without counting the whole group again each time one is added or
+     * removed.
+     * The tiles of this raster must not change until it is taken out again with
+     * {@link #removeUses}.
+     * </p>
+     *
+     * @param uses The number of rasters in the group using each tile, which is added to.
+     * @return The number of bytes of pixel data in the tiles that were not already used.
+     */
+    public synchronized long addUses(Map<Object, Integer> uses) {
+        checkHeld();
+        long bytes = 0;
+        for (Tile tile : tiles) {
+            if (uses.merge(tile, 1, Integer::sum) == 1) {
+                bytes += tile.bytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * <p>
+     * Take away the uses of the tiles added by {@link #addUses}, and work out how much memory the
+     * tiles that are no longer used take.
+     * </p>
+     *
+     * @param uses The number of rasters in the group using each tile, which is taken away from.
+     * @return The number of bytes of pixel data in the tiles that are no longer used.
+     */
+    public synchronized long removeUses(Map<Object, Integer> uses) {
+        checkHeld();
+        long bytes = 0;
+        for (Tile tile : tiles) {
+            if (uses.merge(tile, -1, Integer::sum) == 0) {
+                uses.remove(tile);
+                bytes += tile.bytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * <p>
+     * Check if this raster has any tiles it shares with another.
+     * </p>
+     *
+     * @return True if every tile belongs to this raster alone.
+     */
+    public synchronized boolean isExclusive() {
+        for (Tile tile : tiles) {
+            if (tile.refs.get() > 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Make sure the raster has not been released.
+     */
+    private void checkHeld() {
+        if (released) {
+            throw new IllegalStateException("Raster has been released");
+        }
+    }
+
+    /**
+     * Make an image of one tile's pixels.
+     *
+     * @param raster The pixels.
+     * @return An image sharing the pixels.
+     */
+    private BufferedImage image(WritableRaster raster) {
+        return new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Make a blank image of the same type as this raster.
+     *
+     * @param w The width of the image.
+     * @param h The height of the image.
+     * @return The new image.
+     */
+    private BufferedImage blank(int w, int h) {
+        if (type != BufferedImage.TYPE_CUSTOM && type != BufferedImage.TYPE_BYTE_INDEXED
+                && type != BufferedImage.TYPE_BYTE_BINARY) {
+            return new BufferedImage(w, h, type);
+        }
+        return new BufferedImage(cm, cm.createCompatibleWritableRaster(w, h), cm.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Convert an image to the colour model of this raster, if it is not already.
+     *
+     * @param image The image.
+     * @return The same image, or a copy of it with the colour model of this raster.
+     */
+    private BufferedImage compatible(BufferedImage image) {
+        if (image.getColorModel().equals(cm)) {
+            return image;
+        }
+        BufferedImage converted = blank(image.getWidth(), image.getHeight());
+        ImagePixels.write(converted, ImagePixels.read(image));
+        return converted;
+    }
+}
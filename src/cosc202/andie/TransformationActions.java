@@ -2,6 +2,7 @@ package cosc202.andie;
 
 import java.util.*;
 import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.awt.event.*;
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
@@ -558,7 +559,18 @@ public class TransformationActions {
                 return;
             }
             // Create and apply the filter
-            target.getImage().apply(new CropImage(ImagePanel.region));
+            Rectangle area = target.toImage(ImagePanel.region);
+            // If the whole region is outside of the image
+            if (isOutsideImage(area)) {
+                // Play error sound, play the audio in a separate thread
+                Thread audioThread = new Thread(() -> Andie.sound.playErrorSound());
+                audioThread.start();
+                JOptionPane.showMessageDialog(null, Andie.bundle.getString("cropRegionErrorMessage")+ "       ", Andie.bundle.getString("cropError"),
+                        JOptionPane.ERROR_MESSAGE, Andie.icon);
+                return;
+            }
+            target.getImage().apply(new CropImage(area));
+            ImagePanel.region = null;
             target.repaint();
             target.getParent().revalidate();
         }
@@ -42,6 +42,8 @@ public class ViewActions {
         actions.add(new ZoomInAction(Andie.bundle.getString("zoomIn"), null, Andie.bundle.getString("zoomInDesc"), Integer.valueOf(KeyEvent.VK_EQUALS)));
         actions.add(new ZoomOutAction(Andie.bundle.getString("zoomOut"), null, Andie.bundle.getString("zoomOutDesc"), Integer.valueOf(KeyEvent.VK_MINUS)));
         actions.add(new ZoomFullAction(Andie.bundle.getString("zoomFull"), null, Andie.bundle.getString("zoomFullDesc"), Integer.valueOf(KeyEvent.VK_PERIOD)));
+        actions.add(new ShowMetricsAction(Andie.bundle.getString("showMetrics"), null, Andie.bundle.getString("showMetricsDesc"), Integer.valueOf(KeyEvent.VK_T)));
+        actions.add(new SaveMetricsAction(Andie.bundle.getString("saveMetrics"), null, Andie.bundle.getString("saveMetricsDesc"), Integer.valueOf(KeyEvent.VK_W)));
     }
 
     /**
@@ -62,7 +64,8 @@ public class ViewActions {
         JMenu viewMenu = new JMenu(Andie.bundle.getString("view"));
 
         for (Action action: actions) {
-            JMenuItem menuItem = new JMenuItem(action);
+            // the timings overlay is switched on and off, so show whether it is on
+            JMenuItem menuItem = action instanceof ShowMetricsAction ? new JCheckBoxMenuItem(action) : new JMenuItem(action);
             menuItem.setMnemonic(((Integer) action.getValue(Action.MNEMONIC_KEY)).intValue());
             menuItem.setAccelerator(KeyStroke.getKeyStroke(((Integer) action.getValue(Action.MNEMONIC_KEY)).intValue(), KeyEvent.CTRL_DOWN_MASK));
             viewMenu.add(menuItem);
@@ -181,8 +184,8 @@ public class ViewActions {
             target.getParent().revalidate();
             /* zoom probaly shouldnt resize window
             // Get new dimension
-            int width = target.getImage().getCurrentImage().getWidth()*(int)(zoom)/100;
-            int height = target.getImage().getCurrentImage().getHeight()*(int)(zoom)/100;
+            int width = target.getImage().getWidth()*(int)(zoom)/100;
+            int height = target.getImage().getHeight()*(int)(zoom)/100;
             Dimension dim = new Dimension(width, height);
             // Make window resize to image size.
             target.getImage().resizeWindow(dim);
@@ -246,8 +249,8 @@ public class ViewActions {
             target.getParent().revalidate();
             /* zoom probaly shouldnt resize window
             //Get new dimension
-            int width = target.getImage().getCurrentImage().getWidth()*(int)(zoom)/100;
-            int height = target.getImage().getCurrentImage().getHeight()*(int)(zoom)/100;
+            int width = target.getImage().getWidth()*(int)(zoom)/100;
+            int height = target.getImage().getHeight()*(int)(zoom)/100;
             Dimension dim = new Dimension(width, height);
             //Make window resize to image size.
             target.getImage().resizeWindow(dim);
@@ -256,6 +259,118 @@ public class ViewActions {
 
     }
 
+    /**
+     * <p>
+     * Action to show or hide the timings of operations over the image.
+     * </p>
+     * 
+     * <p>
+     * The timings come from {@link OperationMetrics}, and list how long each kind of operation has
+     * taken and how much memory it used, so it is easy to see what is making ANDIE slow.
+     * Like the other View actions, this does not affect the image itself.
+     * </p>
+     */
+    public class ShowMetricsAction extends ImageAction {
+
+        /**
+         * <p>
+         * Create a new show-timings action.
+         * </p>
+         * 
+         * @param name The name of the action (ignored if null).
+         * @param icon An icon to use to represent the action (ignored if null).
+         * @param desc A brief description of the action  (ignored if null).
+         * @param mnemonic A mnemonic key to use as a shortcut  (ignored if null).
+         */
+        ShowMetricsAction(String name, ImageIcon icon, String desc, Integer mnemonic) {
+            super(name, icon, desc, mnemonic);
+            putValue(SELECTED_KEY, Boolean.FALSE);
+        }
 
+        /**
+         * <p>
+         * Callback for when the show-timings action is triggered.
+         * </p>
+         * 
+         * <p>
+         * This method is called whenever the ShowMetricsAction is triggered.
+         * It turns the timings overlay on if it is off, and off if it is on.
+         * </p>
+         * 
+         * @param e The event triggering this callback.
+         */
+        public void actionPerformed(ActionEvent e) {
+            boolean shown = !target.isMetricsShown();
+            target.setMetricsShown(shown);
+            putValue(SELECTED_KEY, Boolean.valueOf(shown));
+        }
+
+    }
+
+    /**
+     * <p>
+     * Action to save the timings of operations to a file.
+     * </p>
+     * 
+     * <p>
+     * The file has a line of comma-separated values for each kind of operation, as written by
+     * {@link OperationMetrics#dump}, so it can be opened in a spreadsheet or sent along with a
+     * report that ANDIE is slow.
+     * </p>
+     */
+    public class SaveMetricsAction extends ImageAction {
+
+        /**
+         * <p>
+         * Create a new save-timings action.
+         * </p>
+         * 
+         * @param name The name of the action (ignored if null).
+         * @param icon An icon to use to represent the action (ignored if null).
+         * @param desc A brief description of the action  (ignored if null).
+         * @param mnemonic A mnemonic key to use as a shortcut  (ignored if null).
+         */
+        SaveMetricsAction(String name, ImageIcon icon, String desc, Integer mnemonic) {
+            super(name, icon, desc, mnemonic);
+        }
+
+        /**
+         * <p>
+         * Callback for when the save-timings action is triggered.
+         * </p>
+         * 
+         * <p>
+         * This method is called whenever the SaveMetricsAction is triggered.
+         * It asks for a file and writes the timings to it, adding a .csv extension if there is none.
+         * </p>
+         * 
+         * @param e The event triggering this callback.
+         */
+        public void actionPerformed(ActionEvent e) {
+            Andie.setOptionStyle();
+            JFileChooser fileChooser = new JFileChooser();
+            // custom font
+            Andie.setJChooserFont(fileChooser.getComponents());
+            int result = fileChooser.showSaveDialog(target);
+            if (result != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            java.io.File file = fileChooser.getSelectedFile();
+            if (!file.getName().contains(".")) {
+                file = new java.io.File(file.getPath() + ".csv");
+            }
+            try {
+                OperationMetrics.dump(file);
+            } catch (java.io.IOException ex) {
+                // Play error sound, play the audio in a separate thread
+                Thread audioThread = new Thread(() -> Andie.sound.playErrorSound());
+                audioThread.start();
+                String title = Andie.bundle.getString("saveMetricsError");
+                String message = Andie.bundle.getString("saveMetricsErrorMessage")+ "       ";
+                JOptionPane.showMessageDialog(null, message, title, JOptionPane.ERROR_MESSAGE, Andie.icon);
+            }
+        }
+
+    }
 
 }
@@ -0,0 +1,103 @@
+package test.cosc202.andie;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import javax.imageio.ImageIO;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import cosc202.andie.*;
+
+/**
+ * JUnit tests for the AndieEvents class. Checks that opening, editing, replaying and exporting an
+ * image show up in a flight recording with the fields needed to tell what was slow.
+ */
+public class AndieEventsTest {
+
+    /**
+     * Record the ANDIE events while an image is opened, filtered, undone, redone and exported.
+     */
+    @Test
+    public void testEventsAreRecorded() throws Exception {
+        File file = File.createTempFile("andie", ".png");
+        file.deleteOnExit();
+        ImageIO.write(new BufferedImage(300, 200, BufferedImage.TYPE_INT_ARGB), "png", file);
+        File export = File.createTempFile("andie-export", "");
+        export.deleteOnExit();
+        File exported = new File(export.getPath() + ".png");
+        exported.deleteOnExit();
+
+        List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+        try (Recording recording = new Recording()) {
+            recording.enable("cosc202.andie.Operation");
+            recording.enable("cosc202.andie.Replay");
+            recording.enable("cosc202.andie.File");
+            recording.start();
+
+            EditableImage image = new EditableImage();
+            image.open(file.getPath());
+            image.setLazy(false);
+            image.apply(new GaussianBlurFilter(3));
+            image.undoAll();
+            image.getSnapshots().clear();
+            image.goToStep(1);
+            image.export(export.getPath(), "png");
+
+            recording.stop();
+            Path dump = File.createTempFile("andie", ".jfr").toPath();
+            dump.toFile().deleteOnExit();
+            recording.dump(dump);
+            events.addAll(RecordingFile.readAllEvents(dump));
+        }
+
+        RecordedEvent applied = find(events, "cosc202.andie.Operation", "trigger", "apply");
+        assertEquals("GaussianBlurFilter", applied.getString("operation"));
+        assertTrue(applied.getString("parameters").contains("radius=3"));
+        assertEquals(300, applied.getInt("width"));
+        assertEquals(200, applied.getInt("height"));
+        assertNotNull(find(events, "cosc202.andie.Operation", "trigger", "refresh"));
+
+        RecordedEvent replay = find(events, "cosc202.andie.Replay", null, null);
+        assertEquals(0, replay.getInt("fromDepth"));
+        assertEquals(1, replay.getInt("toDepth"));
+        assertEquals(1, replay.getInt("operations"));
+
+        RecordedEvent opened = find(events, "cosc202.andie.File", "action", "open");
+        assertEquals("png", opened.getString("format"));
+        assertEquals(file.length(), opened.getLong("bytes"));
+        RecordedEvent written = find(events, "cosc202.andie.File", "action", "export");
+        assertEquals(exported.getPath(), written.getString("path"));
+        assertEquals(exported.length(), written.getLong("bytes"));
+    }
+
+    /**
+     * Settings are described from the operation's fields.
+     */
+    @Test
+    public void testDescribe() {
+        assertEquals("ditherLevel=2, lightColor=#ffffffff, darkColor=#ff000000",
+                AndieEvents.describe(new DitherFilter(2, java.awt.Color.WHITE, java.awt.Color.BLACK)));
+        assertTrue(AndieEvents.describe(new FusedPixelOperation(java.util.Arrays.asList(new InvertFilter(),
+                new InvertFilter()))).contains("InvertFilter + InvertFilter"));
+    }
+
+    /**
+     * Find the first event of a type, optionally with a field set to a value.
+     */
+    private static RecordedEvent find(List<RecordedEvent> events, String type, String field, String value) {
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(type)
+                    && (field == null || value.equals(event.getString(field)))) {
+                return event;
+            }
+        }
+        fail("No " + type + " event" + (field == null ? "" : " with " + field + "=" + value));
+        return null;
+    }
+}
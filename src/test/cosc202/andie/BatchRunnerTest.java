@@ -0,0 +1,222 @@
+package test.cosc202.andie;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import javax.imageio.ImageIO;
+
+import cosc202.andie.*;
+
+/**
+ * JUnit tests for the BatchRunner class. Checks that a macro is applied to every matching image,
+ * that bad images are reported without stopping the rest, that the read, process and write stages
+ * keep going with small queues, that drawing and cropping need no panel, and that the command
+ * line is checked.
+ */
+public class BatchRunnerTest {
+
+    /**
+     * Makes a directory of small test images, each a different colour, plus a file that is not an
+     * image.
+     */
+    private static File writeImages(int count) throws IOException {
+        File dir = Files.createTempDirectory("andie-batch").toFile();
+        dir.deleteOnExit();
+        for (int i = 0; i < count; i++) {
+            BufferedImage image = new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    image.setRGB(x, y, 0x102030 * (i + 1));
+                }
+            }
+            File file = new File(dir, "image" + i + ".png");
+            file.deleteOnExit();
+            ImageIO.write(image, "png", file);
+        }
+        File notes = new File(dir, "notes.txt");
+        notes.deleteOnExit();
+        Files.write(notes.toPath(), "not an image".getBytes());
+        return dir;
+    }
+
+    /**
+     * Every image in the directory has the macro applied and is written under the same name.
+     */
+    @Test
+    public void testAppliesMacroToDirectory() throws Exception {
+        File dir = writeImages(5);
+        File out = new File(dir, "out");
+        out.deleteOnExit();
+        List<File> inputs = BatchRunner.findInputs(dir.getPath());
+        assertEquals(5, inputs.size());
+
+        BatchRunner runner = new BatchRunner(Arrays.asList(new InvertFilter(), new InvertFilter(), new InvertFilter()),
+                3, 1 << 20);
+        BatchRunner.Report report = runner.run(inputs, out);
+        assertEquals(5, report.getImages());
+        assertTrue(report.getFailures().isEmpty());
+        assertEquals(5L * 40 * 30, report.getPixels());
+        for (int i = 0; i < 5; i++) {
+            File result = new File(out, "image" + i + ".png");
+            result.deleteOnExit();
+            assertEquals(0xFFFFFFFF - 0x102030 * (i + 1), ImageIO.read(result).getRGB(7, 9));
+        }
+    }
+
+    /**
+     * A glob only picks the files it matches, and a file that cannot be read is reported as a
+     * failure while the others are still done.
+     */
+    @Test
+    public void testGlobAndFailures() throws Exception {
+        File dir = writeImages(3);
+        assertEquals(1, BatchRunner.findInputs(new File(dir, "image1.*").getPath()).size());
+        List<File> inputs = BatchRunner.findInputs(new File(dir, "*").getPath());
+        assertEquals(4, inputs.size());
+
+        File out = new File(dir, "out");
+        out.deleteOnExit();
+        BatchRunner.Report report = new BatchRunner(Arrays.asList(new InvertFilter()), 2, 1 << 20).run(inputs, out);
+        assertEquals(3, report.getImages());
+        assertEquals(Collections.singleton(new File(dir, "notes.txt")), report.getFailures().keySet());
+        assertTrue(report.toString().contains("images/s"));
+    }
+
+    /**
+     * An operation that fails on images wider than a limit, as a filter might on bad input.
+     */
+    private static class FailOnWideOperation implements ImageOperation {
+        public BufferedImage apply(BufferedImage input) {
+            if (input.getWidth() > 40) {
+                throw new IllegalArgumentException("too wide");
+            }
+            return input;
+        }
+    }
+
+    /**
+     * With one thread per stage and room for one image in each queue, every image still makes it
+     * through, and one that fails in the middle stage does not hold up the others.
+     */
+    @Test
+    public void testPipelineWithSmallQueues() throws Exception {
+        File dir = writeImages(6);
+        File wide = new File(dir, "wide.png");
+        wide.deleteOnExit();
+        ImageIO.write(new BufferedImage(50, 10, BufferedImage.TYPE_INT_RGB), "png", wide);
+        File out = new File(dir, "out");
+        out.deleteOnExit();
+
+        BatchRunner runner = new BatchRunner(Arrays.asList(new FailOnWideOperation(), new InvertFilter()), 1, 1, 1, 1,
+                1 << 20);
+        BatchRunner.Report report = runner.run(BatchRunner.findInputs(dir.getPath()), out);
+        assertEquals(6, report.getImages());
+        assertEquals("too wide", report.getFailures().get(wide));
+        assertTrue(report.getStageSeconds(0) > 0);
+        assertTrue(report.getStageSeconds(1) > 0);
+        assertTrue(report.getStageSeconds(2) > 0);
+        for (File result : out.listFiles()) {
+            result.deleteOnExit();
+        }
+        assertEquals(6, out.listFiles().length);
+    }
+
+    /**
+     * Drawings and crops are placed in image coordinates, so a batch run without any panel
+     * draws and crops every image in the same place.
+     */
+    @Test
+    public void testDrawingWithoutPanel() throws Exception {
+        ImagePanel panel = Andie.imagePanel;
+        Andie.imagePanel = null;
+        try {
+            File dir = writeImages(2);
+            File out = new File(dir, "out");
+            out.deleteOnExit();
+            BatchRunner runner = new BatchRunner(Arrays.asList(new DrawSquare(Color.RED, 5, 5, 10, 10),
+                    new CropImage(new Rectangle(2, 3, 20, 15))), 2, 1 << 20);
+            BatchRunner.Report report = runner.run(BatchRunner.findInputs(new File(dir, "*.png").getPath()), out);
+            assertTrue(report.getFailures().isEmpty());
+            for (int i = 0; i < 2; i++) {
+                File result = new File(out, "image" + i + ".png");
+                result.deleteOnExit();
+                BufferedImage image = ImageIO.read(result);
+                assertEquals(20, image.getWidth());
+                assertEquals(15, image.getHeight());
+                assertEquals(Color.RED.getRGB(), image.getRGB(3, 2));
+                assertEquals(0xFF000000 | 0x102030 * (i + 1), image.getRGB(1, 1));
+            }
+        } finally {
+            Andie.imagePanel = panel;
+        }
+    }
+
+    /**
+     * A crop or resize gives an image with transparency, which is still written to JPEG files by
+     * leaving the transparency out.
+     */
+    @Test
+    public void testJpegWithTransparentResult() throws Exception {
+        File dir = Files.createTempDirectory("andie-batch").toFile();
+        dir.deleteOnExit();
+        for (int i = 0; i < 2; i++) {
+            BufferedImage image = new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    image.setRGB(x, y, 0x808080);
+                }
+            }
+            File file = new File(dir, "image" + i + ".jpg");
+            file.deleteOnExit();
+            ImageIO.write(image, "jpg", file);
+        }
+        File out = new File(dir, "out");
+        out.deleteOnExit();
+
+        BatchRunner runner = new BatchRunner(Arrays.asList(new CropImage(new Rectangle(5, 5, 20, 10)),
+                new ResizeImage(200)), 2, 1 << 20);
+        BatchRunner.Report report = runner.run(BatchRunner.findInputs(dir.getPath()), out);
+        assertEquals(2, report.getImages());
+        assertTrue(report.getFailures().toString(), report.getFailures().isEmpty());
+        for (int i = 0; i < 2; i++) {
+            File result = new File(out, "image" + i + ".jpg");
+            result.deleteOnExit();
+            BufferedImage image = ImageIO.read(result);
+            assertEquals(40, image.getWidth());
+            assertEquals(20, image.getHeight());
+            // JPEG is lossy, so the grey only comes back close to what it was
+            assertEquals(0x80, image.getRGB(20, 10) & 0xFF, 4);
+        }
+    }
+
+    /**
+     * The command line needs a macro, an input and an output.
+     */
+    @Test
+    public void testCommandLine() throws Exception {
+        File dir = writeImages(2);
+        File macro = new File(dir, "macro.ops");
+        macro.deleteOnExit();
+        OpsFile.write(Arrays.asList(new InvertFilter()), macro);
+        File out = new File(dir, "out");
+        out.deleteOnExit();
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(printed);
+
+        assertEquals(2, BatchRunner.runFromCommandLine(new String[] { macro.getPath() }, stream, stream));
+        assertEquals(2, BatchRunner.runFromCommandLine(new String[] { "--threads", "x", macro.getPath(),
+                dir.getPath(), out.getPath() }, stream, stream));
+        assertEquals(0, BatchRunner.runFromCommandLine(new String[] { "--threads", "2", "--readers", "1", "--queue",
+                "1", "--memory", "16", macro.getPath(), new File(dir, "*.png").getPath(), out.getPath() }, stream,
+                stream));
+        assertTrue(printed.toString().contains("2 images (0 failed)"));
+        for (File result : out.listFiles()) {
+            result.deleteOnExit();
+        }
+    }
+}
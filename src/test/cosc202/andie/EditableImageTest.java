@@ -0,0 +1,590 @@
+package test.cosc202.andie;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+import cosc202.andie.*;
+
+/**
+ * JUnit tests for jumping around the history of an EditableImage. Checks that undoing everything
+ * and jumping to a step rebuild the image with at most one replay, and that the redo stack still works.
+ * Also checks that lazy mode renders parts of the image exactly as if the operations were applied to
+ * all of it, that saved operations are restored when the image is opened again, that drawing
+ * is undone and redone without applying it again, and that changing an operation in the history
+ * only recomputes what it affects.
+ */
+public class EditableImageTest {
+
+    /**
+     * An operation that counts how often it is applied, and adds one to the blue channel of the first pixel.
+     */
+    private static class CountingOperation implements ImageOperation {
+        int count = 0;
+
+        public BufferedImage apply(BufferedImage input) {
+            count++;
+            input.setRGB(0, 0, input.getRGB(0, 0) + 1);
+            return input;
+        }
+    }
+
+    /**
+     * An operation that fills a small square, counting how often it is drawn on a tile or image, and
+     * how often on a whole image.
+     */
+    private static class SquareOperation implements RegionOperation {
+        final Rectangle square;
+        final int colour;
+        int count = 0;
+        int wholeImages = 0;
+
+        SquareOperation(int x, int y, int colour) {
+            this.square = new Rectangle(x, y, 10, 10);
+            this.colour = colour;
+        }
+
+        public Rectangle getRegion(int width, int height) {
+            return square;
+        }
+
+        public BufferedImage apply(BufferedImage input) {
+            wholeImages++;
+            return applyArea(input, 0, 0);
+        }
+
+        public BufferedImage applyArea(BufferedImage input, int x0, int y0) {
+            count++;
+            Rectangle area = square.intersection(new Rectangle(x0, y0, input.getWidth(), input.getHeight()));
+            for (int y = area.y; y < area.y + area.height; y++) {
+                for (int x = area.x; x < area.x + area.width; x++) {
+                    input.setRGB(x - x0, y - y0, colour);
+                }
+            }
+            return input;
+        }
+    }
+
+    /**
+     * A per-pixel operation that flips some bits of every pixel, counting how many pixels it processes.
+     */
+    private static class PixelCountingOperation implements TileableOperation {
+        long pixels = 0;
+
+        public Footprint getFootprint() {
+            return Footprint.perPixel();
+        }
+
+        public BufferedImage apply(BufferedImage input) {
+            pixels += (long) input.getWidth() * input.getHeight();
+            for (int y = 0; y < input.getHeight(); y++) {
+                for (int x = 0; x < input.getWidth(); x++) {
+                    input.setRGB(x, y, input.getRGB(x, y) ^ 0x00305070);
+                }
+            }
+            return input;
+        }
+    }
+
+    /**
+     * A per-pixel operation that changes every tile in place, and then fails once all of them are done.
+     */
+    private static class FailingOperation implements TileableOperation {
+        final int tiles;
+        final java.util.concurrent.atomic.AtomicInteger done = new java.util.concurrent.atomic.AtomicInteger();
+
+        FailingOperation(int tiles) {
+            this.tiles = tiles;
+        }
+
+        public Footprint getFootprint() {
+            return Footprint.perPixel();
+        }
+
+        public BufferedImage apply(BufferedImage input) {
+            for (int y = 0; y < input.getHeight(); y++) {
+                for (int x = 0; x < input.getWidth(); x++) {
+                    input.setRGB(x, y, input.getRGB(x, y) ^ 0x00FFFFFF);
+                }
+            }
+            if (done.incrementAndGet() == tiles) {
+                throw new IllegalStateException("Failed after every tile");
+            }
+            return input;
+        }
+    }
+
+    /**
+     * Opens a small black test image written to a temporary file.
+     *
+     * @return an EditableImage with the test image loaded.
+     * @throws Exception if the image cannot be written or opened.
+     */
+    private EditableImage openTestImage() throws Exception {
+        File file = File.createTempFile("andie", ".png");
+        file.deleteOnExit();
+        ImageIO.write(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB), "png", file);
+        EditableImage image = new EditableImage();
+        image.open(file.getPath());
+        return image;
+    }
+
+    /**
+     * Undoing everything should not replay any operations, and jumping forward should replay
+     * only the operations being redone.
+     */
+    @Test
+    public void testUndoAllReplaysOnce() throws Exception {
+        EditableImage image = openTestImage();
+        CountingOperation op = new CountingOperation();
+        for (int i = 0; i < 5; i++) {
+            image.apply(op);
+        }
+        assertEquals(5, op.count);
+        assertEquals(0xFF000005, image.getCurrentImage().getRGB(0, 0));
+
+        image.undoAll();
+        assertEquals(5, op.count);
+        assertEquals(0, image.getOpsSize());
+        assertEquals(0xFF000000, image.getCurrentImage().getRGB(0, 0));
+
+        image.goToStep(3);
+        assertEquals(8, op.count);
+        assertEquals(3, image.getOpsSize());
+        assertEquals(0xFF000003, image.getCurrentImage().getRGB(0, 0));
+
+        // The remaining operations can still be redone
+        image.redo();
+        image.redo();
+        assertEquals(5, image.getOpsSize());
+        assertEquals(0xFF000005, image.getCurrentImage().getRGB(0, 0));
+    }
+
+    /**
+     * Jumping to a step outside of the history is an error.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testGoToStepOutOfRange() throws Exception {
+        EditableImage image = openTestImage();
+        image.apply(new CountingOperation());
+        image.goToStep(2);
+    }
+
+    /**
+     * Opens a test image of random colours, with a size that does not divide evenly into tiles.
+     *
+     * @return an EditableImage with the test image loaded.
+     * @throws Exception if the image cannot be written or opened.
+     */
+    private EditableImage openRandomImage() throws Exception {
+        EditableImage image = new EditableImage();
+        image.open(writeRandomImage().getPath());
+        return image;
+    }
+
+    /**
+     * Writes a test image of random colours to a temporary file.
+     *
+     * @return the file.
+     * @throws Exception if the image cannot be written.
+     */
+    private File writeRandomImage() throws Exception {
+        Random random = new Random(202);
+        BufferedImage input = new BufferedImage(300, 270, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < input.getHeight(); y++) {
+            for (int x = 0; x < input.getWidth(); x++) {
+                input.setRGB(x, y, random.nextInt());
+            }
+        }
+        File file = File.createTempFile("andie", ".png");
+        file.deleteOnExit();
+        ImageIO.write(input, "png", file);
+        return file;
+    }
+
+    /**
+     * Checks that an area of one image matches the same area of another.
+     */
+    private void assertAreaEquals(BufferedImage expected, BufferedImage actual, Rectangle area) {
+        assertEquals(area.width, actual.getWidth());
+        assertEquals(area.height, actual.getHeight());
+        for (int y = 0; y < area.height; y++) {
+            for (int x = 0; x < area.width; x++) {
+                assertEquals("at (" + (area.x + x) + ", " + (area.y + y) + ")",
+                        expected.getRGB(area.x + x, area.y + y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    /**
+     * Tileable operations wait in lazy mode, and any part of the image rendered from them is the
+     * same as the image computed in full.
+     */
+    @Test
+    public void testLazyRenderMatchesEager() throws Exception {
+        EditableImage eager = openRandomImage();
+        EditableImage lazy = openRandomImage();
+        assertFalse(lazy.isLazy());
+        lazy.setLazy(true);
+        ImageOperation[] ops = { new GaussianBlurFilter(3), new SobelFilter(), new InvertFilter() };
+        for (ImageOperation op : ops) {
+            eager.apply(op);
+            lazy.apply(op);
+        }
+        BufferedImage expected = eager.getCurrentImage();
+
+        PendingRender pending = lazy.getPendingRender();
+        assertNotNull(pending);
+        assertEquals(4, pending.getHalo());
+        for (Rectangle area : new Rectangle[] { new Rectangle(0, 0, 300, 270), new Rectangle(0, 0, 10, 10),
+                new Rectangle(120, 80, 33, 41), new Rectangle(290, 260, 10, 10) }) {
+            assertAreaEquals(expected, pending.render(area), area);
+        }
+        pending.renderTiles(new Rectangle(250, 250, 20, 20));
+        Rectangle tile = pending.tileBounds(1, 1);
+        assertEquals(new Rectangle(256, 256, 44, 14), tile);
+        assertAreaEquals(expected, pending.getTile(1, 1), tile);
+        assertNull(pending.getTile(1, 2));
+
+        // Asking for the whole image computes the operations
+        assertAreaEquals(expected, lazy.getCurrentImage(), new Rectangle(0, 0, 300, 270));
+        assertNull(lazy.getPendingRender());
+        assertTrue(pending.isCancelled());
+    }
+
+    /**
+     * An operation that cannot be tiled computes the pending operations before it, and undoing a
+     * pending operation does not replay anything.
+     */
+    @Test
+    public void testLazyHistory() throws Exception {
+        EditableImage image = openRandomImage();
+        image.setLazy(true);
+        CountingOperation counting = new CountingOperation();
+        image.apply(counting);
+        image.apply(new GaussianBlurFilter(2));
+        assertEquals(1, counting.count);
+        assertNotNull(image.getPendingRender());
+
+        image.undo();
+        assertEquals(1, counting.count);
+        assertNull(image.getPendingRender());
+
+        image.redo();
+        assertNotNull(image.getPendingRender());
+        image.apply(new FlipImage(true));
+        assertNull(image.getPendingRender());
+        assertEquals(3, image.getOpsSize());
+
+        EditableImage eager = openRandomImage();
+        eager.apply(new CountingOperation());
+        eager.apply(new GaussianBlurFilter(2));
+        eager.apply(new FlipImage(true));
+        assertAreaEquals(eager.getCurrentImage(), image.getCurrentImage(), new Rectangle(0, 0, 300, 270));
+    }
+
+    /**
+     * Saves an image with some operations, and opens it again in a new EditableImage.
+     *
+     * @param file        the image file.
+     * @param ops         the operations to apply before saving.
+     * @param deleteRender whether to delete the saved render before opening the image again.
+     * @return the image before saving, and the image opened again.
+     */
+    private EditableImage[] saveAndReopen(File file, ImageOperation[] ops, boolean deleteRender) throws Exception {
+        String path = file.getPath();
+        EditableImage saved = new EditableImage();
+        saved.open(path);
+        for (ImageOperation op : ops) {
+            saved.apply(op);
+        }
+        saved.save();
+        File opsFile = new File(path + ".ops");
+        opsFile.deleteOnExit();
+        RenderCache.fileFor(opsFile).deleteOnExit();
+        assertTrue(RenderCache.fileFor(opsFile).isFile());
+        if (deleteRender) {
+            RenderCache.delete(opsFile);
+        }
+        EditableImage reopened = new EditableImage();
+        reopened.open(path);
+        return new EditableImage[] { saved, reopened };
+    }
+
+    /**
+     * Opening a saved image restores its operations from the saved render, without replaying them.
+     */
+    @Test
+    public void testOpenUsesSavedRender() throws Exception {
+        ImageOperation[] ops = { new GaussianBlurFilter(2), new InvertFilter(), new Brightness(10, 20), new FlipImage(false) };
+        EditableImage[] images = saveAndReopen(writeRandomImage(), ops, false);
+        assertNull(images[1].getRestore());
+        assertEquals(ops.length, images[1].getOpsSize());
+        assertAreaEquals(images[0].getCurrentImage(), images[1].getCurrentImage(), new Rectangle(0, 0, 300, 270));
+
+        // and the history can be undone as usual
+        images[0].undoAll();
+        images[1].undoAll();
+        assertAreaEquals(images[0].getCurrentImage(), images[1].getCurrentImage(), new Rectangle(0, 0, 300, 270));
+    }
+
+    /**
+     * Without a render, the saved operations are replayed in the background, and anything that
+     * needs the image waits for them.
+     */
+    @Test
+    public void testOpenReplaysInBackground() throws Exception {
+        ImageOperation[] ops = { new GaussianBlurFilter(2), new InvertFilter(), new Brightness(10, 20),
+                new RotateImage(true, false) };
+        EditableImage[] images = saveAndReopen(writeRandomImage(), ops, true);
+        assertEquals(ops.length, images[1].getOpsSize());
+        // the image is shown as it was opened until the operations are done
+        if (images[1].getRestore() != null) {
+            assertEquals(300, images[1].getWidth());
+        }
+        images[1].apply(new InvertFilter());
+        images[0].apply(new InvertFilter());
+        assertNull(images[1].getRestore());
+        assertAreaEquals(images[0].getCurrentImage(), images[1].getCurrentImage(), new Rectangle(0, 0, 270, 300));
+    }
+
+    /**
+     * Drawings and crops replayed in the background give the same image as the saved render, however
+     * the panel has moved since, and a shape that misses the image is skipped without a message.
+     */
+    @Test
+    public void testOpenReplaysDrawingsLikeRender() throws Exception {
+        ImagePanel panel = new ImagePanel();
+        Andie.imagePanel = panel;
+        ImageOperation[] ops = { new DrawSquare(java.awt.Color.RED, 10, 10, 20, 20),
+                new DrawLine(java.awt.Color.BLUE, 0, 50, 80, 60), new DrawOval(java.awt.Color.GREEN, 500, 500, 9, 9),
+                new CropImage(new Rectangle(5, 5, 200, 100)), new DrawOutline("square", java.awt.Color.WHITE, 2, 2, 30, 30) };
+        EditableImage[] rendered = saveAndReopen(writeRandomImage(), ops, false);
+        panel.topLeftX = 50;
+        panel.topLeftY = 20;
+        EditableImage[] replayed = saveAndReopen(writeRandomImage(), ops, true);
+        replayed[1].apply(new InvertFilter());
+        replayed[1].undo();
+
+        assertEquals(200, replayed[1].getWidth());
+        assertAreaEquals(rendered[1].getCurrentImage(), replayed[1].getCurrentImage(), new Rectangle(0, 0, 200, 100));
+        assertAreaEquals(rendered[0].getCurrentImage(), replayed[1].getCurrentImage(), new Rectangle(0, 0, 200, 100));
+        assertEquals(java.awt.Color.RED.getRGB(), replayed[1].getCurrentImage().getRGB(10, 10));
+    }
+
+    /**
+     * A render saved with different operations is not used.
+     */
+    @Test
+    public void testStaleRenderIgnored() throws Exception {
+        File file = writeRandomImage();
+        EditableImage[] images = saveAndReopen(file, new ImageOperation[] { new InvertFilter() }, false);
+        File opsFile = new File(file.getPath() + ".ops");
+        byte[] render = java.nio.file.Files.readAllBytes(RenderCache.fileFor(opsFile).toPath());
+        images[0].apply(new Brightness(30, 0));
+        images[0].save();
+        // put the render of the old operations back
+        java.nio.file.Files.write(RenderCache.fileFor(opsFile).toPath(), render);
+
+        EditableImage reopened = new EditableImage();
+        reopened.open(file.getPath());
+        assertEquals(2, reopened.getOpsSize());
+        assertAreaEquals(images[0].getCurrentImage(), reopened.getCurrentImage(), new Rectangle(0, 0, 300, 270));
+    }
+
+    /**
+     * Region operations are undone and redone by copying back the pixels they changed, so they are
+     * never applied again, and the image is the same as if they were.
+     */
+    @Test
+    public void testDrawingUndoneWithPatches() throws Exception {
+        EditableImage image = openRandomImage();
+        SquareOperation[] squares = { new SquareOperation(5, 5, 0xFFFF0000), new SquareOperation(10, 8, 0xFF00FF00),
+                new SquareOperation(295, 265, 0xFF0000FF) };
+        image.apply(new InvertFilter());
+        BufferedImage[] expected = new BufferedImage[squares.length + 1];
+        expected[0] = copyOf(image.getCurrentImage());
+        for (int i = 0; i < squares.length; i++) {
+            image.apply(squares[i]);
+            expected[i + 1] = copyOf(image.getCurrentImage());
+        }
+        Rectangle all = new Rectangle(0, 0, 300, 270);
+
+        for (int i = squares.length; i > 0; i--) {
+            image.undo();
+            assertAreaEquals(expected[i - 1], image.getCurrentImage(), all);
+        }
+        image.redo();
+        assertAreaEquals(expected[1], image.getCurrentImage(), all);
+        image.goToStep(4);
+        assertAreaEquals(expected[3], image.getCurrentImage(), all);
+        image.goToStep(2);
+        assertAreaEquals(expected[1], image.getCurrentImage(), all);
+        for (SquareOperation square : squares) {
+            assertEquals(1, square.count);
+        }
+
+        // Rebuilding the image below the drawings keeps their patches
+        image.goToStep(0);
+        image.redo();
+        image.goToStep(4);
+        assertAreaEquals(expected[3], image.getCurrentImage(), all);
+        for (SquareOperation square : squares) {
+            assertEquals(1, square.count);
+        }
+
+        // A new history replaces the patches of the old one
+        image.goToStep(2);
+        SquareOperation other = new SquareOperation(0, 0, 0xFFFFFFFF);
+        image.apply(other);
+        assertEquals(0xFFFFFFFF, image.getCurrentImage().getRGB(5, 5));
+        image.undo();
+        assertAreaEquals(expected[1], image.getCurrentImage(), all);
+        assertEquals(2, image.getOpsSize());
+        assertEquals(1, other.count);
+    }
+
+    /**
+     * Makes an independent copy of an image.
+     */
+    private BufferedImage copyOf(BufferedImage image) {
+        return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Moving a drawing further back in the history only recomputes the tiles it reaches through
+     * the operations after it, and gives the same image as applying the new history from scratch.
+     */
+    @Test
+    public void testReplaceDrawingRecomputesAffectedArea() throws Exception {
+        File file = writeRandomImage();
+        EditableImage image = new EditableImage();
+        image.open(file.getPath());
+        PixelCountingOperation counter = new PixelCountingOperation();
+        image.apply(new InvertFilter());
+        image.apply(new SquareOperation(20, 20, 0xFFFF0000));
+        image.apply(new MedianFilter(1));
+        image.apply(counter);
+        long before = counter.pixels;
+
+        SquareOperation moved = new SquareOperation(250, 240, 0xFF00FF00);
+        image.replaceOperation(1, moved);
+        // only the two squares and the pixels around them are recomputed
+        assertTrue(counter.pixels - before < 4 * 12 * 12);
+        assertEquals(0, moved.wholeImages);
+        assertEquals(4, image.getOpsSize());
+
+        EditableImage expected = new EditableImage();
+        expected.open(file.getPath());
+        expected.apply(new InvertFilter());
+        expected.apply(new SquareOperation(250, 240, 0xFF00FF00));
+        expected.apply(new MedianFilter(1));
+        expected.apply(new PixelCountingOperation());
+        Rectangle all = new Rectangle(0, 0, 300, 270);
+        assertAreaEquals(expected.getCurrentImage(), image.getCurrentImage(), all);
+
+        // the history still undoes as normal
+        image.undo();
+        expected.undo();
+        assertAreaEquals(expected.getCurrentImage(), image.getCurrentImage(), all);
+    }
+
+    /**
+     * Drawings keep their place in the image when the panel is moved or zoomed between drawing
+     * them and changing one of them, so the later drawings are redrawn where they were.
+     */
+    @Test
+    public void testReplaceDrawingAfterPanelMoves() throws Exception {
+        File file = writeRandomImage();
+        ImagePanel panel = new ImagePanel();
+        Andie.imagePanel = panel;
+        panel.topLeftX = 40;
+        panel.topLeftY = 30;
+        Rectangle first = panel.toImage(new Rectangle(60, 50, 20, 20));
+        Rectangle second = panel.toImage(new Rectangle(140, 130, 20, 20));
+        EditableImage image = new EditableImage();
+        image.open(file.getPath());
+        image.apply(new DrawSquare(java.awt.Color.RED, first.x, first.y, first.width, first.height));
+        image.apply(new DrawSquare(java.awt.Color.BLUE, second.x, second.y, second.width, second.height));
+        image.apply(new InvertFilter());
+
+        panel.topLeftX = -100;
+        panel.topLeftY = 5;
+        panel.setZoom(200);
+        Rectangle moved = panel.toImage(new Rectangle(300, 205, 40, 40));
+        image.replaceOperation(0, new DrawSquare(java.awt.Color.GREEN, moved.x, moved.y, moved.width, moved.height));
+
+        EditableImage expected = new EditableImage();
+        expected.open(file.getPath());
+        expected.apply(new DrawSquare(java.awt.Color.GREEN, 200, 100, 20, 20));
+        expected.apply(new DrawSquare(java.awt.Color.BLUE, 100, 100, 20, 20));
+        expected.apply(new InvertFilter());
+        assertAreaEquals(expected.getCurrentImage(), image.getCurrentImage(), new Rectangle(0, 0, 300, 270));
+    }
+
+    /**
+     * Changing a filter in the history rebuilds the image with the later operations on top.
+     */
+    @Test
+    public void testReplaceFilterKeepsLaterOperations() throws Exception {
+        File file = writeRandomImage();
+        EditableImage image = new EditableImage();
+        image.open(file.getPath());
+        image.apply(new InvertFilter());
+        image.apply(new Brightness(10, 0));
+        image.apply(new MedianFilter(1));
+        image.apply(new SquareOperation(100, 100, 0xFF0000FF));
+        image.replaceOperation(1, new Brightness(40, 20));
+
+        EditableImage expected = new EditableImage();
+        expected.open(file.getPath());
+        expected.apply(new InvertFilter());
+        expected.apply(new Brightness(40, 20));
+        expected.apply(new MedianFilter(1));
+        expected.apply(new SquareOperation(100, 100, 0xFF0000FF));
+        Rectangle all = new Rectangle(0, 0, 300, 270);
+        assertAreaEquals(expected.getCurrentImage(), image.getCurrentImage(), all);
+
+        // the drawing's patch belonged to the old history
+        image.undo();
+        expected.undo();
+        assertAreaEquals(expected.getCurrentImage(), image.getCurrentImage(), all);
+    }
+
+    /**
+     * An operation that fails after writing its tiles in place leaves the image as it was before it.
+     */
+    @Test
+    public void testFailedOperationLeavesImageUnchanged() throws Exception {
+        File file = writeRandomImage();
+        EditableImage image = new EditableImage();
+        image.open(file.getPath());
+        image.apply(new InvertFilter());
+        BufferedImage before = image.getCurrentImage();
+        Rectangle all = new Rectangle(0, 0, 300, 270);
+        BufferedImage expected = before.getSubimage(0, 0, 300, 270);
+        expected = new BufferedImage(expected.getColorModel(), expected.copyData(null), expected.isAlphaPremultiplied(), null);
+
+        int tiles = ((300 + TileEngine.TILE_SIZE - 1) / TileEngine.TILE_SIZE)
+                * ((270 + TileEngine.TILE_SIZE - 1) / TileEngine.TILE_SIZE);
+        FailingOperation op = new FailingOperation(tiles);
+        try {
+            image.apply(op);
+            fail("The operation should have failed");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().endsWith("Failed after every tile"));
+        }
+        assertEquals(tiles, op.done.get());
+        assertEquals(1, image.getOpsSize());
+        assertAreaEquals(expected, image.getCurrentImage(), all);
+
+        // the image can still be edited as usual
+        image.apply(new InvertFilter());
+        image.undo();
+        assertAreaEquals(expected, image.getCurrentImage(), all);
+    }
+}
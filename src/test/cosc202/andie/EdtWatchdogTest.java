@@ -0,0 +1,111 @@
+package test.cosc202.andie;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+
+import cosc202.andie.*;
+
+/**
+ * JUnit tests for the EdtWatchdog class. Checks that a stall of the event thread is caught, put
+ * down to the right action and operation, counted and logged.
+ */
+public class EdtWatchdogTest {
+
+    /**
+     * An operation that takes a known time, long enough to stall the event thread.
+     */
+    private static class SlowOperation implements ImageOperation {
+        final long millis;
+
+        SlowOperation(long millis) {
+            this.millis = millis;
+        }
+
+        public BufferedImage apply(BufferedImage input) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return input;
+        }
+    }
+
+    /**
+     * A stack caught in a filter action is put down to the action and the filter.
+     */
+    @Test
+    public void testDiagnose() {
+        StackTraceElement[] stack = {
+                new StackTraceElement("cosc202.andie.MeanFilter", "apply", "MeanFilter.java", 80),
+                new StackTraceElement("cosc202.andie.EditableImage", "apply", "EditableImage.java", 300),
+                new StackTraceElement("cosc202.andie.FilterActions$MeanFilterAction", "actionPerformed",
+                        "FilterActions.java", 120),
+                new StackTraceElement("javax.swing.AbstractButton", "fireActionPerformed", null, 1972),
+                new StackTraceElement("java.awt.EventDispatchThread", "run", null, 90) };
+        EdtWatchdog.Stall stall = EdtWatchdog.diagnose(stack, null);
+        assertEquals("FilterActions.MeanFilterAction", stall.getAction());
+        assertEquals("MeanFilter", stall.getOperation());
+        assertEquals("FilterActions.MeanFilterAction / MeanFilter", stall.getCause());
+
+        // the operation being measured wins, and without an action the outermost method is used
+        stall = EdtWatchdog.diagnose(new StackTraceElement[] { stack[1], stack[4] }, new InvertFilter());
+        assertEquals("EditableImage.apply / InvertFilter", stall.getCause());
+        assertEquals("unknown", EdtWatchdog.diagnose(new StackTraceElement[] { stack[4] }, null).getCause());
+    }
+
+    /**
+     * A slow operation applied on the event thread is caught, counted and logged.
+     */
+    @Test
+    public void testStallIsCaught() throws Exception {
+        File file = File.createTempFile("andie", ".png");
+        file.deleteOnExit();
+        ImageIO.write(new BufferedImage(30, 20, BufferedImage.TYPE_INT_ARGB), "png", file);
+        EditableImage image = new EditableImage();
+        image.open(file.getPath());
+
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        EdtWatchdog watchdog = new EdtWatchdog(100, new PrintStream(log, true));
+        watchdog.start();
+        try {
+            // let a heartbeat find the event thread first
+            SwingUtilities.invokeAndWait(() -> { });
+            Thread.sleep(200);
+            SwingUtilities.invokeAndWait(() -> image.apply(new SlowOperation(800)));
+            long deadline = System.currentTimeMillis() + 5000;
+            while ((watchdog.getLastStall() == null || !watchdog.getLastStall().isOver())
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+        } finally {
+            watchdog.stop();
+        }
+
+        EdtWatchdog.Stall stall = watchdog.getLastStall();
+        assertNotNull(stall);
+        assertTrue(stall.isOver());
+        assertEquals("SlowOperation", stall.getOperation());
+        assertEquals("EditableImage.apply", stall.getAction());
+        assertTrue(stall.getMillis() >= 100);
+        assertEquals(Long.valueOf(1), watchdog.getStallCounts().get("EditableImage.apply / SlowOperation"));
+        String logged = log.toString();
+        assertTrue(logged.contains("stalled for"));
+        assertTrue(logged.contains("cosc202.andie.EditableImage.apply("));
+        assertTrue(logged.contains("recovered after"));
+    }
+
+    /**
+     * The threshold must be positive.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testThreshold() {
+        new EdtWatchdog(0, System.err);
+    }
+}
@@ -0,0 +1,130 @@
+package test.cosc202.andie;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import javax.imageio.ImageIO;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.swing.SwingUtilities;
+
+import cosc202.andie.*;
+
+/**
+ * JUnit tests for the EngineStats class. Checks that the statistics can be read through the
+ * platform MBean server, that its operations flush the caches and take snapshots, and that they
+ * give up rather than hang while the event thread is stalled.
+ */
+public class EngineStatsTest {
+
+    /**
+     * Statistics about an open image and its operations are published as MBean attributes.
+     */
+    @Test
+    public void testAttributes() throws Exception {
+        OperationMetrics.reset();
+        ImagePanel panel = new ImagePanel();
+        open(panel);
+        panel.getImage().setLazy(false);
+        panel.getImage().apply(new InvertFilter());
+        panel.getImage().apply(new InvertFilter());
+        assertNotNull(EngineStats.register(panel));
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(EngineStats.NAME);
+        assertEquals(2, server.getAttribute(name, "HistoryDepth"));
+        assertEquals(2L, server.getAttribute(name, "OperationCount"));
+        assertEquals(300L * 200 * 4, server.getAttribute(name, "OriginalBytes"));
+        assertTrue((Long) server.getAttribute(name, "CurrentBytes") > 0);
+        assertEquals(0, server.getAttribute(name, "BatchQueueDepth"));
+
+        CompositeData[] operations = (CompositeData[]) server.getAttribute(name, "Operations");
+        assertEquals(1, operations.length);
+        assertEquals("InvertFilter", operations[0].get("operation"));
+        assertEquals(2L, operations[0].get("count"));
+
+        server.invoke(name, "resetOperationStats", null, null);
+        assertEquals(0L, server.getAttribute(name, "OperationCount"));
+    }
+
+    /**
+     * The operations take a snapshot of the open image and flush it again.
+     */
+    @Test
+    public void testOperations() throws Exception {
+        ImagePanel panel = new ImagePanel();
+        open(panel);
+        panel.getImage().setLazy(false);
+        panel.getImage().apply(new InvertFilter());
+        panel.getImage().flushCaches();
+        EngineStats stats = new EngineStats(panel);
+        assertEquals(0, stats.getSnapshotCount());
+
+        stats.takeSnapshot();
+        assertEquals(1, stats.getSnapshotCount());
+        assertTrue(stats.getCachedBytes() > 0);
+
+        stats.flushCaches();
+        assertEquals(0, stats.getSnapshotCount());
+        assertEquals(0, stats.getCachedBytes());
+    }
+
+    /**
+     * While the event thread is stalled, an operation fails within a moment and is called off, so
+     * it does not change the image later.
+     */
+    @Test
+    public void testOperationsDoNotWaitForStalledEventThread() throws Exception {
+        ImagePanel panel = new ImagePanel();
+        open(panel);
+        panel.getImage().setLazy(false);
+        panel.getImage().apply(new InvertFilter());
+        panel.getImage().flushCaches();
+        EngineStats stats = new EngineStats(panel);
+
+        SwingUtilities.invokeLater(() -> {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        long start = System.currentTimeMillis();
+        try {
+            stats.takeSnapshot();
+            fail("Waited for the stalled event thread");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertTrue(System.currentTimeMillis() - start < 1500);
+
+        SwingUtilities.invokeAndWait(() -> {
+        });
+        assertEquals(0, stats.getSnapshotCount());
+    }
+
+    /**
+     * Without an image the image statistics are 0 rather than failing.
+     */
+    @Test
+    public void testNoImage() {
+        EngineStats stats = new EngineStats(null);
+        assertEquals(0, stats.getHistoryDepth());
+        assertEquals(0, stats.getCurrentBytes());
+        stats.flushCaches();
+        stats.takeSnapshot();
+    }
+
+    /**
+     * Open a blank 300x200 image in a panel.
+     */
+    private static void open(ImagePanel panel) throws Exception {
+        File file = File.createTempFile("andie", ".png");
+        file.deleteOnExit();
+        ImageIO.write(new BufferedImage(300, 200, BufferedImage.TYPE_INT_ARGB), "png", file);
+        panel.getImage().open(file.getPath());
+    }
+}
@@ -0,0 +1,102 @@
+package test.cosc202.andie;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.Constructor;
+import java.util.*;
+
+import cosc202.andie.*;
+
+/**
+ * JUnit tests for the FusedPixelOperation class. Checks that a chain of per-pixel operations
+ * applied in one pass gives exactly the same image as applying them one at a time, and that the
+ * operation stack is split into the right runs.
+ */
+public class FusedPixelOperationTest {
+
+    /**
+     * Creates an image of the given type filled with random colours.
+     *
+     * @param type the type of the image.
+     * @return a new random image.
+     */
+    private BufferedImage randomImage(int type) {
+        Random random = new Random(202);
+        BufferedImage image = new BufferedImage(41, 29, type);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Makes an independent copy of an image, since the operations change their input.
+     *
+     * @param image the image to copy.
+     * @return a copy of the image.
+     */
+    private BufferedImage copy(BufferedImage image) {
+        return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Creates a greyscale conversion, whose constructor is not public.
+     *
+     * @param rescaled whether the conversion rescales the result.
+     * @return the conversion.
+     */
+    private PixelOperation convertToGrey(boolean rescaled) throws Exception {
+        Constructor<?> constructor = Class.forName("cosc202.andie.ConvertToGrey").getDeclaredConstructor(boolean.class);
+        constructor.setAccessible(true);
+        return (PixelOperation) constructor.newInstance(rescaled);
+    }
+
+    /**
+     * A chain of operations fused into one pass matches applying them in turn, for images with
+     * and without alpha, and for images that are not stored as packed ints.
+     */
+    @Test
+    public void testFusedMatchesSeparate() throws Exception {
+        List<PixelOperation> chain = Arrays.asList(new Brightness(20, 35), new InvertFilter(), convertToGrey(false),
+                new HueFilter(new Color(40, 180, 90)), new Brightness(-10, 60));
+        int[] types = { BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR,
+                BufferedImage.TYPE_BYTE_GRAY };
+        for (int type : types) {
+            BufferedImage input = randomImage(type);
+            BufferedImage expected = copy(input);
+            for (PixelOperation op : chain) {
+                expected = op.apply(expected);
+            }
+            BufferedImage actual = new FusedPixelOperation(chain).apply(copy(input));
+            for (int y = 0; y < input.getHeight(); y++) {
+                for (int x = 0; x < input.getWidth(); x++) {
+                    assertEquals("type " + type + " at (" + x + ", " + y + ")", expected.getRGB(x, y), actual.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    /**
+     * Only runs of two or more fusable operations are combined.
+     */
+    @Test
+    public void testFuseRuns() throws Exception {
+        ImageOperation blur = new GaussianBlurFilter(2);
+        ImageOperation invert = new InvertFilter();
+        ImageOperation rescaledGrey = convertToGrey(true);
+        List<ImageOperation> ops = Arrays.asList(invert, new Brightness(10, 0), blur, invert, rescaledGrey, invert,
+                new HueFilter(Color.RED), convertToGrey(false));
+        List<ImageOperation> fused = FusedPixelOperation.fuse(ops);
+
+        assertEquals(5, fused.size());
+        assertTrue(fused.get(0) instanceof FusedPixelOperation);
+        assertSame(blur, fused.get(1));
+        assertSame(invert, fused.get(2));
+        assertSame(rescaledGrey, fused.get(3));
+        assertTrue(fused.get(4) instanceof FusedPixelOperation);
+    }
+}
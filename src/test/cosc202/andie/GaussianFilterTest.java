@@ -1,14 +1,18 @@
 package test.cosc202.andie;
 
 import cosc202.andie.GaussianBlurFilter;
+import cosc202.andie.ImageEdgeExtension;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import org.junit.Test;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.*;
 import java.util.Arrays;
+import java.util.Random;
 
 /**
  * The GaussianBlurFilterTest class is a JUnit test class for testing the
@@ -79,4 +83,132 @@ public class GaussianFilterTest {
         assertArrayEquals(expectedValues, actualValues);
     }
 
+    /**
+     * The separable filter stays within one level of the original 2D ConvolveOp implementation
+     * for every radius the user interface offers, on several image types.
+     *
+     * The original drew its right and bottom borders over the last pixels of the image, so the
+     * outputs within 2r-3 pixels of the right and bottom edges were wrong and are not compared.
+     * It also drew the image with alpha compositing, which rounds the colours of translucent
+     * pixels, so the images here are opaque.
+     */
+    @Test
+    public void testMatchesConvolveOp() {
+        int[] types = { BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR,
+                BufferedImage.TYPE_BYTE_GRAY };
+        for (int type : types) {
+            BufferedImage input = randomImage(47, 39, type);
+            for (int r = 1; r <= GaussianBlurFilter.MAX_KERNEL_RADIUS; r++) {
+                BufferedImage expected = legacyApply(copy(input), r);
+                BufferedImage actual = new GaussianBlurFilter(r).apply(copy(input));
+                assertEquals(type, actual.getType());
+                int band = Math.max(0, 2 * r - 3);
+                assertWithin("type " + type + " radius " + r, expected, actual, 1, input.getWidth() - band,
+                        input.getHeight() - band);
+            }
+        }
+    }
+
+    /**
+     * The recursive approximation is close to the exact kernel, including at the edges.
+     */
+    @Test
+    public void testRecursiveMatchesKernel() {
+        BufferedImage input = randomImage(120, 90, BufferedImage.TYPE_INT_ARGB);
+        for (int r : new int[] { 10, 25, 40 }) {
+            BufferedImage exact = new GaussianBlurFilter(r, false).apply(copy(input));
+            BufferedImage recursive = new GaussianBlurFilter(r, true).apply(copy(input));
+            assertWithin("radius " + r, exact, recursive, 3, input.getWidth(), input.getHeight());
+        }
+    }
+
+    /**
+     * A flat image stays exactly the same, whichever way it is blurred.
+     */
+    @Test
+    public void testFlatImageUnchanged() {
+        BufferedImage input = new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB);
+        int[] data = ((DataBufferInt) input.getRaster().getDataBuffer()).getData();
+        Arrays.fill(data, 0xFFFFFFFF);
+        for (boolean recursive : new boolean[] { false, true }) {
+            BufferedImage output = new GaussianBlurFilter(15, recursive).apply(input);
+            assertWithin("recursive " + recursive, input, output, 0, input.getWidth(), input.getHeight());
+        }
+    }
+
+    /**
+     * Checks that every sample of two images in a rectangle at the origin differ by at most a tolerance.
+     */
+    private static void assertWithin(String name, BufferedImage expected, BufferedImage actual, int tolerance,
+            int width, int height) {
+        int[] e = expected.getRaster().getPixels(0, 0, width, height, (int[]) null);
+        int[] a = actual.getRaster().getPixels(0, 0, width, height, (int[]) null);
+        assertEquals(e.length, a.length);
+        for (int i = 0; i < e.length; i++) {
+            assertTrue(name + ": sample " + i + " was " + a[i] + " but expected " + e[i],
+                    Math.abs(e[i] - a[i]) <= tolerance);
+        }
+    }
+
+    private static BufferedImage randomImage(int width, int height, int type) {
+        Random random = new Random(6);
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, 0xFF000000 | random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * The original implementation: a full 2D kernel, applied with ConvolveOp to an image padded twice.
+     */
+    private static BufferedImage legacyApply(BufferedImage input, int radius) {
+        float sigma = radius / 3.0f;
+        int crop = radius + 3;
+        input = ImageEdgeExtension.extendImage(input, crop);
+        int size = (2 * radius + 1);
+        float[][] kernelData = new float[size][size];
+        float sum = 0.0f;
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                float distancex = (float) row - radius;
+                float distancey = (float) col - radius;
+                kernelData[row][col] = (float) ((1.0 / (2 * Math.PI * sigma))
+                        * Math.exp(-(Math.pow(distancex, 2) + Math.pow(distancey, 2)) / (2 * Math.pow(sigma, 2))));
+                sum += kernelData[row][col];
+            }
+        }
+        float[] kernel = new float[size * size];
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                kernel[row * size + col] = kernelData[row][col] / sum;
+            }
+        }
+        int borderSize = size / 2;
+        BufferedImage paddedInput = new BufferedImage(input.getWidth() + borderSize * 2,
+                input.getHeight() + borderSize * 2, input.getType());
+        Graphics2D g = paddedInput.createGraphics();
+        int w = input.getWidth();
+        int h = input.getHeight();
+        int b = borderSize;
+        g.drawImage(input, b, b, null);
+        g.drawImage(input, 0, b, b, h, b, 0, 0, h, null);
+        g.drawImage(input, w - b, b, w, h, w - b, 0, w, h, null);
+        g.drawImage(input, b, 0, w, b, 0, b, w, 0, null);
+        g.drawImage(input, b, h - b, w, h, 0, h - b, w, h, null);
+        g.drawImage(input, 0, 0, b, b, 0, 0, b, b, null);
+        g.drawImage(input, w - b, 0, w, b, w - b, 0, w, b, null);
+        g.drawImage(input, 0, h - b, b, h, 0, h - b, b, h, null);
+        g.drawImage(input, w - b, h - b, w, h, w - b, h - b, w, h, null);
+        g.dispose();
+        BufferedImage output = new ConvolveOp(new Kernel(size, size, kernel)).filter(paddedInput, null);
+        output = output.getSubimage(b, b, w, h);
+        return ImageEdgeExtension.cropImage(output, crop);
+    }
 }
@@ -0,0 +1,489 @@
+package test.cosc202.andie;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.Random;
+
+import cosc202.andie.*;
+
+/**
+ * JUnit tests for the ImagePixels class, and regression tests for the operations that use it.
+ * The operations used to read and write one pixel at a time with getRGB and setRGB. The old
+ * implementations are kept here, and the new array-based operations must give bit-identical
+ * results for every type of image ANDIE is likely to open.
+ */
+public class ImagePixelsTest {
+
+    /** The image types to check, covering packed, interleaved and grey images. */
+    private static final int[] TYPES = {
+            BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR,
+            BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_GRAY };
+
+    /**
+     * Creates an image filled with random colours.
+     *
+     * @param type the type of image to create.
+     * @return a new random image.
+     */
+    private static BufferedImage randomImage(int type) {
+        Random random = new Random(type);
+        BufferedImage image = new BufferedImage(23, 17, type);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Makes an independent copy of an image, since some operations change their input.
+     *
+     * @param image the image to copy.
+     * @return a copy of the image.
+     */
+    private static BufferedImage copy(BufferedImage image) {
+        return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Checks that two images have the same type, size and pixels.
+     *
+     * @param name     the name of the operation, for failure messages.
+     * @param expected the image from the old implementation.
+     * @param actual   the image from the new implementation.
+     */
+    private static void assertSameImage(String name, BufferedImage expected, BufferedImage actual) {
+        assertEquals(name + " type", expected.getType(), actual.getType());
+        assertEquals(name + " width", expected.getWidth(), actual.getWidth());
+        assertEquals(name + " height", expected.getHeight(), actual.getHeight());
+        int[] expectedPixels = expected.getRaster().getPixels(0, 0, expected.getWidth(), expected.getHeight(), (int[]) null);
+        int[] actualPixels = actual.getRaster().getPixels(0, 0, actual.getWidth(), actual.getHeight(), (int[]) null);
+        assertArrayEquals(name, expectedPixels, actualPixels);
+    }
+
+    /**
+     * Reading and writing through ImagePixels gives the same values as getRGB and setRGB.
+     */
+    @Test
+    public void testReadWriteMatchesGetSetRGB() {
+        for (int type : TYPES) {
+            BufferedImage image = randomImage(type);
+            int[] argb = ImagePixels.read(image);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    assertEquals(image.getRGB(x, y), argb[y * image.getWidth() + x]);
+                }
+            }
+
+            int[] values = new Random(1).ints(argb.length).toArray();
+            BufferedImage expected = new BufferedImage(image.getWidth(), image.getHeight(), type);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    expected.setRGB(x, y, values[y * image.getWidth() + x]);
+                }
+            }
+            BufferedImage actual = new BufferedImage(image.getWidth(), image.getHeight(), type);
+            ImagePixels.write(actual, values);
+            assertSameImage("write", expected, actual);
+        }
+    }
+
+    /**
+     * Reading a TYPE_INT_ARGB image gives its own data buffer, and copying does not.
+     */
+    @Test
+    public void testReadSharesArgbBuffer() {
+        BufferedImage image = randomImage(BufferedImage.TYPE_INT_ARGB);
+        int[] argb = ImagePixels.read(image);
+        argb[0] = 0x12345678;
+        assertEquals(0x12345678, image.getRGB(0, 0));
+
+        int[] copy = ImagePixels.copy(image);
+        copy[0] = 0;
+        assertEquals(0x12345678, image.getRGB(0, 0));
+
+        BufferedImage wrapped = ImagePixels.wrap(image.getWidth(), image.getHeight(), copy);
+        assertEquals(BufferedImage.TYPE_INT_ARGB, wrapped.getType());
+        assertSame(copy, ImagePixels.read(wrapped));
+    }
+
+    /**
+     * Colour operations match the old implementations.
+     */
+    @Test
+    public void testColourOperations() {
+        for (int type : TYPES) {
+            BufferedImage input = randomImage(type);
+            assertSameImage("Brightness", legacyBrightness(copy(input), 30, -20),
+                    new Brightness(30, -20).apply(copy(input)));
+            assertSameImage("ConvertToGrey", legacyGrey(copy(input), false), newConvertToGrey(false).apply(copy(input)));
+            assertSameImage("ConvertToGrey rescaled", legacyGrey(copy(input), true),
+                    newConvertToGrey(true).apply(copy(input)));
+            assertSameImage("InvertFilter", legacyInvert(copy(input)), new InvertFilter().apply(copy(input)));
+            assertSameImage("HueFilter", legacyHue(copy(input), Color.MAGENTA),
+                    new HueFilter(Color.MAGENTA).apply(copy(input)));
+            // Dither levels up to 11 give a matrix of zeros, so the result does not depend on the shuffle
+            assertSameImage("DitherFilter", legacyDither(copy(input), 4, Color.YELLOW, Color.BLUE),
+                    new DitherFilter(4, Color.YELLOW, Color.BLUE).apply(copy(input)));
+        }
+    }
+
+    /**
+     * Neighbourhood operations match the old implementations.
+     */
+    @Test
+    public void testNeighbourhoodOperations() {
+        for (int type : TYPES) {
+            BufferedImage input = randomImage(type);
+            assertSameImage("SobelFilter", legacyKernel(copy(input), new int[][] { { 0, 0, 0 }, { -1, 0, 1 }, { 0, 0, 0 } }),
+                    new SobelFilter(1).apply(copy(input)));
+            assertSameImage("EmbossFilter", legacyKernel(copy(input), new int[][] { { 1, 0, 0 }, { 0, 0, 0 }, { 0, 0, -1 } }),
+                    new EmbossFilter(2).apply(copy(input)));
+            assertSameImage("MedianFilter", legacyMedian(copy(input), 2), new MedianFilter(2).apply(copy(input)));
+            assertSameImage("shiftPixelValue", legacyShift(copy(input)), NormalizeImage.shiftPixelValue(copy(input)));
+            assertSameImage("rescaleImage", legacyRescale(copy(input)), NormalizeImage.rescaleImage(copy(input)));
+        }
+    }
+
+    /**
+     * Geometric operations and edge extension match the old implementations.
+     */
+    @Test
+    public void testGeometricOperations() {
+        for (int type : TYPES) {
+            BufferedImage input = randomImage(type);
+            assertSameImage("FlipImage vertical", legacyFlip(copy(input), true), new FlipImage(true).apply(copy(input)));
+            assertSameImage("FlipImage horizontal", legacyFlip(copy(input), false), new FlipImage(false).apply(copy(input)));
+            assertSameImage("RotateImage right", legacyRotate(copy(input), true, false),
+                    new RotateImage(true, false).apply(copy(input)));
+            assertSameImage("RotateImage left", legacyRotate(copy(input), false, false),
+                    new RotateImage(false, false).apply(copy(input)));
+            assertSameImage("RotateImage 180", legacyRotate(copy(input), false, true),
+                    new RotateImage(false, true).apply(copy(input)));
+            assertSameImage("extendImage", legacyExtend(copy(input), 4), ImageEdgeExtension.extendImage(copy(input), 4));
+            assertSameImage("cropImage", legacyCrop(copy(input), 4), ImageEdgeExtension.cropImage(copy(input), 4));
+            assertSameImage("extendImage 3", legacyExtend3(copy(input)), ImageEdgeExtension.extendImage(copy(input)));
+            assertSameImage("cropImage 3", legacyCrop3(copy(input)), ImageEdgeExtension.cropImage(copy(input)));
+        }
+    }
+
+    /**
+     * ConvertToGrey has package-private constructors, so it is created with reflection, as in
+     * GreyscaleFilterTest.
+     *
+     * @param rescaled whether the grey values are rescaled.
+     * @return a new ConvertToGrey operation.
+     */
+    private static ImageOperation newConvertToGrey(boolean rescaled) {
+        try {
+            Constructor<ConvertToGrey> constructor = ConvertToGrey.class.getDeclaredConstructor(boolean.class);
+            constructor.setAccessible(true);
+            return constructor.newInstance(rescaled);
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    // The old implementations, copied from before the move to ImagePixels.
+
+    private static BufferedImage legacyBrightness(BufferedImage input, double b, double c) {
+        BufferedImage workingImage = new BufferedImage(input.getColorModel(), input.copyData(null), input.isAlphaPremultiplied(), null);
+        for (int y = 0; y < workingImage.getHeight(); y++) {
+            for (int x = 0; x < workingImage.getWidth(); x++) {
+                int argb = input.getRGB(x, y);
+                int A = argb >> 24 & 0xff;
+                int R = argb >> 16 & 0xff;
+                int G = argb >> 8 & 0xff;
+                int B = argb & 0xff;
+                A = Math.min(Math.max((int) ((1 + c / 100.0) * (A - 127.5) + 127.5 * (1 + b / 100.0)), 0), 255);
+                R = Math.min(Math.max((int) ((1 + c / 100.0) * (R - 127.5) + 127.5 * (1 + b / 100.0)), 0), 255);
+                G = Math.min(Math.max((int) ((1 + c / 100.0) * (G - 127.5) + 127.5 * (1 + b / 100.0)), 0), 255);
+                B = Math.min(Math.max((int) ((1 + c / 100.0) * (B - 127.5) + 127.5 * (1 + b / 100.0)), 0), 255);
+                workingImage.setRGB(x, y, (A << 24) | (R << 16) | (G << 8) | B);
+            }
+        }
+        return workingImage;
+    }
+
+    private static BufferedImage legacyGrey(BufferedImage input, boolean rescaled) {
+        for (int y = 0; y < input.getHeight(); ++y) {
+            for (int x = 0; x < input.getWidth(); ++x) {
+                int argb = input.getRGB(x, y);
+                int a = (argb & 0xFF000000) >> 24;
+                int r = (argb & 0x00FF0000) >> 16;
+                int g = (argb & 0x0000FF00) >> 8;
+                int b = (argb & 0x000000FF);
+                int grey = (int) Math.round(0.3 * r + 0.6 * g + 0.1 * b);
+                argb = (a << 24) | (grey << 16) | (grey << 8) | grey;
+                input.setRGB(x, y, argb);
+            }
+        }
+        if (rescaled) {
+            input = legacyMidValue(input);
+        }
+        return input;
+    }
+
+    private static BufferedImage legacyMidValue(BufferedImage image) {
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int pixel = image.getRGB(x, y);
+                int alpha = (pixel >> 24) & 0xff;
+                int red = ((pixel >> 16) & 0xff) / 2 + 127;
+                int green = ((pixel >> 8) & 0xff) / 2 + 127;
+                int blue = (pixel & 0xff) / 2 + 127;
+                image.setRGB(x, y, (alpha << 24) | (red << 16) | (green << 8) | blue);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage legacyInvert(BufferedImage image) {
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int pixel = image.getRGB(x, y);
+                int red = 255 - ((pixel >> 16) & 0xff);
+                int green = 255 - ((pixel >> 8) & 0xff);
+                int blue = 255 - (pixel & 0xff);
+                image.setRGB(x, y, new Color(red, green, blue).getRGB());
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage legacyHue(BufferedImage image, Color color) {
+        float hue = Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(), null)[0];
+        for (int x = 0; x < image.getWidth(); x++) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                int rgb = image.getRGB(x, y);
+                float[] hsb = Color.RGBtoHSB((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF, null);
+                image.setRGB(x, y, Color.HSBtoRGB(hue, hsb[1], hsb[2]));
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage legacyDither(BufferedImage image, int ditherLevel, Color lightColor, Color darkColor) {
+        BufferedImage outputImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        int[][] ditherMatrix = new int[ditherLevel][ditherLevel];
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int pixel = image.getRGB(x, y);
+                int oldPixel = (int) (0.299 * ((pixel >> 16) & 0xFF) + 0.587 * ((pixel >> 8) & 0xFF) + 0.114 * (pixel & 0xFF));
+                int newPixel = oldPixel + ditherMatrix[x % ditherMatrix.length][y % ditherMatrix.length];
+                outputImage.setRGB(x, y, newPixel >= 128 ? lightColor.getRGB() : darkColor.getRGB());
+            }
+        }
+        return outputImage;
+    }
+
+    private static BufferedImage legacyKernel(BufferedImage image, int[][] kernel) {
+        image = legacyExtend3(image);
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage newImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int sumR = 0;
+                int sumG = 0;
+                int sumB = 0;
+                for (int i = 0; i < 3; i++) {
+                    for (int j = 0; j < 3; j++) {
+                        int dx = x + j - 1;
+                        int dy = y + i - 1;
+                        if (dx < 0 || dx >= width || dy < 0 || dy >= height) {
+                            continue;
+                        }
+                        Color c = new Color(image.getRGB(dx, dy));
+                        sumR += c.getRed() * kernel[i][j];
+                        sumG += c.getGreen() * kernel[i][j];
+                        sumB += c.getBlue() * kernel[i][j];
+                    }
+                }
+                int newR = Math.min(Math.max(sumR + 128, 0), 255);
+                int newG = Math.min(Math.max(sumG + 128, 0), 255);
+                int newB = Math.min(Math.max(sumB + 128, 0), 255);
+                newImage.setRGB(x, y, new Color(newR, newG, newB).getRGB());
+            }
+        }
+        return legacyCrop3(newImage);
+    }
+
+    private static BufferedImage legacyShift(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage newImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int sumR = 0;
+                int sumG = 0;
+                int sumB = 0;
+                for (int i = 0; i < 3; i++) {
+                    for (int j = 0; j < 3; j++) {
+                        int dx = x + j - 1;
+                        int dy = y + i - 1;
+                        if (dx < 0 || dx >= width || dy < 0 || dy >= height) {
+                            continue;
+                        }
+                        Color c = new Color(image.getRGB(dx, dy));
+                        sumR += c.getRed();
+                        sumG += c.getGreen();
+                        sumB += c.getBlue();
+                    }
+                }
+                int newR = Math.min(Math.max(sumR + 128, 0), 255);
+                int newG = Math.min(Math.max(sumG + 128, 0), 255);
+                int newB = Math.min(Math.max(sumB + 128, 0), 255);
+                newImage.setRGB(x, y, new Color(newR, newG, newB).getRGB());
+            }
+        }
+        return newImage;
+    }
+
+    private static BufferedImage legacyRescale(BufferedImage image) {
+        double min = 0;
+        double max = 255;
+        BufferedImage rescaledImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int pixel = image.getRGB(x, y);
+                int alpha = (int) Math.round((((pixel >> 24) & 0xff) - min) / (max - min) * 255);
+                int red = (int) Math.round((((pixel >> 16) & 0xff) - min) / (max - min) * 255);
+                int green = (int) Math.round((((pixel >> 8) & 0xff) - min) / (max - min) * 255);
+                int blue = (int) Math.round(((pixel & 0xff) - min) / (max - min) * 255);
+                rescaledImage.setRGB(x, y, (alpha << 24) | (red << 16) | (green << 8) | blue);
+            }
+        }
+        return rescaledImage;
+    }
+
+    private static BufferedImage legacyMedian(BufferedImage input, int radius) {
+        int edge = radius + 1;
+        int crop = edge + 2;
+        input = legacyExtend(input, crop);
+        BufferedImage output = new BufferedImage(input.getColorModel(), input.copyData(null), input.isAlphaPremultiplied(), null);
+        int numberNeighbours = (1 + (radius * 2)) * (1 + (radius * 2));
+        int center = (numberNeighbours - 1) / 2;
+        int[] medianA = new int[numberNeighbours];
+        int[] medianR = new int[numberNeighbours];
+        int[] medianG = new int[numberNeighbours];
+        int[] medianB = new int[numberNeighbours];
+        for (int y = edge; y < input.getHeight() - edge; ++y) {
+            for (int x = edge; x < input.getWidth() - edge; ++x) {
+                int neighbour = 0;
+                for (int i = x - radius; i <= x + radius; i++) {
+                    for (int j = y - radius; j <= y + radius; j++) {
+                        int argb = input.getRGB(i, j);
+                        medianA[neighbour] = (argb & 0xFF000000) >> 24;
+                        medianR[neighbour] = (argb & 0x00FF0000) >> 16;
+                        medianG[neighbour] = (argb & 0x0000FF00) >> 8;
+                        medianB[neighbour] = (argb & 0x000000FF);
+                        neighbour++;
+                    }
+                }
+                Arrays.sort(medianA);
+                Arrays.sort(medianR);
+                Arrays.sort(medianG);
+                Arrays.sort(medianB);
+                int argb = (medianA[center] << 24) | (medianR[center] << 16) | (medianG[center] << 8) | medianB[center];
+                output.setRGB(x, y, argb);
+            }
+        }
+        return legacyCrop(output, crop);
+    }
+
+    private static BufferedImage legacyFlip(BufferedImage input, boolean isVertical) {
+        int rows = input.getHeight();
+        int cols = input.getWidth();
+        BufferedImage testImage = new BufferedImage(cols, rows, BufferedImage.TYPE_INT_ARGB);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int pixel = isVertical ? input.getRGB(col, rows - row - 1) : input.getRGB(cols - col - 1, row);
+                testImage.setRGB(col, row, pixel);
+            }
+        }
+        return testImage;
+    }
+
+    private static BufferedImage legacyRotate(BufferedImage input, boolean isRight, boolean is180) {
+        int rows = input.getHeight();
+        int cols = input.getWidth();
+        if (is180) {
+            BufferedImage rotated = new BufferedImage(cols, rows, BufferedImage.TYPE_INT_ARGB);
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < cols; col++) {
+                    rotated.setRGB(cols - col - 1, rows - row - 1, input.getRGB(col, row));
+                }
+            }
+            return rotated;
+        }
+        BufferedImage rotated = new BufferedImage(rows, cols, BufferedImage.TYPE_INT_ARGB);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                if (isRight) {
+                    rotated.setRGB(rows - row - 1, col, input.getRGB(col, row));
+                } else {
+                    rotated.setRGB(row, cols - col - 1, input.getRGB(col, row));
+                }
+            }
+        }
+        return rotated;
+    }
+
+    private static BufferedImage legacyExtend3(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage extendedImage = new BufferedImage(width + 6, height + 6, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height + 6; y++) {
+            for (int x = 0; x < width + 6; x++) {
+                int closestX = Math.min(Math.max(x - 3, 0), width - 1);
+                int closestY = Math.min(Math.max(y - 3, 0), height - 1);
+                extendedImage.setRGB(x, y, image.getRGB(closestX, closestY));
+            }
+        }
+        return extendedImage;
+    }
+
+    private static BufferedImage legacyCrop3(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage croppedImage = new BufferedImage(width - 6, height - 6, BufferedImage.TYPE_INT_RGB);
+        for (int y = 3; y < height - 3; y++) {
+            for (int x = 3; x < width - 3; x++) {
+                croppedImage.setRGB(x - 3, y - 3, image.getRGB(x, y));
+            }
+        }
+        return croppedImage;
+    }
+
+    private static BufferedImage legacyExtend(BufferedImage image, int n) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage extendedImage = new BufferedImage(width + 2 * n, height + 2 * n, image.getType());
+        for (int y = 0; y < height + 2 * n; y++) {
+            for (int x = 0; x < width + 2 * n; x++) {
+                int originalX = Math.min(Math.max(x - n, 0), width - 1);
+                int originalY = Math.min(Math.max(y - n, 0), height - 1);
+                extendedImage.setRGB(x, y, image.getRGB(originalX, originalY));
+            }
+        }
+        return extendedImage;
+    }
+
+    private static BufferedImage legacyCrop(BufferedImage image, int n) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage croppedImage = new BufferedImage(width - 2 * n, height - 2 * n, image.getType());
+        for (int y = n; y < height - n; y++) {
+            for (int x = n; x < width - n; x++) {
+                croppedImage.setRGB(x - n, y - n, image.getRGB(x, y));
+            }
+        }
+        return croppedImage;
+    }
+}
@@ -0,0 +1,101 @@
+package test.cosc202.andie;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.Random;
+
+import cosc202.andie.IntegralImage;
+
+/**
+ * JUnit tests for the IntegralImage class. Checks box sums against adding up the samples directly,
+ * both inside the image and for boxes hanging over its edges.
+ */
+public class IntegralImageTest {
+
+    private static final int WIDTH = 13;
+    private static final int HEIGHT = 9;
+    private static final int BANDS = 2;
+
+    /**
+     * Makes random samples between 0 and 255.
+     *
+     * @return the interleaved samples of a WIDTH x HEIGHT image with BANDS bands.
+     */
+    private int[] randomSamples() {
+        Random random = new Random(11);
+        int[] samples = new int[WIDTH * HEIGHT * BANDS];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = random.nextInt(256);
+        }
+        return samples;
+    }
+
+    /**
+     * Adds up a box of samples one at a time, using the nearest edge pixel for pixels outside the image.
+     */
+    private long bruteForce(int[] samples, int x0, int y0, int x1, int y1, int band) {
+        long sum = 0;
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                int cx = Math.min(Math.max(x, 0), WIDTH - 1);
+                int cy = Math.min(Math.max(y, 0), HEIGHT - 1);
+                sum += samples[(cy * WIDTH + cx) * BANDS + band];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Every box inside the image sums to the same as adding its samples.
+     */
+    @Test
+    public void testSumInsideImage() {
+        int[] samples = randomSamples();
+        IntegralImage table = new IntegralImage(samples, WIDTH, HEIGHT, BANDS);
+        for (int y0 = 0; y0 < HEIGHT; y0++) {
+            for (int y1 = y0; y1 < HEIGHT; y1++) {
+                for (int x0 = 0; x0 < WIDTH; x0++) {
+                    for (int x1 = x0; x1 < WIDTH; x1++) {
+                        for (int b = 0; b < BANDS; b++) {
+                            assertEquals(bruteForce(samples, x0, y0, x1, y1, b), table.sum(x0, y0, x1, y1, b));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Boxes over the edges of the image, or entirely outside it, repeat the edge pixels.
+     */
+    @Test
+    public void testClampedSum() {
+        int[] samples = randomSamples();
+        IntegralImage table = new IntegralImage(samples, WIDTH, HEIGHT, BANDS);
+        for (int y0 = -12; y0 < HEIGHT + 12; y0 += 3) {
+            for (int x0 = -15; x0 < WIDTH + 15; x0 += 2) {
+                for (int size : new int[] { 1, 4, 20 }) {
+                    for (int b = 0; b < BANDS; b++) {
+                        assertEquals("box at (" + x0 + ", " + y0 + ") size " + size,
+                                bruteForce(samples, x0, y0, x0 + size - 1, y0 + size - 1, b),
+                                table.clampedSum(x0, y0, x0 + size - 1, y0 + size - 1, b));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sums too big for an int are still exact.
+     */
+    @Test
+    public void testLargeSums() {
+        int width = 3000;
+        int height = 3000;
+        int[] samples = new int[width * height];
+        java.util.Arrays.fill(samples, 255);
+        IntegralImage table = new IntegralImage(samples, width, height, 1);
+        assertEquals(255L * width * height, table.sum(0, 0, width - 1, height - 1, 0));
+        assertEquals(255L * 100 * 100, table.sum(2900, 2900, 2999, 2999, 0));
+    }
+}
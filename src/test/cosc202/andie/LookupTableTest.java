@@ -0,0 +1,143 @@
+package test.cosc202.andie;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.awt.image.BufferedImage;
+import java.util.*;
+
+import cosc202.andie.*;
+
+/**
+ * JUnit tests for the LookupTable class and the tonal operations built on it. Checks that the
+ * tables give the same colours as the formulas they replace, that composed tables match applying
+ * the tables in turn, and that levels and curves map their end points correctly.
+ */
+public class LookupTableTest {
+
+    /**
+     * Creates an image of the given type filled with random colours.
+     *
+     * @param type the type of the image.
+     * @return a new random image.
+     */
+    private BufferedImage randomImage(int type) {
+        Random random = new Random(13);
+        BufferedImage image = new BufferedImage(37, 23, type);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Makes an independent copy of an image, since the operations change their input.
+     *
+     * @param image the image to copy.
+     * @return a copy of the image.
+     */
+    private BufferedImage copy(BufferedImage image) {
+        return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Brightness and invert by table give the same values as the per-pixel formulas.
+     */
+    @Test
+    public void testTablesMatchFormulas() {
+        double b = 25;
+        double c = -40;
+        LookupTable brightness = new Brightness(b, c).getLookupTable();
+        LookupTable invert = new InvertFilter().getLookupTable();
+        for (int value = 0; value < 256; value++) {
+            int expected = (int) ((1 + c / 100.0) * (value - 127.5) + 127.5 * (1 + b / 100.0));
+            expected = Math.max(0, Math.min(255, expected));
+            for (int channel = 0; channel < 4; channel++) {
+                assertEquals(expected, brightness.lookup(channel, value));
+            }
+            assertEquals(255 - value, invert.lookup(1, value));
+            assertEquals(255, invert.lookup(0, value));
+        }
+    }
+
+    /**
+     * A composed table gives the same colour as applying each table in turn.
+     */
+    @Test
+    public void testComposition() {
+        LookupTable first = new Brightness(-30, 70).getLookupTable();
+        LookupTable second = new LevelsFilter(20, 230, 1.8).getLookupTable();
+        LookupTable third = LookupTable.of(a -> 255 - a, r -> r / 2, g -> g, bl -> 255 - bl);
+        LookupTable composed = first.then(second).then(third);
+        Random random = new Random(7);
+        for (int i = 0; i < 10000; i++) {
+            int argb = random.nextInt();
+            assertEquals(third.filter(second.filter(first.filter(argb))), composed.filter(argb));
+        }
+        assertEquals(0x12345678, LookupTable.identity().filter(0x12345678));
+    }
+
+    /**
+     * Levels sends the black and white points to the ends of the range, and gamma 1 is linear.
+     */
+    @Test
+    public void testLevels() {
+        LookupTable levels = new LevelsFilter(50, 200, 1.0).getLookupTable();
+        assertEquals(0, levels.lookup(1, 0));
+        assertEquals(0, levels.lookup(1, 50));
+        assertEquals(128, levels.lookup(2, 125));
+        assertEquals(255, levels.lookup(3, 200));
+        assertEquals(255, levels.lookup(3, 255));
+        assertEquals(77, levels.lookup(0, 77));
+        // a gamma above one brightens the mid-tones
+        assertTrue(new LevelsFilter(50, 200, 2.0).getLookupTable().lookup(1, 125) > 128);
+    }
+
+    /**
+     * Curves pass through their points, join them with lines, and are flat beyond the ends.
+     */
+    @Test
+    public void testCurves() {
+        LookupTable curve = new CurvesFilter(new int[] { 10, 100, 200 }, new int[] { 40, 140, 60 }).getLookupTable();
+        assertEquals(40, curve.lookup(1, 0));
+        assertEquals(40, curve.lookup(1, 10));
+        assertEquals(90, curve.lookup(2, 55));
+        assertEquals(140, curve.lookup(3, 100));
+        assertEquals(100, curve.lookup(1, 150));
+        assertEquals(60, curve.lookup(1, 255));
+        assertEquals(3, curve.lookup(0, 3));
+    }
+
+    /**
+     * Out of order curve points are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testCurvesOutOfOrder() {
+        new CurvesFilter(new int[] { 100, 50 }, new int[] { 0, 255 });
+    }
+
+    /**
+     * A fused run of tonal operations, whose tables are composed, matches applying them in turn.
+     */
+    @Test
+    public void testFusedTablesMatchSeparate() {
+        List<PixelOperation> chain = Arrays.asList(new Brightness(15, 30), new LevelsFilter(10, 240, 0.7),
+                new InvertFilter(), new CurvesFilter(new int[] { 0, 128, 255 }, new int[] { 30, 100, 255 }),
+                new Brightness(-5, -20));
+        int[] types = { BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR };
+        for (int type : types) {
+            BufferedImage input = randomImage(type);
+            BufferedImage expected = copy(input);
+            for (PixelOperation op : chain) {
+                expected = op.apply(expected);
+            }
+            BufferedImage actual = new FusedPixelOperation(chain).apply(copy(input));
+            for (int y = 0; y < input.getHeight(); y++) {
+                for (int x = 0; x < input.getWidth(); x++) {
+                    assertEquals("type " + type + " at (" + x + ", " + y + ")", expected.getRGB(x, y), actual.getRGB(x, y));
+                }
+            }
+        }
+    }
+}
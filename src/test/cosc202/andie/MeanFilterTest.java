@@ -1,5 +1,6 @@
 package test.cosc202.andie;
 
+import cosc202.andie.ImageEdgeExtension;
 import cosc202.andie.MeanFilter;
 
 import static org.junit.Assert.*;
@@ -8,6 +9,7 @@ import java.awt.image.BufferedImage;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
+import java.util.Random;
 
 
 import org.junit.Test;
@@ -81,4 +83,65 @@ public class MeanFilterTest {
 
     }
 
+    /**
+     * The summed-area table gives the same result as the box convolution it replaced, to within
+     * the rounding of the convolution's float weights, for small and large radii and several image types.
+     * Grey images go through sRGB on the way out, which can turn a difference of one level in
+     * the dark greys into two.
+     *
+     * @throws Exception if the constructor cannot be called through reflection.
+     */
+    @Test
+    public void testMatchesConvolveOp() throws Exception {
+        Constructor<MeanFilter> constructor = MeanFilter.class.getDeclaredConstructor(int.class);
+        constructor.setAccessible(true);
+        int[] types = { BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR,
+                BufferedImage.TYPE_BYTE_GRAY };
+        for (int type : types) {
+            BufferedImage input = randomImage(type);
+            for (int r : new int[] { 1, 2, 5, 12, 30 }) {
+                BufferedImage expected = legacyApply(copy(input), r);
+                BufferedImage actual = constructor.newInstance(r).apply(copy(input));
+                assertEquals(type, actual.getType());
+                int tolerance = type == BufferedImage.TYPE_BYTE_GRAY ? 2 : 1;
+                int[] e = expected.getRaster().getPixels(0, 0, input.getWidth(), input.getHeight(), (int[]) null);
+                int[] a = actual.getRaster().getPixels(0, 0, input.getWidth(), input.getHeight(), (int[]) null);
+                for (int i = 0; i < e.length; i++) {
+                    assertTrue("type " + type + " radius " + r + " sample " + i + ": " + a[i] + " but expected " + e[i],
+                            Math.abs(e[i] - a[i]) <= tolerance);
+                }
+            }
+        }
+    }
+
+    private static BufferedImage randomImage(int type) {
+        Random random = new Random(7);
+        BufferedImage image = new BufferedImage(41, 29, type);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * The original implementation: a box kernel applied with ConvolveOp to an edge-extended copy.
+     */
+    private static BufferedImage legacyApply(BufferedImage input, int radius) {
+        int crop = radius + 3;
+        input = ImageEdgeExtension.extendImage(input, crop);
+        int size = (2 * radius + 1) * (2 * radius + 1);
+        float[] array = new float[size];
+        Arrays.fill(array, 1.0f / size);
+        ConvolveOp convOp = new ConvolveOp(new Kernel(2 * radius + 1, 2 * radius + 1, array));
+        BufferedImage output = new BufferedImage(input.getColorModel(), input.copyData(null),
+                input.isAlphaPremultiplied(), null);
+        convOp.filter(input, output);
+        return ImageEdgeExtension.cropImage(output, crop);
+    }
 }
@@ -4,6 +4,7 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 import java.awt.image.*;
 import java.util.Arrays;
+import java.util.Random;
 import cosc202.andie.MedianFilter;
 
 /**
@@ -75,4 +76,63 @@ public class MedianFilterTest {
     }
 
 
+
+    /**
+     * The median of each channel, found by sorting the clamped neighbourhood. Alpha is
+     * sorted as a signed value, as the filter has always done.
+     *
+     * @param input the image to filter.
+     * @param radius the radius of the neighbourhood.
+     * @return the expected result of the filter.
+     */
+    private static int[] sortedMedian(BufferedImage input, int radius) {
+        int width = input.getWidth();
+        int height = input.getHeight();
+        int size = (2 * radius + 1) * (2 * radius + 1);
+        int[] result = new int[width * height];
+        int[][] channels = new int[4][size];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int n = 0;
+                for (int j = y - radius; j <= y + radius; j++) {
+                    for (int i = x - radius; i <= x + radius; i++) {
+                        int argb = input.getRGB(Math.min(Math.max(i, 0), width - 1), Math.min(Math.max(j, 0), height - 1));
+                        channels[0][n] = argb >> 24;
+                        channels[1][n] = (argb >> 16) & 0xFF;
+                        channels[2][n] = (argb >> 8) & 0xFF;
+                        channels[3][n] = argb & 0xFF;
+                        n++;
+                    }
+                }
+                int argb = 0;
+                for (int c = 0; c < 4; c++) {
+                    Arrays.sort(channels[c]);
+                    argb |= (channels[c][size / 2] & 0xFF) << (24 - 8 * c);
+                }
+                result[y * width + x] = argb;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Every radius gives the same result as sorting each neighbourhood, both for the small radii
+     * that are filtered by selection and the larger ones that use histograms.
+     */
+    @Test
+    public void testMatchesSortedMedian() {
+        Random random = new Random(5);
+        BufferedImage input = new BufferedImage(31, 26, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < input.getHeight(); y++) {
+            for (int x = 0; x < input.getWidth(); x++) {
+                // A small range of values, so that many neighbours are equal
+                input.setRGB(x, y, random.nextInt() & 0xF0F0F0F0 | 0x01010101);
+            }
+        }
+        for (int radius = 1; radius <= 12; radius++) {
+            BufferedImage output = new MedianFilter(radius).apply(input);
+            int[] actual = output.getRGB(0, 0, input.getWidth(), input.getHeight(), null, 0, input.getWidth());
+            assertArrayEquals("radius " + radius, sortedMedian(input, radius), actual);
+        }
+    }
 }
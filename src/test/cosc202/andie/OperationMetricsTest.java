@@ -0,0 +1,162 @@
+package test.cosc202.andie;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import javax.imageio.ImageIO;
+
+import cosc202.andie.*;
+
+/**
+ * JUnit tests for the OperationMetrics class. Checks that operations applied to and replayed on an
+ * EditableImage are recorded under the right trigger, that the histogram gives sensible
+ * percentiles, that allocation is charged to the operation it was for, and that the statistics
+ * can be summarised and written to a file.
+ */
+public class OperationMetricsTest {
+
+    /**
+     * An operation that takes a known time, so it lands in a known bucket of the histogram.
+     */
+    private static class SlowOperation implements ImageOperation {
+        final long millis;
+
+        SlowOperation(long millis) {
+            this.millis = millis;
+        }
+
+        public BufferedImage apply(BufferedImage input) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return input;
+        }
+    }
+
+    /**
+     * A per-pixel operation that allocates a megabyte each time it is applied to a tile.
+     */
+    private static class AllocatingOperation implements TileableOperation {
+        static volatile byte[] kept;
+
+        public Footprint getFootprint() {
+            return Footprint.perPixel();
+        }
+
+        public BufferedImage apply(BufferedImage input) {
+            kept = new byte[1 << 20];
+            return input;
+        }
+    }
+
+    /**
+     * Applying an operation records it as applied, and undoing it and redoing it replays it.
+     */
+    @Test
+    public void testTriggers() throws Exception {
+        OperationMetrics.reset();
+        File file = File.createTempFile("andie", ".png");
+        file.deleteOnExit();
+        ImageIO.write(new BufferedImage(300, 200, BufferedImage.TYPE_INT_ARGB), "png", file);
+        EditableImage image = new EditableImage();
+        image.open(file.getPath());
+        image.setLazy(false);
+
+        image.apply(new InvertFilter());
+        image.apply(new SobelFilter());
+        image.undoAll();
+        // so the filter is replayed rather than restored
+        image.getSnapshots().clear();
+        image.goToStep(2);
+
+        OperationMetrics.Stats sobel = OperationMetrics.getStats().get("SobelFilter");
+        assertEquals(2, sobel.getCount());
+        assertEquals(1, sobel.getCount(OperationMetrics.Trigger.APPLY));
+        assertEquals(1, sobel.getCount(OperationMetrics.Trigger.REFRESH));
+        assertEquals(0, sobel.getCount(OperationMetrics.Trigger.PREVIEW));
+        assertEquals(2L * 300 * 200, sobel.getPixels());
+        assertTrue(sobel.getTotalNanos() > 0);
+        assertEquals("SobelFilter", OperationMetrics.getLast().getOperation());
+        assertEquals(OperationMetrics.Trigger.REFRESH, OperationMetrics.getLast().getTrigger());
+    }
+
+    /**
+     * What the tile pool allocates for an operation is charged to it, and what it allocates at the
+     * same time for other work is not.
+     */
+    @Test
+    public void testAllocationIsPerOperation() throws Exception {
+        OperationMetrics.reset();
+        BufferedImage input = new BufferedImage(1024, 1024, BufferedImage.TYPE_INT_ARGB);
+        OperationMetrics.apply(new AllocatingOperation(), input, OperationMetrics.Trigger.APPLY);
+        // sixteen tiles, most of them on the pool
+        assertTrue(OperationMetrics.getLast().getBytes() >= 16L << 20);
+
+        OperationMetrics.measure(new SlowOperation(0), 1, 1, OperationMetrics.Trigger.APPLY, () -> {
+            Thread other = new Thread(() -> TileEngine.apply(new AllocatingOperation(), input));
+            other.start();
+            try {
+                other.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+        assertEquals("SlowOperation", OperationMetrics.getLast().getOperation());
+        assertTrue(OperationMetrics.getLast().getBytes() < 1 << 20);
+    }
+
+    /**
+     * Percentiles come from the bucket they fall in, and are never more than the longest time.
+     */
+    @Test
+    public void testHistogram() {
+        OperationMetrics.reset();
+        BufferedImage input = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        for (int i = 0; i < 9; i++) {
+            OperationMetrics.apply(new SlowOperation(0), input, OperationMetrics.Trigger.APPLY);
+        }
+        OperationMetrics.apply(new SlowOperation(30), input, OperationMetrics.Trigger.PREVIEW);
+
+        OperationMetrics.Stats stats = OperationMetrics.getStats().get("SlowOperation");
+        assertEquals(10, stats.getCount());
+        assertTrue(stats.getPercentileMillis(50) <= 1);
+        assertTrue(stats.getMaxMillis() >= 30);
+        assertEquals(stats.getMaxMillis(), stats.getPercentileMillis(99), 1e-9);
+        long total = 0;
+        for (long count : stats.getHistogram()) {
+            total += count;
+        }
+        assertEquals(10, total);
+    }
+
+    /**
+     * The summary lists the operations, and the dump has a header and a row for each one.
+     */
+    @Test
+    public void testSummaryAndDump() throws Exception {
+        OperationMetrics.reset();
+        assertTrue(OperationMetrics.summarise(5).isEmpty());
+        BufferedImage input = new BufferedImage(20, 20, BufferedImage.TYPE_INT_ARGB);
+        OperationMetrics.apply(new InvertFilter(), input, OperationMetrics.Trigger.APPLY);
+        OperationMetrics.apply(new SlowOperation(1), input, OperationMetrics.Trigger.PREVIEW);
+
+        List<String> lines = OperationMetrics.summarise(5);
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(0).startsWith("SlowOperation (preview)"));
+
+        File file = File.createTempFile("andie-metrics", ".csv");
+        file.deleteOnExit();
+        OperationMetrics.dump(file);
+        List<String> rows = Files.readAllLines(file.toPath());
+        assertEquals(3, rows.size());
+        assertTrue(rows.get(0).startsWith("operation,count,apply,refresh,preview,"));
+        assertTrue(rows.get(1).startsWith("InvertFilter,1,1,0,0,"));
+        assertEquals(rows.get(0).split(",").length, rows.get(2).split(",").length);
+    }
+}
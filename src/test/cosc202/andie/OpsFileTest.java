@@ -0,0 +1,293 @@
+package test.cosc202.andie;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import cosc202.andie.*;
+
+/**
+ * JUnit tests for the OpsFile class. Checks that operations written in the binary format are read
+ * back with the same settings, that files saved with Java serialization by older versions still
+ * load but cannot make objects of other classes, and that files this version cannot read are
+ * rejected rather than misread.
+ */
+public class OpsFileTest {
+
+    /**
+     * Creates an image filled with random colours.
+     *
+     * @return a new random image.
+     */
+    private BufferedImage randomImage() {
+        Random random = new Random(99);
+        BufferedImage image = new BufferedImage(31, 17, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Applies a list of operations in turn to a copy of an image.
+     *
+     * @param ops   the operations.
+     * @param image the image, which is not changed.
+     * @return the result.
+     */
+    private BufferedImage applyAll(List<ImageOperation> ops, BufferedImage image) {
+        BufferedImage result = new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+        for (ImageOperation op : ops) {
+            result = op.apply(result);
+        }
+        return result;
+    }
+
+    /**
+     * Checks that two images have the same size and pixels.
+     */
+    private void assertSameImage(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals("at (" + x + ", " + y + ")", expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    /**
+     * Writes operations to bytes.
+     */
+    private byte[] write(List<? extends ImageOperation> ops) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OpsFile.write(ops, bytes);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Every kind of filter is read back with the same settings, so replaying the file gives the
+     * same image, whether it is read from a stream or a buffer.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        DitherFilter dither = new DitherFilter(3, Color.YELLOW, Color.BLUE);
+        List<ImageOperation> ops = Arrays.asList(new InvertFilter(), new Brightness(12.5, -30),
+                new HueFilter(new Color(10, 200, 30)), new LevelsFilter(5, 250, 0.8),
+                new CurvesFilter(new int[] { 0, 90, 255 }, new int[] { 20, 60, 240 }), new GaussianBlurFilter(2),
+                new GaussianBlurFilter(4, true), new MedianFilter(1), new SharpenFilter(false), new SobelFilter(1),
+                new EmbossFilter(6), dither, new FlipImage(true), new RotateImage(false, true), new ResizeImage(150));
+        BufferedImage input = randomImage();
+        BufferedImage expected = applyAll(ops, input);
+
+        byte[] bytes = write(ops);
+        Stack<ImageOperation> read = OpsFile.read(new ByteArrayInputStream(bytes));
+        assertEquals(ops.size(), read.size());
+        for (int i = 0; i < ops.size(); i++) {
+            assertEquals(ops.get(i).getClass(), read.get(i).getClass());
+        }
+        assertSameImage(expected, applyAll(read, input));
+        assertSameImage(expected, applyAll(OpsFile.read(ByteBuffer.wrap(bytes)), input));
+        // Writing what was read gives the same bytes
+        assertArrayEquals(bytes, write(read));
+    }
+
+    /**
+     * Drawing operations, which could not be saved with Java serialization, are saved too.
+     */
+    @Test
+    public void testDrawOperations() throws Exception {
+        List<ImageOperation> ops = Arrays.asList(new DrawLine(Color.RED, 1, 2, 30, 40),
+                new DrawOval(new Color(1, 2, 3, 4), 5, 6, 7, 8), new DrawSquare(Color.GREEN, 0, 0, 10, 10),
+                new DrawOutline("oval", Color.BLUE, 3, 4, 5, 6), new DrawOutline(null, Color.BLACK, 1, 1, 1, 1));
+        byte[] bytes = write(ops);
+        assertArrayEquals(bytes, write(OpsFile.read(new ByteArrayInputStream(bytes))));
+    }
+
+    /**
+     * Drawings and crops are saved where they are in the image, so they replay in the same place
+     * however the panel has since been moved or zoomed, and reading them leaves the selection alone.
+     */
+    @Test
+    public void testPositionsDoNotDependOnPanel() throws Exception {
+        ImagePanel panel = new ImagePanel();
+        Andie.imagePanel = panel;
+        panel.topLeftX = 50;
+        Rectangle drawn = panel.toImage(new Rectangle(60, 10, 20, 20));
+        assertEquals(new Rectangle(10, 10, 20, 20), drawn);
+        byte[] bytes = write(Arrays.asList(new DrawSquare(Color.RED, drawn.x, drawn.y, drawn.width, drawn.height),
+                new CropImage(new Rectangle(5, 5, 40, 40))));
+
+        panel.topLeftX = 0;
+        Rectangle selection = new Rectangle(1, 2, 3, 4);
+        ImagePanel.region = selection;
+        Stack<ImageOperation> read = OpsFile.read(new ByteArrayInputStream(bytes));
+        assertSame(selection, ImagePanel.region);
+
+        BufferedImage image = read.get(0).apply(new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB));
+        assertEquals(Color.RED.getRGB(), image.getRGB(15, 15));
+        assertEquals(0, image.getRGB(65, 15));
+        image = read.get(1).apply(image);
+        assertEquals(40, image.getWidth());
+        assertEquals(Color.RED.getRGB(), image.getRGB(10, 10));
+        ImagePanel.region = null;
+    }
+
+    /**
+     * The reader decodes one operation at a time, after reading the header.
+     */
+    @Test
+    public void testStreamingReader() throws Exception {
+        byte[] bytes = write(Arrays.asList(new InvertFilter(), new MedianFilter(3)));
+        OpsFile.Reader reader = new OpsFile.Reader(new ByteArrayInputStream(bytes));
+        assertEquals(OpsFile.VERSION, reader.getVersion());
+        assertEquals(2, reader.size());
+        assertTrue(reader.next() instanceof InvertFilter);
+        assertTrue(reader.hasNext());
+        assertTrue(reader.next() instanceof MedianFilter);
+        assertFalse(reader.hasNext());
+    }
+
+    /**
+     * A file saved with Java serialization by the previous version of ANDIE still loads and
+     * replays the same as the same operations made now.
+     */
+    @Test
+    public void testLegacyFile() throws Exception {
+        Stack<ImageOperation> read;
+        try (InputStream in = OpsFileTest.class.getResourceAsStream("legacy.ops")) {
+            read = OpsFile.read(in);
+        }
+        Constructor<?> grey = Class.forName("cosc202.andie.ConvertToGrey").getDeclaredConstructor();
+        grey.setAccessible(true);
+        Constructor<?> mean = Class.forName("cosc202.andie.MeanFilter").getDeclaredConstructor(int.class);
+        mean.setAccessible(true);
+        List<ImageOperation> expected = Arrays.asList(new InvertFilter(), new Brightness(20, -15),
+                new GaussianBlurFilter(3), (ImageOperation) mean.newInstance(2), new EmbossFilter(3), new SobelFilter(1),
+                new HueFilter(new Color(200, 40, 90)), (ImageOperation) grey.newInstance(), new RotateImage(true, false),
+                new FlipImage(true));
+        assertEquals(expected.size(), read.size());
+        BufferedImage input = randomImage();
+        assertSameImage(applyAll(expected, input), applyAll(read, input));
+        // and it can be saved again in the new format
+        assertArrayEquals(write(expected), write(read));
+    }
+
+    /**
+     * A serialized file holding anything other than operations is rejected before the objects in
+     * it are made, since it may come from anyone along with an image.
+     */
+    @Test
+    public void testSerializedFileIsFiltered() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            Stack<Object> ops = new Stack<Object>();
+            ops.add(new InvertFilter());
+            ops.add(new HashMap<String, String>());
+            out.writeObject(ops);
+        }
+        try {
+            OpsFile.read(new ByteArrayInputStream(bytes.toByteArray()));
+            fail("Read a class that is not allowed");
+        } catch (InvalidClassException e) {
+            // expected
+        }
+
+        // nesting deeper than any list of operations is rejected too
+        Object[] nested = new Object[0];
+        for (int i = 0; i < 50; i++) {
+            nested = new Object[] { nested };
+        }
+        bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(nested);
+        }
+        try {
+            OpsFile.read(new ByteArrayInputStream(bytes.toByteArray()));
+            fail("Read a deeply nested file");
+        } catch (InvalidClassException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Files from a newer version, and operations with unknown tags, are rejected.
+     */
+    @Test
+    public void testUnreadableFiles() throws Exception {
+        byte[] bytes = write(Arrays.asList(new InvertFilter()));
+        bytes[5] = (byte) (OpsFile.VERSION + 1);
+        try {
+            OpsFile.read(new ByteArrayInputStream(bytes));
+            fail("Read a file from a newer version");
+        } catch (StreamCorruptedException e) {
+            // expected
+        }
+        bytes = write(Arrays.asList(new InvertFilter()));
+        bytes[10] = (byte) 0xFF;
+        bytes[11] = (byte) 0xFE;
+        try {
+            OpsFile.read(new ByteArrayInputStream(bytes));
+            fail("Read an unknown operation");
+        } catch (InvalidObjectException e) {
+            // expected
+        }
+    }
+
+    /**
+     * A corrupt record is rejected without making anything as large as the sizes it claims, and
+     * a decoder cannot read past the end of its record.
+     */
+    @Test
+    public void testCorruptRecords() throws Exception {
+        byte[] good = write(Arrays.asList(new DitherFilter(3, Color.YELLOW, Color.BLUE), new InvertFilter()));
+        // after the header, the tag and length of the record, and the three ints before the matrix
+        int matrix = 10 + 6 + 12;
+        for (int size : new int[] { Integer.MAX_VALUE, -1, 1000 }) {
+            byte[] bytes = good.clone();
+            ByteBuffer.wrap(bytes).putInt(matrix, size);
+            try {
+                OpsFile.read(new ByteArrayInputStream(bytes));
+                fail("Read a matrix of size " + size);
+            } catch (StreamCorruptedException e) {
+                // expected
+            }
+        }
+
+        // a record that says it is shorter than its settings
+        byte[] bytes = good.clone();
+        ByteBuffer.wrap(bytes).putInt(12, 20);
+        try {
+            OpsFile.read(new ByteArrayInputStream(bytes));
+            fail("Read past the end of a record");
+        } catch (StreamCorruptedException e) {
+            // expected
+        }
+
+        // a record that says it is longer than the file
+        bytes = good.clone();
+        ByteBuffer.wrap(bytes).putInt(12, Integer.MAX_VALUE);
+        try {
+            OpsFile.read(new ByteArrayInputStream(bytes));
+            fail("Read a record longer than the file");
+        } catch (EOFException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Operations that are not registered cannot be written.
+     */
+    @Test(expected = NotSerializableException.class)
+    public void testUnregisteredOperation() throws Exception {
+        write(Arrays.asList((ImageOperation) input -> input));
+    }
+}
@@ -0,0 +1,289 @@
+package test.cosc202.andie;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+
+import cosc202.andie.EditableImage;
+import cosc202.andie.Footprint;
+import cosc202.andie.ImageOperation;
+import cosc202.andie.ImagePanel;
+import cosc202.andie.PreviewScheduler;
+import cosc202.andie.TileableOperation;
+
+/**
+ * JUnit tests for the PreviewScheduler class. Checks that bursts of requests are rendered once,
+ * that stale renders are never shown, that closing the scheduler keeps previews off the panel,
+ * that a low-resolution proxy is shown before the full preview, that the preview on screen is not
+ * drawn over while the next one renders, and that previews are drawn over the real image without
+ * changing or replacing it.
+ */
+public class PreviewSchedulerTest {
+
+    /**
+     * An operation that sets the first pixel to a marker colour, counting how often it is applied.
+     */
+    private static class MarkerOperation implements ImageOperation {
+        final int marker;
+        final AtomicInteger count;
+
+        MarkerOperation(int marker, AtomicInteger count) {
+            this.marker = marker;
+            this.count = count;
+        }
+
+        public BufferedImage apply(BufferedImage input) {
+            count.incrementAndGet();
+            input.setRGB(0, 0, 0xFF000000 | marker);
+            return input;
+        }
+    }
+
+    /**
+     * Creates a panel showing a small black test image written to a temporary file.
+     *
+     * @return the panel.
+     * @throws Exception if the image cannot be written or opened.
+     */
+    private ImagePanel openTestPanel() throws Exception {
+        return openTestPanel(4);
+    }
+
+    /**
+     * Creates a panel showing a square black test image written to a temporary file.
+     *
+     * @param size the width and height of the image.
+     * @return the panel.
+     * @throws Exception if the image cannot be written or opened.
+     */
+    private ImagePanel openTestPanel(int size) throws Exception {
+        File file = File.createTempFile("andie", ".png");
+        file.deleteOnExit();
+        ImageIO.write(new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB), "png", file);
+        EditableImage image = new EditableImage();
+        image.open(file.getPath());
+        ImagePanel panel = new ImagePanel();
+        panel.setImage(image);
+        return panel;
+    }
+
+    /**
+     * Waits for everything already queued on the event thread to run.
+     */
+    private void flushEventQueue() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+        });
+    }
+
+    /**
+     * Gets the colour the panel shows for the first pixel of the image, from the preview if there is one.
+     */
+    private int shownFirstPixel(ImagePanel panel) {
+        BufferedImage preview = panel.getPreview();
+        Rectangle area = panel.getPreviewArea();
+        if (preview != null && area.x == 0 && area.y == 0) {
+            return preview.getRGB(0, 0);
+        }
+        return panel.getImage().getCurrentImage().getRGB(0, 0);
+    }
+
+    /**
+     * Waits until the panel shows an image whose first pixel has the given marker.
+     */
+    private void awaitMarker(ImagePanel panel, int marker) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            flushEventQueue();
+            if ((shownFirstPixel(panel) & 0xFFFFFF) == marker) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("Preview with marker " + marker + " was never shown");
+    }
+
+    /**
+     * A burst of requests within the delay renders only the last one.
+     */
+    @Test
+    public void testBurstIsCoalesced() throws Exception {
+        ImagePanel panel = openTestPanel();
+        EditableImage real = panel.getImage();
+        PreviewScheduler scheduler = new PreviewScheduler(panel, 200);
+        AtomicInteger count = new AtomicInteger();
+        for (int i = 1; i <= 20; i++) {
+            scheduler.request(new MarkerOperation(i, count));
+        }
+        awaitMarker(panel, 20);
+        assertEquals(1, count.get());
+        // The real image is never changed or replaced by a preview
+        assertSame(real, panel.getImage());
+        assertEquals(0xFF000000, real.getCurrentImage().getRGB(0, 0));
+        assertEquals(0, real.getOpsSize());
+        scheduler.close();
+        assertNull(panel.getPreview());
+    }
+
+    /**
+     * A render that is overtaken by a newer request is never shown, even if it finishes later.
+     */
+    @Test
+    public void testStaleRenderIsDiscarded() throws Exception {
+        ImagePanel panel = openTestPanel();
+        PreviewScheduler scheduler = new PreviewScheduler(panel, 0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicInteger count = new AtomicInteger();
+        scheduler.request(new ImageOperation() {
+            public BufferedImage apply(BufferedImage input) {
+                started.countDown();
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    // cancelled, but finish anyway to check the result is thrown away
+                }
+                input.setRGB(0, 0, 0xFF000001);
+                finished.countDown();
+                return input;
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        scheduler.request(new MarkerOperation(2, count));
+
+        awaitMarker(panel, 2);
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        flushEventQueue();
+        assertEquals(0xFF000002, shownFirstPixel(panel));
+        scheduler.close();
+    }
+
+    /**
+     * The next preview is rendered into a different buffer from the one on screen, so the preview
+     * shown does not change, or go back to the image, until the next one is ready.
+     */
+    @Test
+    public void testShownPreviewIsNotOverwritten() throws Exception {
+        ImagePanel panel = openTestPanel();
+        PreviewScheduler scheduler = new PreviewScheduler(panel, 0);
+        AtomicInteger count = new AtomicInteger();
+        scheduler.request(new MarkerOperation(6, count));
+        awaitMarker(panel, 6);
+        BufferedImage shown = panel.getPreview();
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.request(new ImageOperation() {
+            public BufferedImage apply(BufferedImage input) {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                input.setRGB(0, 0, 0xFF000007);
+                return input;
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        flushEventQueue();
+        assertSame(shown, panel.getPreview());
+        assertEquals(0xFF000006, shown.getRGB(0, 0));
+        release.countDown();
+        awaitMarker(panel, 7);
+        assertEquals(0xFF000006, shown.getRGB(0, 0));
+
+        // the first buffer is free again once the second is on screen
+        scheduler.request(new MarkerOperation(8, count));
+        awaitMarker(panel, 8);
+        scheduler.close();
+    }
+
+    /**
+     * Nothing is shown once the scheduler is closed, so the real image can be put back safely.
+     */
+    @Test
+    public void testCloseDiscardsPendingPreview() throws Exception {
+        ImagePanel panel = openTestPanel();
+        EditableImage real = panel.getImage();
+        PreviewScheduler scheduler = new PreviewScheduler(panel, 50);
+        AtomicInteger count = new AtomicInteger();
+        scheduler.request(new MarkerOperation(3, count));
+        scheduler.close();
+        scheduler.request(new MarkerOperation(4, count));
+
+        Thread.sleep(300);
+        flushEventQueue();
+        assertSame(real, panel.getImage());
+        assertNull(panel.getPreview());
+        assertEquals(0, count.get());
+    }
+
+    /**
+     * A tileable operation is first shown on a proxy of the visible area at the zoomed resolution,
+     * and then replaced by a full-resolution preview of the same area.
+     */
+    @Test
+    public void testProxyBeforeFullResolution() throws Exception {
+        ImagePanel panel = openTestPanel(1024);
+        EditableImage real = panel.getImage();
+        panel.setZoom(50);
+        panel.setSize(200, 200);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        PreviewScheduler scheduler = new PreviewScheduler(panel, 0);
+        scheduler.request(new TileableOperation() {
+            public Footprint getFootprint() {
+                return Footprint.perPixel();
+            }
+
+            public BufferedImage apply(BufferedImage input) {
+                // the first call renders the proxy, and the full resolution waits to be released
+                if (calls.incrementAndGet() > 1) {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                input.setRGB(input.getWidth() - 1, input.getHeight() - 1, 0xFF000005);
+                return input;
+            }
+        });
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (panel.getPreview() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            flushEventQueue();
+        }
+        assertNotNull("Proxy was never shown", panel.getPreview());
+        // The middle 400x400 pixels are visible, shown at half size
+        assertEquals(new Rectangle(312, 312, 400, 400), panel.getPreviewArea());
+        assertEquals(200, panel.getPreview().getWidth());
+        assertEquals(200, panel.getPreview().getHeight());
+        assertSame(real, panel.getImage());
+
+        release.countDown();
+        deadline = System.currentTimeMillis() + 5000;
+        while (panel.getPreview().getWidth() != 400 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            flushEventQueue();
+        }
+        assertEquals(400, panel.getPreview().getWidth());
+        assertEquals(400, panel.getPreview().getHeight());
+        assertEquals(new Rectangle(312, 312, 400, 400), panel.getPreviewArea());
+        // Every tile is rendered at full resolution, including the corner of the one at the bottom right
+        assertEquals(0xFF000005, panel.getPreview().getRGB(399, 399));
+        assertEquals(0xFF000000, panel.getPreview().getRGB(398, 398));
+        assertSame(real, panel.getImage());
+        assertEquals(0xFF000000, real.getCurrentImage().getRGB(711, 711));
+        scheduler.close();
+        assertNull(panel.getPreview());
+    }
+}
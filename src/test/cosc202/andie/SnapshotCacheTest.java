@@ -0,0 +1,118 @@
+package test.cosc202.andie;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.awt.image.BufferedImage;
+
+import cosc202.andie.SnapshotCache;
+import cosc202.andie.TiledRaster;
+
+/**
+ * JUnit tests for the SnapshotCache class. Checks that the nearest usable snapshot is found,
+ * that stored snapshots are independent copies, and that the memory budget is respected.
+ */
+public class SnapshotCacheTest {
+
+    /**
+     * The nearest snapshot is the deepest one that is not past the requested depth.
+     */
+    @Test
+    public void testNearest() {
+        SnapshotCache cache = new SnapshotCache(1 << 20);
+        BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        cache.put(2, image);
+        cache.put(5, image);
+
+        assertEquals(0, cache.nearest(1));
+        assertEquals(2, cache.nearest(4));
+        assertEquals(5, cache.nearest(5));
+        assertEquals(5, cache.nearest(9));
+
+        cache.invalidateAbove(4);
+        assertEquals(2, cache.nearest(9));
+        assertEquals(1, cache.size());
+    }
+
+    /**
+     * Changing an image after it is stored, or changing a restored copy, must not change the snapshot.
+     */
+    @Test
+    public void testSnapshotsAreCopies() {
+        SnapshotCache cache = new SnapshotCache(1 << 20);
+        BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, 0xFF112233);
+        cache.put(1, image);
+        image.setRGB(0, 0, 0xFF000000);
+
+        BufferedImage restored = cache.restore(1);
+        assertEquals(0xFF112233, restored.getRGB(0, 0));
+        restored.setRGB(0, 0, 0xFFFFFFFF);
+        assertEquals(0xFF112233, cache.restore(1).getRGB(0, 0));
+    }
+
+    /**
+     * The least recently used snapshot is evicted when the budget would be exceeded.
+     */
+    @Test
+    public void testBudget() {
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+        long size = SnapshotCache.sizeOf(image);
+        assertEquals(16 * 16 * 4, size);
+
+        SnapshotCache cache = new SnapshotCache(2 * size);
+        cache.put(1, image);
+        cache.put(2, image);
+        // Use snapshot 1 so that snapshot 2 is the least recently used
+        assertNotNull(cache.restore(1));
+        cache.put(3, image);
+
+        assertTrue(cache.contains(1));
+        assertFalse(cache.contains(2));
+        assertTrue(cache.contains(3));
+        assertTrue(cache.getBytesHeld() <= cache.getBudget());
+    }
+
+    /**
+     * Snapshots that share tiles only count them once, as snapshots are added and removed.
+     */
+    @Test
+    public void testSharedTilesCountedOnce() {
+        BufferedImage image = new BufferedImage(300, 270, BufferedImage.TYPE_INT_ARGB);
+        long size = SnapshotCache.sizeOf(image);
+        TiledRaster raster = TiledRaster.of(image);
+        SnapshotCache cache = new SnapshotCache(10 * size);
+        cache.put(1, raster);
+        cache.put(2, raster);
+        assertEquals(size, cache.getBytesHeld());
+
+        // only the written tile is copied, so only it is added
+        raster.write(new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB), 0, 0);
+        cache.put(3, raster);
+        assertEquals(size + 256 * 256 * 4, cache.getBytesHeld());
+
+        // replacing a snapshot and removing the last one sharing a tile give its bytes back
+        cache.put(1, raster);
+        assertEquals(size + 256 * 256 * 4, cache.getBytesHeld());
+        cache.invalidateAbove(2);
+        assertEquals(size + 256 * 256 * 4, cache.getBytesHeld());
+        cache.invalidateAbove(0);
+        assertEquals(0, cache.getBytesHeld());
+
+        // evicting the least recently used snapshot gives back only the tiles no other shares
+        long corner = 44 * 14 * 4;
+        long edge = 44 * 256 * 4;
+        SnapshotCache small = new SnapshotCache(size + edge + 1000);
+        TiledRaster other = raster.copy();
+        other.write(new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB), 299, 269);
+        small.put(1, raster);
+        small.put(2, other);
+        assertEquals(size + corner, small.getBytesHeld());
+        other.write(new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB), 299, 0);
+        small.put(3, other);
+        assertFalse(small.contains(1));
+        assertTrue(small.contains(2));
+        assertTrue(small.contains(3));
+        // only the corner tile belonged to snapshot 1 alone
+        assertEquals(size + edge, small.getBytesHeld());
+    }
+}
@@ -0,0 +1,158 @@
+package test.cosc202.andie;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+import cosc202.andie.*;
+
+/**
+ * JUnit tests for the TileEngine class. Checks that applying an operation in small tiles gives
+ * exactly the same image as applying it to the whole image at once, and that a drawing only
+ * copies the tiles it touches.
+ */
+public class TileEngineTest {
+
+    /**
+     * Creates an image filled with random colours, with a size that does not divide evenly into tiles.
+     *
+     * @return a new random image.
+     */
+    private BufferedImage randomImage() {
+        Random random = new Random(202);
+        BufferedImage image = new BufferedImage(53, 37, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Makes an independent copy of an image, since some operations change their input.
+     *
+     * @param image the image to copy.
+     * @return a copy of the image.
+     */
+    private BufferedImage copy(BufferedImage image) {
+        return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Applies an operation directly and in tiles of 16 pixels, and checks the results are identical.
+     *
+     * @param op the operation to check.
+     */
+    private void assertTiledMatches(ImageOperation op) {
+        BufferedImage input = randomImage();
+        BufferedImage expected = op.apply(copy(input));
+        BufferedImage actual = TileEngine.apply(op, copy(input), 16);
+
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(op.getClass().getSimpleName() + " at (" + x + ", " + y + ")",
+                        expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    /**
+     * Per-pixel operations give the same result when tiled.
+     */
+    @Test
+    public void testPerPixelOperations() {
+        assertTiledMatches(new Brightness(20, -30));
+        assertTiledMatches(new InvertFilter());
+        assertTiledMatches(new HueFilter(Color.RED));
+    }
+
+    /**
+     * Neighbourhood operations give the same result when tiled, as long as each tile gets a halo.
+     */
+    @Test
+    public void testNeighbourhoodOperations() {
+        assertTiledMatches(new MedianFilter(3));
+        assertTiledMatches(new SobelFilter(1));
+        assertTiledMatches(new EmbossFilter(6));
+        assertTiledMatches(new GaussianBlurFilter(4));
+    }
+
+    /**
+     * The dither pattern lines up across tile boundaries.
+     */
+    @Test
+    public void testDitherPatternIsContinuous() {
+        assertTiledMatches(new DitherFilter(5, Color.WHITE, Color.BLACK));
+    }
+
+    /**
+     * The recursive gaussian reads whole lines, so it is not split into tiles and matches a
+     * render of the whole image exactly.
+     */
+    @Test
+    public void testRecursiveBlurIsNotTiled() {
+        GaussianBlurFilter blur = new GaussianBlurFilter(4, true);
+        assertFalse(blur.getFootprint().isTileable());
+        assertTiledMatches(blur);
+        assertTiledMatches(new GaussianBlurFilter(GaussianBlurFilter.MAX_KERNEL_RADIUS + 5));
+    }
+
+    /**
+     * Operations that are not tileable are applied to the whole image.
+     */
+    @Test
+    public void testUntileableOperation() {
+        BufferedImage input = randomImage();
+        BufferedImage result = TileEngine.apply(new FlipImage(true), copy(input), 16);
+        assertEquals(input.getWidth(), result.getWidth());
+        assertEquals(input.getHeight(), result.getHeight());
+        // A vertical flip moves the top row to the bottom, which a single tile could not do
+        assertEquals(input.getRGB(5, 0), result.getRGB(5, input.getHeight() - 1));
+    }
+
+    /**
+     * An interrupted caller gets a CancellationException instead of a partly processed image.
+     */
+    @Test
+    public void testInterruptCancels() {
+        BufferedImage input = randomImage();
+        Thread.currentThread().interrupt();
+        try {
+            TileEngine.apply(new InvertFilter(), input, 16);
+            fail("Expected the interrupted tiling to be cancelled");
+        } catch (CancellationException e) {
+            // expected
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Drawing on a raster that shares its tiles copies just the tile under the drawing, without
+     * putting the whole image together first.
+     */
+    @Test
+    public void testDrawingCopiesOnlyTouchedTiles() {
+        int size = TileEngine.TILE_SIZE;
+        BufferedImage[] tiles = new BufferedImage[4];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        }
+        TiledRaster raster = TiledRaster.fromTiles(2 * size, 2 * size, tiles);
+        TiledRaster snapshot = raster.copy();
+        raster = TileEngine.apply(new DrawSquare(Color.RED, 10, 10, 20, 20), raster);
+
+        assertEquals(Color.RED.getRGB(), raster.getTile(0, 0).getRGB(15, 15));
+        assertEquals(0, snapshot.getTile(0, 0).getRGB(15, 15));
+        HashSet<Object> counted = new HashSet<Object>();
+        long bytes = raster.countBytes(counted) + snapshot.countBytes(counted);
+        assertEquals(5L * size * size * 4, bytes);
+    }
+}
@@ -0,0 +1,142 @@
+package test.cosc202.andie;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.*;
+
+import cosc202.andie.*;
+
+/**
+ * JUnit tests for the TiledRaster class. Checks that copies share tiles until one side writes to
+ * them, that writes only copy the tiles they touch, and that the TileEngine gives the same result
+ * on tiles as on a whole image.
+ */
+public class TiledRasterTest {
+
+    /**
+     * Makes an image with different pixels everywhere, over several tiles.
+     */
+    private static BufferedImage randomImage(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Random random = new Random(7);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, 0xFF000000 | random.nextInt(0x1000000));
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Checks that two images have the same pixels.
+     */
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals("Pixel (" + x + ", " + y + ")", expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    /**
+     * A wrapped image is handed back as it is, without copying, while nothing has changed.
+     */
+    @Test
+    public void testWrapIsZeroCopy() {
+        BufferedImage image = randomImage(600, 300, BufferedImage.TYPE_3BYTE_BGR);
+        TiledRaster raster = TiledRaster.wrap(image);
+        assertEquals(3, raster.getColumns());
+        assertEquals(2, raster.getRows());
+        assertEquals(new Rectangle(512, 256, 88, 44), raster.tileBounds(2, 1));
+        assertSame(image, raster.toBufferedImage());
+        assertEquals(BufferedImage.TYPE_3BYTE_BGR, raster.getType());
+
+        // writing to an unshared tile writes straight through to the image
+        raster.getWritableTile(1, 1).setRGB(0, 0, 0xFF123456);
+        assertEquals(0xFF123456, image.getRGB(256, 256));
+        assertSame(image, raster.detach());
+    }
+
+    /**
+     * Copies share their tiles, and each only copies a tile when it writes to it.
+     */
+    @Test
+    public void testCopyOnWrite() {
+        BufferedImage image = randomImage(600, 300, BufferedImage.TYPE_INT_RGB);
+        TiledRaster raster = TiledRaster.of(image);
+        TiledRaster copy = raster.copy();
+        assertFalse(raster.isExclusive());
+        Set<Object> counted = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        long bytes = raster.countBytes(counted);
+        assertEquals(600L * 300 * 4, bytes);
+        assertEquals(0, copy.countBytes(counted));
+
+        BufferedImage square = new BufferedImage(20, 20, BufferedImage.TYPE_INT_RGB);
+        copy.write(square, 250, 250);
+        // the square lands on four tiles, which are the only ones the copy now has to itself
+        counted.clear();
+        raster.countBytes(counted);
+        assertEquals(4L * (2 * 256 * 256 + 2 * 256 * 44), copy.countBytes(counted));
+
+        assertSamePixels(image, raster.toBufferedImage());
+        assertEquals(0xFF000000, copy.toBufferedImage().getRGB(255, 255));
+        assertEquals(0xFF000000, copy.toBufferedImage().getRGB(269, 269));
+        assertEquals(image.getRGB(270, 270), copy.toBufferedImage().getRGB(270, 270));
+
+        // once the copy is released the tiles are no longer shared
+        copy.release();
+        assertTrue(raster.isExclusive());
+    }
+
+    /**
+     * Copying an area reads it from every tile it covers.
+     */
+    @Test
+    public void testCopyArea() {
+        BufferedImage image = randomImage(600, 300, BufferedImage.TYPE_INT_ARGB);
+        TiledRaster raster = TiledRaster.of(image);
+        raster.getWritableTile(0, 0);
+        Rectangle area = new Rectangle(200, 100, 400, 190);
+        assertSamePixels(image.getSubimage(area.x, area.y, area.width, area.height), raster.copyArea(area));
+    }
+
+    /**
+     * Operations applied to the tiles give the same image as applied to the whole image, and do
+     * not change copies that share the tiles.
+     */
+    @Test
+    public void testTileEngineOnTiles() {
+        BufferedImage image = randomImage(600, 300, BufferedImage.TYPE_INT_ARGB);
+        ImageOperation[] ops = { new InvertFilter(), new MedianFilter(2), new FlipImage(true) };
+        BufferedImage expected = image;
+        TiledRaster raster = TiledRaster.of(image);
+        TiledRaster before = raster.copy();
+        for (ImageOperation op : ops) {
+            expected = TileEngine.apply(op, expected);
+            raster = TileEngine.apply(op, raster);
+            assertSamePixels(expected, raster.toBufferedImage());
+        }
+        assertSamePixels(image, before.toBufferedImage());
+    }
+
+    /**
+     * A snapshot of a raster shares its tiles, so a later write copies only the tiles written.
+     */
+    @Test
+    public void testSnapshotsShareTiles() {
+        BufferedImage image = randomImage(600, 300, BufferedImage.TYPE_INT_ARGB);
+        TiledRaster raster = TiledRaster.of(image);
+        SnapshotCache cache = new SnapshotCache(1 << 24);
+        cache.put(1, raster);
+        raster.write(new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB), 0, 0);
+        cache.put(2, raster);
+        // the second snapshot only adds the tile that was written
+        assertEquals(600L * 300 * 4 + 256 * 256 * 4, cache.getBytesHeld());
+        assertSamePixels(image, cache.restore(1));
+        assertEquals(0, cache.restoreTiles(2).toBufferedImage().getRGB(5, 5));
+    }
+}